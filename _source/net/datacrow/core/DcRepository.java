@@ -232,6 +232,10 @@ public abstract class DcRepository {
         public static final String stWebServerFrameSize = "webserver_frame_size";
         public static final String stDriveManagerDrives = "drive_manager_drives";
         public static final String stDriveManagerExcludedDirs = "drive_manager_excluded_directories";
+        public static final String stFileSynchronizerBatchSize = "file_synchronizer_batch_size";
+        public static final String stFileSynchronizerItemsPerSecond = "file_synchronizer_items_per_second";
+        public static final String stFileImporterThreads = "file_importer_threads";
+        public static final String stFileImporterBatchSize = "file_importer_batch_size";
     }
     
     /**
@@ -372,4 +376,4 @@ public abstract class DcRepository {
         public static final String _PREDEFINEDQRY =
             "SELECT * FROM software WHERE category IS NOT NULL \n";
     }
-}
\ No newline at end of file
+}
\ No newline at end of file
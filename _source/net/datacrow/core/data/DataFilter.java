@@ -59,6 +59,8 @@ public class DataFilter implements Serializable {
     
     private int module;
     private int resultLimit = 0;
+    private String resultStartAfter;
+    private int resultOffset = 0;
     
     private String name;
     
@@ -105,6 +107,50 @@ public class DataFilter implements Serializable {
 		this.resultLimit = resultLimit;
 	}
 
+	/**
+	 * The ID of the last item of the previous page, see {@link #setResultStartAfter(String)}.
+	 * Null when the results are not paged.
+	 */
+	public String getResultStartAfter() {
+	    return resultStartAfter;
+	}
+
+	/**
+	 * Restricts the results to the items following the specified ID, ordered on the ID.
+	 * Used together with the result limit to retrieve the results page by page.
+	 * @param ID The ID of the last item of the previous page. An empty string for the first page.
+	 */
+	public void setResultStartAfter(String ID) {
+	    this.resultStartAfter = ID;
+	}
+
+	/**
+	 * The number of items to skip, see {@link #setResultOffset(int)}.
+	 */
+	public int getResultOffset() {
+	    return resultOffset;
+	}
+
+	/**
+	 * Skips the specified number of items of the ordered result. Used together with the
+	 * result limit to retrieve the results of an ordered filter page by page.
+	 * @param offset The number of items to skip.
+	 */
+	public void setResultOffset(int offset) {
+	    this.resultOffset = offset;
+	}
+
+	/**
+	 * Creates a copy of this filter, without the result limit, the offset and the start ID.
+	 */
+	public DataFilter copy() {
+	    DataFilter df = new DataFilter(module, new ArrayList<DataFilterEntry>(entries));
+	    df.setName(name);
+	    df.setOrder(order);
+	    df.setSortDirection(sortDirection);
+	    return df;
+	}
+
 	/**
      * Creates a filter using the supplied entries.
      * @param module
@@ -46,11 +46,42 @@ public class DataFilterConverter {
 	
 	private DataFilter df;
 	
+	private final SimpleDateFormat formatter = new SimpleDateFormat("yyyy-MM-dd");
+	
+	// the bind values; null when the values are part of the statement
+	private List<Object> parameters;
+	
 	public DataFilterConverter(DataFilter df) {
 		this.df = df;
 	}
 	
+	/**
+	 * Creates the SQL statement with the filter values part of the statement.
+	 */
     public String toSQL(int[] fields, boolean orderResults, boolean includeMod) {
+        parameters = null;
+        return createSQL(fields, orderResults, includeMod);
+    }
+    
+    /**
+     * Creates a parameterized statement; the filter values are returned as bind values.
+     * Filters of the same shape (module, fields, operators and order) result in the 
+     * same statement, allowing the statement to be prepared once and reused by the 
+     * database layer. The result limit, the offset and the start ID of a page are bound as well and 
+     * lists of values are padded to a fixed number of bind values.
+     */
+    public DcQuery toQuery(int[] fields, boolean orderResults, boolean includeMod) {
+        parameters = new ArrayList<Object>();
+        String sql = createSQL(fields, orderResults, includeMod);
+        DcQuery query = new DcQuery(sql, parameters);
+        parameters = null;
+        return query;
+    }
+	
+    private String createSQL(int[] fields, boolean orderResults, boolean includeMod) {
+        if (df.getResultStartAfter() != null)
+            return createPageSQL(fields, includeMod);
+        
         DcField field;
         
         DcModule m = DcModules.get(df.getModule());
@@ -68,7 +99,7 @@ public class DataFilterConverter {
         int moduleCounter = 0;
         if (m.isAbstract()) {
         	sql.append("SELECT ");
-        	if (df.getResultLimit() > 0) {
+        	if (df.getResultLimit() > 0 && df.getResultOffset() == 0 && parameters == null) {
     			sql.append(" TOP ");
     			sql.append(df.getResultLimit());
     			sql.append(" ");
@@ -95,7 +126,7 @@ public class DataFilterConverter {
     		sql.append(" SELECT ");
     		
     		// for abstract module queries the TOP x has already been specified.
-    		if (!m.isAbstract() && df.getResultLimit() > 0) {
+    		if (!m.isAbstract() && df.getResultLimit() > 0 && df.getResultOffset() == 0 && parameters == null) {
     			sql.append(" TOP ");
     			sql.append(df.getResultLimit());
     			sql.append(" ");
@@ -141,6 +172,62 @@ public class DataFilterConverter {
 	        
         // add a join to the reference table part of the sort
         if (orderResults) addOrderBy(sql);
+        
+        // for parameterized statements and offsets the limit is used instead of the TOP x clause
+        if (parameters != null || df.getResultOffset() > 0) addLimit(sql);
+        
+        return sql.toString();
+    }
+    
+    private void addLimit(StringBuffer sql) {
+        if (df.getResultLimit() > 0) {
+            sql.append(" LIMIT ");
+            appendValue(sql, String.valueOf(df.getResultLimit()), Integer.valueOf(df.getResultLimit()));
+        }
+        
+        if (df.getResultOffset() > 0) {
+            sql.append(" OFFSET ");
+            appendValue(sql, String.valueOf(df.getResultOffset()), Integer.valueOf(df.getResultOffset()));
+        }
+    }
+    
+    /**
+     * Creates the statement for a single page of a keyset paged filter: the items following 
+     * the ID of the last item of the previous page, ordered on the ID. Items inserted or
+     * deleted between two pages do not shift the pages as would be the case with an offset.
+     * The order of the filter is not applied; ordered filters are paged using an offset
+     * instead (see {@link DataFilter#setResultOffset(int)}).
+     */
+    private String createPageSQL(int[] fields, boolean includeMod) {
+        int[] pageFields = fields;
+        if (fields != null && fields.length > 0) {
+            boolean hasID = false;
+            for (int i = 0; i < fields.length; i++)
+                hasID |= fields[i] == DcObject._ID;
+            
+            if (!hasID) {
+                pageFields = new int[fields.length + 1];
+                System.arraycopy(fields, 0, pageFields, 0, fields.length);
+                pageFields[fields.length] = DcObject._ID;
+            }
+        }
+        
+        // the filter without the limit and the start ID
+        DataFilterConverter dfc = new DataFilterConverter(df.copy());
+        dfc.parameters = parameters;
+        
+        StringBuffer sql = new StringBuffer();
+        sql.append("SELECT * FROM (");
+        sql.append(dfc.createSQL(pageFields, false, includeMod));
+        sql.append(") page WHERE ID > ");
+        
+        String ID = df.getResultStartAfter();
+        appendValue(sql, "'" + ID.replace("'", "''") + "'", ID);
+        
+        sql.append(" ORDER BY ID");
+        
+        addLimit(sql);
+        
         return sql.toString();
     }
     
@@ -148,7 +235,6 @@ public class DataFilterConverter {
     	boolean hasConditions = false;
         DcModule entryModule; 
         
-        SimpleDateFormat formatter = new SimpleDateFormat("yyyy-MM-dd");
         Calendar cal = Calendar.getInstance();
         List<DataFilterEntry> childEntries = new ArrayList<DataFilterEntry>();
 
@@ -157,6 +243,8 @@ public class DataFilterConverter {
         int counter2;
         int counter = 0;
         String queryValue = null;
+        String bindString = null;
+        Object bindValue = null;
         DcField field;
         DataFilterConverter dfc;
         
@@ -191,9 +279,12 @@ public class DataFilterConverter {
             if (value != null) {
                 
                 if (value instanceof Date) {
-                    queryValue = "'" + formatter.format((Date) value) + "'";
+                    bindString = formatter.format((Date) value);
+                    bindValue = java.sql.Date.valueOf(bindString);
+                    queryValue = "'" + bindString + "'";
                 } else {
                     queryValue = String.valueOf(value);
+                    bindString = queryValue;
                     if (    field.getValueType() == DcRepository.ValueTypes._STRING ||
                             field.getValueType() == DcRepository.ValueTypes._BOOLEAN ||
                             field.getValueType() == DcRepository.ValueTypes._DCOBJECTREFERENCE ||
@@ -201,10 +292,10 @@ public class DataFilterConverter {
                             field.getValueType() == DcRepository.ValueTypes._DCOBJECTREFERENCE ||
                             field.getValueType() == DcRepository.ValueTypes._DATE ||
                             field.getValueType() == DcRepository.ValueTypes._DATETIME) {
-                        queryValue = queryValue.replaceAll("\'", "''");
-                        queryValue = queryValue.replaceAll("\\%", "\\\\%");
-                        queryValue = queryValue.replaceAll("\\_", "\\\\_");
+                        bindString = escape(bindString, false);
+                        queryValue = escape(queryValue, true);
                     }
+                    bindValue = value instanceof String ? bindString : value;
                 }
             }
             
@@ -276,18 +367,16 @@ public class DataFilterConverter {
                     sql.append(referenceMod.getTableName());
                     sql.append(" WHERE UPPER(");
                     sql.append(referenceMod.getField(referenceMod.getDisplayFieldIdx()).getDatabaseFieldName());
-                    sql.append(") LIKE UPPER('%");
-                    sql.append(queryValue);
-                    sql.append("%'))");
+                    sql.append(") LIKE ");
+                    appendValue(sql, "'%" + queryValue + "%'", "%" + bindString + "%", true);
+                    sql.append(")");
 
                     if (mapping != null)
                         sql.append(")");
                 } else {
                     sql.append(" LIKE ");
                     
-                    if (useUpper) sql.append("UPPER(");
-                    sql.append("'%" + queryValue + "%'");
-                    if (useUpper) sql.append(")");
+                    appendValue(sql, "'%" + queryValue + "%'", "%" + bindString + "%", useUpper);
                 }
                 
             } else if ( operator == Operator.CONTAINS.getIndex() || 
@@ -318,26 +407,22 @@ public class DataFilterConverter {
                     }
                     
                     if (!(value instanceof Collection)) {
-                        sql.append("'");
-                        sql.append(queryValue);
-                        sql.append("'");
+                        appendValue(sql, "'" + queryValue + "'", bindString);
                         sql.append(")");
                     } else {
                         counter2 = 0;
+                        String ID = null;
                         for (Object o : (Collection) value) {
                             
                             if (counter2 > 0)  sql.append(",");
 
-                            sql.append("'");
-                            if (o instanceof DcObject)
-                                sql.append(((DcObject) o).getID());
-                            else
-                                sql.append(o.toString());
-                            
-                            sql.append("'");
+                            ID = o instanceof DcObject ? ((DcObject) o).getID() : o.toString();
+                            appendValue(sql, "'" + ID + "'", ID);
                             
                             counter2++;
                         }
+                        
+                        padValues(sql, counter2, ID, false);
                         sql.append(")");
                     }
 	                 
@@ -347,35 +432,51 @@ public class DataFilterConverter {
                     if (operator == Operator.DOES_NOT_CONTAIN.getIndex()) sql.append(" NOT");
                     sql.append(" LIKE ");
                     
-                    if (useUpper) sql.append("UPPER(");
-                    sql.append("'%" + queryValue + "%'");
-                    if (useUpper) sql.append(")");
+                    appendValue(sql, "'%" + queryValue + "%'", "%" + bindString + "%", useUpper);
                 }
 
             } else if (operator == Operator.ENDS_WITH.getIndex()) {
                 sql.append(" LIKE ");
-                if (useUpper) sql.append("UPPER(");
-                sql.append("'%" + queryValue + "'");
-                if (useUpper) sql.append(")");
+                appendValue(sql, "'%" + queryValue + "'", "%" + bindString, useUpper);
+            } else if (operator == Operator.EQUAL_TO.getIndex() && value instanceof Collection) {
+                // a list of values to match (used for bulk lookups on IDs)
+                sql.append(" IN (");
+                counter2 = 0;
+                Object o = null;
+                for (Object element : (Collection) value) {
+                    if (counter2 > 0) sql.append(",");
+                    
+                    o = CoreUtilities.getQueryValue(element, field);
+                    if (o instanceof String)
+                        appendValue(sql, "'" + ((String) o).replace("'", "''") + "'", o, useUpper);
+                    else 
+                        appendValue(sql, String.valueOf(o), o);
+                    
+                    counter2++;
+                }
+                
+                if (counter2 == 0) sql.append("NULL");
+                
+                padValues(sql, counter2, o, useUpper && o instanceof String);
+                sql.append(")");
             } else if (operator == Operator.EQUAL_TO.getIndex()) {
                 if (useUpper) {
-                    sql.append(" = UPPER('"+ queryValue +"')");
+                    sql.append(" = ");
+                    appendValue(sql, "'" + queryValue + "'", bindString, true);
                 } else {
                     sql.append(" = ");
-                    if (value instanceof String) sql.append("'");
-                    sql.append(queryValue);
-                    if (value instanceof String) sql.append("'");
+                    appendValue(sql, value instanceof String ? "'" + queryValue + "'" : queryValue, bindValue);
                 }
             } else if (operator == Operator.BEFORE.getIndex() ||
                        operator == Operator.LESS_THEN.getIndex()) {
                 sql.append(" < ");
-                sql.append(queryValue);
+                appendValue(sql, queryValue, bindValue);
             } else if (operator == Operator.AFTER.getIndex() ||
                        operator == Operator.GREATER_THEN.getIndex()) {
                 
                 
                 sql.append(" > ");
-                sql.append(queryValue);
+                appendValue(sql, queryValue, bindValue);
             } else if (operator == Operator.IS_EMPTY.getIndex()) {
                 sql.append(" IS NULL");
             } else if (operator == Operator.IS_FILLED.getIndex()) {
@@ -383,44 +484,47 @@ public class DataFilterConverter {
             } else if (operator == Operator.NOT_EQUAL_TO.getIndex()) {
                 sql.append(" <> ");
                 if (useUpper) {
-                    sql.append(" UPPER('"+ queryValue +"')");
+                    sql.append(" ");
+                    appendValue(sql, "'" + queryValue + "'", bindString, true);
                 } else {
-                    if (value instanceof String) sql.append("'");
-                    sql.append(queryValue);
-                    if (value instanceof String) sql.append("'");
+                    appendValue(sql, value instanceof String ? "'" + queryValue + "'" : queryValue, bindValue);
                 }
             } else if (operator == Operator.STARTS_WITH.getIndex()) {
                 sql.append(" LIKE ");
-                if (useUpper) sql.append("UPPER(");
-                sql.append("'" + queryValue + "%'");
-                if (useUpper) sql.append(")");
+                appendValue(sql, "'" + queryValue + "%'", bindString + "%", useUpper);
             } else if (operator == Operator.TODAY.getIndex()) {
                 sql.append(" = TODAY");
             } else if (operator == Operator.DAYS_BEFORE.getIndex()) {
                 cal.setTime(new Date());
                 Long days = (Long) entry.getValue();
                 cal.add(Calendar.DATE, -1 * days.intValue());
-                sql.append(" = '" + formatter.format(cal.getTime()) + "'");
+                sql.append(" = ");
+                appendDate(sql, cal.getTime());
             } else if (operator == Operator.DAYS_AFTER.getIndex()) {
                 Long days = (Long) entry.getValue();
                 cal.add(Calendar.DATE, days.intValue());
-                sql.append(" = '" + formatter.format(cal.getTime()) + "'");
+                sql.append(" = ");
+                appendDate(sql, cal.getTime());
             } else if (operator == Operator.MONTHS_AGO.getIndex()) {
                 Long days = (Long) entry.getValue();
                 cal.add(Calendar.MONTH, -1 * days.intValue());
                 cal.set(Calendar.DAY_OF_MONTH, 1);
-                sql.append(" BETWEEN '" + formatter.format(cal.getTime()) + "'");
+                sql.append(" BETWEEN ");
+                appendDate(sql, cal.getTime());
                 cal.set(Calendar.DAY_OF_MONTH, cal.getMaximum(Calendar.DAY_OF_MONTH));
-                sql.append(" AND '" + formatter.format(cal.getTime()) + "'");
+                sql.append(" AND ");
+                appendDate(sql, cal.getTime());
             } else if (operator == Operator.YEARS_AGO.getIndex()) {
                 Long days = (Long) entry.getValue();
                 cal.add(Calendar.YEAR, -1 * days.intValue());
                 cal.set(Calendar.MONTH, 1);
                 cal.set(Calendar.DAY_OF_MONTH, 1);
-                sql.append(" BETWEEN '" + formatter.format(cal.getTime()) + "'");
+                sql.append(" BETWEEN ");
+                appendDate(sql, cal.getTime());
                 cal.set(Calendar.MONTH, 12);
                 cal.set(Calendar.DAY_OF_MONTH, 31);
-                sql.append(" AND '" + formatter.format(cal.getTime()) + "'");
+                sql.append(" AND ");
+                appendDate(sql, cal.getTime());
             }
             
             counter++;
@@ -433,8 +537,10 @@ public class DataFilterConverter {
             for (DataFilterEntry entry : childEntries)
             	subFilter.addEntry(entry);
             
+            // the sub select adds its bind values to those of this filter
             dfc = new DataFilterConverter(subFilter);
-            String subSelect = dfc.toSQL(new int[] {childModule.getParentReferenceFieldIndex()}, false, false);
+            dfc.parameters = parameters;
+            String subSelect = dfc.createSQL(new int[] {childModule.getParentReferenceFieldIndex()}, false, false);
             
             if (hasConditions)
                 sql.append(" AND ID IN (");
@@ -497,6 +603,10 @@ public class DataFilterConverter {
 	            	counter++;
 	            }
 	        }
+	        
+	        // limited results are ordered on the ID as well so consecutive pages cannot overlap
+	        if (counter > 0 && df.getResultLimit() > 0)
+	            sql.append(module.isAbstract() ? ", ID" : ", " + module.getTableName() + ".ID");
         } else if (field != null && !field.isUiOnly()) {
             sql.append(" ORDER BY ");
             sql.append(module.getField(module.getDefaultSortFieldIdx()).getDatabaseFieldName());
@@ -527,17 +637,111 @@ public class DataFilterConverter {
         sql.append(hasConditions ? " AND " : " WHERE ");
         
         String maintable = module.getTableName();
+        Date current = new Date();
 
-        SimpleDateFormat formatter = new SimpleDateFormat("yyyy-MM-dd");
-        String current = formatter.format(new Date());
-        String daysCondition = duration != null ? " AND DATEDIFF('dd', startDate , '" + current + "') >= " + duration : "";
-        String personCondition = person != null ? " AND PersonID = '" + person + "'" : "";
-
-        if (available != null && Boolean.valueOf(available.toString()))
+        if (available != null && Boolean.valueOf(available.toString())) {
             sql.append(" ID NOT IN (select objectID from Loans where objectID = " +  maintable
-                       + ".ID AND enddate IS NULL AND startDate <= '" + current +  "')");
-        else
-            sql.append(" ID IN (select objectID from Loans where objectID = " +  maintable
-                       + ".ID "  + daysCondition + " AND enddate IS NULL AND startDate <= '" + current +  "'" + personCondition + ")");
-    }   
+                       + ".ID AND enddate IS NULL AND startDate <= ");
+            appendDate(sql, current);
+            sql.append(")");
+        } else {
+            sql.append(" ID IN (select objectID from Loans where objectID = " +  maintable + ".ID ");
+            
+            if (duration != null) {
+                sql.append(" AND DATEDIFF('dd', startDate , ");
+                appendDate(sql, current);
+                sql.append(") >= ");
+                appendValue(sql, String.valueOf(duration), duration);
+            }
+            
+            sql.append(" AND enddate IS NULL AND startDate <= ");
+            appendDate(sql, current);
+            
+            if (person != null) {
+                sql.append(" AND PersonID = ");
+                appendValue(sql, "'" + person + "'", person);
+            }
+            
+            sql.append(")");
+        }
+    }
+    
+    /**
+     * Appends a filter value. In case bind values are collected a parameter marker is added
+     * instead of the value itself.
+     * @param literal The value as part of the statement (quoted where needed).
+     * @param parameter The bind value.
+     */
+    private void appendValue(StringBuffer sql, String literal, Object parameter) {
+        appendValue(sql, literal, parameter, false);
+    }
+    
+    /**
+     * Appends a filter value. In case bind values are collected a parameter marker is added
+     * instead of the value itself.
+     * @param literal The value as part of the statement (quoted where needed).
+     * @param parameter The bind value.
+     * @param upper Compare on upper case. The bind value is converted directly.
+     */
+    private void appendValue(StringBuffer sql, String literal, Object parameter, boolean upper) {
+        if (parameters == null) {
+            if (upper) sql.append("UPPER(");
+            sql.append(literal);
+            if (upper) sql.append(")");
+        } else {
+            sql.append("?");
+            parameters.add(upper && parameter != null ? parameter.toString().toUpperCase() : parameter);
+        }
+    }
+    
+    /**
+     * Pads a list of bind values, by repeating the last value, up to the next power of two 
+     * (with a minimum of 8 values). Lists of a similar size therefore result in the same 
+     * statement. Does nothing in case the values are part of the statement.
+     * @param count The number of values added.
+     * @param last The last bind value.
+     * @param upper Compare on upper case.
+     */
+    private void padValues(StringBuffer sql, int count, Object last, boolean upper) {
+        if (parameters == null || count == 0) return;
+        
+        int size = 8;
+        while (size < count)
+            size <<= 1;
+        
+        for (int i = count; i < size; i++) {
+            sql.append(",");
+            appendValue(sql, null, last, upper);
+        }
+    }
+    
+    private void appendDate(StringBuffer sql, Date date) {
+        String s = formatter.format(date);
+        if (parameters == null) {
+            sql.append("'");
+            sql.append(s);
+            sql.append("'");
+        } else {
+            sql.append("CAST(? AS DATE)");
+            parameters.add(java.sql.Date.valueOf(s));
+        }
+    }
+    
+    /**
+     * Escapes the wildcard characters and, optionally, the quotes.
+     */
+    private String escape(String s, boolean quotes) {
+        StringBuilder sb = new StringBuilder(s.length() + 8);
+        char c;
+        for (int i = 0; i < s.length(); i++) {
+            c = s.charAt(i);
+            if (c == '\'' && quotes)
+                sb.append("''");
+            else if (c == '%' || c == '_')
+                sb.append('\\').append(c);
+            else 
+                sb.append(c);
+        }
+        return sb.toString();
+    }
 }
@@ -0,0 +1,311 @@
+/******************************************************************************
+ *                                     __                                     *
+ *                              <-----/@@\----->                              *
+ *                             <-< <  \\//  > >->                             *
+ *                               <-<-\ __ /->->                               *
+ *                               Data /  \ Crow                               *
+ *                                   ^    ^                                   *
+ *                              info@datacrow.net                             *
+ *                                                                            *
+ *                       This file is part of Data Crow.                      *
+ *       Data Crow is free software; you can redistribute it and/or           *
+ *        modify it under the terms of the GNU General Public                 *
+ *       License as published by the Free Software Foundation; either         *
+ *              version 3 of the License, or any later version.               *
+ *                                                                            *
+ *        Data Crow is distributed in the hope that it will be useful,        *
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *           MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.             *
+ *           See the GNU General Public License for more details.             *
+ *                                                                            *
+ *        You should have received a copy of the GNU General Public           *
+ *  License along with this program. If not, see http://www.gnu.org/licenses  *
+ *                                                                            *
+ ******************************************************************************/
+
+package net.datacrow.core.data;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import net.datacrow.core.modules.DcModule;
+import net.datacrow.core.modules.DcModules;
+import net.datacrow.core.objects.DcField;
+import net.datacrow.core.objects.DcObject;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Caches items, per module, by their ID. For each item the set of loaded fields is 
+ * stored; a lookup only succeeds when all the requested fields are available.
+ * The number of items per module is bounded; the least recently used items are evicted.
+ * 
+ * Cached items are never handed out directly, callers receive a copy. Items are 
+ * invalidated when saved or deleted: by the save and delete tasks in the saving client, 
+ * by {@link DcObject#afterSave()} and {@link DcObject#afterDelete()} where the item is 
+ * written and, in client / server mode, when the server reports changes made by other 
+ * clients. Invalidating an item more than once has no further effect. In case an item is 
+ * invalidated the cached items referencing its module are invalidated as well as these 
+ * hold copies of the referenced items.
+ * 
+ * @author Robert Jan van der Waals
+ */
+public class DcItemCache {
+    
+    private transient static Logger logger = Logger.getLogger(DcItemCache.class.getName());
+
+    public static final int _DEFAULT_MAX_ITEMS = 1000;
+    
+    private static final DcItemCache instance = new DcItemCache();
+    
+    private final Map<Integer, ModuleCache> modules = new HashMap<Integer, ModuleCache>();
+    
+    private int maxItems = _DEFAULT_MAX_ITEMS;
+    private boolean enabled = true;
+    
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+    
+    private DcItemCache() {}
+    
+    public static DcItemCache getInstance() {
+        return instance;
+    }
+    
+    public synchronized boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Enables or disables the cache. Disabling the cache clears it.
+     */
+    public synchronized void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        if (!enabled) clear();
+    }
+    
+    /**
+     * The maximum number of items kept per module.
+     */
+    public synchronized int getMaxItems() {
+        return maxItems;
+    }
+
+    public synchronized void setMaxItems(int maxItems) {
+        this.maxItems = Math.max(0, maxItems);
+        
+        for (ModuleCache mc : modules.values())
+            mc.trim();
+    }
+    
+    /**
+     * Retrieves the cached item.
+     * @param moduleIdx The module index.
+     * @param ID The item ID.
+     * @param fields The fields required. Null for all fields.
+     * @return A copy of the cached item or null if the item (or one of the requested fields) is not available.
+     */
+    public synchronized DcObject get(int moduleIdx, String ID, int[] fields) {
+        if (!enabled || ID == null) return null;
+        
+        ModuleCache mc = modules.get(Integer.valueOf(moduleIdx));
+        CachedItem ci = mc != null ? mc.get(ID) : null;
+        
+        if (ci != null && ci.contains(fields)) {
+            hits++;
+            return ci.item.clone();
+        }
+        
+        misses++;
+        return null;
+    }
+    
+    /**
+     * Adds the item to the cache. The item should not be altered afterwards.
+     * In case the item was already cached, with different fields, the fields are merged.
+     * @param dco The item.
+     * @param fields The loaded fields. Null if all fields have been loaded.
+     */
+    public synchronized void put(DcObject dco, int[] fields) {
+        if (!enabled || dco == null || dco.getID() == null || maxItems == 0) return;
+        
+        Integer key = Integer.valueOf(dco.getModule().getIndex());
+        ModuleCache mc = modules.get(key);
+        if (mc == null) {
+            mc = new ModuleCache();
+            modules.put(key, mc);
+        }
+        
+        CachedItem ci = mc.get(dco.getID());
+        if (ci != null && ci.fields != null && fields != null) {
+            // keep the values loaded before which are not part of the new field set
+            int[] other = ci.getOtherFields(fields);
+            dco.copy(ci.item, other, true, false);
+            
+            // the copied values are as stored
+            for (int i = 0; i < other.length; i++)
+                dco.setChanged(other[i], false);
+            
+            ci.addFields(fields);
+            ci.item = dco;
+        } else {
+            mc.put(dco.getID(), new CachedItem(dco, fields));
+        }
+    }
+    
+    /**
+     * Removes the item from the cache, including its children. Cached items of the modules 
+     * referencing the module of the item are removed as well.
+     */
+    public synchronized void invalidate(DcObject dco) {
+        if (dco == null) return;
+        
+        invalidate(dco.getModule().getIndex(), dco.getID());
+        
+        for (DcObject child : dco.getCurrentChildren())
+            invalidate(child.getModule().getIndex(), child.getID());
+    }
+
+    /**
+     * Removes the item from the cache. Cached items of the modules referencing the specified 
+     * module are removed as well.
+     * @param moduleIdx The module index.
+     * @param ID The item ID or null to remove all items of the module.
+     */
+    public synchronized void invalidate(int moduleIdx, String ID) {
+        ModuleCache mc = modules.get(Integer.valueOf(moduleIdx));
+        if (mc != null) {
+            if (ID == null)
+                mc.clear();
+            else
+                mc.remove(ID);
+        }
+        
+        DcModule module;
+        for (Integer key : modules.keySet()) {
+            module = DcModules.get(key.intValue());
+            if (module != null && key.intValue() != moduleIdx && isReferencing(module, moduleIdx))
+                modules.get(key).clear();
+        }
+    }
+    
+    private boolean isReferencing(DcModule module, int moduleIdx) {
+        for (DcField field : module.getFields()) {
+            if (field.getReferenceIdx() == moduleIdx && field.getIndex() != DcObject._ID)
+                return true;
+        }
+        
+        return  (module.getChild() != null && module.getChild().getIndex() == moduleIdx) ||
+                (module.getParent() != null && module.getParent().getIndex() == moduleIdx);
+    }
+    
+    /**
+     * Removes all items from the cache. The statistics are kept.
+     */
+    public synchronized void clear() {
+        modules.clear();
+    }
+    
+    /**
+     * The number of cached items, over all modules.
+     */
+    public synchronized int size() {
+        int size = 0;
+        for (ModuleCache mc : modules.values())
+            size += mc.size();
+        return size;
+    }
+    
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+    
+    public synchronized void logStatistics() {
+        logger.info("Item cache: " + size() + " items, " + hits + " hits, " + misses + " misses, " + evictions + " evictions");
+    }
+    
+    private static class CachedItem {
+        
+        private DcObject item;
+        private Set<Integer> fields;
+        
+        public CachedItem(DcObject item, int[] fields) {
+            this.item = item;
+            
+            if (fields != null) {
+                this.fields = new HashSet<Integer>();
+                for (int i = 0; i < fields.length; i++)
+                    this.fields.add(Integer.valueOf(fields[i]));
+            }
+        }
+        
+        /**
+         * Indicates whether all the fields are available. Null means all fields.
+         */
+        public boolean contains(int[] fields) {
+            if (this.fields == null) return true;
+            if (fields == null) return false;
+            
+            for (int i = 0; i < fields.length; i++) {
+                if (!this.fields.contains(Integer.valueOf(fields[i])))
+                    return false;
+            }
+            return true;
+        }
+        
+        public void addFields(int[] fields) {
+            for (int i = 0; i < fields.length; i++)
+                this.fields.add(Integer.valueOf(fields[i]));
+        }
+        
+        /**
+         * The cached fields which are not part of the specified fields.
+         */
+        public int[] getOtherFields(int[] fields) {
+            Set<Integer> c = new HashSet<Integer>(this.fields);
+            for (int i = 0; i < fields.length; i++)
+                c.remove(Integer.valueOf(fields[i]));
+            
+            int[] other = new int[c.size()];
+            int idx = 0;
+            for (Integer field : c)
+                other[idx++] = field.intValue();
+            return other;
+        }
+    }
+    
+    private class ModuleCache extends LinkedHashMap<String, CachedItem> {
+
+        private static final long serialVersionUID = 1L;
+
+        public ModuleCache() {
+            super(16, 0.75f, true);
+        }
+        
+        public void trim() {
+            while (size() > maxItems) {
+                remove(keySet().iterator().next());
+                evictions++;
+            }
+        }
+        
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedItem> eldest) {
+            boolean remove = size() > maxItems;
+            if (remove) evictions++;
+            return remove;
+        }
+    }
+}
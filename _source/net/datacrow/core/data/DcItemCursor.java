@@ -0,0 +1,230 @@
+/******************************************************************************
+ *                                     __                                     *
+ *                              <-----/@@\----->                              *
+ *                             <-< <  \\//  > >->                             *
+ *                               <-<-\ __ /->->                               *
+ *                               Data /  \ Crow                               *
+ *                                   ^    ^                                   *
+ *                              info@datacrow.net                             *
+ *                                                                            *
+ *                       This file is part of Data Crow.                      *
+ *       Data Crow is free software; you can redistribute it and/or           *
+ *        modify it under the terms of the GNU General Public                 *
+ *       License as published by the Free Software Foundation; either         *
+ *              version 3 of the License, or any later version.               *
+ *                                                                            *
+ *        Data Crow is distributed in the hope that it will be useful,        *
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *           MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.             *
+ *           See the GNU General Public License for more details.             *
+ *                                                                            *
+ *        You should have received a copy of the GNU General Public           *
+ *  License along with this program. If not, see http://www.gnu.org/licenses  *
+ *                                                                            *
+ ******************************************************************************/
+
+package net.datacrow.core.data;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import net.datacrow.core.objects.DcObject;
+import net.datacrow.core.server.Connector;
+
+/**
+ * Retrieves the items matching a filter page by page. Only one page of items is
+ * held in memory at any time which keeps memory usage bounded, regardless of the 
+ * size of the result. The first page becomes available as soon as it has been 
+ * retrieved.
+ * 
+ * Without an order on the filter the items are returned in the order of their ID; each 
+ * page starts after the ID of the last item of the previous page (see 
+ * {@link DataFilter#setResultStartAfter(String)}). Items inserted or deleted while iterating 
+ * therefore do not cause other items to be skipped or returned twice.
+ * <br>
+ * Filters with an order are paged using an offset instead (see 
+ * {@link DataFilter#setResultOffset(int)}), as the sort values of reference fields are not
+ * part of the retrieved items. The items are then returned in the order of the filter, but 
+ * items inserted or deleted while iterating can shift the pages.
+ * <br>
+ * Alternatively the cursor can iterate over a list of item IDs, in which case each
+ * page is retrieved with a single query on the IDs of that page.
+ * 
+ * @author Robert Jan van der Waals
+ */
+public class DcItemCursor implements Iterator<List<DcObject>> {
+    
+    public static final int _DEFAULT_PAGE_SIZE = 500;
+
+    private final Connector connector;
+    private final DataFilter df;
+    private final int[] fields;
+    private final int pageSize;
+    
+    // the item IDs to iterate over (null when iterating over the filter result)
+    private final List<String> keys;
+    
+    // the maximum number of items as set on the filter (0 = unlimited)
+    private final int max;
+    
+    private int offset = 0;
+    private String lastID = "";
+    private boolean finished = false;
+    private List<DcObject> page;
+    
+    /**
+     * Creates a new cursor.
+     * @param connector The connector used to retrieve the pages.
+     * @param df The filter. The result limit of the filter is respected. 
+     * @param fields The fields to retrieve. Null for all fields.
+     * @param pageSize The maximum number of items per page.
+     */
+    public DcItemCursor(Connector connector, DataFilter df, int[] fields, int pageSize) {
+        this.connector = connector;
+        this.df = df;
+        this.fields = fields;
+        this.pageSize = pageSize > 0 ? pageSize : _DEFAULT_PAGE_SIZE;
+        this.max = df.getResultLimit();
+        this.keys = null;
+    }
+    
+    /**
+     * Creates a new cursor over the specified items. The items are returned in the 
+     * order of the supplied IDs; IDs of items which no longer exist are skipped.
+     * @param connector The connector used to retrieve the pages.
+     * @param moduleIdx The module of the items.
+     * @param keys The item IDs.
+     * @param fields The fields to retrieve. Null for all fields.
+     * @param pageSize The maximum number of items per page.
+     */
+    public DcItemCursor(Connector connector, int moduleIdx, List<String> keys, int[] fields, int pageSize) {
+        this.connector = connector;
+        this.df = new DataFilter(moduleIdx);
+        this.fields = fields;
+        this.pageSize = Math.min(pageSize > 0 ? pageSize : _DEFAULT_PAGE_SIZE, DcReferenceResolver._MAX_IDS_PER_QUERY);
+        this.max = keys.size();
+        this.keys = keys;
+        this.finished = keys.isEmpty();
+    }
+    
+    public DataFilter getDataFilter() {
+        return df;
+    }
+
+    public int[] getFields() {
+        return fields;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+    
+    /**
+     * The number of items (or item IDs) processed so far.
+     */
+    public int getOffset() {
+        return offset;
+    }
+    
+    /**
+     * Retrieves a single page.
+     * @param limit The maximum number of items to retrieve.
+     */
+    protected List<DcObject> getPage(int limit) {
+        if (keys == null && df.getOrder().isEmpty())
+            return setLoadedFields(connector.getItems(df, fields, lastID, limit));
+        else if (keys == null)
+            return setLoadedFields(connector.getItems(df, fields, offset, limit));
+        
+        List<String> IDs = keys.subList(offset, offset + limit);
+        
+        DataFilter page = new DataFilter(df.getModule());
+        page.addEntry(new DataFilterEntry(df.getModule(), DcObject._ID, Operator.EQUAL_TO, IDs));
+        
+        Map<String, DcObject> items = new HashMap<String, DcObject>();
+        for (DcObject dco : connector.getItems(page, fields))
+            items.put(dco.getID(), dco);
+        
+        List<DcObject> result = new ArrayList<DcObject>(items.size());
+        DcObject dco;
+        for (String ID : IDs) {
+            dco = items.get(ID);
+            if (dco != null) result.add(dco);
+        }
+        return setLoadedFields(result);
+    }
+    
+    /**
+     * Registers the retrieved fields on the items. The other fields are retrieved
+     * on first access only (see {@link DcObject#setLoadedFields(int[])}).
+     */
+    private List<DcObject> setLoadedFields(List<DcObject> items) {
+        if (fields != null && items != null) {
+            for (DcObject dco : items)
+                dco.setLoadedFields(fields);
+        }
+        return items;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (page == null && !finished) {
+            int limit = max > 0 ? Math.min(pageSize, max - offset) : pageSize;
+            
+            if (limit <= 0) {
+                finished = true;
+            } else {
+                page = getPage(limit);
+                
+                if (keys != null) {
+                    // pages can contain less items than requested for removed items
+                    offset += limit;
+                    finished = offset >= max;
+                    
+                    if (page == null || page.size() == 0) {
+                        page = null;
+                        return hasNext();
+                    }
+                } else if (page == null || page.size() == 0) {
+                    page = null;
+                    finished = true;
+                } else {
+                    offset += page.size();
+                    lastID = page.get(page.size() - 1).getID();
+                    finished = page.size() < limit || lastID == null;
+                }
+            }
+        }
+        return page != null;
+    }
+
+    /**
+     * Returns the next page of items.
+     */
+    @Override
+    public List<DcObject> next() {
+        if (!hasNext())
+            throw new NoSuchElementException();
+        
+        List<DcObject> items = page;
+        page = null;
+        return items;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+    
+    /**
+     * Stops the retrieval. Pages not yet retrieved will be skipped.
+     */
+    public void close() {
+        finished = true;
+        page = null;
+    }
+}
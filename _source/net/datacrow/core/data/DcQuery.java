@@ -0,0 +1,74 @@
+/******************************************************************************
+ *                                     __                                     *
+ *                              <-----/@@\----->                              *
+ *                             <-< <  \\//  > >->                             *
+ *                               <-<-\ __ /->->                               *
+ *                               Data /  \ Crow                               *
+ *                                   ^    ^                                   *
+ *                              info@datacrow.net                             *
+ *                                                                            *
+ *                       This file is part of Data Crow.                      *
+ *       Data Crow is free software; you can redistribute it and/or           *
+ *        modify it under the terms of the GNU General Public                 *
+ *       License as published by the Free Software Foundation; either         *
+ *              version 3 of the License, or any later version.               *
+ *                                                                            *
+ *        Data Crow is distributed in the hope that it will be useful,        *
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *           MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.             *
+ *           See the GNU General Public License for more details.             *
+ *                                                                            *
+ *        You should have received a copy of the GNU General Public           *
+ *  License along with this program. If not, see http://www.gnu.org/licenses  *
+ *                                                                            *
+ ******************************************************************************/
+
+package net.datacrow.core.data;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * A parameterized SQL statement together with its bind values.
+ * Created by the {@link DataFilterConverter}.
+ * 
+ * @author Robert Jan van der Waals
+ */
+public class DcQuery {
+
+    private final String sql;
+    private final List<Object> parameters;
+    
+    public DcQuery(String sql, List<Object> parameters) {
+        this.sql = sql;
+        this.parameters = parameters;
+    }
+    
+    /**
+     * The statement. Values are represented by parameter markers.
+     */
+    public String getSQL() {
+        return sql;
+    }
+    
+    public List<Object> getParameters() {
+        return parameters;
+    }
+    
+    /**
+     * Sets the bind values on the (prepared) statement.
+     */
+    public void bind(PreparedStatement ps) throws SQLException {
+        ps.clearParameters();
+        
+        int idx = 1;
+        for (Object parameter : parameters)
+            ps.setObject(idx++, parameter);
+    }
+    
+    @Override
+    public String toString() {
+        return sql + " " + parameters;
+    }
+}
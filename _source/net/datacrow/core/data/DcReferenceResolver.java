@@ -0,0 +1,266 @@
+/******************************************************************************
+ *                                     __                                     *
+ *                              <-----/@@\----->                              *
+ *                             <-< <  \\//  > >->                             *
+ *                               <-<-\ __ /->->                               *
+ *                               Data /  \ Crow                               *
+ *                                   ^    ^                                   *
+ *                              info@datacrow.net                             *
+ *                                                                            *
+ *                       This file is part of Data Crow.                      *
+ *       Data Crow is free software; you can redistribute it and/or           *
+ *        modify it under the terms of the GNU General Public                 *
+ *       License as published by the Free Software Foundation; either         *
+ *              version 3 of the License, or any later version.               *
+ *                                                                            *
+ *        Data Crow is distributed in the hope that it will be useful,        *
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *           MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.             *
+ *           See the GNU General Public License for more details.             *
+ *                                                                            *
+ *        You should have received a copy of the GNU General Public           *
+ *  License along with this program. If not, see http://www.gnu.org/licenses  *
+ *                                                                            *
+ ******************************************************************************/
+
+package net.datacrow.core.data;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import net.datacrow.core.DcRepository;
+import net.datacrow.core.modules.DcModule;
+import net.datacrow.core.modules.DcModules;
+import net.datacrow.core.objects.DcField;
+import net.datacrow.core.objects.DcMapping;
+import net.datacrow.core.objects.DcObject;
+import net.datacrow.core.server.Connector;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Resolves the references of a batch of items at once. Instead of retrieving the
+ * mappings and referenced items per item and per field (see {@link DcObject#initializeReferences()}),
+ * the IDs are collected for the whole batch and retrieved with a single query per
+ * mapping module and per referenced module. The results are applied on the items in place.
+ * 
+ * @author Robert Jan van der Waals
+ */
+public class DcReferenceResolver {
+    
+    private transient static Logger logger = Logger.getLogger(DcReferenceResolver.class.getName());
+    
+    /** The maximum number of IDs used in a single query. */
+    public static final int _MAX_IDS_PER_QUERY = 1000;
+    
+    private final Connector connector;
+    private final boolean full;
+    
+    private int queries = 0;
+    
+    /**
+     * Creates a new resolver.
+     * @param connector The connector used to retrieve the references.
+     * @param full Retrieve all the fields of the referenced items. When false only the 
+     * minimal fields are retrieved.
+     */
+    public DcReferenceResolver(Connector connector, boolean full) {
+        this.connector = connector;
+        this.full = full;
+    }
+    
+    /**
+     * The number of queries executed so far.
+     */
+    public int getQueryCount() {
+        return queries;
+    }
+    
+    /**
+     * Resolves all references (reference fields and multi-references) of the given items.
+     * @param items Items, belonging to the same module or not.
+     */
+    public void resolve(Collection<DcObject> items) {
+        resolve(items, null);
+    }
+    
+    /**
+     * Resolves the references of the given items, limited to the specified fields.
+     * @param items Items, belonging to the same module or not.
+     * @param fields The fields to resolve. Null for all fields.
+     */
+    public void resolve(Collection<DcObject> items, int[] fields) {
+        Map<Integer, List<DcObject>> byModule = new LinkedHashMap<Integer, List<DcObject>>();
+        List<DcObject> list;
+        for (DcObject dco : items) {
+            if (dco == null) continue;
+            
+            list = byModule.get(Integer.valueOf(dco.getModule().getIndex()));
+            if (list == null) {
+                list = new ArrayList<DcObject>();
+                byModule.put(Integer.valueOf(dco.getModule().getIndex()), list);
+            }
+            list.add(dco);
+        }
+        
+        for (List<DcObject> c : byModule.values()) {
+            for (DcField field : c.get(0).getFields()) {
+                if (field.getValueType() == DcRepository.ValueTypes._DCOBJECTCOLLECTION && 
+                    contains(fields, field.getIndex()))
+                    resolveCollection(c, field);
+            }
+            
+            for (DcField field : c.get(0).getFields()) {
+                if (field.getValueType() == DcRepository.ValueTypes._DCOBJECTREFERENCE &&
+                    contains(fields, field.getIndex()))
+                    resolveReference(c, field);
+            }
+        }
+    }
+    
+    private boolean contains(int[] fields, int index) {
+        if (fields == null) return true;
+        
+        for (int field : fields) {
+            if (field == index) return true;
+        }
+        return false;
+    }
+    
+    /**
+     * Resolves the multi-references stored for the specified field.
+     */
+    private void resolveCollection(List<DcObject> items, DcField field) {
+        DcObject first = items.get(0);
+        int mappingModIdx = DcModules.getMappingModIdx(first.getModule().getIndex(), field.getReferenceIdx(), field.getIndex());
+        
+        if (DcModules.get(mappingModIdx) == null) return;
+        
+        Map<String, DcObject> parents = new LinkedHashMap<String, DcObject>();
+        for (DcObject dco : items)
+            parents.put(dco.getID(), dco);
+        
+        // retrieve all mappings for all items
+        Map<String, List<DcObject>> mappings = new HashMap<String, List<DcObject>>();
+        Collection<String> referencedIDs = new LinkedHashSet<String>();
+        List<DcObject> list;
+        for (DcObject mapping : getItems(mappingModIdx, DcMapping._A_PARENT_ID, parents.keySet(), null)) {
+            list = mappings.get(mapping.getParentID());
+            if (list == null) {
+                list = new ArrayList<DcObject>();
+                mappings.put(mapping.getParentID(), list);
+            }
+            list.add(mapping);
+            referencedIDs.add(((DcMapping) mapping).getReferencedID());
+        }
+
+        // retrieve all referenced items at once
+        Map<String, DcObject> references = getItems(field.getReferenceIdx(), referencedIDs);
+        
+        DcObject reference;
+        for (DcObject mapping : flatten(mappings.values())) {
+            reference = references.get(((DcMapping) mapping).getReferencedID());
+            if (reference != null)
+                ((DcMapping) mapping).setReference(reference);
+        }
+        
+        for (DcObject dco : items) {
+            list = mappings.get(dco.getID());
+            dco.setValue(field.getIndex(), list == null ? new ArrayList<DcObject>() : list);
+        }
+    }
+    
+    /**
+     * Resolves the single references (stored as an ID) of the specified field.
+     */
+    private void resolveReference(List<DcObject> items, DcField field) {
+        Collection<String> IDs = new LinkedHashSet<String>();
+        Object o;
+        for (DcObject dco : items) {
+            // do not trigger the retrieval of fields which have not been loaded
+            if (!dco.isLoaded(field.getIndex())) continue;
+            
+            o = dco.getValue(field.getIndex());
+            if (o instanceof String)
+                IDs.add((String) o);
+        }
+        
+        if (IDs.isEmpty()) return;
+        
+        Map<String, DcObject> references = getItems(field.getReferenceIdx(), IDs);
+        DcObject reference;
+        for (DcObject dco : items) {
+            o = dco.isLoaded(field.getIndex()) ? dco.getValue(field.getIndex()) : null;
+            if (o instanceof String) {
+                reference = references.get(o);
+                if (reference != null)
+                    dco.setValue(field.getIndex(), reference);
+            }
+        }
+    }
+    
+    /**
+     * Retrieves the referenced items, mapped by their ID.
+     */
+    private Map<String, DcObject> getItems(int moduleIdx, Collection<String> IDs) {
+        Map<String, DcObject> items = new HashMap<String, DcObject>();
+        DcModule module = DcModules.get(moduleIdx);
+        
+        if (module == null || IDs.isEmpty()) return items;
+        
+        int[] fields = full ? null : module.getMinimalFields(null);
+        for (DcObject dco : getItems(moduleIdx, DcObject._ID, IDs, fields))
+            items.put(dco.getID(), dco);
+        
+        return items;
+    }
+    
+    /**
+     * Retrieves the items of which the value of the specified field matches one of the 
+     * supplied values. The values are queried in chunks of {@link #_MAX_IDS_PER_QUERY}.
+     */
+    private List<DcObject> getItems(int moduleIdx, int fieldIdx, Collection<String> values, int[] fields) {
+        List<DcObject> items = new ArrayList<DcObject>();
+        List<String> chunk = new ArrayList<String>();
+        
+        for (String value : values) {
+            chunk.add(value);
+            if (chunk.size() == _MAX_IDS_PER_QUERY) {
+                items.addAll(query(moduleIdx, fieldIdx, chunk, fields));
+                chunk = new ArrayList<String>();
+            }
+        }
+        
+        if (chunk.size() > 0)
+            items.addAll(query(moduleIdx, fieldIdx, chunk, fields));
+        
+        return items;
+    }
+    
+    private List<DcObject> query(int moduleIdx, int fieldIdx, List<String> values, int[] fields) {
+        DataFilter df = new DataFilter(moduleIdx);
+        df.addEntry(new DataFilterEntry(moduleIdx, fieldIdx, Operator.EQUAL_TO, values));
+        
+        queries++;
+        
+        try {
+            List<DcObject> items = fields == null ? connector.getItems(df) : connector.getItems(df, fields);
+            return items != null ? items : new ArrayList<DcObject>();
+        } catch (Exception e) {
+            logger.error("Could not retrieve the references for module " + moduleIdx, e);
+            return new ArrayList<DcObject>();
+        }
+    }
+    
+    private List<DcObject> flatten(Collection<List<DcObject>> c) {
+        List<DcObject> items = new ArrayList<DcObject>();
+        for (List<DcObject> list : c)
+            items.addAll(list);
+        return items;
+    }
+}
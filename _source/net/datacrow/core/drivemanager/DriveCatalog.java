@@ -0,0 +1,478 @@
+/******************************************************************************
+ *                                     __                                     *
+ *                              <-----/@@\----->                              *
+ *                             <-< <  \\//  > >->                             *
+ *                               <-<-\ __ /->->                               *
+ *                               Data /  \ Crow                               *
+ *                                   ^    ^                                   *
+ *                              info@datacrow.net                             *
+ *                                                                            *
+ *                       This file is part of Data Crow.                      *
+ *       Data Crow is free software; you can redistribute it and/or           *
+ *        modify it under the terms of the GNU General Public                 *
+ *       License as published by the Free Software Foundation; either         *
+ *              version 3 of the License, or any later version.               *
+ *                                                                            *
+ *        Data Crow is distributed in the hope that it will be useful,        *
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *           MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.             *
+ *           See the GNU General Public License for more details.             *
+ *                                                                            *
+ *        You should have received a copy of the GNU General Public           *
+ *  License along with this program. If not, see http://www.gnu.org/licenses  *
+ *                                                                            *
+ ******************************************************************************/
+
+package net.datacrow.core.drivemanager;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+/**
+ * The catalog of the files found on a drive. The catalog is stored as a compact binary 
+ * file holding the file records followed by two sorted indices; one on the file name and
+ * one on the file size. Lookups are binary searches on these indices, only the records 
+ * visited are read from disk.
+ * 
+ * The catalog also registers the scanned directories with their last modification time,
+ * their files and their sub directories. This allows a rescan to reuse the information 
+ * of the directories which have not changed (see {@link DriveScanner}).
+ * 
+ * Layout: magic, record count, name index position, size index position, directory table 
+ * position, the records (size, path length, UTF-8 path), the indices (record positions) 
+ * and the directory table.
+ * 
+ * Catalogs are created with a {@link Writer}.
+ */
+public class DriveCatalog {
+    
+    private static Logger logger = Logger.getLogger(DriveCatalog.class);
+
+    private static final int _MAGIC = 0x44434332;
+    private static final int _HEADER_SIZE = 32;
+    
+    private final File file;
+    private final long lastModified;
+    
+    private RandomAccessFile raf;
+    private int count;
+    private long nameIndex;
+    private long sizeIndex;
+    private long directoryTable;
+    
+    /**
+     * Opens an existing catalog.
+     * @param file The catalog file.
+     * @throws IOException When the file could not be read or is not a valid catalog.
+     */
+    public DriveCatalog(File file) throws IOException {
+        this.file = file;
+        this.lastModified = file.lastModified();
+        this.raf = new RandomAccessFile(file, "r");
+        
+        try {
+            if (raf.length() < _HEADER_SIZE || raf.readInt() != _MAGIC)
+                throw new IOException("Not a valid drive catalog: " + file);
+            
+            count = raf.readInt();
+            nameIndex = raf.readLong();
+            sizeIndex = raf.readLong();
+            directoryTable = raf.readLong();
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+    
+    public File getFile() {
+        return file;
+    }
+    
+    /**
+     * Indicates whether the catalog file was replaced or removed since it was opened.
+     */
+    public boolean isCurrent() {
+        return file.exists() && file.lastModified() == lastModified;
+    }
+    
+    /**
+     * The number of files in this catalog.
+     */
+    public int size() {
+        return count;
+    }
+    
+    /**
+     * Retrieves the files with the exact name (case sensitive, without the path). 
+     */
+    public synchronized Collection<Entry> findByName(String name) throws IOException {
+        Collection<Entry> entries = new ArrayList<Entry>();
+        
+        int lo = 0;
+        int hi = count;
+        int mid;
+        while (lo < hi) {
+            mid = (lo + hi) >>> 1;
+            if (read(nameIndex, mid).getName().compareTo(name) < 0)
+                lo = mid + 1;
+            else 
+                hi = mid;
+        }
+        
+        Entry entry;
+        for (int i = lo; i < count; i++) {
+            entry = read(nameIndex, i);
+            if (!entry.getName().equals(name)) break;
+            entries.add(entry);
+        }
+        
+        return entries;
+    }
+    
+    /**
+     * Retrieves the files with the exact size.
+     */
+    public synchronized Collection<Entry> findBySize(long size) throws IOException {
+        Collection<Entry> entries = new ArrayList<Entry>();
+        
+        int lo = 0;
+        int hi = count;
+        int mid;
+        while (lo < hi) {
+            mid = (lo + hi) >>> 1;
+            if (read(sizeIndex, mid).getSize() < size)
+                lo = mid + 1;
+            else 
+                hi = mid;
+        }
+        
+        Entry entry;
+        for (int i = lo; i < count; i++) {
+            entry = read(sizeIndex, i);
+            if (entry.getSize() != size) break;
+            entries.add(entry);
+        }
+        
+        return entries;
+    }
+    
+    /**
+     * Reads the directory table.
+     * @return The scanned directories mapped by their path.
+     */
+    public Map<String, Directory> getDirectories() throws IOException {
+        Map<String, Directory> directories = new HashMap<String, Directory>();
+        
+        FileInputStream fis = new FileInputStream(file);
+        fis.getChannel().position(directoryTable);
+        
+        DataInputStream dis = new DataInputStream(new BufferedInputStream(fis, 65536));
+        try {
+            int size = dis.readInt();
+            String path;
+            long modified;
+            long position;
+            int files;
+            List<String> subdirectories;
+            for (int i = 0; i < size; i++) {
+                path = dis.readUTF();
+                modified = dis.readLong();
+                position = dis.readLong();
+                files = dis.readInt();
+                
+                int subdirs = dis.readInt();
+                subdirectories = new ArrayList<String>(subdirs);
+                for (int j = 0; j < subdirs; j++)
+                    subdirectories.add(dis.readUTF());
+                
+                directories.put(path, new Directory(path, modified, position, files, subdirectories));
+            }
+        } finally {
+            dis.close();
+        }
+        
+        return directories;
+    }
+    
+    /**
+     * Reads the files registered for the directory.
+     */
+    public synchronized List<Entry> getFiles(Directory directory) throws IOException {
+        List<Entry> entries = new ArrayList<Entry>(directory.getFileCount());
+        
+        if (directory.getFileCount() == 0) return entries;
+        
+        raf.seek(directory.position);
+        for (int i = 0; i < directory.getFileCount(); i++)
+            entries.add(read());
+        
+        return entries;
+    }
+    
+    private Entry read(long index, int i) throws IOException {
+        raf.seek(index + (i * 8L));
+        raf.seek(raf.readLong());
+        return read();
+    }
+    
+    private Entry read() throws IOException {
+        long size = raf.readLong();
+        byte[] b = new byte[raf.readInt()];
+        raf.readFully(b);
+        
+        return new Entry(new String(b, "UTF-8"), size);
+    }
+    
+    public synchronized void close() {
+        try {
+            if (raf != null) raf.close();
+        } catch (IOException e) {
+            logger.debug("Could not close drive catalog " + file, e);
+        }
+        
+        raf = null;
+    }
+    
+    /**
+     * A file as registered in the catalog.
+     */
+    public static class Entry {
+        
+        private final String path;
+        private final long size;
+        
+        public Entry(String path, long size) {
+            this.path = path;
+            this.size = size;
+        }
+        
+        public String getPath() {
+            return path;
+        }
+        
+        public String getName() {
+            int idx = Math.max(path.lastIndexOf('/'), path.lastIndexOf('\\'));
+            return idx > -1 ? path.substring(idx + 1) : path;
+        }
+        
+        public long getSize() {
+            return size;
+        }
+        
+        public File getFile() {
+            return new File(path);
+        }
+    }
+    
+    /**
+     * A directory as registered in the catalog.
+     */
+    public static class Directory {
+        
+        private final String path;
+        private final long modified;
+        private final long position;
+        private final int files;
+        private final List<String> subdirectories;
+        
+        private Directory(String path, long modified, long position, int files, List<String> subdirectories) {
+            this.path = path;
+            this.modified = modified;
+            this.position = position;
+            this.files = files;
+            this.subdirectories = subdirectories;
+        }
+
+        public String getPath() {
+            return path;
+        }
+        
+        /**
+         * The last modification time of the directory at the time of the scan.
+         */
+        public long getModified() {
+            return modified;
+        }
+
+        public int getFileCount() {
+            return files;
+        }
+
+        /**
+         * The names of the sub directories.
+         */
+        public List<String> getSubdirectories() {
+            return subdirectories;
+        }
+    }
+    
+    /**
+     * Writes a new catalog. The files are written to a temporary file as they are added.
+     * On commit the indices are added and the temporary file replaces the catalog.
+     * Until then the previous version of the catalog remains available.
+     * Files and directories can be added concurrently.
+     */
+    public static class Writer {
+        
+        private final File target;
+        private final File temp;
+        
+        private DataOutputStream dos;
+        private long position = _HEADER_SIZE;
+        
+        private int count = 0;
+        private long[] positions = new long[1024];
+        private long[] sizes = new long[1024];
+        private String[] names = new String[1024];
+        
+        private List<Directory> directories = new ArrayList<Directory>();
+        
+        /**
+         * @param target The catalog file to create.
+         */
+        public Writer(File target) throws IOException {
+            this.target = target;
+            this.temp = File.createTempFile(target.getName(), ".tmp", target.getParentFile());
+            
+            dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 65536));
+            dos.write(new byte[_HEADER_SIZE]);
+        }
+        
+        public synchronized int getCount() {
+            return count;
+        }
+        
+        public synchronized void add(String path, long size) throws IOException {
+            if (count == positions.length) {
+                positions = Arrays.copyOf(positions, count * 2);
+                sizes = Arrays.copyOf(sizes, count * 2);
+                names = Arrays.copyOf(names, count * 2);
+            }
+            
+            Entry entry = new Entry(path, size);
+            byte[] b = path.getBytes("UTF-8");
+            
+            positions[count] = position;
+            sizes[count] = size;
+            names[count] = entry.getName();
+            count++;
+            
+            dos.writeLong(size);
+            dos.writeInt(b.length);
+            dos.write(b);
+            
+            position += 12 + b.length;
+        }
+        
+        /**
+         * Adds a directory together with its files. 
+         * @param path The directory.
+         * @param modified The last modification time of the directory.
+         * @param files The files directly located in the directory.
+         * @param subdirectories The names of the sub directories.
+         */
+        public synchronized void addDirectory(String path, long modified, Collection<Entry> files, List<String> subdirectories) throws IOException {
+            directories.add(new Directory(path, modified, position, files.size(), subdirectories));
+            
+            for (Entry entry : files)
+                add(entry.getPath(), entry.getSize());
+        }
+        
+        /**
+         * Writes the indices and replaces the existing catalog. 
+         */
+        public synchronized void commit() throws IOException {
+            Integer[] order = new Integer[count];
+            for (int i = 0; i < count; i++)
+                order[i] = Integer.valueOf(i);
+            
+            Arrays.sort(order, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer o1, Integer o2) {
+                    return names[o1.intValue()].compareTo(names[o2.intValue()]);
+                }
+            });
+            
+            long nameIndex = position;
+            for (int i = 0; i < count; i++)
+                dos.writeLong(positions[order[i].intValue()]);
+            
+            Arrays.sort(order, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer o1, Integer o2) {
+                    long s1 = sizes[o1.intValue()];
+                    long s2 = sizes[o2.intValue()];
+                    return s1 < s2 ? -1 : (s1 == s2 ? 0 : 1);
+                }
+            });
+            
+            long sizeIndex = nameIndex + (count * 8L);
+            for (int i = 0; i < count; i++)
+                dos.writeLong(positions[order[i].intValue()]);
+            
+            long directoryTable = sizeIndex + (count * 8L);
+            dos.writeInt(directories.size());
+            for (Directory directory : directories) {
+                dos.writeUTF(directory.path);
+                dos.writeLong(directory.modified);
+                dos.writeLong(directory.position);
+                dos.writeInt(directory.files);
+                dos.writeInt(directory.subdirectories.size());
+                for (String name : directory.subdirectories)
+                    dos.writeUTF(name);
+            }
+            
+            dos.close();
+            dos = null;
+            
+            RandomAccessFile raf = new RandomAccessFile(temp, "rw");
+            try {
+                raf.writeInt(_MAGIC);
+                raf.writeInt(count);
+                raf.writeLong(nameIndex);
+                raf.writeLong(sizeIndex);
+                raf.writeLong(directoryTable);
+            } finally {
+                raf.close();
+            }
+            
+            positions = null;
+            sizes = null;
+            names = null;
+            directories = null;
+            
+            if ((target.exists() && !target.delete()) || !temp.renameTo(target))
+                throw new IOException("Could not replace the drive catalog " + target);
+        }
+        
+        /**
+         * Stops writing; the existing catalog is left untouched.
+         */
+        public synchronized void abort() {
+            try {
+                if (dos != null) dos.close();
+            } catch (IOException e) {
+                logger.debug(e, e);
+            }
+            
+            dos = null;
+            temp.delete();
+        }
+    }
+}
@@ -27,7 +27,6 @@ package net.datacrow.core.drivemanager;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.RandomAccessFile;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
@@ -66,6 +65,7 @@ public class DriveManager {
     private Map<File, DriveScanner> scanners = new HashMap<File, DriveScanner>();
     
     private Map<File, String> hashes = new HashMap<File, String>();
+    private Map<File, DriveCatalog> catalogs = new HashMap<File, DriveCatalog>();
     
     private boolean drivesWereScanned = false;
     
@@ -173,7 +173,7 @@ public class DriveManager {
     }    
     
     protected String getTempFileSuffix() {
-        return "_drive_report.properties";
+        return "_drive_catalog.idx";
     }
     
     protected File getTempDir() {
@@ -299,106 +299,160 @@ public class DriveManager {
         return hash;
     }
     
+    /**
+     * Stores the catalog created by a drive scan. The currently opened version of the 
+     * catalog is closed first.
+     */
+    protected void commitCatalog(DriveCatalog.Writer writer) throws IOException {
+        synchronized (catalogs) {
+            for (DriveCatalog catalog : catalogs.values())
+                catalog.close();
+            
+            catalogs.clear();
+            writer.commit();
+        }
+    }
+    
+    /**
+     * Opens the catalogs of all scanned drives. Catalogs which have been replaced since
+     * they were opened are reopened.
+     */
+    private Collection<DriveCatalog> getCatalogs() {
+        String[] files = getTempDir().list();
+        Collection<DriveCatalog> c = new ArrayList<DriveCatalog>();
+        
+        if (files == null) return c;
+        
+        for (String name : files) {
+            
+            if (!name.endsWith(getTempFileSuffix())) continue;
+            
+            File file = new File(getTempDir(), name);
+            DriveCatalog catalog = catalogs.get(file);
+            
+            if (catalog != null && !catalog.isCurrent()) {
+                catalog.close();
+                catalog = null;
+            }
+            
+            if (catalog == null) {
+                try {
+                    catalog = new DriveCatalog(file);
+                    catalogs.put(file, catalog);
+                } catch (IOException e) {
+                    logger.info("Could not read drive catalog: " + file + " The drive for which this file was created will be skipped!", e);
+                    catalogs.remove(file);
+                    continue;
+                }
+            }
+            
+            c.add(catalog);
+        }
+        
+        return c;
+    }
+    
     /**
      * Retrieves the actual location / file for the given filename.
      * The size and the hash of the original file are used to determine its new
      * location.
      */
     public FileInfo find(FileInfo fi, int precision) {
-        File file = new File(fi.getFilename());
-        
-        if (file.exists())
-            return getFileInfo(file, fi.getHash(), fi.getSize());
+        Collection<FileInfo> c = new ArrayList<FileInfo>(1);
+        c.add(fi);
+        return find(c, precision).get(fi);
+    }
+    
+    /**
+     * Retrieves the actual locations for the given files in one pass; the drive catalogs 
+     * are opened once for all files.
+     * @see #find(FileInfo, int)
+     * @return The matches found, mapped by the supplied file information.
+     */
+    public Map<FileInfo, FileInfo> find(Collection<FileInfo> files, int precision) {
+        Map<FileInfo, FileInfo> results = new HashMap<FileInfo, FileInfo>();
         
-        try {
-	        String name =  file.getName();
-	        FileInfo result = null;
-
-	        for (String propertyFile : getTempDir().list()) {
-	            
-	            if (!propertyFile.endsWith(getTempFileSuffix())) continue;
-	            
-	            File tmpFile = new File(getTempDir(), propertyFile);
-	            if (!tmpFile.canRead()) {
-	                logger.info("Could not read drive information file: " + tmpFile + " The drive for which this file was created will be skipped!");
-	                continue;
-	            }
-	            
-                RandomAccessFile raf = new RandomAccessFile(tmpFile, "r");
-	            long length = raf.length();
-	            
-	            while (raf.getFilePointer() < length) {
-	                try {
-	                    String line = raf.readLine();
-	                    int idx = line.indexOf("=");
-	                    
-	                    Long fodSize = Long.valueOf(line.substring(0, idx));
-	                    String fodName = line.substring(idx + 1);
-	                    File fod = new File(fodName);
-                        
-                        // make sure the file exists; might be dealing with info from an unmounted drive!
-	                    if (!fod.exists()) {
-	                        logger.info("The file as found in " + tmpFile + " does not exist and will be skipped.");
-	                        continue;
-	                    }
-	                    
-                        boolean match = false;
-                        String newHash = null;
-                        
-                        // low: match file name
-                        if (precision == DriveManager._PRECISION_LOWEST && name.equals(fod.getName())) {
-                            match = true;
-                            
-                        // medium: match on file size and file name
-                        } else if (precision == DriveManager._PRECISION_MEDIUM && 
-                                   name.equals(fod.getName()) && fodSize.equals(fi.getSize())) {
-                            match = true;
-	                   
-                        // high: match on file size and file hash
-                        } else if (precision == DriveManager._PRECISION_HIGHEST) {
-	                       
-                            if (fodSize.equals(fi.getSize())) {
-                            
-                                newHash = getHash(fod);
-    	                       
-                                // can happen when out of memory, when the file is not readable or when the settings
-                                // do not allow for the hash to be calculated based on the file size.
-                                if (newHash == null)
-                                    continue;
-                                
-                                hashes.put(fod, newHash);
-                                
-    	                        if (newHash.equals(fi.getHash())) {
-    	                           match = true;
-    	                        }
-                            }
-                        }
-	                    
-                        if (match) {
-                            // calculate the new hash if needed
-                            newHash = getHash(fod);
-                            Long filesize = CoreUtilities.getSize(fod);
-                            
-                            logger.info("Match found for " + name + " (hash: " + newHash + ", filesize " + String.valueOf(filesize) + ")");
-                            result = getFileInfo(fod, newHash, filesize);
+        synchronized (catalogs) {
+            Collection<DriveCatalog> c = null;
+            FileInfo result;
+            for (FileInfo fi : files) {
+                File file = new File(fi.getFilename());
+                
+                if (file.exists()) {
+                    results.put(fi, getFileInfo(file, fi.getHash(), fi.getSize()));
+                    continue;
+                }
+                
+                c = c == null ? getCatalogs() : c;
+                
+                for (DriveCatalog catalog : c) {
+                    try {
+                        result = find(catalog, fi, file.getName(), precision);
+                        if (result != null) {
+                            results.put(fi, result);
                             break;
                         }
-		            } catch (IOException ioe) {
-		                logger.error(ioe, ioe);
-		            } 
-	            }
-                
-                try {
-                    raf.close();
-                } catch (IOException ioe) {
-                    logger.error("Could not close RAF", ioe);
+                    } catch (Exception e) {
+                        logger.error(e, e);
+                    }
                 }
+            }
+        }
+        
+        return results;
+    }
+    
+    private FileInfo find(DriveCatalog catalog, FileInfo fi, String name, int precision) throws IOException {
+        // low and medium: match on file name, high: match on file size
+        Collection<DriveCatalog.Entry> candidates;
+        if (precision == DriveManager._PRECISION_HIGHEST) {
+            if (fi.getSize() == null) return null;
+            candidates = catalog.findBySize(fi.getSize().longValue());
+        } else {
+            candidates = catalog.findByName(name);
+        }
+        
+        for (DriveCatalog.Entry entry : candidates) {
+            File fod = entry.getFile();
+            
+            // make sure the file exists; might be dealing with info from an unmounted drive!
+            if (!fod.exists()) {
+                logger.info("The file as found in " + catalog.getFile() + " does not exist and will be skipped.");
+                continue;
+            }
+            
+            boolean match = false;
+            String newHash = null;
+            
+            // low: match file name
+            if (precision == DriveManager._PRECISION_LOWEST) {
+                match = true;
                 
-                if (result != null)
-                    return result;
-	        }
-        } catch (Exception e) {
-        	logger.error(e, e);
+            // medium: match on file size and file name
+            } else if (precision == DriveManager._PRECISION_MEDIUM) {
+                match = fi.getSize() != null && entry.getSize() == fi.getSize().longValue();
+           
+            // high: match on file size and file hash
+            } else if (precision == DriveManager._PRECISION_HIGHEST) {
+                newHash = getHash(fod);
+                
+                // can happen when out of memory, when the file is not readable or when the settings
+                // do not allow for the hash to be calculated based on the file size.
+                if (newHash == null)
+                    continue;
+                
+                hashes.put(fod, newHash);
+                match = newHash.equals(fi.getHash());
+            }
+            
+            if (match) {
+                // calculate the new hash if needed
+                newHash = getHash(fod);
+                Long filesize = CoreUtilities.getSize(fod);
+                
+                logger.info("Match found for " + name + " (hash: " + newHash + ", filesize " + String.valueOf(filesize) + ")");
+                return getFileInfo(fod, newHash, filesize);
+            }
         }
         
         return null;
@@ -26,21 +26,40 @@
 package net.datacrow.core.drivemanager;
 
 import java.io.File;
-import java.util.LinkedList;
-import java.util.logging.FileHandler;
-import java.util.logging.Level;
-import java.util.logging.Logger;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
 
 import net.datacrow.core.resources.DcResources;
-import net.datacrow.core.utilities.CoreUtilities;
 import net.datacrow.core.utilities.StringUtils;
 
+/**
+ * Scans a drive and stores the files found in the drive catalog (see {@link DriveCatalog}).
+ * The directories are divided over a bounded pool of low priority threads. The attributes 
+ * of each entry are read once, while listing the directory.
+ * 
+ * An incremental scan reuses the catalog of the previous scan for the directories which 
+ * have not been modified since. Note that the modification time of a directory only changes 
+ * when files are added, removed or renamed; changes to the size of existing files are only 
+ * picked up by a full scan. Symbolic links to directories are not followed.
+ */
 public class DriveScanner {
 
     private static org.apache.log4j.Logger logger = org.apache.log4j.Logger.getLogger(DriveScanner.class.getName());
     
-    private Logger report;
-    private FileHandler handler;
+    /** The maximum number of threads used to scan a single drive. */
+    public static final int _MAX_THREADS = 4;
     
     private File drive;
     private DriveManager dm;
@@ -51,10 +70,6 @@ public class DriveScanner {
     public DriveScanner(DriveManager dm, File drive) {
         filename = StringUtils.normalize(drive.toString()) + dm.getTempFileSuffix();
 
-        report = Logger.getAnonymousLogger();
-        report.setLevel(Level.INFO);
-        report.setUseParentHandlers(false);
-
         this.drive = drive;
         this.dm = dm;
     }
@@ -67,11 +82,28 @@ public class DriveScanner {
         return ds != null && ds.isRunning();
     }
     
+    /**
+     * Starts a full scan.
+     */
     public boolean start() {
+        return start(false);
+    }
+    
+    /**
+     * Starts a scan.
+     * @param incremental Skip the directories which have not been modified since the last scan.
+     */
+    public boolean start(boolean incremental) {
         if (!isRunning()) {
-            clean();
+            DriveCatalog.Writer writer;
+            try {
+                writer = new DriveCatalog.Writer(getCatalogFile());
+            } catch (Exception e) {
+                logger.error(e, e);
+                return false;
+            }
 
-            ds = new DriveScan(this);
+            ds = new DriveScan(this, writer, incremental);
             ds.start();
             
             dm.sendMessage(dm.getScannerListeners(), DcResources.getText("msgScanningDriveX", drive.toString()));
@@ -82,34 +114,20 @@ public class DriveScanner {
         return false;
     }
     
+    /**
+     * Cancels the current scan and starts an incremental scan.
+     */
     public void restart() {
         cancel();
-        start();
+        start(true);
     }
     
-    private void clean() {
-        if (handler != null) {
-            handler.close();
-            report.removeHandler(handler);
-        }
-        
-        File file = dm.getTempDir();
-        for (String tempFilename : file.list()) {
-            if (tempFilename.startsWith(filename)) {
-                File tempFile = new File(dm.getTempDir(), tempFilename);
-                if (tempFile.isFile())
-                    tempFile.delete();
-            }
-        }
-        
-        try {
-            handler = new FileHandler(new File(dm.getTempDir(), filename).toString());
-            handler.setFormatter(new DriveReportFormatter());
-            report.addHandler(handler);
-        } catch (Exception e) {
-            logger.error(e, e);
-        }
-    }        
+    /**
+     * The catalog file holding the scan results for this drive.
+     */
+    protected File getCatalogFile() {
+        return new File(dm.getTempDir(), filename);
+    }
     
     protected boolean isDirExcluded(File file) {
         return dm.isDirExcluded(file);
@@ -118,24 +136,36 @@ public class DriveScanner {
     protected void notifyScanComplete() {
         dm.notifyScanComplete(this);
     }
+    
+    protected void commit(DriveCatalog.Writer writer) {
+        try {
+            dm.commitCatalog(writer);
+        } catch (Exception e) {
+            logger.error("Could not store the scan results for drive " + drive, e);
+            writer.abort();
+        }
+    }
 
     protected File getDrive() {
         return drive;
     }
     
-    protected void add(File file) {
-        report.info(new StringBuffer(String.valueOf(CoreUtilities.getSize(file))).
-                                     append("=").append(file).toString());
-    }
-    
     private static class DriveScan extends Thread {
 
-        private boolean keepOnRunning = true;
+        private volatile boolean keepOnRunning = true;
         private DriveScanner ds;
+        private DriveCatalog.Writer writer;
+        private boolean incremental;
+        
+        // the catalog of the previous scan (incremental scans only)
+        private DriveCatalog previous;
+        private Map<String, DriveCatalog.Directory> directories = new HashMap<String, DriveCatalog.Directory>();
         
-        public DriveScan(DriveScanner ds) {
+        public DriveScan(DriveScanner ds, DriveCatalog.Writer writer, boolean incremental) {
             this.setPriority(Thread.MIN_PRIORITY);
             this.ds = ds;
+            this.writer = writer;
+            this.incremental = incremental;
         }
         
         public void cancel() {
@@ -146,36 +176,157 @@ public class DriveScanner {
             return keepOnRunning && isAlive(); 
         }
         
+        private void openPrevious() {
+            File file = ds.getCatalogFile();
+            if (!incremental || !file.exists()) return;
+            
+            try {
+                previous = new DriveCatalog(file);
+                directories = previous.getDirectories();
+            } catch (IOException e) {
+                logger.info("The previous scan results could not be used, a full scan is performed for " + ds.getDrive(), e);
+                closePrevious();
+            }
+        }
+        
+        private void closePrevious() {
+            if (previous != null)
+                previous.close();
+            
+            previous = null;
+            directories = new HashMap<String, DriveCatalog.Directory>();
+        }
+        
         @Override
         public void run() {
-            LinkedList<File> tasks = new LinkedList<File>();
+            openPrevious();
+            
+            ForkJoinPool pool = new ForkJoinPool(
+                    Math.max(1, Math.min(_MAX_THREADS, Runtime.getRuntime().availableProcessors())), 
+                    new ScanThreadFactory(), null, false);
             
-            tasks.add(ds.getDrive());
-            while (tasks.size() > 0) {
-                if (!keepOnRunning) break;
+            try {
+                Path root = ds.getDrive().toPath();
+                BasicFileAttributes attrs = Files.readAttributes(root, BasicFileAttributes.class);
                 
-                File file = tasks.removeFirst();
-                boolean excluded = ds.isDirExcluded(file);
-                if (file.isDirectory() && !excluded) {
-                    String[] directoryFiles = file.list();
-                    if (directoryFiles != null)
-                        for (String directoryFile : directoryFiles) {
-                            if (!keepOnRunning) break;
-                            
-                            File currentFile = new File(file.getPath() + File.separator + directoryFile);
-                            if (currentFile.isDirectory())
-                                tasks.add(currentFile);
-                            else
-                                ds.add(currentFile);
-                        }
-                } else if (!excluded){
-                    ds.add(file);
+                if (attrs.isDirectory()) {
+                    pool.invoke(new ScanDirectory(root, attrs.lastModifiedTime().toMillis()));
+                } else if (!ds.isDirExcluded(ds.getDrive())) {
+                    writer.add(root.toString(), attrs.size());
                 }
-            } 
+            } catch (Exception e) {
+                logger.error("Error while scanning " + ds.getDrive() + ", the scan is stopped", e);
+                keepOnRunning = false;
+            } finally {
+                pool.shutdown();
+            }
+            
+            closePrevious();
+            
+            if (keepOnRunning)
+                ds.commit(writer);
+            else 
+                writer.abort();
             
             ds.notifyScanComplete();
             ds = null;
         }
+        
+        /**
+         * Scans a single directory and forks the scans of its sub directories.
+         */
+        private class ScanDirectory extends RecursiveAction {
+
+            private static final long serialVersionUID = 1L;
+            
+            private final Path dir;
+            private final long modified;
+            
+            public ScanDirectory(Path dir, long modified) {
+                this.dir = dir;
+                this.modified = modified;
+            }
+            
+            @Override
+            protected void compute() {
+                if (!keepOnRunning || ds.isDirExcluded(dir.toFile())) return;
+                
+                Collection<DriveCatalog.Entry> files = new ArrayList<DriveCatalog.Entry>();
+                List<String> subdirectories = new ArrayList<String>();
+                List<ScanDirectory> tasks = new ArrayList<ScanDirectory>();
+                
+                try {
+                    DriveCatalog.Directory directory = directories.get(dir.toString());
+                    if (directory != null && directory.getModified() == modified) {
+                        // unchanged; only the sub directories need to be checked
+                        files.addAll(previous.getFiles(directory));
+                        
+                        Path subdir;
+                        for (String name : directory.getSubdirectories()) {
+                            subdir = dir.resolve(name);
+                            subdirectories.add(name);
+                            
+                            try {
+                                tasks.add(new ScanDirectory(subdir, Files.getLastModifiedTime(subdir, LinkOption.NOFOLLOW_LINKS).toMillis()));
+                            } catch (IOException e) {
+                                // removed since the last scan (the directory itself has been 
+                                // modified in that case; should not happen)
+                                logger.debug(e, e);
+                            }
+                        }
+                    } else {
+                        list(files, subdirectories, tasks);
+                    }
+                    
+                    writer.addDirectory(dir.toString(), modified, files, subdirectories);
+                } catch (IOException e) {
+                    logger.debug("Could not read directory " + dir, e);
+                }
+                
+                if (keepOnRunning)
+                    invokeAll(tasks);
+            }
+            
+            private void list(Collection<DriveCatalog.Entry> files, List<String> subdirectories, List<ScanDirectory> tasks) throws IOException {
+                DirectoryStream<Path> stream = Files.newDirectoryStream(dir);
+                try {
+                    BasicFileAttributes attrs;
+                    for (Path path : stream) {
+                        if (!keepOnRunning) break;
+                        
+                        try {
+                            attrs = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                            
+                            if (attrs.isSymbolicLink()) {
+                                attrs = Files.readAttributes(path, BasicFileAttributes.class);
+                                if (attrs.isDirectory()) continue;
+                            }
+                            
+                            if (attrs.isDirectory()) {
+                                subdirectories.add(path.getFileName().toString());
+                                tasks.add(new ScanDirectory(path, attrs.lastModifiedTime().toMillis()));
+                            } else {
+                                files.add(new DriveCatalog.Entry(path.toString(), attrs.size()));
+                            }
+                        } catch (IOException e) {
+                            logger.debug("Could not read the attributes of " + path, e);
+                        }
+                    }
+                } finally {
+                    stream.close();
+                }
+            }
+        }
+    }
+    
+    private static class ScanThreadFactory implements ForkJoinPool.ForkJoinWorkerThreadFactory {
+        @Override
+        public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            thread.setDaemon(true);
+            return thread;
+        }
     }
     
     @Override
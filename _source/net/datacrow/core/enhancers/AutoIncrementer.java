@@ -25,16 +25,8 @@
 
 package net.datacrow.core.enhancers;
 
-import java.util.ArrayList;
-import java.util.Collection;
-
-import net.datacrow.core.DcConfig;
-import net.datacrow.core.data.DcResultSet;
-import net.datacrow.core.modules.DcModule;
-import net.datacrow.core.modules.DcModules;
 import net.datacrow.core.objects.DcField;
 import net.datacrow.core.resources.DcResources;
-import net.datacrow.core.server.Connector;
 
 import org.apache.log4j.Logger;
 
@@ -106,46 +98,17 @@ public class AutoIncrementer implements IValueEnhancer {
         return true;
     }
     
+    /**
+     * Hands out the next number using the {@link SequenceAllocator} of the field.
+     * A number handed out before to an item which has not been saved yet is kept.
+     */
     @Override
     public Object apply(DcField field, Object value) {
         Object result = value;
-        
-        DcModule module = DcModules.get(field.getModule());
-        int counter = 0;
-        
-        
-        Connector connector = DcConfig.getInstance().getConnector();
-        DcResultSet rs = null;
         try {
-            if (!fillGaps) {
-                String query = "SELECT MAX(" + field.getDatabaseFieldName() + ") AS COUNTMAXIMUM FROM " +
-                               module.getTableName();
-                rs = connector.executeSQL(query);
-                int maximum = rs.getInt(0, 0);
-                result = Long.valueOf(maximum + getStep());
-            } else {
-                counter = counter + getStep();
-                
-                String qryCurrent = "SELECT " + field.getDatabaseFieldName() + " FROM " + module.getTableName() + 
-                " WHERE " + field.getDatabaseFieldName() + " IS NOT NULL AND " +
-                field.getDatabaseFieldName() + " > 0 " +
-                "ORDER BY 1";            
-                
-                Collection<Integer> currentValues = new ArrayList<Integer>();
-                rs = connector.executeSQL(qryCurrent);
-                for (int row = 0; row < rs.getRowCount(); row++) {
-                    currentValues.add(rs.getInteger(row, 0));
-                }
-                
-                if (currentValues.contains(counter)) {
-                    boolean currentfound = false;
-                    for (int x : currentValues) {
-                        while (!currentfound && x == counter)
-                            counter += getStep();
-                    }
-                }            
-                result = Long.valueOf(counter);
-            }
+            SequenceAllocator sequence = SequenceAllocator.getInstance(field);
+            if (!sequence.isReserved(value))
+                result = Long.valueOf(sequence.next(getStep(), fillGaps));
         } catch (Exception e) {
             String msg = DcResources.getText("msgAutoNumberError",  new String[] {field.getLabel(), e.getMessage()});
             logger.error(msg, e);
@@ -0,0 +1,281 @@
+/******************************************************************************
+ *                                     __                                     *
+ *                              <-----/@@\----->                              *
+ *                             <-< <  \\//  > >->                             *
+ *                               <-<-\ __ /->->                               *
+ *                               Data /  \ Crow                               *
+ *                                   ^    ^                                   *
+ *                              info@datacrow.net                             *
+ *                                                                            *
+ *                       This file is part of Data Crow.                      *
+ *       Data Crow is free software; you can redistribute it and/or           *
+ *        modify it under the terms of the GNU General Public                 *
+ *       License as published by the Free Software Foundation; either         *
+ *              version 3 of the License, or any later version.               *
+ *                                                                            *
+ *        Data Crow is distributed in the hope that it will be useful,        *
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *           MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.             *
+ *           See the GNU General Public License for more details.             *
+ *                                                                            *
+ *        You should have received a copy of the GNU General Public           *
+ *  License along with this program. If not, see http://www.gnu.org/licenses  *
+ *                                                                            *
+ ******************************************************************************/
+
+package net.datacrow.core.enhancers;
+
+import java.util.BitSet;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import net.datacrow.core.DcConfig;
+import net.datacrow.core.data.DcResultSet;
+import net.datacrow.core.modules.DcModule;
+import net.datacrow.core.modules.DcModules;
+import net.datacrow.core.objects.DcField;
+import net.datacrow.core.objects.DcObject;
+
+/**
+ * In memory number sequence of a single module field as used by the {@link AutoIncrementer}.
+ * The sequence is seeded from the database on first use, after which numbers are handed 
+ * out without querying the database. Used values are kept in a bitmap to be able to 
+ * fill gaps. Saved and deleted items are registered with the sequence; any other change 
+ * resets it, causing it to be seeded again on next use.
+ * <br>
+ * A number handed out is reserved until the item is saved, at which point it is marked 
+ * as used. Items which could not be saved give their numbers back (see {@link #failed(DcObject)}).
+ * 
+ * @author Robert Jan van der Waals
+ */
+public class SequenceAllocator {
+
+    private static final ConcurrentMap<Long, SequenceAllocator> sequences = 
+            new ConcurrentHashMap<Long, SequenceAllocator>();
+    
+    private final int module;
+    private final int field;
+    
+    private boolean seeded = false;
+    private long maximum;
+    private BitSet used;
+    
+    // the numbers handed out to items which have not been saved yet
+    private final BitSet reserved = new BitSet();
+    
+    // the lowest multiplier of the step size which might still be free
+    private int gapStep;
+    private int gapHint;
+    
+    private SequenceAllocator(int module, int field) {
+        this.module = module;
+        this.field = field;
+    }
+    
+    private static Long getKey(int module, int field) {
+        return Long.valueOf(((long) module << 32) | (field & 0xFFFFFFFFL));
+    }
+    
+    /**
+     * Retrieves the sequence of the given field, creating it when necessary.
+     */
+    public static SequenceAllocator getInstance(DcField field) {
+        Long key = getKey(field.getModule(), field.getIndex());
+        SequenceAllocator sequence = sequences.get(key);
+        if (sequence == null) {
+            sequence = new SequenceAllocator(field.getModule(), field.getIndex());
+            SequenceAllocator existing = sequences.putIfAbsent(key, sequence);
+            sequence = existing != null ? existing : sequence;
+        }
+        return sequence;
+    }
+    
+    /**
+     * Registers the numbers of a saved item. Numbers of new items are marked as used,
+     * changed numbers of existing items reset the sequence.
+     */
+    public static void saved(DcObject dco) {
+        if (sequences.isEmpty()) return;
+        
+        SequenceAllocator sequence;
+        for (DcField field : dco.getFields()) {
+            sequence = sequences.get(getKey(dco.getModuleIdx(), field.getIndex()));
+            if (sequence == null) continue;
+            
+            if (dco.isNew())
+                sequence.register(dco.getValue(field.getIndex()));
+            else if (dco.isChanged(field.getIndex()))
+                sequence.reset();
+        }
+    }
+    
+    /**
+     * Gives back the numbers reserved for a new item which could not be saved.
+     */
+    public static void failed(DcObject dco) {
+        if (sequences.isEmpty() || !dco.isNew()) return;
+        
+        SequenceAllocator sequence;
+        for (DcField field : dco.getFields()) {
+            sequence = sequences.get(getKey(dco.getModuleIdx(), field.getIndex()));
+            if (sequence != null)
+                sequence.cancel(dco.getValueLowLevel(field.getIndex()));
+        }
+    }
+    
+    /**
+     * Releases the numbers of a deleted item.
+     */
+    public static void deleted(DcObject dco) {
+        if (sequences.isEmpty()) return;
+        
+        SequenceAllocator sequence;
+        for (DcField field : dco.getFields()) {
+            sequence = sequences.get(getKey(dco.getModuleIdx(), field.getIndex()));
+            if (sequence != null && dco.isLoaded(field.getIndex()))
+                sequence.release(dco.getValue(field.getIndex()));
+            else if (sequence != null)
+                sequence.reset();
+        }
+    }
+    
+    /**
+     * Resets all sequences of the given module. 
+     * @param module The module index or -1 to reset the sequences of all modules.
+     */
+    public static void reset(int module) {
+        for (Map.Entry<Long, SequenceAllocator> entry : sequences.entrySet()) {
+            if (module == -1 || entry.getValue().module == module)
+                entry.getValue().reset();
+        }
+    }
+    
+    /**
+     * Hands out the next number. The number is reserved until it is registered 
+     * (see {@link #register(Object)}) or cancelled (see {@link #cancel(Object)}).
+     * @param step The step size.
+     * @param fillGaps Indicates if the lowest free multiple of the step size should be used
+     * instead of the number following the current maximum.
+     * @throws Exception When the sequence could not be seeded from the database.
+     */
+    public synchronized long next(int step, boolean fillGaps) throws Exception {
+        if (!seeded) 
+            seed();
+        
+        long value;
+        if (fillGaps) {
+            if (gapStep != step) {
+                gapStep = step;
+                gapHint = 1;
+            }
+            
+            long candidate = (long) gapHint * step;
+            while (candidate <= Integer.MAX_VALUE && (used.get((int) candidate) || reserved.get((int) candidate))) {
+                gapHint++;
+                candidate += step;
+            }
+            
+            value = candidate;
+        } else {
+            value = Math.max(maximum, reserved.length() - 1) + step;
+        }
+        
+        if (value > 0 && value <= Integer.MAX_VALUE)
+            reserved.set((int) value);
+        else 
+            mark(value);
+        
+        return value;
+    }
+    
+    /**
+     * Indicates if the number has been handed out and is still waiting to be saved.
+     */
+    public synchronized boolean isReserved(Object o) {
+        if (!(o instanceof Number)) return false;
+        
+        long value = ((Number) o).longValue();
+        return value > 0 && value <= Integer.MAX_VALUE && reserved.get((int) value);
+    }
+    
+    /**
+     * Marks a number as used.
+     */
+    public synchronized void register(Object o) {
+        if (!(o instanceof Number)) return;
+        
+        long value = ((Number) o).longValue();
+        if (value > 0 && value <= Integer.MAX_VALUE)
+            reserved.clear((int) value);
+        
+        if (seeded)
+            mark(value);
+    }
+    
+    /**
+     * Gives back a number which has been handed out but was not saved.
+     */
+    public synchronized void cancel(Object o) {
+        if (!isReserved(o)) return;
+        
+        reserved.clear(((Number) o).intValue());
+        gapHint = 1;
+    }
+    
+    /**
+     * Marks a number as free again.
+     */
+    public synchronized void release(Object o) {
+        if (!seeded || !(o instanceof Number)) return;
+        
+        long value = ((Number) o).longValue();
+        if (value >= maximum) {
+            // the new maximum is unknown
+            reset();
+        } else if (value > 0 && value <= Integer.MAX_VALUE) {
+            used.clear((int) value);
+            gapHint = 1;
+        }
+    }
+    
+    /**
+     * Discards the current state. The sequence will be seeded again on next use.
+     * Reserved numbers remain reserved.
+     */
+    public synchronized void reset() {
+        seeded = false;
+        used = null;
+        gapHint = 1;
+    }
+    
+    private void mark(long value) {
+        maximum = Math.max(maximum, value);
+        if (value > 0 && value <= Integer.MAX_VALUE)
+            used.set((int) value);
+    }
+    
+    private void seed() throws Exception {
+        DcModule m = DcModules.get(module);
+        String column = m.getField(field).getDatabaseFieldName();
+        String query = "SELECT " + column + " FROM " + m.getTableName() + 
+                       " WHERE " + column + " IS NOT NULL AND " + column + " > 0";
+        
+        DcResultSet rs = DcConfig.getInstance().getConnector().executeSQL(query);
+        
+        BitSet bs = new BitSet();
+        long max = 0;
+        long value;
+        for (int row = 0; row < rs.getRowCount(); row++) {
+            value = ((Number) rs.getValue(row, 0)).longValue();
+            max = Math.max(max, value);
+            if (value <= Integer.MAX_VALUE)
+                bs.set((int) value);
+        }
+        
+        used = bs;
+        maximum = max;
+        gapHint = 1;
+        seeded = true;
+    }
+}
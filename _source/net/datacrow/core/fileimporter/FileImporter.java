@@ -26,11 +26,18 @@
 package net.datacrow.core.fileimporter;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.StringTokenizer;
-import java.util.regex.Matcher;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Pattern;
 
 import net.datacrow.core.DcConfig;
@@ -39,7 +46,10 @@ import net.datacrow.core.clients.IFileImportClient;
 import net.datacrow.core.clients.ISynchronizerClient;
 import net.datacrow.core.data.DataFilter;
 import net.datacrow.core.data.DataFilterEntry;
+import net.datacrow.core.data.DcItemCursor;
 import net.datacrow.core.data.Operator;
+import net.datacrow.core.enhancers.SequenceAllocator;
+import net.datacrow.core.modules.DcModule;
 import net.datacrow.core.modules.DcModules;
 import net.datacrow.core.objects.DcField;
 import net.datacrow.core.objects.DcImageIcon;
@@ -55,6 +65,7 @@ import net.datacrow.core.synchronizers.Synchronizers;
 import net.datacrow.core.utilities.Directory;
 import net.datacrow.core.utilities.CoreUtilities;
 import net.datacrow.core.utilities.StringUtils;
+import net.datacrow.settings.DcSettings;
 import net.datacrow.settings.Settings;
 
 import org.apache.log4j.Logger;
@@ -63,6 +74,11 @@ import org.apache.log4j.Logger;
  * Base for all file importers. A file importer is capable of scanning a specific
  * location for specific file types. These files are parsed and their information
  * is stored in a {@link DcObject}.
+ * <br>
+ * The files are parsed by a pool of worker threads (see 
+ * {@link DcRepository.Settings#stFileImporterThreads}), each using its own importer
+ * instance as created by {@link #getInstance()}. The parsed items are saved in batches
+ * (see {@link DcRepository.Settings#stFileImporterBatchSize}).
  * 
  * @author Robert Jan van der Waals
  */
@@ -70,9 +86,19 @@ public abstract class FileImporter {
 
     private transient static Logger logger = Logger.getLogger(FileImporter.class.getName());
     
+    private static final int _DEFAULT_BATCH_SIZE = 100;
+    private static final int _DEFAULT_THREADS = 
+            Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    
+    private static final Map<String, Pattern> patterns = new ConcurrentHashMap<String, Pattern>();
+    
     private final int module;
     private IFileImportClient client;
     
+    // the import task this (worker) instance is part of
+    private ImportTask task;
+    private Synchronizer synchronizer;
+    
     /**
      * Creates a new instance.
      * @param module The module to which this importer belongs.
@@ -151,39 +177,7 @@ public abstract class FileImporter {
         if (sources == null || sources.size() == 0)
             throw new Exception(DcResources.getText("msgSelectFiles"));
         
-        Thread thread = new Thread(new Runnable() {
-            @Override
-            public void run() {
-                IFileImportClient client = getClient();
-                
-                if (client != null) {
-                    client.notify(DcResources.getText("msgImportStarts"));
-                    client.notify(DcResources.getText("msgParsingXFiles", String.valueOf(sources.size())));
-
-                    client.notifyTaskStarted(sources.size());
-                }
-                
-                try {
-                    int counter = 1;
-                    for (String filename : sources) {
-                        if  (client != null && client.isCancelled()) break;
-                        
-                        try {
-                            parse(filename, counter == sources.size());
-                        } catch (Throwable e) {
-                            if (client != null) client.notifyError(e);
-                            logger.error("An unhandled error occured during the import of " + filename, e);
-                        }
-                        if (client != null) client.notifyProcessed();;
-                    }
-                    if (client != null) client.notify(DcResources.getText("msgImportStops"));
-                } finally {
-                    afterImport();
-                    if (client != null) client.notifyTaskCompleted(true, null);
-                }
-            }
-        });
-        
+        Thread thread = new Thread(new ImportTask(sources));
         thread.start();
     }
     
@@ -193,15 +187,7 @@ public abstract class FileImporter {
      * @param filename
      */
     protected void parse(String filename, boolean last) {
-        int module = getClient().getModuleIdx();
-        
-        module = DcModules._MUSIC_TRACK;
-        
-        DataFilter df = new DataFilter(getClient().getModuleIdx());
-        df.addEntry(new DataFilterEntry(module, DcObject._SYS_FILENAME, Operator.EQUAL_TO, filename));
-        Map<String, Integer> items = DcConfig.getInstance().getConnector().getKeys(df); 
-        
-        if (items.size() > 0) {
+        if (isImported(filename)) {
             getClient().notify(DcResources.getText("msgSkippingAlreadyImportedFile", 
                                 new String[] {filename, ""}));
             
@@ -227,6 +213,41 @@ public abstract class FileImporter {
         }
     }
     
+    /**
+     * Checks whether the file has already been imported. Within an import task the
+     * file names loaded at the start of the task are used.
+     */
+    private boolean isImported(String filename) {
+        if (task != null)
+            return task.isImported(filename);
+        
+        for (int moduleIdx : getFileModules()) {
+            DataFilter df = new DataFilter(moduleIdx);
+            df.addEntry(new DataFilterEntry(moduleIdx, DcObject._SYS_FILENAME, Operator.EQUAL_TO, filename));
+            if (DcConfig.getInstance().getConnector().getKeys(df).size() > 0)
+                return true;
+        }
+        return false;
+    }
+    
+    /**
+     * The modules holding the file names of the imported files: the module of the client
+     * and, for parent modules, its child module (e.g. the music tracks of the music albums).
+     */
+    protected Collection<Integer> getFileModules() {
+        Collection<Integer> modules = new ArrayList<Integer>();
+        DcModule module = DcModules.get(getClient().getModuleIdx());
+        
+        if (module.getField(DcObject._SYS_FILENAME) != null)
+            modules.add(Integer.valueOf(module.getIndex()));
+        
+        DcModule child = module.isParentModule() ? module.getChild() : null;
+        if (child != null && child.getField(DcObject._SYS_FILENAME) != null)
+            modules.add(Integer.valueOf(child.getIndex()));
+        
+        return modules;
+    }
+    
     /**
      * Called after finishing the whole parsing process.
      */
@@ -248,7 +269,10 @@ public abstract class FileImporter {
                 int moduleIdx = getClient().getModuleIdx();
                 Synchronizers synchronizers = Synchronizers.getInstance();
                 if (synchronizers.hasSynchronizer(moduleIdx)) {
-                	Synchronizer synchronizer = synchronizers.getSynchronizer(moduleIdx);
+                    // synchronizers keep state while updating; use one per worker
+                    if (synchronizer == null)
+                        synchronizer = synchronizers.getSynchronizer(moduleIdx).getInstance();
+                    
                 	synchronizer.onlineUpdate(new SynchronizerClient(), dco);
                 }
                 
@@ -259,16 +283,20 @@ public abstract class FileImporter {
         }
 
         dco.setIDs();
+        dco.setUpdateGUI(false);
         
-        try {
-        	Connector connector = DcConfig.getInstance().getConnector();
-            dco.setUpdateGUI(false);
-            connector.saveItem(dco);
-        } catch (Exception e) {
-            if (client != null)
-                client.notifyError(e);
-            else 
-                logger.error(e, e);
+        if (task != null) {
+            task.save(dco);
+        } else {
+            try {
+            	Connector connector = DcConfig.getInstance().getConnector();
+                connector.saveItem(dco);
+            } catch (Exception e) {
+                if (client != null)
+                    client.notifyError(e);
+                else 
+                    logger.error(e, e);
+            }
         }
     }
 
@@ -291,14 +319,10 @@ public abstract class FileImporter {
                 name = name.substring(0, index);
             
             String regex = DcModules.get(getModuleIdx()).getSettings().getString(DcRepository.ModuleSettings.stTitleCleanupRegex);
-            if (!CoreUtilities.isEmpty(regex)) {
-                Pattern pattern = Pattern.compile(regex, Pattern.CASE_INSENSITIVE | Pattern.MULTILINE);
-                Matcher matcher = pattern.matcher(name);
-                while (matcher.find())
-                    name = matcher.replaceAll("");
-            }
+            if (!CoreUtilities.isEmpty(regex))
+                name = getPattern(regex).matcher(name).replaceAll("");
             
-            name = name.replaceAll("\\.", " ");
+            name = name.replace('.', ' ');
             
             String remove = 
                 DcModules.get(getModuleIdx()).getSettings().getString(DcRepository.ModuleSettings.stTitleCleanup);
@@ -317,6 +341,18 @@ public abstract class FileImporter {
         return StringUtils.capitalize(name.trim());
     }    
     
+    /**
+     * Returns the compiled version of the cleanup regular expression. 
+     */
+    private static Pattern getPattern(String regex) {
+        Pattern pattern = patterns.get(regex);
+        if (pattern == null) {
+            pattern = Pattern.compile(regex, Pattern.CASE_INSENSITIVE | Pattern.MULTILINE);
+            patterns.put(regex, pattern);
+        }
+        return pattern;
+    }
+    
     private boolean match(String settingKey, String filename) {
         Settings settings = DcModules.get(module).getSettings();
         String keywords = settings.getString(settingKey);
@@ -389,6 +425,223 @@ public abstract class FileImporter {
         }
     }
     
+    /**
+     * Parses the files using a pool of workers and saves the results in batches.
+     */
+    private class ImportTask implements Runnable {
+        
+        private final Collection<String> sources;
+        private final Set<String> imported = new HashSet<String>();
+        private final ThreadLocal<FileImporter> workers = new ThreadLocal<FileImporter>();
+        
+        private final AtomicInteger processed = new AtomicInteger();
+        private final AtomicInteger skipped = new AtomicInteger();
+        private final AtomicInteger saved = new AtomicInteger();
+        
+        private List<DcObject> batch = new ArrayList<DcObject>();
+        private int batchSize;
+        private long start;
+        
+        public ImportTask(Collection<String> sources) {
+            this.sources = sources;
+        }
+        
+        /**
+         * Loads the file names of all previously imported items in one go.
+         */
+        private void loadImportedFiles() {
+            Connector connector = DcConfig.getInstance().getConnector();
+            
+            for (int moduleIdx : getFileModules()) {
+                DataFilter df = new DataFilter(moduleIdx);
+                df.addEntry(new DataFilterEntry(DataFilterEntry._AND, moduleIdx, 
+                        DcObject._SYS_FILENAME, Operator.IS_FILLED, null));
+                
+                DcItemCursor cursor = connector.getItemCursor(
+                        df, new int[] {DcObject._ID, DcObject._SYS_FILENAME}, 0);
+                
+                while (cursor.hasNext()) {
+                    for (DcObject dco : cursor.next())
+                        imported.add((String) dco.getValue(DcObject._SYS_FILENAME));
+                }
+            }
+        }
+        
+        public boolean isImported(String filename) {
+            boolean exists;
+            synchronized (imported) {
+                // also registers the file, skipping duplicates within the sources
+                exists = !imported.add(filename);
+            }
+            
+            if (exists) skipped.incrementAndGet();
+            
+            return exists;
+        }
+        
+        /**
+         * Each worker thread uses its own importer instance.
+         */
+        private FileImporter getWorker() {
+            FileImporter worker = workers.get();
+            if (worker == null) {
+                worker = getInstance();
+                worker.setClient(getClient());
+                worker.task = this;
+                workers.set(worker);
+            }
+            return worker;
+        }
+        
+        public void save(DcObject dco) {
+            List<DcObject> items = null;
+            synchronized (this) {
+                dco.setLastInLine(false);
+                batch.add(dco);
+                if (batch.size() >= batchSize) {
+                    items = batch;
+                    batch = new ArrayList<DcObject>();
+                }
+            }
+            
+            if (items != null)
+                save(items);
+        }
+        
+        private void save(List<DcObject> items) {
+            Connector connector = DcConfig.getInstance().getConnector();
+            
+            Collection<DcObject> failed;
+            try {
+                failed = connector.saveItems(items);
+            } catch (RuntimeException re) {
+                // part of the batch might have been saved; retrying could create duplicates
+                for (DcObject dco : items) {
+                    logger.error("The item " + dco.getValue(DcObject._SYS_FILENAME) + " could not be saved");
+                    
+                    // the numbers of the items which were saved are read from the database again
+                    SequenceAllocator.failed(dco);
+                    SequenceAllocator.reset(dco.getModuleIdx());
+                }
+                
+                notifyError(re);
+                notifyProgress();
+                return;
+            }
+            
+            // save the failed items again, one by one, to report the validation errors
+            int count = items.size() - failed.size();
+            for (DcObject dco : failed) {
+                try {
+                    connector.saveItem(dco);
+                    count++;
+                } catch (Exception e) {
+                    SequenceAllocator.failed(dco);
+                    notifyError(e);
+                }
+            }
+            
+            saved.addAndGet(count);
+            notifyProgress();
+        }
+        
+        private void flush() {
+            List<DcObject> items;
+            synchronized (this) {
+                items = batch;
+                batch = new ArrayList<DcObject>();
+            }
+            
+            if (items.size() > 0) {
+                items.get(items.size() - 1).setLastInLine(true);
+                save(items);
+            }
+        }
+        
+        private void process(String filename) {
+            IFileImportClient client = getClient();
+            if (client != null && client.isCancelled()) return;
+            
+            try {
+                getWorker().parse(filename, false);
+            } catch (Throwable e) {
+                notifyError(e);
+                logger.error("An unhandled error occured during the import of " + filename, e);
+            }
+            
+            processed.incrementAndGet();
+            if (client != null) client.notifyProcessed();
+        }
+        
+        private void notifyError(Throwable t) {
+            IFileImportClient client = getClient();
+            if (client != null) 
+                client.notifyError(t);
+            else 
+                logger.error(t, t);
+        }
+        
+        private void notifyProgress() {
+            IFileImportClient client = getClient();
+            if (client == null) return;
+            
+            long seconds = Math.max(1, (System.currentTimeMillis() - start) / 1000);
+            client.notify(DcResources.getText("msgFileImportProgress", new String[] {
+                    String.valueOf(processed.get()), 
+                    String.valueOf(sources.size()),
+                    String.valueOf(skipped.get()),
+                    String.valueOf(saved.get()),
+                    String.valueOf(processed.get() / seconds)}));
+        }
+        
+        @Override
+        public void run() {
+            IFileImportClient client = getClient();
+            
+            if (client != null) {
+                client.notify(DcResources.getText("msgImportStarts"));
+                client.notify(DcResources.getText("msgParsingXFiles", String.valueOf(sources.size())));
+
+                client.notifyTaskStarted(sources.size());
+            }
+            
+            int size = DcSettings.getInt(DcRepository.Settings.stFileImporterBatchSize);
+            batchSize = size > 0 ? size : _DEFAULT_BATCH_SIZE;
+            
+            int threads = DcSettings.getInt(DcRepository.Settings.stFileImporterThreads);
+            threads = Math.min(threads > 0 ? threads : _DEFAULT_THREADS, sources.size());
+            
+            ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads));
+            
+            try {
+                start = System.currentTimeMillis();
+                loadImportedFiles();
+                
+                for (final String filename : sources) {
+                    executor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            process(filename);
+                        }
+                    });
+                }
+                
+                executor.shutdown();
+                while (!executor.awaitTermination(1, TimeUnit.SECONDS)) {}
+                
+                flush();
+                
+                if (client != null) client.notify(DcResources.getText("msgImportStops"));
+            } catch (Throwable t) {
+                notifyError(t);
+            } finally {
+                executor.shutdownNow();
+                afterImport();
+                if (client != null) client.notifyTaskCompleted(true, null);
+            }
+        }
+    }
+    
     private class SynchronizerClient implements ISynchronizerClient {
         
         @Override
@@ -482,4 +735,4 @@ public abstract class FileImporter {
             return null;
         }
     }
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -0,0 +1,430 @@
+/******************************************************************************
+ *                                     __                                     *
+ *                              <-----/@@\----->                              *
+ *                             <-< <  \\//  > >->                             *
+ *                               <-<-\ __ /->->                               *
+ *                               Data /  \ Crow                               *
+ *                                   ^    ^                                   *
+ *                              info@datacrow.net                             *
+ *                                                                            *
+ *                       This file is part of Data Crow.                      *
+ *       Data Crow is free software; you can redistribute it and/or           *
+ *        modify it under the terms of the GNU General Public                 *
+ *       License as published by the Free Software Foundation; either         *
+ *              version 3 of the License, or any later version.               *
+ *                                                                            *
+ *        Data Crow is distributed in the hope that it will be useful,        *
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *           MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.             *
+ *           See the GNU General Public License for more details.             *
+ *                                                                            *
+ *        You should have received a copy of the GNU General Public           *
+ *  License along with this program. If not, see http://www.gnu.org/licenses  *
+ *                                                                            *
+ ******************************************************************************/
+
+package net.datacrow.core.http;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import net.datacrow.core.DcConfig;
+
+import org.apache.log4j.Logger;
+
+/**
+ * An on-disk cache for HTTP responses, located in the data directory. 
+ * 
+ * Responses are stored when they can be validated (ETag or Last-Modified) or when the 
+ * server indicates for how long they are fresh (Cache-Control max-age). A fresh response 
+ * is served without contacting the server; otherwise a conditional request is sent and 
+ * the cached response is used when the server reports it has not been modified.
+ * Responses marked no-store are never stored.
+ * 
+ * The total size is bounded; the least recently used responses are removed first.
+ * 
+ * @author Robert Jan van der Waals
+ */
+public class HttpCache {
+    
+    private static Logger logger = Logger.getLogger(HttpCache.class.getName());
+
+    public static final long _DEFAULT_MAX_SIZE = 100L * 1024L * 1024L;
+    
+    private static final String _BODY = ".body";
+    private static final String _META = ".meta";
+    
+    private static HttpCache instance;
+    
+    private final File dir;
+    // cached responses (key > size) in order of use
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<String, Long>(256, 0.75f, true);
+    
+    private long maxSize = _DEFAULT_MAX_SIZE;
+    private long size = 0;
+    private boolean enabled = true;
+    
+    private long hits = 0;
+    private long revalidations = 0;
+    private long misses = 0;
+    
+    private HttpCache(File dir) {
+        this.dir = dir;
+        dir.mkdirs();
+        load();
+    }
+    
+    public static synchronized HttpCache getInstance() {
+        if (instance == null)
+            instance = new HttpCache(new File(DcConfig.getInstance().getDataDir(), "cache/http/"));
+        
+        return instance;
+    }
+    
+    public synchronized boolean isEnabled() {
+        return enabled;
+    }
+    
+    public synchronized void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+    
+    public synchronized long getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Sets the maximum size of the cache in bytes.
+     */
+    public synchronized void setMaxSize(long maxSize) {
+        this.maxSize = maxSize;
+        evict();
+    }
+    
+    /**
+     * The current size of the cache in bytes.
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+    
+    /**
+     * The number of responses served without contacting the server.
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * The number of responses served after the server confirmed these were not modified.
+     */
+    public synchronized long getRevalidations() {
+        return revalidations;
+    }
+
+    /**
+     * The number of responses retrieved from the server.
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+    
+    /**
+     * The fraction of the requests served from the cache (including revalidated responses).
+     */
+    public synchronized double getHitRate() {
+        long total = hits + revalidations + misses;
+        return total == 0 ? 0 : ((double) (hits + revalidations)) / total;
+    }
+    
+    /**
+     * Retrieves the content of the URL, from the cache when possible.
+     */
+    public byte[] get(URL url) throws HttpConnectionException {
+        String protocol = url.getProtocol();
+        if (!isEnabled() || !("http".equalsIgnoreCase(protocol) || "https".equalsIgnoreCase(protocol))) {
+            HttpConnection connection = new HttpConnection(url);
+            try {
+                return connection.getBytes();
+            } finally {
+                connection.close();
+            }
+        }
+        
+        String key = getKey(url.toString());
+        Properties meta = getMeta(key);
+        
+        if (meta != null && isFresh(meta)) {
+            byte[] b = getBody(key);
+            if (b != null) {
+                count(0);
+                return b;
+            }
+            meta = null;
+        }
+        
+        HttpConnection connection = new HttpConnection(url);
+        try {
+            if (meta != null) {
+                if (meta.getProperty("etag") != null)
+                    connection.setRequestProperty("If-None-Match", meta.getProperty("etag"));
+                if (meta.getProperty("last-modified") != null)
+                    connection.setRequestProperty("If-Modified-Since", meta.getProperty("last-modified"));
+            }
+            
+            if (meta != null && connection.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                connection.getBytes();
+                
+                byte[] b = getBody(key);
+                if (b != null) {
+                    meta.setProperty("stored", String.valueOf(System.currentTimeMillis()));
+                    writeMeta(key, meta);
+                    count(1);
+                    return b;
+                }
+                
+                // the cached body is gone; retrieve it again
+                connection.close();
+                connection = new HttpConnection(url);
+            }
+            
+            byte[] b = connection.getBytes();
+            count(2);
+            
+            store(key, url, connection, b);
+            return b;
+        } finally {
+            connection.close();
+        }
+    }
+    
+    /**
+     * Removes all cached responses.
+     */
+    public synchronized void clear() {
+        for (String key : entries.keySet()) {
+            new File(dir, key + _BODY).delete();
+            new File(dir, key + _META).delete();
+        }
+        
+        entries.clear();
+        size = 0;
+    }
+    
+    public synchronized void logStatistics() {
+        logger.info("HTTP cache: " + entries.size() + " responses (" + size + " bytes), " + hits + " hits, " + 
+                    revalidations + " revalidated, " + misses + " misses");
+    }
+    
+    private synchronized void count(int type) {
+        if (type == 0) hits++;
+        else if (type == 1) revalidations++;
+        else misses++;
+    }
+    
+    private boolean isFresh(Properties meta) {
+        long maxAge = Long.parseLong(meta.getProperty("max-age", "0"));
+        long stored = Long.parseLong(meta.getProperty("stored", "0"));
+        return maxAge > 0 && System.currentTimeMillis() - stored < maxAge * 1000;
+    }
+    
+    private void store(String key, URL url, HttpConnection connection, byte[] b) {
+        String cacheControl = connection.getHeaderField("Cache-Control");
+        cacheControl = cacheControl != null ? cacheControl.toLowerCase() : "";
+        
+        String etag = connection.getHeaderField("ETag");
+        String lastModified = connection.getHeaderField("Last-Modified");
+        long maxAge = getMaxAge(cacheControl);
+        
+        if (    cacheControl.contains("no-store") || 
+                (etag == null && lastModified == null && maxAge <= 0) ||
+                b.length > maxSize / 10) {
+            remove(key);
+            return;
+        }
+        
+        Properties meta = new Properties();
+        meta.setProperty("url", url.toString());
+        meta.setProperty("stored", String.valueOf(System.currentTimeMillis()));
+        meta.setProperty("max-age", String.valueOf(cacheControl.contains("no-cache") ? 0 : maxAge));
+        if (etag != null) meta.setProperty("etag", etag);
+        if (lastModified != null) meta.setProperty("last-modified", lastModified);
+        
+        try {
+            File tmp = File.createTempFile(key, ".tmp", dir);
+            OutputStream os = new FileOutputStream(tmp);
+            try {
+                os.write(b);
+            } finally {
+                os.close();
+            }
+            
+            synchronized (this) {
+                File body = new File(dir, key + _BODY);
+                body.delete();
+                if (!tmp.renameTo(body)) {
+                    tmp.delete();
+                    return;
+                }
+                
+                writeMeta(key, meta);
+                
+                Long old = entries.put(key, Long.valueOf(b.length));
+                size += b.length - (old != null ? old.longValue() : 0);
+                evict();
+            }
+        } catch (IOException e) {
+            logger.debug("Could not cache the response for " + url, e);
+        }
+    }
+    
+    private long getMaxAge(String cacheControl) {
+        int idx = cacheControl.indexOf("max-age=");
+        if (idx == -1) return 0;
+        
+        StringBuilder sb = new StringBuilder();
+        for (int i = idx + 8; i < cacheControl.length() && Character.isDigit(cacheControl.charAt(i)); i++)
+            sb.append(cacheControl.charAt(i));
+        
+        try {
+            return sb.length() > 0 ? Long.parseLong(sb.toString()) : 0;
+        } catch (NumberFormatException nfe) {
+            return 0;
+        }
+    }
+    
+    private synchronized Properties getMeta(String key) {
+        if (!entries.containsKey(key)) return null;
+        
+        Properties meta = new Properties();
+        try {
+            InputStream is = new FileInputStream(new File(dir, key + _META));
+            try {
+                meta.load(is);
+            } finally {
+                is.close();
+            }
+            return meta;
+        } catch (IOException e) {
+            remove(key);
+            return null;
+        }
+    }
+    
+    private synchronized void writeMeta(String key, Properties meta) {
+        try {
+            OutputStream os = new FileOutputStream(new File(dir, key + _META));
+            try {
+                meta.store(os, null);
+            } finally {
+                os.close();
+            }
+        } catch (IOException e) {
+            logger.debug(e, e);
+        }
+    }
+    
+    private synchronized byte[] getBody(String key) {
+        File file = new File(dir, key + _BODY);
+        
+        try {
+            byte[] b = new byte[(int) file.length()];
+            InputStream is = new FileInputStream(file);
+            try {
+                int offset = 0;
+                int read;
+                while (offset < b.length && (read = is.read(b, offset, b.length - offset)) != -1)
+                    offset += read;
+            } finally {
+                is.close();
+            }
+            
+            // mark as recently used
+            entries.get(key);
+            return b;
+        } catch (IOException e) {
+            remove(key);
+            return null;
+        }
+    }
+    
+    private synchronized void remove(String key) {
+        Long length = entries.remove(key);
+        if (length != null) size -= length.longValue();
+        
+        new File(dir, key + _BODY).delete();
+        new File(dir, key + _META).delete();
+    }
+    
+    private synchronized void evict() {
+        Iterator<Map.Entry<String, Long>> it = entries.entrySet().iterator();
+        Map.Entry<String, Long> entry;
+        while (size > maxSize && it.hasNext()) {
+            entry = it.next();
+            it.remove();
+            size -= entry.getValue().longValue();
+            
+            new File(dir, entry.getKey() + _BODY).delete();
+            new File(dir, entry.getKey() + _META).delete();
+        }
+    }
+    
+    /**
+     * Registers the responses stored in earlier sessions, the least recently modified first.
+     */
+    private void load() {
+        File[] files = dir.listFiles();
+        if (files == null) return;
+        
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File f1, File f2) {
+                long l1 = f1.lastModified();
+                long l2 = f2.lastModified();
+                return l1 < l2 ? -1 : (l1 == l2 ? 0 : 1);
+            }
+        });
+        
+        String name;
+        for (File file : files) {
+            name = file.getName();
+            if (name.endsWith(".tmp")) {
+                file.delete();
+            } else if (name.endsWith(_BODY)) {
+                entries.put(name.substring(0, name.length() - _BODY.length()), Long.valueOf(file.length()));
+                size += file.length();
+            }
+        }
+        
+        evict();
+    }
+    
+    private String getKey(String url) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            byte[] digest = md.digest(url.getBytes("UTF-8"));
+            
+            StringBuilder sb = new StringBuilder(digest.length * 2);
+            for (byte b : digest)
+                sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            
+            return sb.toString();
+        } catch (Exception e) {
+            // should never happen
+            return String.valueOf(url.hashCode());
+        }
+    }
+}
@@ -25,16 +25,18 @@
 
 package net.datacrow.core.http;
 
-import java.io.BufferedInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
 import java.net.URL;
 
 import net.datacrow.core.DcRepository;
+import net.datacrow.core.settings.ISettingListener;
+import net.datacrow.core.settings.Setting;
 import net.datacrow.core.utilities.Base64;
 import net.datacrow.settings.DcSettings;
 
@@ -42,11 +44,38 @@ import net.datacrow.settings.DcSettings;
  * This class wraps a {@link HttpURLConnection} and offers detailed methods for 
  * retrieving information from an URL. Proxies are supported.
  * 
+ * Connections are kept alive: once the response has been read completely and the connection
+ * is closed the underlying socket is returned to the keep-alive pool of the host (the 
+ * maximum number of connections per host is set by {@link HttpConnectionUtil}).
+ * 
  * @author Robert Jan van der Waals
  */
 public class HttpConnection {
     
+    private static final int _BUFFER_SIZE = 8192;
+    
+    // the proxy configuration, reset when one of the proxy settings changes
+    private static volatile ProxyConfiguration proxyConfiguration;
+    
+    static {
+        ISettingListener listener = new ISettingListener() {
+            @Override
+            public void settingChanged(Setting setting) {
+                proxyConfiguration = null;
+            }
+        };
+        
+        DcSettings.addListener(DcRepository.Settings.stProxyServerName, listener);
+        DcSettings.addListener(DcRepository.Settings.stProxyServerPort, listener);
+        DcSettings.addListener(DcRepository.Settings.stProxyUserName, listener);
+        DcSettings.addListener(DcRepository.Settings.stProxyPassword, listener);
+    }
+    
     private HttpURLConnection uc;
+    private InputStream is;
+    
+    // the response has been read completely
+    private boolean consumed = false;
 
     /**
      * Create a new connection.
@@ -63,12 +92,38 @@ public class HttpConnection {
      */
     public boolean exists() {
         try {
-            uc.getInputStream();
+            getStream();
             return true;
         } catch (Exception e) {
             return false;
         }
     }
+    
+    /**
+     * Sets a request header. Must be called before the response is retrieved.
+     */
+    public void setRequestProperty(String key, String value) {
+        uc.setRequestProperty(key, value);
+    }
+    
+    /**
+     * The HTTP status code of the response.
+     */
+    public int getResponseCode() throws HttpConnectionException {
+        try {
+            return uc.getResponseCode();
+        } catch (IOException ie) {
+            throw new HttpConnectionException(ie);
+        }
+    }
+    
+    /**
+     * Retrieves the value of a response header.
+     * @return The value or null if not set.
+     */
+    public String getHeaderField(String name) {
+        return uc.getHeaderField(name);
+    }
 
     /**
      * Retrieves the underlying text (as UTF8).
@@ -86,50 +141,43 @@ public class HttpConnection {
      */
     public String getString(String charset) throws HttpConnectionException {
         try {
-            StringBuffer sb = new StringBuffer();
-            BufferedInputStream in = new BufferedInputStream(uc.getInputStream());
-            InputStreamReader reader = charset != null ? new InputStreamReader(in, charset) : new InputStreamReader(in);
-            
-            int c;
-            while ((c = reader.read()) != -1)
-                sb.append((char) c);
-    
-            reader.close();
-            in.close();
-            
-            return sb.toString();
+            byte[] b = getBytes();
+            return charset != null ? new String(b, charset) : new String(b);
         } catch (IOException ie) {
             throw new HttpConnectionException(ie);
         }
     }    
     
     /**
-     * Retrieves the underlying bytes and closes the connection.
+     * Retrieves the underlying bytes.
      * @throws IOException
      */
     public final byte[] getBytes() throws HttpConnectionException {
         try {
-            ByteArrayOutputStream bais = new ByteArrayOutputStream();
-            InputStream is = uc.getInputStream();
-            BufferedInputStream bis  = new BufferedInputStream(is);
-            while (true) {
-                int i = bis.read();
-                if (i == -1) break;
-                bais.write(i);
-            }
-          
-            bis.close();
-            is.close();
+            int length = uc.getContentLength();
+            ByteArrayOutputStream bos = new ByteArrayOutputStream(length > 0 ? length : _BUFFER_SIZE);
+            InputStream in = getStream();
             
-            byte[] b = bais.toByteArray();
-            bais.close();
+            byte[] buffer = new byte[_BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1)
+                bos.write(buffer, 0, read);
+          
+            // return the connection to the keep alive pool
+            in.close();
+            consumed = true;
     
-            return b;
+            return bos.toByteArray();
         } catch (IOException ie) {
             throw new HttpConnectionException(ie);
         }
     }    
     
+    private InputStream getStream() throws IOException {
+        is = is == null ? uc.getInputStream() : is;
+        return is;
+    }
+    
     /**
      * Retrieves the content length.
      * @return
@@ -152,7 +200,7 @@ public class HttpConnection {
      */
     public InputStream getInputStream() throws IOException {
         uc.setDoOutput(true);
-        return uc.getInputStream();
+        return getStream();
     }
     
     /**
@@ -165,37 +213,41 @@ public class HttpConnection {
     }
 
     /**
-     * Disconnect, closes the connection.
+     * Closes the connection. In case the response has been read completely the 
+     * underlying connection is kept alive for reuse; otherwise it is disconnected.
      */
     public void close() {
-    	uc.disconnect();
+        if (uc == null) return;
+        
+        if (!consumed) {
+            try {
+                if (is != null) is.close();
+            } catch (IOException ignore) {}
+            
+            uc.disconnect();
+        }
+        
+        is = null;
         uc = null;
     }
+    
+    private static ProxyConfiguration getProxyConfiguration() {
+        ProxyConfiguration pc = proxyConfiguration;
+        if (pc == null) {
+            pc = new ProxyConfiguration();
+            proxyConfiguration = pc;
+        }
+        return pc;
+    }
 
     private HttpURLConnection connect(URL url) throws HttpConnectionException {
-        String proxy = DcSettings.getString(DcRepository.Settings.stProxyServerName);
-
-        String username = DcSettings.getString(DcRepository.Settings.stProxyUserName);
-        String password = DcSettings.getString(DcRepository.Settings.stProxyPassword);
-        int proxyPort = DcSettings.getInt(DcRepository.Settings.stProxyServerPort);
-
-        boolean useProxy = proxy.length() > 0 && proxyPort > 0;
-        if (useProxy) {
-        	System.setProperty("proxySet", "true");
-        	System.setProperty("http.proxyHost", proxy);
-        	System.setProperty("http.proxyPort", "" + proxyPort);
-        } else {
-            System.setProperty("proxySet", "false");
-            System.setProperty("http.proxyHost", "");
-            System.setProperty("http.proxyPort", "" + -1);
-        }
+        ProxyConfiguration pc = getProxyConfiguration();
+        Proxy proxy = pc.proxy;
 
         try {
-            HttpURLConnection uc = (HttpURLConnection) url.openConnection();
-            if (useProxy && username.trim().length() > 0) {
-        		String proxyUPB64 = Base64.encode(username + ":" + password);
-        		uc.setRequestProperty("Proxy-Authorization", "Basic " + proxyUPB64);
-            }
+            HttpURLConnection uc = (HttpURLConnection) (proxy != null ? url.openConnection(proxy) : url.openConnection());
+            if (pc.authorization != null)
+                uc.setRequestProperty("Proxy-Authorization", pc.authorization);
             
             uc.setRequestMethod("GET");
             uc.setDoOutput(true);
@@ -206,4 +258,28 @@ public class HttpConnection {
             throw new HttpConnectionException(ie);
         }
     }
+    
+    /**
+     * The proxy as configured in the settings.
+     */
+    private static class ProxyConfiguration {
+        
+        // null if no proxy has been configured
+        private final Proxy proxy;
+        private final String authorization;
+        
+        private ProxyConfiguration() {
+            String server = DcSettings.getString(DcRepository.Settings.stProxyServerName);
+            int port = DcSettings.getInt(DcRepository.Settings.stProxyServerPort);
+            
+            proxy = server != null && server.length() > 0 && port > 0 ?
+                    new Proxy(Proxy.Type.HTTP, InetSocketAddress.createUnresolved(server, port)) : null;
+            
+            String username = DcSettings.getString(DcRepository.Settings.stProxyUserName);
+            String password = DcSettings.getString(DcRepository.Settings.stProxyPassword);
+            
+            authorization = proxy != null && username.trim().length() > 0 ?
+                    "Basic " + Base64.encode(username + ":" + password) : null;
+        }
+    }
 }
@@ -25,13 +25,23 @@
 
 package net.datacrow.core.http;
 
+import java.io.UnsupportedEncodingException;
 import java.net.MalformedURLException;
 import java.net.URL;
 
 /**
  * Simplification for retrieving data from a specific address.
+ * Pages and bytes are retrieved through the HTTP cache (see {@link HttpCache}).
  */
 public class HttpConnectionUtil {
+    
+    /** The maximum number of idle connections kept alive per host. */
+    public static final int _MAX_CONNECTIONS_PER_HOST = 8;
+    
+    static {
+        if (System.getProperty("http.maxConnections") == null)
+            System.setProperty("http.maxConnections", String.valueOf(_MAX_CONNECTIONS_PER_HOST));
+    }
 
     /**
      * Creates a new connection.
@@ -79,10 +89,12 @@ public class HttpConnectionUtil {
      * @throws HttpConnectionException
      */
     public static String retrievePage(URL url, String charset) throws HttpConnectionException {
-        HttpConnection connection = new HttpConnection(url);
-        String page = connection.getString(charset);
-        connection.close();
-        return page;
+        byte[] b = HttpCache.getInstance().get(url);
+        try {
+            return charset != null ? new String(b, charset) : new String(b);
+        } catch (UnsupportedEncodingException uee) {
+            throw new HttpConnectionException(uee);
+        }
     }
 
     /**
@@ -100,10 +112,7 @@ public class HttpConnectionUtil {
      * @throws HttpConnectionException
      */
     public static byte[] retrieveBytes(URL url) throws HttpConnectionException {
-        HttpConnection connection = new HttpConnection(url);
-        byte[] bytes = connection.getBytes();
-        connection.close();
-        return bytes;
+        return HttpCache.getInstance().get(url);
     }
     
     private static URL getURL(String url) throws HttpConnectionException {
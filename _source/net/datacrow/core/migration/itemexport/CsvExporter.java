@@ -26,13 +26,13 @@
 package net.datacrow.core.migration.itemexport;
 
 import java.io.IOException;
-import java.util.ArrayList;
+import java.io.Writer;
 import java.util.Collection;
 import java.util.List;
 
-import net.datacrow.core.DcConfig;
 import net.datacrow.core.DcThread;
 import net.datacrow.core.console.UIComponents;
+import net.datacrow.core.data.DcItemCursor;
 import net.datacrow.core.modules.DcModule;
 import net.datacrow.core.modules.DcModules;
 import net.datacrow.core.objects.DcAssociate;
@@ -41,7 +41,6 @@ import net.datacrow.core.objects.DcMapping;
 import net.datacrow.core.objects.DcObject;
 import net.datacrow.core.objects.Picture;
 import net.datacrow.core.resources.DcResources;
-import net.datacrow.core.server.Connector;
 
 import org.apache.log4j.Logger;
 
@@ -57,18 +56,21 @@ public class CsvExporter extends ItemExporter {
         super(moduleIdx, "CSV", mode, false);
     }
 
-    private void writeBytes(String value, boolean separator) throws IOException {
-        String s = value;
-        s = s.replaceAll("\t", "");
-        if (!s.equals("\r\n")) {
-            s = s.replaceAll("\r", " ");
-            s = s.replaceAll("\n", " ");
-        }
-        
+    /**
+     * Writes a single value. Tabs are removed and line breaks are replaced by spaces.
+     */
+    private void writeValue(Writer out, String value, boolean separator) throws IOException {
         if (separator)
-            s = "\t" + s;
+            out.write('\t');
         
-        bos.write(s.getBytes("UTF8"));
+        char c;
+        for (int i = 0; i < value.length(); i++) {
+            c = value.charAt(i);
+            if (c == '\r' || c == '\n')
+                out.write(' ');
+            else if (c != '\t')
+                out.write(c);
+        }
     }
 
     @Override
@@ -83,17 +85,13 @@ public class CsvExporter extends ItemExporter {
     
     @Override
     public DcThread getTask() {
-        return new Task(items);
+        return new Task();
     }
 
     private class Task extends DcThread {
         
-        private List<String> items;
-        
-        public Task(Collection<String> items) {
+        public Task() {
             super(null, "CSV export to " + file);
-            this.items = new ArrayList<String>();
-            this.items.addAll(items);
         }
 
         @Override
@@ -107,9 +105,6 @@ public class CsvExporter extends ItemExporter {
             } finally {
                 client.notifyTaskCompleted(true, null);
             }
-            
-            items.clear();
-            items = null;
         }
         
         @SuppressWarnings("unchecked")
@@ -119,6 +114,8 @@ public class CsvExporter extends ItemExporter {
            
             if (items == null || items.size() == 0) return;
             
+            Writer out = getWriter();
+            
             // create the table and the header
             int counter = 0;
             
@@ -128,71 +125,68 @@ public class CsvExporter extends ItemExporter {
 
                field = DcModules.get(moduleIdx).getField(fieldIdx);
                if (field != null) {
-                    writeBytes(field.getSystemName(), counter != 0);
+                    writeValue(out, field.getSystemName(), counter != 0);
                     counter++;
                 }                
             }        
             
-            writeBytes("\r\n", false);
+            out.write("\r\n");
             
-            counter = 0;
             String s;
-            Connector conn = DcConfig.getInstance().getConnector();
+            DcItemCursor cursor = getItemCursor();
             
-            for (String item : items) {
-            	
-            	DcObject dco = conn.getItem(getModule().getIndex(), item, null);
-                
-                if (isCanceled()) break;
+            while (!isCanceled() && cursor.hasNext()) {
+                List<DcObject> page = cursor.next();
+                initializeReferences(page);
                 
-                client.notify(DcResources.getText("msgExportingX", dco.toString()));
-                int fieldCounter = 0;
-                Object o;
-                s = "";
-                for (int fieldIdx : getFields()) {
+                for (DcObject dco : page) {
                     if (isCanceled()) break;
-
-                    field = DcModules.get(moduleIdx).getField(fieldIdx);
                     
-                    if (isCanceled()) break;
-
-                    o = dco.getValue(field.getIndex());
-                    
-                    if (field != null) { 
-                        s = "";
-                        
-                        if (field.getFieldType() == UIComponents._PICTUREFIELD) {
-                            if (o != null && o.toString().length() >= 10)
-                               s = utilities.getImageURL((Picture) dco.getValue(field.getIndex()));
+                    client.notify(DcResources.getText("msgExportingX", dco.toString()));
+                    int fieldCounter = 0;
+                    Object o;
+                    for (int fieldIdx : getFields()) {
+                        field = DcModules.get(moduleIdx).getField(fieldIdx);
                         
-                        } else if (o instanceof Collection && 
-                                   DcModules.get(field.getReferenceIdx()).getType() == DcModule._TYPE_ASSOCIATE_MODULE) {
+                        if (field != null) { 
+                            o = dco.getValue(field.getIndex());
+                            s = "";
                             
-                           for (DcObject subDco : (Collection<DcObject>) o) {
-                                if (subDco instanceof DcMapping)
-                                    subDco = ((DcMapping) subDco).getReferencedObject();
-
-                                if (subDco != null) { 
-                                    s += (s.length() > 0 ? ", " : "");
-                                    s += ((DcAssociate) subDco).getNameNormal(); 
+                            if (field.getFieldType() == UIComponents._PICTUREFIELD) {
+                                if (o != null && o.toString().length() >= 10)
+                                   s = utilities.getImageURL((Picture) o);
+                            
+                            } else if (o instanceof Collection && 
+                                       DcModules.get(field.getReferenceIdx()).getType() == DcModule._TYPE_ASSOCIATE_MODULE) {
+                                
+                                StringBuilder sb = new StringBuilder();
+                                for (DcObject subDco : (Collection<DcObject>) o) {
+                                    if (subDco instanceof DcMapping)
+                                        subDco = ((DcMapping) subDco).getReferencedObject();
+    
+                                    if (subDco != null) { 
+                                        if (sb.length() > 0) sb.append(", ");
+                                        sb.append(((DcAssociate) subDco).getNameNormal()); 
+                                    }
                                 }
+                                s = sb.toString();
+                            } else {
+                                s = dco.getDisplayString(field.getIndex());
                             }
-                        } else {
-                            s = dco.getDisplayString(field.getIndex());
+                            
+                            writeValue(out, s, fieldCounter != 0);
+                            fieldCounter++;
                         }
-                        
-                        writeBytes(s, fieldCounter != 0);
-                        fieldCounter++;
                     }
+                    
+                    out.write("\r\n");
+                    client.notifyProcessed();
                 }
-                
-                writeBytes("\r\n", false);
-                counter++;
-                client.notifyProcessed();
-                bos.flush();
             }
             
-            bos.close();
+            cursor.close();
+            utilities.finish();
+            close();
             client.notify(DcResources.getText("lblExportHasFinished"));
         }        
     }       
@@ -26,18 +26,33 @@
 package net.datacrow.core.migration.itemexport;
 
 import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
 import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 
 import net.datacrow.core.DcConfig;
+import net.datacrow.core.DcRepository;
 import net.datacrow.core.clients.IItemExporterClient;
+import net.datacrow.core.data.DcItemCursor;
 import net.datacrow.core.migration.ItemMigrater;
+import net.datacrow.core.objects.DcField;
+import net.datacrow.core.objects.DcObject;
+import net.datacrow.core.server.Connector;
 
 public abstract class ItemExporter extends ItemMigrater {
     
+    protected static final int _BUFFER_SIZE = 65536;
+    
     protected Collection<String> items;
     protected BufferedOutputStream bos;
+    
+    private Writer writer;
 
     protected IItemExporterClient client;
     protected ItemExporterSettings settings;
@@ -85,9 +100,81 @@ public abstract class ItemExporter extends ItemMigrater {
         this.settings = properties;
     }
 
+    /**
+     * The fields to retrieve from the database: the exported fields and the fields 
+     * needed to describe the item. Multi-reference fields are excluded; these are 
+     * loaded per page (see {@link #initializeReferences(Collection)}).
+     */
+    protected int[] getFieldsToLoad() {
+        Collection<Integer> c = new ArrayList<Integer>();
+        DcField field;
+        for (int fieldIdx : getFields()) {
+            field = getModule().getField(fieldIdx);
+            if (field != null && field.getValueType() != DcRepository.ValueTypes._DCOBJECTCOLLECTION)
+                c.add(Integer.valueOf(fieldIdx));
+        }
+        
+        return getModule().getMinimalFields(c);
+    }
+    
+    private static int[] toArray(Collection<Integer> c) {
+        int[] fields = new int[c.size()];
+        int i = 0;
+        for (Integer fieldIdx : c)
+            fields[i++] = fieldIdx.intValue();
+        
+        return fields;
+    }
+    
+    /**
+     * Creates a cursor over the items to export. Only the fields to export are retrieved.
+     */
+    protected DcItemCursor getItemCursor() {
+        List<String> keys = items instanceof List ? (List<String>) items : new ArrayList<String>(items);
+        Connector conn = DcConfig.getInstance().getConnector();
+        return conn.getItemCursor(getModule().getIndex(), keys, getFieldsToLoad(), DcItemCursor._DEFAULT_PAGE_SIZE);
+    }
+    
+    /**
+     * Loads the multi-references of the exported fields for a page of items at once.
+     */
+    protected void initializeReferences(Collection<DcObject> page) {
+        Collection<Integer> c = new ArrayList<Integer>();
+        DcField field;
+        for (int fieldIdx : getFields()) {
+            field = getModule().getField(fieldIdx);
+            if (field != null && field.getValueType() == DcRepository.ValueTypes._DCOBJECTCOLLECTION)
+                c.add(Integer.valueOf(fieldIdx));
+        }
+        
+        if (!c.isEmpty())
+            DcConfig.getInstance().getConnector().initializeReferences(page, toArray(c), false);
+    }
+    
+    /**
+     * The (UTF-8) writer for the export file.
+     */
+    protected Writer getWriter() {
+        if (writer == null)
+            writer = new BufferedWriter(new OutputStreamWriter(bos, StandardCharsets.UTF_8), _BUFFER_SIZE);
+        
+        return writer;
+    }
+    
+    /**
+     * Flushes and closes the export file.
+     */
+    protected void close() throws IOException {
+        if (writer != null)
+            writer.close();
+        else
+            bos.close();
+    }
+
     @Override
     protected void initialize() throws Exception {
-        bos = new BufferedOutputStream(new FileOutputStream(file));
+        bos = new BufferedOutputStream(new FileOutputStream(file), _BUFFER_SIZE);
+        writer = null;
     }    
     
     public boolean isSuccessfull() {
@@ -26,6 +26,15 @@
 package net.datacrow.core.migration.itemexport;
 
 import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import net.datacrow.core.DcConfig;
 import net.datacrow.core.objects.DcImageIcon;
@@ -34,14 +43,32 @@ import net.datacrow.core.utilities.CoreUtilities;
 
 import org.apache.log4j.Logger;
 
+/**
+ * Helper for the item exporters. Copies the images of the exported items to the
+ * image directory of the export.
+ * <br>
+ * Unscaled images are copied as is (the stored file is not decoded). Scaled images are 
+ * created in the background on a bounded pool of threads; call {@link #finish()} to wait 
+ * for these to complete. The scaled images are cached (per source file and size) in the 
+ * data directory and reused by subsequent exports. The size of this cache is bounded; 
+ * the least recently used images are removed when an export finishes.
+ */
 public class ItemExporterUtilities {
 
     private static Logger logger = Logger.getLogger(ItemExporterUtilities.class.getName());
     
+    private static final int _THREADS = Math.max(1, Runtime.getRuntime().availableProcessors());
+    
+    public static final long _MAX_CACHE_SIZE = 50L * 1024L * 1024L;
+    
     private ItemExporterSettings settings;
     private String exportName;
     private String exportDir;
     
+    // the images exported so far
+    private final Set<String> exported = new HashSet<String>();
+    private ThreadPoolExecutor scaler;
+    
     public ItemExporterUtilities(String exportFilename, ItemExporterSettings settings) {
         File file = new File(exportFilename);
         
@@ -58,6 +85,10 @@ public class ItemExporterUtilities {
         return new File(exportDir, exportName +  "_images/").toString();
     }
     
+    private static File getCacheDir() {
+        return new File(DcConfig.getInstance().getDataDir(), "cache/images/");
+    }
+    
     public String getImageURL(Picture p) {
         String url = "";
         String imageFilename = (String) p.getValue(Picture._C_FILENAME); 
@@ -78,7 +109,90 @@ public class ItemExporterUtilities {
         return url;
     }
     
+    /**
+     * Waits for the scheduled images to be written.
+     */
+    public void finish() {
+        if (scaler == null) return;
+        
+        scaler.shutdown();
+        try {
+            while (!scaler.awaitTermination(1, TimeUnit.SECONDS)) {}
+        } catch (InterruptedException ie) {
+            logger.warn("Interrupted while waiting for the images to be exported", ie);
+            scaler.shutdownNow();
+        }
+        scaler = null;
+        
+        trimCache(_MAX_CACHE_SIZE);
+    }
+    
+    /**
+     * Removes the least recently used scaled images until the cache fits within the given size.
+     */
+    private static synchronized void trimCache(long maxSize) {
+        File[] files = getCacheDir().listFiles();
+        if (files == null) return;
+        
+        long size = 0;
+        for (File file : files)
+            size += file.length();
+        
+        if (size <= maxSize) return;
+        
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File f1, File f2) {
+                long l1 = f1.lastModified();
+                long l2 = f2.lastModified();
+                return l1 < l2 ? -1 : (l1 == l2 ? 0 : 1);
+            }
+        });
+        
+        for (int i = 0; i < files.length && size > maxSize; i++) {
+            size -= files[i].length();
+            if (!files[i].delete())
+                size += files[i].length();
+        }
+    }
+    
     private void copyImage(Picture picture, File target) {
+        // the same image is only exported once
+        if (!exported.add(target.toString()))
+            return;
+        
+        File source = new File(DcConfig.getInstance().getImageDir(), (String) picture.getValue(Picture._C_FILENAME));
+        
+        if (!source.exists()) {
+            // only available as an URL (client mode) or in memory 
+            copyLoadedImage(picture, target);
+        } else if (settings.getBoolean(ItemExporterSettings._SCALE_IMAGES)) {
+            getScaler().execute(new ScaleTask(
+                    source, target, 
+                    settings.getInt(ItemExporterSettings._IMAGE_WIDTH),
+                    settings.getInt(ItemExporterSettings._IMAGE_HEIGHT)));
+        } else {
+            try {
+                Files.copy(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            } catch (Exception e) {
+                logger.error("An error occurred while copying image to " + target, e);
+            }
+        }
+    }
+    
+    private ThreadPoolExecutor getScaler() {
+        if (scaler == null) {
+            scaler = new ThreadPoolExecutor(
+                    _THREADS, _THREADS, 30L, TimeUnit.SECONDS, 
+                    new ArrayBlockingQueue<Runnable>(_THREADS * 2),
+                    new ThreadPoolExecutor.CallerRunsPolicy());
+            // do not keep idle threads alive in case the export is aborted
+            scaler.allowCoreThreadTimeOut(true);
+        }
+        return scaler;
+    }
+    
+    private void copyLoadedImage(Picture picture, File target) {
         try {
             picture.loadImage(false);
             DcImageIcon icon = (DcImageIcon) picture.getValue(Picture._D_IMAGE);
@@ -95,5 +209,49 @@ public class ItemExporterUtilities {
         } catch (Exception e) {
             logger.error("An error occurred while copying image to " + target, e);
         }
-    }    
+    }
+    
+    /**
+     * Writes the scaled version of an image. The scaled image is taken from the cache 
+     * when it is still up to date.
+     */
+    private static class ScaleTask implements Runnable {
+        
+        private final File source;
+        private final File target;
+        private final int width;
+        private final int height;
+        
+        public ScaleTask(File source, File target, int width, int height) {
+            this.source = source;
+            this.target = target;
+            this.width = width;
+            this.height = height;
+        }
+        
+        @Override
+        public void run() {
+            File cached = new File(getCacheDir(), source.getName() + "_" + width + "x" + height + ".png");
+            
+            try {
+                if (!cached.exists() || cached.lastModified() < source.lastModified()) {
+                    cached.getParentFile().mkdirs();
+                    
+                    DcImageIcon icon = new DcImageIcon(source);
+                    File tmp = File.createTempFile(cached.getName(), ".tmp", cached.getParentFile());
+                    CoreUtilities.writeScaledImageToFile(icon, tmp, DcImageIcon._TYPE_PNG, width, height);
+                    icon.flush();
+                    
+                    Files.move(tmp.toPath(), cached.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                } else {
+                    // marks the image as recently used
+                    cached.setLastModified(System.currentTimeMillis());
+                }
+                
+                Files.copy(cached.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            } catch (Exception e) {
+                logger.error("An error occurred while copying image to " + target, e);
+            }
+        }
+    }
 }
@@ -25,24 +25,30 @@
 
 package net.datacrow.core.migration.itemexport;
 
-import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 
 import net.datacrow.core.utilities.Converter;
 
 public abstract class XmlBaseWriter {
 
+    private static final int _BUFFER_SIZE = 65536;
+    private static final char[] spaces = "                                ".toCharArray();
+    
     protected final String uberTag = "data-crow-objects";
-    protected final BufferedOutputStream bos;
+    protected final Writer out;
 
-    protected XmlBaseWriter(BufferedOutputStream bos) {
-        this.bos = bos;
+    protected XmlBaseWriter(OutputStream os) {
+        this.out = new BufferedWriter(new OutputStreamWriter(os, StandardCharsets.UTF_8), _BUFFER_SIZE);
     }
 
     protected XmlBaseWriter(String filename) throws IOException {
-        FileOutputStream fos = new FileOutputStream(filename);
-        bos = new BufferedOutputStream(fos);
+        this(new FileOutputStream(filename));
     }    
     
     protected String getValidTag(String s) {
@@ -50,18 +56,43 @@ public abstract class XmlBaseWriter {
     }
     
     protected void newLine() throws IOException {
-        bos.write("\r\n".getBytes());
+        out.write("\r\n");
     }
     
     protected void writeLine(String s, int level) throws IOException {
-        for (int i = 0; i < level; i++)
-            bos.write("    ".getBytes());
-
+        ident(level * 4);
         writeTag(s);
         newLine();
     }
     
+    protected void ident(int x) throws IOException {
+        for (int i = x; i > 0; i -= spaces.length)
+            out.write(spaces, 0, Math.min(i, spaces.length));
+    }
+    
     protected void writeTag(String s) throws IOException {
-        bos.write(s.getBytes("UTF8"));
+        out.write(s);
+    }
+    
+    /**
+     * Writes the text, escaping the XML special characters.
+     */
+    protected void write(String s) throws IOException {
+        char c;
+        for (int i = 0; i < s.length(); i++) {
+            c = s.charAt(i);
+            switch (c) {
+            case '&': out.write("&amp;"); break;
+            case '<': out.write("&lt;"); break;
+            case '>': out.write("&gt;"); break;
+            case '"': out.write("&quot;"); break;
+            case '\'': out.write("&apos;"); break;
+            default: out.write(c);
+            }
+        }
+    }
+    
+    protected void close() throws IOException {
+        out.close();
     }
 }
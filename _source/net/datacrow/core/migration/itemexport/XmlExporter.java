@@ -26,16 +26,14 @@
 package net.datacrow.core.migration.itemexport;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Collection;
+import java.util.List;
 
-import net.datacrow.core.DcConfig;
 import net.datacrow.core.DcThread;
+import net.datacrow.core.data.DcItemCursor;
 import net.datacrow.core.modules.DcModules;
 import net.datacrow.core.objects.DcField;
 import net.datacrow.core.objects.DcObject;
 import net.datacrow.core.resources.DcResources;
-import net.datacrow.core.server.Connector;
 
 import org.apache.log4j.Logger;
 
@@ -64,7 +62,7 @@ public class XmlExporter extends ItemExporter {
   
     @Override
     public DcThread getTask() {
-        return new Task(items);
+        return new Task();
     }
 
     @Override
@@ -74,13 +72,8 @@ public class XmlExporter extends ItemExporter {
     
     private class Task extends DcThread {
         
-        private Collection<String> items;
-        
-        public Task(Collection<String> items) {
+        public Task() {
             super(null, "XML export to " + file);
-            
-            this.items = new ArrayList<String>();
-            this.items.addAll(items);            
         }
 
         @Override
@@ -101,7 +94,6 @@ public class XmlExporter extends ItemExporter {
                 logger.error(DcResources.getText("msgErrorWhileCreatingReport", exp.toString()), exp);
                 client.notify(DcResources.getText("msgErrorWhileCreatingReport", exp.toString()));
             } finally {
-                if (items != null) items.clear();
                 client.notifyTaskCompleted(true, null);
             }
         }
@@ -118,61 +110,65 @@ public class XmlExporter extends ItemExporter {
             schema.create(dco);
         }
         
-        private void generateXml(String schemaFile) throws Exception {
-            if (items == null || items.size() == 0) return;
-            
-            XmlWriter writer = new XmlWriter(bos, file.toString(), schemaFile, settings);
-            writer.startDocument();
+        private void write(XmlWriter writer, DcObject dco) throws Exception {
+            writer.startEntity(dco);
+            client.notify(DcResources.getText("msgExportingX", dco.toString()));
+
+            writer.writeAttribute(dco, DcObject._SYS_MODULE);
             
-            Connector conn = DcConfig.getInstance().getConnector();
-            DcObject dco;
-            for (String item : items) {
-            	
-                if (isCanceled()) break;
-                
-                dco = conn.getItem(getModule().getIndex(), item, null);
-                
-                writer.startEntity(dco);
-                client.notify(DcResources.getText("msgExportingX", dco.toString()));
+            for (int fieldIdx : getFields()) {
+                DcField field = dco.getField(fieldIdx);
+                if (field != null && !field.getSystemName().endsWith("_persist")) 
+                    writer.writeAttribute(dco, field.getIndex());
+            }
 
-                writer.writeAttribute(dco, DcObject._SYS_MODULE);
+            if (processChildren) {
+                if (dco.getModule().getChild() != null) {
                 
-                for (int fieldIdx : getFields()) {
-                    DcField field = dco.getField(fieldIdx);
-                    if (field != null && !field.getSystemName().endsWith("_persist")) 
-                        writer.writeAttribute(dco, field.getIndex());
-                }
-
-                if (processChildren) {
-                    if (dco.getModule().getChild() != null) {
+                    dco.loadChildren(null);
                     
-                        dco.loadChildren(null);
-                        
-                        writer.startRelations(dco.getModule().getChild());
-                        writer.setIdent(2);
-    
-                        for (DcObject child : dco.getChildren()) {
-                            writer.startEntity(child);
-                            writer.writeAttribute(child, DcObject._SYS_MODULE);
-                            int[] fields = child.getFieldIndices();
-                            for (int i = 0; i < fields.length; i++)
-                                writer.writeAttribute(child, fields[i]);
-                            
-                            writer.endEntity(child);
-                        }
+                    writer.startRelations(dco.getModule().getChild());
+                    writer.setIdent(2);
+
+                    for (DcObject child : dco.getChildren()) {
+                        writer.startEntity(child);
+                        writer.writeAttribute(child, DcObject._SYS_MODULE);
+                        int[] fields = child.getFieldIndices();
+                        for (int i = 0; i < fields.length; i++)
+                            writer.writeAttribute(child, fields[i]);
                         
-                        writer.resetIdent();
-                        writer.endRelations(dco.getModule().getChild());
+                        writer.endEntity(child);
                     }
-                }
                     
-                writer.endEntity(dco);
-                client.notifyProcessed();
-                bos.flush();
+                    writer.resetIdent();
+                    writer.endRelations(dco.getModule().getChild());
+                }
+            }
                 
-                // release the object
-                dco.destroy();
+            writer.endEntity(dco);
+            client.notifyProcessed();
+            
+            // release the object
+            dco.destroy();
+        }
+        
+        private void generateXml(String schemaFile) throws Exception {
+            if (items == null || items.size() == 0) return;
+            
+            XmlWriter writer = new XmlWriter(bos, file.toString(), schemaFile, settings);
+            writer.startDocument();
+            
+            DcItemCursor cursor = getItemCursor();
+            while (!isCanceled() && cursor.hasNext()) {
+                List<DcObject> page = cursor.next();
+                initializeReferences(page);
+                
+                for (DcObject dco : page) {
+                    if (isCanceled()) break;
+                    write(writer, dco);
+                }
             }
+            cursor.close();
             
             writer.endDocument();
             client.notify(DcResources.getText("lblExportHasFinished"));
@@ -203,8 +203,7 @@ public class XmlSchemaWriter extends XmlBaseWriter {
     private void endDocument() throws IOException {
         writeReferences();
         writeLine("</xsd:schema>", 0);
-        bos.flush();
-        bos.close();
+        close();
     }
     
     private void writeReferences() throws IOException {
@@ -222,4 +221,4 @@ public class XmlSchemaWriter extends XmlBaseWriter {
             writeLine("</xsd:element>", 1);
         }        
     }
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -25,10 +25,10 @@
 
 package net.datacrow.core.migration.itemexport;
 
-import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.text.SimpleDateFormat;
 import java.util.Collection;
 import java.util.Date;
@@ -52,11 +52,11 @@ public class XmlWriter extends XmlBaseWriter {
     private final int stepSize = 4;
     
     public XmlWriter(String filename, String schemaFile, ItemExporterSettings properties) throws IOException {
-        this(new BufferedOutputStream(new FileOutputStream(filename)), filename, schemaFile, properties);
+        this(new FileOutputStream(filename), filename, schemaFile, properties);
     }
     
-    public XmlWriter(BufferedOutputStream bos, String filename, String schemaFile, ItemExporterSettings settings) {
-        super(bos);
+    public XmlWriter(OutputStream os, String filename, String schemaFile, ItemExporterSettings settings) {
+        super(os);
         
         this.utilities = new ItemExporterUtilities(filename, settings);
         this.schemaFile = schemaFile;
@@ -87,7 +87,8 @@ public class XmlWriter extends XmlBaseWriter {
     public void endDocument() throws IOException  {
         writeTag("</" + uberTag + ">");
         newLine();
-        bos.close();
+        close();
+        utilities.finish();
     }    
     
     public void startEntity(DcObject dco) throws IOException {
@@ -119,7 +120,7 @@ public class XmlWriter extends XmlBaseWriter {
             writeTag("<" + tag + "-list>");
             
             if (dco.isFilled(field)) {
-                StringBuffer sb = new StringBuffer();
+                StringBuilder sb = new StringBuilder();
                 for (DcObject ref : (Collection<DcObject>) dco.getValue(field)) {
                     if (sb.length() > 0) sb.append(", ");
                     sb.append(ref.toString());
@@ -190,21 +191,4 @@ public class XmlWriter extends XmlBaseWriter {
             write(text);
         }
     }
-    
-    private void ident(int x) throws IOException {
-        String s = "";
-        for (int i = 0; i < x; i++)
-            s += " ";
-        bos.write(s.getBytes());
-    }    
-    
-    private void write(String value) throws IOException {
-        String s = value;
-        s = s.replaceAll("&", "&amp;");
-        s = s.replaceAll("<", "&lt;");
-        s = s.replaceAll(">", "&gt;");
-        s = s.replaceAll("\"", "&quot;");
-        s = s.replaceAll("'", "&apos;");
-        bos.write(s.getBytes("UTF8"));
-    }    
 }
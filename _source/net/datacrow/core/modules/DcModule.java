@@ -49,6 +49,7 @@ import net.datacrow.core.objects.DcField;
 import net.datacrow.core.objects.DcImageIcon;
 import net.datacrow.core.objects.DcMediaObject;
 import net.datacrow.core.objects.DcObject;
+import net.datacrow.core.objects.DcValueLayout;
 import net.datacrow.core.objects.helpers.Container;
 import net.datacrow.core.objects.helpers.Item;
 import net.datacrow.core.resources.DcResources;
@@ -149,6 +150,8 @@ public class DcModule implements Comparable<DcModule>, Serializable {
     private String icon32filename;
 
     protected Map<Integer, DcField> fields = new LinkedHashMap<Integer, DcField>();
+    
+    private transient volatile DcValueLayout layout;
     private Map<Integer, DcField> systemFields = new LinkedHashMap<Integer, DcField>();
     
     private Collection<DcField> sortedFields;
@@ -716,6 +719,20 @@ public class DcModule implements Comparable<DcModule>, Serializable {
      */
     public void addField(DcField field) {
         fields.put(field.getIndex(), field);
+        layout = null;
+    }
+    
+    /**
+     * The layout of the values of the items of this module. The layout is created on 
+     * first use and recreated when fields are added.
+     */
+    public DcValueLayout getValueLayout() {
+        DcValueLayout current = layout;
+        if (current == null || current.size() != fields.size()) {
+            current = new DcValueLayout(fields.keySet());
+            layout = current;
+        }
+        return current;
     }
     
 //    /**
@@ -30,10 +30,17 @@ import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import net.datacrow.core.DcConfig;
 import net.datacrow.core.DcRepository;
@@ -152,16 +159,34 @@ public class DcModules implements Serializable {
 	        	propertyBaseModules.put(m.getIndex(), m);
 	        }
 
-	        // reset the module settings
-	        DcModuleSettings ms;
-	        for (DcModule m : modules.values()) {
-	            m.getSettings().getSettings().setSettingsFile(
-	                    new File(DcConfig.getInstance().getModuleSettingsDir(), m.getName().toLowerCase() + ".properties"));
-	            ms = new DcModuleSettings(m);
-	            for (Setting setting : ms.getSettings().getSettings()) {
-	                if (!setting.isReadonly()) 
-	                    m.setSetting(setting.getKey(), setting.getValue());
-	            }   
+	        // reset the module settings; the settings of each module are read independently
+	        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+	        for (final DcModule m : modules.values()) {
+	            tasks.add(new Callable<Void>() {
+	                @Override
+	                public Void call() {
+        	            m.getSettings().getSettings().setSettingsFile(
+        	                    new File(DcConfig.getInstance().getModuleSettingsDir(), m.getName().toLowerCase() + ".properties"));
+        	            DcModuleSettings ms = new DcModuleSettings(m);
+        	            for (Setting setting : ms.getSettings().getSettings()) {
+        	                if (!setting.isReadonly()) 
+        	                    m.setSetting(setting.getKey(), setting.getValue());
+        	            }
+        	            return null;
+	                }
+	            });
+	        }
+	        
+	        try {
+	            for (Future<Void> future : invokeAll(tasks)) {
+	                try {
+	                    future.get();
+	                } catch (ExecutionException e) {
+	                    logger.error("An error occurred while initializing the module settings", e.getCause());
+	                }
+	            }
+	        } catch (InterruptedException e) {
+	            logger.error("Initialization of the module settings was interrupted", e);
 	        }
     	} else {
 	        propertyBaseModules.clear();
@@ -447,15 +472,13 @@ public class DcModules implements Serializable {
         
         if (moduleDirFiles == null) return;
         
+        List<String> filenames = new ArrayList<String>();
         for (String filename : moduleDirFiles) {
-            
-            if (new File(filename).getName().startsWith(".#"))
-                continue;
-            
-            ModuleJar mj = new ModuleJar(filename);
-            mj.load();
-                
-            XmlModule xmlModule = mj.getModule();
+            if (!new File(filename).getName().startsWith(".#"))
+                filenames.add(filename);
+        }
+        
+        for (XmlModule xmlModule : loadXmlModules(filenames)) {
             if (xmlModule.getModuleClass().equals(DcPropertyModule.class))
                 registerBasePropertyModule((DcPropertyModule) convert(xmlModule));
             else if (xmlModule.hasDependingModules()) 
@@ -478,6 +501,103 @@ public class DcModules implements Serializable {
         }
     }
     
+    /**
+     * Reads the module definitions of the module jars. The jars are read and parsed in parallel; 
+     * jars which have not been altered since the last start are taken from the module snapshot 
+     * (see {@link ModuleSnapshot}). The order of the supplied file names is kept.
+     */
+    private static List<XmlModule> loadXmlModules(List<String> filenames) 
+            throws ModuleUpgradeException, InvalidModuleXmlException, ModuleJarException {
+        
+        long start = new Date().getTime();
+        
+        ModuleSnapshot snapshot = ModuleSnapshot.getDefault();
+        snapshot.load();
+        
+        List<File> jars = new ArrayList<File>();
+        List<XmlModule> result = new ArrayList<XmlModule>();
+        Map<Integer, Callable<XmlModule>> tasks = new LinkedHashMap<Integer, Callable<XmlModule>>();
+        
+        for (String filename : filenames) {
+            final ModuleJar mj = new ModuleJar(filename);
+            XmlModule xmlModule = snapshot.get(mj.getFile());
+            
+            if (xmlModule == null) {
+                tasks.put(Integer.valueOf(result.size()), new Callable<XmlModule>() {
+                    @Override
+                    public XmlModule call() throws Exception {
+                        mj.load();
+                        return mj.getModule();
+                    }
+                });
+            }
+            
+            jars.add(mj.getFile());
+            result.add(xmlModule);
+        }
+        
+        List<Future<XmlModule>> futures;
+        try {
+            futures = invokeAll(new ArrayList<Callable<XmlModule>>(tasks.values()));
+        } catch (InterruptedException e) {
+            throw new ModuleJarException(e, "Loading of the module jars was interrupted");
+        }
+        
+        int i = 0;
+        for (Integer idx : tasks.keySet()) {
+            try {
+                XmlModule xmlModule = futures.get(i++).get();
+                result.set(idx.intValue(), xmlModule);
+                snapshot.put(jars.get(idx.intValue()), xmlModule);
+            } catch (InterruptedException e) {
+                throw new ModuleJarException(e, "Loading of the module jars was interrupted");
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof ModuleJarException)
+                    throw (ModuleJarException) cause;
+                else if (cause instanceof InvalidModuleXmlException)
+                    throw (InvalidModuleXmlException) cause;
+                else if (cause instanceof ModuleUpgradeException)
+                    throw (ModuleUpgradeException) cause;
+                else 
+                    throw new ModuleJarException(cause instanceof Exception ? (Exception) cause : e);
+            }
+        }
+        
+        snapshot.retain(jars);
+        snapshot.save();
+        
+        logger.info("Loaded " + result.size() + " module definitions (" + (result.size() - tasks.size()) + 
+                    " from the module snapshot) in " + (new Date().getTime() - start) + "ms");
+        
+        return result;
+    }
+    
+    /**
+     * Executes the tasks in parallel, using at most one thread per processor.
+     * @return The futures, in the order of the tasks.
+     */
+    private static <T> List<Future<T>> invokeAll(List<Callable<T>> tasks) throws InterruptedException {
+        if (tasks.isEmpty())
+            return new ArrayList<Future<T>>();
+        
+        int threads = Math.min(tasks.size(), Runtime.getRuntime().availableProcessors());
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "module-loader");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        
+        try {
+            return executor.invokeAll(tasks);
+        } finally {
+            executor.shutdown();
+        }
+    }
+    
     /**
      * Converts a XmlModule to a real module.
      */
@@ -929,4 +1049,4 @@ public class DcModules implements Serializable {
         
         return items;
     } 
-}
\ No newline at end of file
+}
\ No newline at end of file
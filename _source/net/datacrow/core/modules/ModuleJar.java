@@ -25,13 +25,12 @@
 
 package net.datacrow.core.modules;
 
-import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.Enumeration;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipException;
 import java.util.zip.ZipFile;
@@ -135,51 +134,43 @@ public class ModuleJar {
         return new File(DcConfig.getInstance().getModuleDir(), filename).delete();
     }
     
+    /**
+     * The module jar file.
+     */
+    public File getFile() {
+        return new File(DcConfig.getInstance().getModuleDir(), filename);
+    }
+    
     /**
      * Loads the module jar's content into memory. Loads the icons and the XML
-     * definition.
+     * definition. Only the entries needed are read.
      * @throws ModuleUpgradeException
      * @throws ModuleJarException
      * @throws InvalidModuleXmlException
      */
     public void load() throws ModuleUpgradeException, ModuleJarException, InvalidModuleXmlException {
         
+        ZipFile zf = null;
         try {
             logger.debug("Loading module JAR " + filename);
             
-            ZipFile zf = new ZipFile(DcConfig.getInstance().getModuleDir() + filename);
+            zf = new ZipFile(getFile());
 
-            Map<String, byte[]> content = new HashMap<String, byte[]>();
+            // first get the XML file
+            ZipEntry xml = null;
             Enumeration<? extends ZipEntry> list = zf.entries();
-            while (list.hasMoreElements()) {
+            while (list.hasMoreElements() && xml == null) {
                 ZipEntry ze = list.nextElement();
-
-                BufferedInputStream bis = new BufferedInputStream(zf.getInputStream(ze));
-                int size = (int) ze.getSize();
-                byte[] bytes = new byte[size];
-                bis.read(bytes);
-                
-                String filename = ze.getName();
-                content.put(filename, bytes);
-                
-                bis.close();
-            }        
-            
-            // first get the XML file
-            for (String filename : content.keySet()) {
-                if (filename.toLowerCase().endsWith("xml")) {
-                    String UTF8 = new String(content.get(filename), "UTF-8");
-                    module = new XmlModule(UTF8.getBytes("UTF-8"));
-                }
+                if (ze.getName().toLowerCase().endsWith("xml"))
+                    xml = ze;
             }
             
-            byte[] icon16 = content.get(module.getIcon16Filename());
-            byte[] icon32 = content.get(module.getIcon32Filename());
+            if (xml == null)
+                throw new ModuleJarException(new FileNotFoundException("module.xml"), "No module definition found in " + filename);
             
-            module.setIcon16(icon16);
-            module.setIcon32(icon32);
-            
-            zf.close();
+            module = new XmlModule(read(zf, xml));
+            module.setIcon16(read(zf, module.getIcon16Filename()));
+            module.setIcon32(read(zf, module.getIcon32Filename()));
         
         } catch (ZipException e) {
             throw new ModuleJarException(e, "An error occured while reading zipfile " + filename);
@@ -189,6 +180,33 @@ public class ModuleJar {
             throw new ModuleJarException(e);
         } catch (IOException e) {
             throw new ModuleJarException(e);
+        } finally {
+            try {
+                if (zf != null) zf.close();
+            } catch (IOException e) {
+                logger.debug("Could not close module JAR " + filename, e);
+            }
+        }
+    }
+    
+    private byte[] read(ZipFile zf, String name) throws IOException {
+        return name != null ? read(zf, zf.getEntry(name)) : null;
+    }
+    
+    private byte[] read(ZipFile zf, ZipEntry ze) throws IOException {
+        if (ze == null) return null;
+        
+        InputStream is = zf.getInputStream(ze);
+        try {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream(ze.getSize() > 0 ? (int) ze.getSize() : 4096);
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = is.read(buffer)) != -1)
+                bos.write(buffer, 0, read);
+            
+            return bos.toByteArray();
+        } finally {
+            is.close();
         }
     }
 }
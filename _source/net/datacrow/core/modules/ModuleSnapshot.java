@@ -0,0 +1,199 @@
+/******************************************************************************
+ *                                     __                                     *
+ *                              <-----/@@\----->                              *
+ *                             <-< <  \\//  > >->                             *
+ *                               <-<-\ __ /->->                               *
+ *                               Data /  \ Crow                               *
+ *                                   ^    ^                                   *
+ *                              info@datacrow.net                             *
+ *                                                                            *
+ *                       This file is part of Data Crow.                      *
+ *       Data Crow is free software; you can redistribute it and/or           *
+ *        modify it under the terms of the GNU General Public                 *
+ *       License as published by the Free Software Foundation; either         *
+ *              version 3 of the License, or any later version.               *
+ *                                                                            *
+ *        Data Crow is distributed in the hope that it will be useful,        *
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *           MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.             *
+ *           See the GNU General Public License for more details.             *
+ *                                                                            *
+ *        You should have received a copy of the GNU General Public           *
+ *  License along with this program. If not, see http://www.gnu.org/licenses  *
+ *                                                                            *
+ ******************************************************************************/
+
+package net.datacrow.core.modules;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+
+import net.datacrow.core.DcConfig;
+import net.datacrow.core.modules.xml.XmlModule;
+
+import org.apache.log4j.Logger;
+
+/**
+ * A binary snapshot of the parsed module definitions (see {@link XmlModule}).
+ * Module jars which have not been altered since the snapshot was created do not have 
+ * to be read and parsed on startup. An entry is only valid as long as the modification
+ * date and the size of its module jar are unchanged. The whole snapshot is discarded 
+ * for a different snapshot format or application version.
+ * 
+ * @author Robert Jan van der Waals
+ */
+public class ModuleSnapshot {
+
+    private transient static Logger logger = Logger.getLogger(ModuleSnapshot.class.getName());
+    
+    private static final int _VERSION = 1;
+    
+    private final File file;
+    private final Map<String, Entry> entries = new HashMap<String, Entry>();
+    
+    private boolean changed = false;
+    
+    /**
+     * Creates a new (empty) snapshot.
+     * @param file The snapshot file.
+     */
+    public ModuleSnapshot(File file) {
+        this.file = file;
+    }
+    
+    /**
+     * The default snapshot, stored in the data folder.
+     */
+    public static ModuleSnapshot getDefault() {
+        return new ModuleSnapshot(new File(DcConfig.getInstance().getDataDir(), "cache/modules.snapshot"));
+    }
+
+    /**
+     * Reads the snapshot from disk. An invalid or outdated snapshot is ignored.
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized void load() {
+        entries.clear();
+        
+        if (!file.exists()) return;
+        
+        ObjectInputStream in = null;
+        try {
+            in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() == _VERSION && getApplicationVersion().equals(in.readUTF()))
+                entries.putAll((Map<String, Entry>) in.readObject());
+            else 
+                changed = true;
+        } catch (Exception e) {
+            logger.debug("Module snapshot " + file + " could not be read and will be recreated", e);
+            entries.clear();
+            changed = true;
+        } finally {
+            try {
+                if (in != null) in.close();
+            } catch (Exception e) {
+                logger.debug(e, e);
+            }
+        }
+    }
+    
+    /**
+     * Writes the snapshot to disk, if it has been altered.
+     */
+    public synchronized void save() {
+        if (!changed) return;
+        
+        File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+        ObjectOutputStream out = null;
+        try {
+            file.getParentFile().mkdirs();
+            
+            out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+            out.writeInt(_VERSION);
+            out.writeUTF(getApplicationVersion());
+            out.writeObject(new HashMap<String, Entry>(entries));
+            out.close();
+            out = null;
+            
+            if ((!file.exists() || file.delete()) && tmp.renameTo(file))
+                changed = false;
+        } catch (Exception e) {
+            logger.warn("Module snapshot " + file + " could not be written", e);
+        } finally {
+            try {
+                if (out != null) out.close();
+            } catch (Exception e) {
+                logger.debug(e, e);
+            }
+            
+            if (tmp.exists()) tmp.delete();
+        }
+    }
+    
+    /**
+     * Retrieves the parsed module definition.
+     * @param jar The module jar file.
+     * @return The module or null if not present or outdated.
+     */
+    public synchronized XmlModule get(File jar) {
+        Entry entry = entries.get(jar.getName());
+        return entry != null && entry.isValid(jar) ? entry.module : null;
+    }
+    
+    /**
+     * Stores the parsed module definition. Note that the module is written when the 
+     * snapshot is saved; changes made to the module afterwards are not reflected.
+     * @param jar The module jar file.
+     * @param module The module definition as parsed from the jar.
+     */
+    public synchronized void put(File jar, XmlModule module) {
+        entries.put(jar.getName(), new Entry(jar, module));
+        changed = true;
+    }
+    
+    /**
+     * Removes the entries of module jars which no longer exist.
+     */
+    public synchronized void retain(Iterable<File> jars) {
+        Map<String, Entry> existing = new HashMap<String, Entry>();
+        for (File jar : jars) {
+            if (entries.containsKey(jar.getName()))
+                existing.put(jar.getName(), entries.get(jar.getName()));
+        }
+        
+        changed |= existing.size() != entries.size();
+        entries.clear();
+        entries.putAll(existing);
+    }
+    
+    private static String getApplicationVersion() {
+        return String.valueOf(DcConfig.getInstance().getVersion());
+    }
+    
+    private static class Entry implements Serializable {
+        
+        private static final long serialVersionUID = 1L;
+
+        private final long lastModified;
+        private final long length;
+        private final XmlModule module;
+        
+        private Entry(File jar, XmlModule module) {
+            this.lastModified = jar.lastModified();
+            this.length = jar.length();
+            this.module = module;
+        }
+        
+        private boolean isValid(File jar) {
+            return jar.lastModified() == lastModified && jar.length() == length;
+        }
+    }
+}
@@ -68,7 +68,7 @@ public class XmlModule extends XmlObject {
     
     private static final long serialVersionUID = 3672118094404831329L;
 
-    private Document document;
+    private transient Document document;
     
     private Class moduleClass;
     private Class object;
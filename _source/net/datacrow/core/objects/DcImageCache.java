@@ -0,0 +1,398 @@
+/******************************************************************************
+ *                                     __                                     *
+ *                              <-----/@@\----->                              *
+ *                             <-< <  \\//  > >->                             *
+ *                               <-<-\ __ /->->                               *
+ *                               Data /  \ Crow                               *
+ *                                   ^    ^                                   *
+ *                              info@datacrow.net                             *
+ *                                                                            *
+ *                       This file is part of Data Crow.                      *
+ *       Data Crow is free software; you can redistribute it and/or           *
+ *        modify it under the terms of the GNU General Public                 *
+ *       License as published by the Free Software Foundation; either         *
+ *              version 3 of the License, or any later version.               *
+ *                                                                            *
+ *        Data Crow is distributed in the hope that it will be useful,        *
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *           MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.             *
+ *           See the GNU General Public License for more details.             *
+ *                                                                            *
+ *        You should have received a copy of the GNU General Public           *
+ *  License along with this program. If not, see http://www.gnu.org/licenses  *
+ *                                                                            *
+ ******************************************************************************/
+
+package net.datacrow.core.objects;
+
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Caches decoded images by their source (file or URL) and resolution. The cache is 
+ * bounded by the memory used by the decoded images (width * height * 4 bytes); the 
+ * least recently used images are evicted first. Under memory pressure the cache is 
+ * trimmed by the {@link net.datacrow.core.utilities.SystemMonitor}.
+ * <br>
+ * Images are decoded with ImageIO. For the reduced resolutions only every n-th pixel
+ * is read (subsampling) which avoids decoding the full image. Use {@link #load(String, int)}
+ * to decode the image in the background, for example to keep the UI responsive.
+ * <br>
+ * Cached images are shared; every request returns a new {@link DcImageIcon} wrapping 
+ * the cached image.
+ * 
+ * @author Robert Jan van der Waals
+ */
+public class DcImageCache {
+
+    private transient static Logger logger = Logger.getLogger(DcImageCache.class.getName());
+    
+    public static final int _RESOLUTION_FULL = 0;
+    public static final int _RESOLUTION_THUMBNAIL = 1;
+    public static final int _RESOLUTION_ICON = 2;
+    
+    private static final int[][] sizes = {{-1, -1}, {250, 200}, {16, 16}};
+    
+    // the time images retrieved from an URL are considered up to date
+    private static final long _URL_EXPIRY_MS = 60000;
+    
+    private static final DcImageCache instance = new DcImageCache();
+    
+    // cached images in order of use (least recently used first)
+    private final LinkedHashMap<String, CachedImage> images = new LinkedHashMap<String, CachedImage>(64, 0.75f, true);
+    // the images currently being decoded
+    private final Map<String, Future<Image>> loading = new HashMap<String, Future<Image>>();
+    
+    private final ExecutorService decoder;
+    
+    private long maxWeight = Runtime.getRuntime().maxMemory() / 10;
+    private long weight = 0;
+    
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+    
+    private DcImageCache() {
+        decoder = Executors.newFixedThreadPool(2, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "Image-Decoder-Thread");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+    }
+    
+    public static DcImageCache getInstance() {
+        return instance;
+    }
+    
+    /**
+     * The maximum memory (in bytes) used by the cached images.
+     */
+    public synchronized long getMaxWeight() {
+        return maxWeight;
+    }
+
+    public synchronized void setMaxWeight(long maxWeight) {
+        this.maxWeight = Math.max(0, maxWeight);
+        trim(this.maxWeight);
+    }
+    
+    /**
+     * The memory (in bytes) currently used by the cached images.
+     */
+    public synchronized long getWeight() {
+        return weight;
+    }
+    
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+    
+    /**
+     * Retrieves the image. Waits for the image to be decoded when not cached.
+     * @param source The file name or URL of the image.
+     * @param resolution The resolution; {@link #_RESOLUTION_FULL}, {@link #_RESOLUTION_THUMBNAIL}
+     * or {@link #_RESOLUTION_ICON}.
+     * @return The image or null if it could not be read.
+     */
+    public DcImageIcon get(String source, int resolution) {
+        try {
+            return toIcon(source, load(source, resolution).get());
+        } catch (Exception e) {
+            logger.error("Could not load image " + source, e);
+            return null;
+        }
+    }
+    
+    /**
+     * Retrieves the image in the background.
+     * @see #get(String, int)
+     * @return The image (or null if it could not be read) once decoded.
+     */
+    public Future<Image> load(final String source, final int resolution) {
+        final String key = getKey(source, resolution);
+        final long modified = getLastModified(source);
+        
+        synchronized (this) {
+            CachedImage ci = images.get(key);
+            
+            if (ci != null && ci.isValid(modified)) {
+                hits++;
+                return new Loaded(ci.image);
+            } else if (ci != null) {
+                remove(key);
+            }
+            
+            Future<Image> future = loading.get(key);
+            if (future == null) {
+                misses++;
+                future = decoder.submit(new Callable<Image>() {
+                    @Override
+                    public Image call() throws Exception {
+                        Image image = null;
+                        try {
+                            image = decode(source, resolution);
+                            put(key, image, modified);
+                        } finally {
+                            synchronized (DcImageCache.this) {
+                                loading.remove(key);
+                            }
+                        }
+                        return image;
+                    }
+                });
+                loading.put(key, future);
+            }
+            return future;
+        }
+    }
+    
+    /**
+     * Removes the images of the specified source, for all resolutions.
+     */
+    public synchronized void invalidate(String source) {
+        for (int resolution = 0; resolution < sizes.length; resolution++)
+            remove(getKey(source, resolution));
+    }
+    
+    /**
+     * Evicts the least recently used images until the memory used is below the 
+     * specified amount.
+     */
+    public synchronized void trim(long max) {
+        Iterator<Map.Entry<String, CachedImage>> it = images.entrySet().iterator();
+        while (weight > max && it.hasNext()) {
+            weight -= it.next().getValue().weight;
+            it.remove();
+            evictions++;
+        }
+    }
+    
+    public synchronized void clear() {
+        evictions += images.size();
+        images.clear();
+        weight = 0;
+    }
+    
+    public synchronized void logStatistics() {
+        logger.info("Image cache: " + images.size() + " images (" + (weight / 1024) + " KB), " + 
+                hits + " hits, " + misses + " misses, " + evictions + " evictions");
+    }
+    
+    private synchronized void put(String key, Image image, long modified) {
+        if (image == null) return;
+        
+        CachedImage ci = new CachedImage(image, modified);
+        if (ci.weight > maxWeight) return;
+        
+        remove(key);
+        images.put(key, ci);
+        weight += ci.weight;
+        trim(maxWeight);
+    }
+    
+    private void remove(String key) {
+        CachedImage ci = images.remove(key);
+        if (ci != null) weight -= ci.weight;
+    }
+    
+    private String getKey(String source, int resolution) {
+        return resolution + ":" + source;
+    }
+    
+    private boolean isURL(String source) {
+        return source.startsWith("http:") || source.startsWith("https:") || source.startsWith("file:");
+    }
+    
+    /**
+     * The modification time of the source, used to detect changed images.
+     */
+    private long getLastModified(String source) {
+        return isURL(source) ? 0 : new File(source).lastModified();
+    }
+    
+    private DcImageIcon toIcon(String source, Image image) {
+        if (image == null) return null;
+        
+        DcImageIcon icon = new DcImageIcon(image);
+        if (!isURL(source))
+            icon.setFilename(source);
+        
+        return icon;
+    }
+    
+    private Image decode(String source, int resolution) throws Exception {
+        if (!isURL(source) && !new File(source).exists()) return null;
+        
+        InputStream is = isURL(source) ? new URL(source).openStream() : null;
+        ImageInputStream iis = ImageIO.createImageInputStream(is != null ? is : new File(source));
+        
+        if (iis == null) return null;
+        
+        try {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(iis);
+            if (!readers.hasNext()) return null;
+            
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(iis, true, true);
+                
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                int maxWidth = sizes[resolution][0];
+                int maxHeight = sizes[resolution][1];
+                
+                ImageReadParam param = reader.getDefaultReadParam();
+                if (maxWidth > 0) {
+                    int subsampling = Math.max(1, Math.min(width / maxWidth, height / maxHeight));
+                    if (subsampling > 1)
+                        param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                }
+                
+                BufferedImage image = reader.read(0, param);
+                return maxWidth > 0 ? scale(image, maxWidth, maxHeight) : image;
+            } finally {
+                reader.dispose();
+            }
+        } finally {
+            iis.close();
+            if (is != null) is.close();
+        }
+    }
+    
+    /**
+     * Scales the image to fit within the specified bounds (keeping the aspect ratio).
+     */
+    private BufferedImage scale(BufferedImage image, int maxWidth, int maxHeight) {
+        double factor = Math.min((double) maxWidth / image.getWidth(), (double) maxHeight / image.getHeight());
+        
+        if (factor >= 1) return image;
+        
+        int width = Math.max(1, (int) (image.getWidth() * factor));
+        int height = Math.max(1, (int) (image.getHeight() * factor));
+        
+        BufferedImage scaled = new BufferedImage(width, height, 
+                image.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = scaled.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.drawImage(image, 0, 0, width, height, null);
+        g.dispose();
+        image.flush();
+        return scaled;
+    }
+    
+    private static class CachedImage {
+        
+        private final Image image;
+        private final long modified;
+        private final long weight;
+        private final long created = System.currentTimeMillis();
+        
+        public CachedImage(Image image, long modified) {
+            this.image = image;
+            this.modified = modified;
+            this.weight = Math.max(1, (long) image.getWidth(null) * image.getHeight(null) * 4);
+        }
+        
+        /**
+         * Checks if the image is still up to date. For files the modification time is 
+         * checked, images retrieved from an URL expire.
+         * @param modified The current modification time of the source (0 for URLs).
+         */
+        public boolean isValid(long modified) {
+            return modified == 0 ? 
+                   System.currentTimeMillis() - created < _URL_EXPIRY_MS : 
+                   this.modified == modified;
+        }
+    }
+    
+    /**
+     * The result for images taken from the cache.
+     */
+    private static class Loaded implements Future<Image> {
+        
+        private final Image image;
+        
+        public Loaded(Image image) {
+            this.image = image;
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            return false;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+
+        @Override
+        public boolean isDone() {
+            return true;
+        }
+
+        @Override
+        public Image get() {
+            return image;
+        }
+
+        @Override
+        public Image get(long timeout, TimeUnit unit) {
+            return image;
+        }
+    }
+}
@@ -32,6 +32,7 @@ import java.net.URL;
 import javax.swing.ImageIcon;
 
 import net.datacrow.core.utilities.CoreUtilities;
+import net.datacrow.core.utilities.LeakDetector;
 
 import org.apache.log4j.Logger;
 
@@ -48,6 +49,8 @@ public class DcImageIcon extends ImageIcon {
 	private String filename;
 	private File file;
 	
+	private transient LeakDetector.Token token = LeakDetector.track(this);
+	
     public DcImageIcon() {
         super();
     }
@@ -111,6 +114,8 @@ public class DcImageIcon extends ImageIcon {
         bytes = null;
         filename = null;
         file = null;
+        
+        LeakDetector.release(token);
     }
     
     public String getFilename() {
@@ -147,18 +152,4 @@ public class DcImageIcon extends ImageIcon {
         
     	return bytes;
     }
-    
-    @Override
-    protected void finalize() throws Throwable {
-        try {
-            flush();
-            
-            Image img = getImage();
-            if (img != null)
-                img.flush();
-        } catch (Exception e) {
-            logger.error(e, e);
-        }
-        super.finalize();
-    }
 }
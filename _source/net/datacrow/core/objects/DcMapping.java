@@ -87,6 +87,14 @@ public class DcMapping extends DcObject {
 	public void setReference(DcObject dco) {
         this.reference = dco;
     }
+	
+    /**
+     * Retrieves the referenced object as currently set (without loading it).
+     * @return The referenced object or null when it has not been loaded yet.
+     */
+    public DcObject getCurrentReference() {
+        return reference;
+    }
     
     /**
      * Retrieves the referenced object.
@@ -94,7 +102,7 @@ public class DcMapping extends DcObject {
     public DcObject getReferencedObject() {
         if (reference == null) {
             try {
-                reference = DcConfig.getInstance().getConnector().getItem(
+                reference = DcConfig.getInstance().getConnector().getCachedItem(
                         getReferencedModuleIdx(), 
                         getReferencedID(), 
                         DcModules.get(getReferencedModuleIdx()).getMinimalFields(null));
@@ -129,7 +137,8 @@ public class DcMapping extends DcObject {
      */
     @Override
     public String getParentID() {
-        return getValueDef(_A_PARENT_ID).getValueAsString();
+        Object o = getValueLowLevel(_A_PARENT_ID);
+        return o != null ? o.toString() : "";
     }
 
     /**
@@ -137,7 +146,7 @@ public class DcMapping extends DcObject {
      */
     public String getReferencedID() {
         try {
-            return (String) getValueDef(_B_REFERENCED_ID).getValue();
+            return (String) getValueLowLevel(_B_REFERENCED_ID);
         } catch (Exception e) {
             return null;
         }
@@ -26,11 +26,16 @@
 package net.datacrow.core.objects;
 
 import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -38,7 +43,9 @@ import net.datacrow.core.DcConfig;
 import net.datacrow.core.DcRepository;
 import net.datacrow.core.console.UIComponents;
 import net.datacrow.core.data.DcIconCache;
+import net.datacrow.core.data.DcItemCache;
 import net.datacrow.core.enhancers.IValueEnhancer;
+import net.datacrow.core.enhancers.SequenceAllocator;
 import net.datacrow.core.enhancers.ValueEnhancers;
 import net.datacrow.core.modules.DcModule;
 import net.datacrow.core.modules.DcModules;
@@ -54,6 +61,7 @@ import net.datacrow.core.services.Servers;
 import net.datacrow.core.utilities.Base64;
 import net.datacrow.core.utilities.CoreUtilities;
 import net.datacrow.core.utilities.Hash;
+import net.datacrow.core.utilities.LeakDetector;
 import net.datacrow.core.utilities.StringUtils;
 import net.datacrow.settings.DcSettings;
 import net.datacrow.settings.definitions.DcFieldDefinition;
@@ -66,8 +74,9 @@ import sun.awt.ComponentFactory;
 /**
  * This class is what it is all about. Each DcObject represents an item 
  * within Data Crow. DcObjects are very generic by nature. There are no direct
- * getters and setters for their values. Instead the values are stored in a Map object
- * and the values are retrieved by using the field indices. 
+ * getters and setters for their values. Instead the values are stored in an array
+ * and the values are retrieved by using the field indices. The position of each field 
+ * within the array is defined by the value layout of the module ({@link DcValueLayout}).
  * <br>
  * It's recommended before starting new development of plugins to create so called
  * helper classes for your new module. Examples of helper classes are {@link Software}
@@ -86,7 +95,16 @@ public class DcObject implements Comparable<DcObject>, Serializable {
 
     protected final int module;
     
-    private Map<Integer, DcValue> values = new HashMap<Integer, DcValue>();
+    private transient DcValueLayout layout;
+    private transient Object[] values;
+    private transient BitSet changed;
+    
+    // the value views per slot and the map of getValues; created on first use
+    private transient DcValue[] views;
+    private transient Map<Integer, DcValue> viewMap;
+    
+    // the slots of which the values have been retrieved; null when all values are available
+    private transient BitSet loadedFields;
     
     protected List<DcObject> children = new ArrayList<DcObject>();
 
@@ -132,6 +150,8 @@ public class DcObject implements Comparable<DcObject>, Serializable {
     
     private transient boolean deleteExistingChildren = false;
     
+    private transient LeakDetector.Token token = LeakDetector.track(this);
+    
     /**
      * Creates a new instance.
      * @param module
@@ -139,12 +159,10 @@ public class DcObject implements Comparable<DcObject>, Serializable {
     public DcObject(int module) {
         this.module = module;
 
-        // initialize the values map
-        int[] fields = getModule().getFieldIndices();
-        for (int i = 0; i < fields.length; i++) {
-            values.put(fields[i], new DcValue());
-        }
-        markAsUnchanged();
+        // initialize the values
+        layout = getModule().getValueLayout();
+        values = new Object[layout.size()];
+        changed = new BitSet(layout.size());
     } 
 
     public void setDeleteExistingChildren(boolean b) {
@@ -190,6 +208,101 @@ public class DcObject implements Comparable<DcObject>, Serializable {
 	public boolean isLoaded() {
         return loaded;
     }
+	
+    /**
+     * Indicates whether the value of the field is available. Values of fields which have not 
+     * been loaded are retrieved on first access (see {@link #setLoadedFields(int[])}).
+     * @param index The field index.
+     */
+    public boolean isLoaded(int index) {
+        int slot = getSlot(index);
+        return slot < 0 || loadedFields == null || loadedFields.get(slot);
+    }
+    
+    /**
+     * The fields which have been retrieved for this item.
+     * @return The field indices or null in case all fields are available.
+     */
+    public int[] getLoadedFields() {
+        if (loadedFields == null || isDestroyed()) return null;
+        
+        int[] fields = new int[loadedFields.cardinality()];
+        int idx = 0;
+        for (int slot = loadedFields.nextSetBit(0); slot >= 0; slot = loadedFields.nextSetBit(slot + 1))
+            fields[idx++] = layout.getIndex(slot);
+        
+        return fields;
+    }
+    
+    /**
+     * Registers the fields which have been retrieved for this item. The remaining stored 
+     * fields are retrieved in a single call as soon as one of them is requested. 
+     * Fields holding a value are always considered to be loaded.
+     * @param fields The retrieved fields. Null indicates all fields are available.
+     */
+    public void setLoadedFields(int[] fields) {
+        if (isDestroyed()) return;
+        
+        if (fields == null) {
+            loadedFields = null;
+            return;
+        }
+        
+        loadedFields = new BitSet(layout.size());
+        for (int slot = 0; slot < values.length; slot++) {
+            if (values[slot] != null || !isStored(getField(layout.getIndex(slot))))
+                loadedFields.set(slot);
+        }
+        
+        markAsLoaded(fields);
+        markAsLoaded(new int[] {_ID});
+    }
+    
+    private void markAsLoaded(int[] fields) {
+        if (loadedFields == null) return;
+        
+        int slot;
+        for (int i = 0; i < fields.length; i++) {
+            slot = getSlot(fields[i]);
+            if (slot > -1) loadedFields.set(slot);
+        }
+    }
+    
+    /**
+     * Indicates whether the value of the field is retrieved from the database (or server). 
+     */
+    private static boolean isStored(DcField field) {
+        return field != null && (!field.isUiOnly() || field.getValueType() == DcRepository.ValueTypes._DCOBJECTCOLLECTION);
+    }
+    
+    /**
+     * Retrieves all the fields which have not been loaded yet, with a single call.
+     */
+    private void loadMissingFields() {
+        if (loadedFields == null || isNew || isDestroyed())
+            return;
+        
+        List<Integer> missing = new ArrayList<Integer>();
+        for (int slot = loadedFields.nextClearBit(0); slot < layout.size(); slot = loadedFields.nextClearBit(slot + 1))
+            missing.add(Integer.valueOf(layout.getIndex(slot)));
+        
+        // mark first; the retrieval is attempted only once
+        loadedFields = null;
+        
+        if (missing.isEmpty() || getID() == null)
+            return;
+        
+        int[] fields = new int[missing.size()];
+        for (int i = 0; i < fields.length; i++)
+            fields[i] = missing.get(i).intValue();
+        
+        long start = logger.isDebugEnabled() ? new Date().getTime() : 0;
+        
+        fetch(fields);
+        
+        if (logger.isDebugEnabled())
+            logger.debug("Retrieved " + fields.length + " missing fields of " + getID() + " in " + (new Date().getTime() - start) + "ms");
+    }
 
     public void reload() {
         loaded = isNew;
@@ -211,9 +324,13 @@ public class DcObject implements Comparable<DcObject>, Serializable {
     	if ((loaded && !overruleLoadCheck) || isNew) return;
     	
     	fields = fields == null ? getFieldIndices() : fields;
-        Connector conn = DcConfig.getInstance().getConnector();
-        DcObject dco = conn.getItem(module, getID(), fields);
-        copy(dco, fields, true, true);
+    	
+    	// an item which has not been loaded before only holds the requested fields
+    	if (!loaded && loadedFields == null)
+    	    setLoadedFields(fields);
+    	
+        fetch(fields);
+        markAsLoaded(fields);
     	
 		if (logger.isDebugEnabled()) {
 			logger.info("Item " + toString() + " was loaded in " + (new Date().getTime() - start) + "ms");
@@ -224,6 +341,50 @@ public class DcObject implements Comparable<DcObject>, Serializable {
 		loaded = true;
     }    
     
+    /**
+     * Retrieves the values of the specified fields and stores them directly on this item.
+     * Existing values of these fields are replaced. The change indicators are left untouched.
+     */
+    private void fetch(int[] fields) {
+        DcItemCache cache = DcItemCache.getInstance();
+        DcObject dco = cache.get(module, getID(), fields);
+        
+        // the retrieved item is shared with the cache and its values are therefore copied
+        boolean shared = false;
+        if (dco == null) {
+            Connector conn = DcConfig.getInstance().getConnector();
+            dco = conn.getItem(module, getID(), fields);
+            
+            if (dco != null && cache.isEnabled()) {
+                cache.put(dco, fields);
+                shared = true;
+            }
+        }
+        
+        if (dco == null || dco.isDestroyed()) return;
+
+        int slot;
+        int source;
+        Object value;
+        for (int i = 0; i < fields.length; i++) {
+            slot = getSlot(fields[i]);
+            source = dco.getSlot(fields[i]);
+            
+            if (slot < 0 || fields[i] == _ID) continue;
+            
+            value = source > -1 ? dco.values[source] : null;
+            value = shared ? copyValue(value, fields[i]) : value;
+            
+            if (values[slot] instanceof Picture && values[slot] != value)
+                ((Picture) values[slot]).destroy();
+            
+            if (value instanceof Picture)
+                ((Picture) value).markAsUnchanged();
+            
+            values[slot] = value;
+        }
+    }
+    
     public int getSystemDisplayFieldIdx() {
         return getModule().getSystemDisplayFieldIdx();
     }
@@ -279,10 +440,22 @@ public class DcObject implements Comparable<DcObject>, Serializable {
     }
     
     /**
-     * Retrieves the value objects.
+     * Retrieves the value objects. The value objects operate directly on the values of 
+     * this item. The map is created once and cannot be modified.
+     * @return The values mapped by their field index, or null for destroyed items.
      */
     public Map<Integer, DcValue> getValues() {
-        return values;
+        if (isDestroyed()) return null;
+        
+        if (viewMap == null) {
+            Map<Integer, DcValue> map = new LinkedHashMap<Integer, DcValue>();
+            for (int slot = 0; slot < layout.size(); slot++)
+                map.put(Integer.valueOf(layout.getIndex(slot)), getView(slot));
+            
+            viewMap = Collections.unmodifiableMap(map);
+        }
+        
+        return viewMap;
     }
     
     /**
@@ -441,26 +614,20 @@ public class DcObject implements Comparable<DcObject>, Serializable {
                 getValue(field.getIndex()) != null) {
                 Object o = getValue(field.getIndex());
                 if (o instanceof String)
-                    setValue(index, DcConfig.getInstance().getConnector().getItem(field.getReferenceIdx(), (String) o));    
+                    setValue(index, DcConfig.getInstance().getConnector().getCachedItem(field.getReferenceIdx(), (String) o, null));    
         }
     }
     
     /**
-     * Loads the actual reference information. Uses the Data Manager to retrieve the 
-     * references and stores them in this object.
+     * Loads the actual reference information. Uses the connector to retrieve the 
+     * references and stores them in this object. The mappings and referenced items 
+     * are retrieved per module instead of per mapping.
+     * @see Connector#initializeReferences(Collection, boolean)
      */
     public void initializeReferences() {
-        int[] fields = getFieldIndices();
-        for (int i = 0; i < fields.length; i++) {
-            DcField field = getField(fields[i]);
-            
-            if (field == null) continue;
-            
-            if (field.getValueType() == DcRepository.ValueTypes._DCOBJECTCOLLECTION ||
-                field.getValueType() == DcRepository.ValueTypes._DCOBJECTREFERENCE) {
-                initializeReferences(fields[i], true);
-            }
-        }
+        Collection<DcObject> c = new ArrayList<DcObject>(1);
+        c.add(this);
+        DcConfig.getInstance().getConnector().initializeReferences(c, true);
     }
     
     /**
@@ -624,10 +791,13 @@ public class DcObject implements Comparable<DcObject>, Serializable {
      * original values! (use {@link #load()})
      */
     public void markAsUnchanged() {
-        try {
-            for (DcValue value : values.values())
-                value.setChanged(false);
-        } catch (Exception ignore) {}
+        if (isDestroyed()) return;
+        
+        changed.clear();
+        for (Object value : values) {
+            if (value instanceof Picture)
+                ((Picture) value).markAsUnchanged();
+        }
         
         // 22032008: Removed "markAsUnchanged" on child objects!
         // this broke saving the permissions (and possibly other item save's).
@@ -721,6 +891,8 @@ public class DcObject implements Comparable<DcObject>, Serializable {
             } else {
                 value.setValue(o, field);
             }
+            
+            markAsLoaded(new int[] {index});
         }
     }
     
@@ -766,16 +938,28 @@ public class DcObject implements Comparable<DcObject>, Serializable {
      */
     public void setValueLowLevel(int index, Object o) {
         DcValue value = getValueDef(index);
-        if (value != null)
+        if (value != null) {
             value.setValueLowLevel(o, getModule().getField(index));
+            markAsLoaded(new int[] {index});
+        }
+    }
+    
+    /**
+     * Retrieves the value as stored, without any conversions.
+     * @param index The field index.
+     * @return The value or null if not set or if the field does not exist.
+     */
+    public Object getValueLowLevel(int index) {
+        int slot = getSlot(index);
+        return slot > -1 ? values[slot] : null;
     }
 
     /**
      * Marks the object as changed.  
      */
     public void markAsChanged() {
-        for (DcValue value : values.values())
-            value.setChanged(true);
+        if (!isDestroyed())
+            changed.set(0, layout.size());
 
         if (children != null)
             for (DcObject child : children) child.markAsChanged();
@@ -792,14 +976,11 @@ public class DcObject implements Comparable<DcObject>, Serializable {
             return false;
         }
         
-        try {
-            for (DcField field : getFields()) {
-                boolean changed = getValueDef(field.getIndex()).isChanged();
-                if ((!field.isUiOnly() || field.getValueType() == DcRepository.ValueTypes._DCOBJECTCOLLECTION) && changed)
-                    return true;
-            }
-        } catch (Exception e) {
-            logger.debug("Item was probably already destroyed!", e);
+        DcField field;
+        for (int slot = changed.nextSetBit(0); slot >= 0; slot = changed.nextSetBit(slot + 1)) {
+            field = getField(layout.getIndex(slot));
+            if (field != null && (!field.isUiOnly() || field.getValueType() == DcRepository.ValueTypes._DCOBJECTCOLLECTION))
+                return true;
         }
         return false;
     }
@@ -815,7 +996,8 @@ public class DcObject implements Comparable<DcObject>, Serializable {
             return false;
         }
 
-        return getValueDef(index) != null ? getValueDef(index).isChanged() : false;
+        int slot = getSlot(index);
+        return slot > -1 ? changed.get(slot) : false;
     }
 
     /**
@@ -828,7 +1010,13 @@ public class DcObject implements Comparable<DcObject>, Serializable {
         if (isDestroyed()) {
             logger.warn("System tried to mark a field as changed while the object was already destroyed");
         } else {
-            getValueDef(index).setChanged(b);
+            int slot = getSlot(index);
+            if (slot > -1) {
+                changed.set(slot, b);
+                
+                if (!b && values[slot] instanceof Picture)
+                    ((Picture) values[slot]).markAsUnchanged();
+            }
         }
     }
 
@@ -895,17 +1083,28 @@ public class DcObject implements Comparable<DcObject>, Serializable {
             if (children != null)
                 children.clear();
             
-            if (values != null) {
+            if (values != null)
                 clearValues();
-                values.clear();
-            }
             
             children = null;
             loaded = false;
             values = null;
+            changed = null;
+            views = null;
+            viewMap = null;
+            loadedFields = null;
         } catch (Exception e) {
             logger.error(e, e);
         }
+        
+        setReleased();
+    }
+    
+    /**
+     * Marks this item as released for the leak detection (see {@link LeakDetector}).
+     */
+    protected final void setReleased() {
+        LeakDetector.release(token);
     }
     
     /**
@@ -914,10 +1113,12 @@ public class DcObject implements Comparable<DcObject>, Serializable {
      */
     public void clearValues() {
         if (!isDestroyed()) {
-            for (Integer key : values.keySet()) {
-                if (key.intValue() != _ID) {
-                    DcValue value = values.get(key);
-                    value.clear();
+            for (int slot = 0; slot < values.length; slot++) {
+                if (layout.getIndex(slot) != _ID) {
+                    if (values[slot] instanceof Picture)
+                        ((Picture) values[slot]).unload();
+                    
+                    values[slot] = null;
                 }
             }
             markAsUnchanged();
@@ -941,21 +1142,19 @@ public class DcObject implements Comparable<DcObject>, Serializable {
         
         Object value = null;
         
-        if (values == null || getValueDef(index) == null)
+        int slot = getSlot(index);
+        if (slot < 0)
             return null;
         
-        if (isDestroyed()) {
-            logger.warn("System tried to retrieve a value while the object was already destroyed");
-        } else if (getField(index) == null) {
-            logger.warn("Field with index " + index + " does not exist for module " + getModule());
-        }
-        
         if (index == _SYS_DISPLAYVALUE) {
             value = toString();
         } else if (index == _SYS_MODULE) {
             value = getModule();
         } else {
-            value = getValueDef(index).getValue();
+            if (loadedFields != null && !loadedFields.get(slot))
+                loadMissingFields();
+            
+            value = values[slot];
         }
         
         return value;
@@ -973,11 +1172,15 @@ public class DcObject implements Comparable<DcObject>, Serializable {
      */
     public String getDisplayString(int index) {
         if (index == _SYS_DISPLAYVALUE)
-            return getValueDef(getSystemDisplayFieldIdx()).getDisplayString(getField(getSystemDisplayFieldIdx()));
+            index = getSystemDisplayFieldIdx();
         else if (index == _SYS_MODULE)
             return getModule().getObjectNamePlural();
         
-        return getValueDef(index) != null ? getValueDef(index).getDisplayString(getField(index)) : "";
+        int slot = getSlot(index);
+        if (slot > -1 && loadedFields != null && !loadedFields.get(slot))
+            loadMissingFields();
+        
+        return slot > -1 ? DcValue.getDisplayString(values[slot], getField(index)) : "";
     }
 
     /**
@@ -999,7 +1202,8 @@ public class DcObject implements Comparable<DcObject>, Serializable {
     }
 
     /**
-     * Applies the enhancers on this item.
+     * Applies the enhancers on this item. Fields which have not been loaded are skipped; 
+     * their values are not part of the update.
      * @see ValueEnhancers 
      * @param update Indicates if the item is new or existing.
      */
@@ -1008,6 +1212,8 @@ public class DcObject implements Comparable<DcObject>, Serializable {
         Object newVal;
         Object oldVal;
         for (DcField field : getFields()) {
+            if (!isLoaded(field.getIndex())) continue;
+            
             value = getValue(field.getIndex());
             for (IValueEnhancer enhancer : field.getValueEnhancers()) {
                 if (enhancer.isEnabled() && 
@@ -1051,7 +1257,10 @@ public class DcObject implements Comparable<DcObject>, Serializable {
      */
     public void checkIntegrity() throws ValidationException {
         
-        if (getParentReferenceFieldIndex() > 0 && getParentID() == null)
+        // the parent of a partially loaded item has been validated when it was stored
+        if (    getParentReferenceFieldIndex() > 0 && 
+                isLoaded(getParentReferenceFieldIndex()) &&
+                getParentID() == null)
             throw new ValidationException("Parent Key cannot be NULL for child records.");
         
         if (!validate) return;
@@ -1113,7 +1322,89 @@ public class DcObject implements Comparable<DcObject>, Serializable {
     }
 
     protected DcValue getValueDef(int index) {
-        return values == null ? null : values.get(index);
+        int slot = getSlot(index);
+        return slot > -1 ? getView(slot) : null;
+    }
+    
+    private DcValue getView(int slot) {
+        if (views == null)
+            views = new DcValue[values.length];
+        
+        DcValue view = views[slot];
+        if (view == null) {
+            view = new DcValue(values, changed, slot);
+            views[slot] = view;
+        }
+        return view;
+    }
+    
+    /**
+     * The position of the value of the field.
+     * @return The slot or -1 in case the field does not exist or the item has been destroyed.
+     */
+    private int getSlot(int index) {
+        return values == null ? -1 : layout.getSlot(index);
+    }
+    
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        
+        // the values are written by their field index, independent of the layout
+        if (values == null) {
+            out.writeInt(-1);
+        } else {
+            int count = 0;
+            for (int slot = 0; slot < values.length; slot++)
+                if (values[slot] != null || changed.get(slot)) count++;
+            
+            out.writeInt(count);
+            for (int slot = 0; slot < values.length; slot++) {
+                if (values[slot] != null || changed.get(slot)) {
+                    out.writeInt(layout.getIndex(slot));
+                    out.writeBoolean(changed.get(slot));
+                    out.writeObject(values[slot]);
+                }
+            }
+            
+            // the loaded fields; -1 in case all fields are available
+            int[] fields = getLoadedFields();
+            out.writeInt(fields == null ? -1 : fields.length);
+            for (int i = 0; fields != null && i < fields.length; i++)
+                out.writeInt(fields[i]);
+        }
+    }
+    
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        
+        int count = in.readInt();
+        if (count < 0) return;
+        
+        layout = getModule().getValueLayout();
+        values = new Object[layout.size()];
+        changed = new BitSet(layout.size());
+        
+        int slot;
+        for (int i = 0; i < count; i++) {
+            slot = layout.getSlot(in.readInt());
+            boolean b = in.readBoolean();
+            Object value = in.readObject();
+            
+            // fields unknown to this side are skipped
+            if (slot > -1) {
+                values[slot] = value;
+                changed.set(slot, b);
+            }
+        }
+        
+        count = in.readInt();
+        if (count > -1) {
+            int[] fields = new int[count];
+            for (int i = 0; i < count; i++)
+                fields[i] = in.readInt();
+            
+            setLoadedFields(fields);
+        }
     }
 
     protected void validateRequiredFields() throws ValidationException {
@@ -1159,51 +1450,70 @@ public class DcObject implements Comparable<DcObject>, Serializable {
         copy(dco, dco.getFieldIndices(), overwrite, allowDeletes);
     }
     
-    @SuppressWarnings("unchecked")
+    /**
+     * Copies the values of the specified fields. Values which have not been loaded on 
+     * the source item are retrieved first (see {@link #setLoadedFields(int[])}).
+     */
     public void copy(DcObject dco, int[] fields, boolean overwrite, boolean allowDeletes) {
+        copy(dco, fields, overwrite, allowDeletes, false);
+    }
+    
+    /**
+     * @param loadedOnly Skips the values which have not been loaded on the source item.
+     */
+    private void copy(DcObject dco, int[] fields, boolean overwrite, boolean allowDeletes, boolean loadedOnly) {
         for (int i = 0; i < fields.length; i++) {
             int field = fields[i];
 
             // Do not overwrite when:
+            // - the value has not been loaded on the source item and only loaded values are copied
             // - the to be copied value is empty and deletes are not allowed
             // - overwriting is not allowed and the current value is not empty
-            if (!dco.isFilled(field) && !allowDeletes)
+            if (loadedOnly && !dco.isLoaded(field))
+                continue;
+            else if (!dco.isFilled(field) && !allowDeletes)
                 continue;
             else if (!overwrite && isFilled(field))
                 continue;
             
-            if (field != _ID) {
-            	Object o = dco.getValue(field);
-            	if (o instanceof DcImageIcon) {
-            		DcImageIcon oldIcon = (DcImageIcon) o;
-            		DcImageIcon icon = new DcImageIcon(oldIcon.getImage());
-            		icon.setFilename(oldIcon.getFilename());
-            		setValue(field, icon);
-            	} else if (o != null && getField(field).getValueType() == DcRepository.ValueTypes._PICTURE) {
-                    Picture curPic = (Picture) dco.getValue(field);
-                    
-                    Picture newPic = (Picture) DcModules.get(DcModules._PICTURE).getItem();
-                    newPic.copy(curPic, overwrite, allowDeletes);
-
-                    newPic.edited = curPic.edited;
-                    newPic.deleted = curPic.deleted;
-
-                    setValue(field, newPic);
-            	} else if (o != null && getField(field).getValueType() == DcRepository.ValueTypes._DCOBJECTCOLLECTION) {
-            	    Collection<DcMapping> newMappings = new ArrayList<DcMapping>();
-            	    
-            	    for (DcObject mapping : (Collection<DcObject>) o)
-            	        newMappings.add((DcMapping) mapping.clone());
-            	    
-            	    setValue(field, newMappings);
-            	} else if (o != null && getField(field).getValueType() == DcRepository.ValueTypes._DCOBJECTREFERENCE) { 
-            	    setValue(field, ((DcObject) o).clone());
-            	    
-                } else {
-                    setValue(field, o);    
-                }
-            }
+            if (field != _ID)
+                setValue(field, copyValue(dco.getValue(field), field));
+        }
+    }
+    
+    /**
+     * Creates a copy of the value in case the value is mutable (pictures, icons, references).
+     * @param o The value.
+     * @param field The field index.
+     */
+    @SuppressWarnings("unchecked")
+    private Object copyValue(Object o, int field) {
+        int valueType = o != null ? getField(field).getValueType() : -1;
+        
+        if (o instanceof DcImageIcon) {
+            DcImageIcon oldIcon = (DcImageIcon) o;
+            DcImageIcon icon = new DcImageIcon(oldIcon.getImage());
+            icon.setFilename(oldIcon.getFilename());
+            return icon;
+        } else if (valueType == DcRepository.ValueTypes._PICTURE) {
+            Picture curPic = (Picture) o;
+            Picture newPic = (Picture) DcModules.get(DcModules._PICTURE).getItem();
+            newPic.copy(curPic, true, true);
+
+            newPic.edited = curPic.edited;
+            newPic.deleted = curPic.deleted;
+            return newPic;
+        } else if (valueType == DcRepository.ValueTypes._DCOBJECTCOLLECTION) {
+            Collection<DcMapping> newMappings = new ArrayList<DcMapping>();
+            
+            for (DcObject mapping : (Collection<DcObject>) o)
+                newMappings.add((DcMapping) mapping.clone());
+            
+            return newMappings;
+        } else if (valueType == DcRepository.ValueTypes._DCOBJECTREFERENCE) {
+            return ((DcObject) o).clone();
         }
+        return o;
     }
 
     public void applyTemplate() {
@@ -1284,12 +1594,14 @@ public class DcObject implements Comparable<DcObject>, Serializable {
     public DcObject clone() {
         DcObject dco = getModule().getItem();
         
-        dco.copy(this, true, true);
+        // the unloaded values are not retrieved; the clone retrieves them itself on first access
+        dco.copy(this, getFieldIndices(), true, true, true);
         
         if (hasPrimaryKey())
         	dco.setValue(DcObject._ID, getID());
         
         dco.markAsUnchanged();
+        dco.loadedFields = loadedFields != null ? (BitSet) loadedFields.clone() : null;
         
         if (children != null) {
             for (DcObject child : children)
@@ -1302,11 +1614,11 @@ public class DcObject implements Comparable<DcObject>, Serializable {
         for (int i = 0; i < indices.length; i++) {
             dco.setChanged(indices[i], isChanged(indices[i]));
             
-            if (dco.getValue(indices[i]) instanceof Picture && getValue(indices[i]) instanceof Picture) {
-                p = (Picture) dco.getValue(indices[i]);
-                p.setNew(((Picture) getValue(indices[i])).isNew());
-                p.edited = ((Picture) getValue(indices[i])).edited;
-                p.deleted = ((Picture) getValue(indices[i])).deleted;
+            if (dco.getValueLowLevel(indices[i]) instanceof Picture && getValueLowLevel(indices[i]) instanceof Picture) {
+                p = (Picture) dco.getValueLowLevel(indices[i]);
+                p.setNew(((Picture) getValueLowLevel(indices[i])).isNew());
+                p.edited = ((Picture) getValueLowLevel(indices[i])).edited;
+                p.deleted = ((Picture) getValueLowLevel(indices[i])).deleted;
             }
         }
         
@@ -1323,12 +1635,6 @@ public class DcObject implements Comparable<DcObject>, Serializable {
         return getName();
     }
     
-    @Override
-    protected void finalize() throws Throwable {
-        destroy();
-        super.finalize();
-    }
-
     @Override
     public boolean equals(Object o) {
         
@@ -1357,9 +1663,15 @@ public class DcObject implements Comparable<DcObject>, Serializable {
         return equals;
     }
     
-    public void afterSave() {}
+    public void afterSave() {
+        DcItemCache.getInstance().invalidate(this);
+        SequenceAllocator.saved(this);
+    }
     
-    public void afterDelete() {}
+    public void afterDelete() {
+        DcItemCache.getInstance().invalidate(this);
+        SequenceAllocator.deleted(this);
+    }
     
     public void beforeSave() throws ValidationException {
     	
@@ -1370,12 +1682,21 @@ public class DcObject implements Comparable<DcObject>, Serializable {
     	    applyEnhancers(true);
     	}
     	
-    	checkIntegrity();
+    	try {
+    	    checkIntegrity();
+    	} catch (ValidationException ve) {
+    	    // the numbers handed out to this item will not be used
+    	    SequenceAllocator.failed(this);
+    	    throw ve;
+    	}
     	
         if (getModule().isFileBacked())
             Hash.getInstance().calculateHash(this);
         
+        // skipped for partially loaded items; created on the next full save instead
         if ( getField(DcObject._SYS_EXTERNAL_REFERENCES) != null &&
+             isLoaded(DcObject._SYS_EXTERNAL_REFERENCES) &&
+             isLoaded(getSystemDisplayFieldIdx()) &&
              getExternalReference(DcRepository.ExternalReferences._PDCR) == null &&
             !CoreUtilities.isEmpty(getDisplayString(getSystemDisplayFieldIdx()))) {
 
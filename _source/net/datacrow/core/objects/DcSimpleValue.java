@@ -75,17 +75,4 @@ public class DcSimpleValue implements Serializable {
     public String toString() {
         return name;
     }
-
-    @Override
-    protected void finalize() throws Throwable {
-        ID = null;
-        name = null;
-        
-        if (icon != null) {
-            icon.flush();
-            icon = null;
-        }
-        
-        super.finalize();
-    }
-}
\ No newline at end of file
+}
\ No newline at end of file
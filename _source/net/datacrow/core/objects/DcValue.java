@@ -28,6 +28,7 @@ package net.datacrow.core.objects;
 import java.io.Serializable;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Calendar;
 import java.util.Collection;
 import java.util.Date;
@@ -46,6 +47,10 @@ import org.apache.log4j.Logger;
 /**
  * The value class represents a field value.
  * It knows when it has been changed.
+ * <br>
+ * The values of an item are stored in an array (see {@link DcValueLayout}); a value
+ * created by the item operates on the slot of the field within that array. Values
+ * created with the default constructor hold their own value.
  * 
  * @author Robert Jan van der Waals
  */
@@ -55,17 +60,32 @@ public class DcValue implements Serializable {
 
     private transient static Logger logger = Logger.getLogger(DcValue.class.getName());
     
-    private boolean changed = false;
-    private Object value = null;
+    private final Object[] values;
+    private final BitSet changed;
+    private final int slot;
 
-    public DcValue() {}
+    public DcValue() {
+        this(new Object[1], new BitSet(1), 0);
+    }
+    
+    /**
+     * Creates a value operating on the slot of an item.
+     * @param values The values of the item.
+     * @param changed The changed flags of the item.
+     * @param slot The slot of the field.
+     */
+    protected DcValue(Object[] values, BitSet changed, int slot) {
+        this.values = values;
+        this.changed = changed;
+        this.slot = slot;
+    }
     
     /**
      * Indicates if the value has been changed.
      * @return
      */
     public boolean isChanged() {
-        return changed;
+        return changed.get(slot);
     }
 
     /**
@@ -73,10 +93,10 @@ public class DcValue implements Serializable {
      * @param b
      */
     public void setChanged(boolean b) {
-        changed = b;
+        changed.set(slot, b);
         
-        if (!b && value instanceof Picture && value != null)
-            ((Picture) value).markAsUnchanged();
+        if (!b && values[slot] instanceof Picture)
+            ((Picture) values[slot]).markAsUnchanged();
     }
 
     /**
@@ -105,13 +125,14 @@ public class DcValue implements Serializable {
             setChanged(true);
 
         if (field.getValueType() == DcRepository.ValueTypes._PICTURE) {
+            Object value = values[slot];
             if (o instanceof Picture) {
                 if (value != null) ((Picture) value).destroy();
 
                 setValueNative(o, field);   
             } else {
                 Picture picture = value == null ? (Picture) DcModules.get(DcModules._PICTURE).getItem() : (Picture) value;
-                value = picture; 
+                values[slot] = picture; 
 
                 DcImageIcon currentImage = (DcImageIcon) picture.getValue(Picture._D_IMAGE);
                 DcImageIcon newImage = o instanceof DcImageIcon ? (DcImageIcon) o : 
@@ -133,7 +154,7 @@ public class DcValue implements Serializable {
                     setValueNative(picture, field);
 	            } else if (currentImage != null) {
 	                currentImage.flush();
-	                ((Picture) value).isDeleted(true);
+	                picture.isDeleted(true);
                     setValueNative(picture, field);
                 }
             }
@@ -161,7 +182,7 @@ public class DcValue implements Serializable {
                     } else if (o instanceof DcObject) {
                         setValueNative(o, field);
                     } else if (!CoreUtilities.isEmpty(o) && field.getReferenceIdx() != field.getModule()) {
-                        setValueNative(DcConfig.getInstance().getConnector().getItem(field.getReferenceIdx(), (String) o), field);
+                        setValueNative(DcConfig.getInstance().getConnector().getCachedItem(field.getReferenceIdx(), (String) o, null), field);
                     }
 
                     if (getValue() == null && !CoreUtilities.isEmpty(o)) {
@@ -257,8 +278,8 @@ public class DcValue implements Serializable {
     }
     
     private void setValueNative(Object value, DcField field) {
-        this.value = value;
-        this.changed = true;
+        values[slot] = value;
+        changed.set(slot);
     }
     
     /**
@@ -266,27 +287,33 @@ public class DcValue implements Serializable {
      * @param nochecks Just do it, do not check whether we are dealing with an edited item
      */
     public void clear() {
-    	if (value instanceof Picture) {
-    		((Picture) value).unload();
+    	if (values[slot] instanceof Picture) {
+    		((Picture) values[slot]).unload();
     	}
     	
-        value = null;
+        values[slot] = null;
     }
     
     public Object getValue() {
-        return value;
+        return values[slot];
     }
 
     /**
      * Creates a string representation.
      */
     public String getValueAsString() {
-        return value != null ? value.toString() : "";
+        return values[slot] != null ? values[slot].toString() : "";
     }
     
-    @SuppressWarnings("unchecked")
     public String getDisplayString(DcField field) {
-        Object o = getValue();
+        return getDisplayString(getValue(), field);
+    }
+    
+    /**
+     * Creates the display string for the value of the specified field.
+     */
+    @SuppressWarnings("unchecked")
+    public static String getDisplayString(Object o, DcField field) {
         String text = "";
 
         try {
@@ -350,7 +377,7 @@ public class DcValue implements Serializable {
         return text;
     }
 
-    private String getDoubleDigitString(int value) {
+    private static String getDoubleDigitString(int value) {
         StringBuffer sb = new StringBuffer();
         if (value == 0) {
             sb.append("00");
@@ -362,12 +389,4 @@ public class DcValue implements Serializable {
         }
         return sb.toString();
     }
-
-    @Override
-    protected void finalize() throws Throwable {
-        clear();
-        super.finalize();
-    }
-    
-    
 }
@@ -0,0 +1,90 @@
+/******************************************************************************
+ *                                     __                                     *
+ *                              <-----/@@\----->                              *
+ *                             <-< <  \\//  > >->                             *
+ *                               <-<-\ __ /->->                               *
+ *                               Data /  \ Crow                               *
+ *                                   ^    ^                                   *
+ *                              info@datacrow.net                             *
+ *                                                                            *
+ *                       This file is part of Data Crow.                      *
+ *       Data Crow is free software; you can redistribute it and/or           *
+ *        modify it under the terms of the GNU General Public                 *
+ *       License as published by the Free Software Foundation; either         *
+ *              version 3 of the License, or any later version.               *
+ *                                                                            *
+ *        Data Crow is distributed in the hope that it will be useful,        *
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *           MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.             *
+ *           See the GNU General Public License for more details.             *
+ *                                                                            *
+ *        You should have received a copy of the GNU General Public           *
+ *  License along with this program. If not, see http://www.gnu.org/licenses  *
+ *                                                                            *
+ ******************************************************************************/
+
+package net.datacrow.core.objects;
+
+import java.util.Collection;
+
+import net.datacrow.core.modules.DcModule;
+
+/**
+ * The value layout of the items of a module. Each field is assigned a slot; the values 
+ * of an item are stored in an array at the slot of the field (see {@link DcObject}).
+ * The layout is created once per module (see {@link DcModule#getValueLayout()}).
+ * 
+ * @author Robert Jan van der Waals
+ */
+public class DcValueLayout {
+    
+    // field index > slot (-1 for unknown fields)
+    private final int[] slots;
+    // slot > field index
+    private final int[] indices;
+    
+    /**
+     * Creates a new layout.
+     * @param fields The field indices.
+     */
+    public DcValueLayout(Collection<Integer> fields) {
+        int max = -1;
+        for (Integer index : fields)
+            max = Math.max(max, index.intValue());
+        
+        slots = new int[max + 1];
+        for (int i = 0; i < slots.length; i++)
+            slots[i] = -1;
+        
+        indices = new int[fields.size()];
+        
+        int slot = 0;
+        for (Integer index : fields) {
+            slots[index.intValue()] = slot;
+            indices[slot++] = index.intValue();
+        }
+    }
+    
+    /**
+     * The slot of the field.
+     * @param index The field index.
+     * @return The slot or -1 if the field is not part of this layout.
+     */
+    public int getSlot(int index) {
+        return index >= 0 && index < slots.length ? slots[index] : -1;
+    }
+    
+    /**
+     * The field index stored in the slot.
+     */
+    public int getIndex(int slot) {
+        return indices[slot];
+    }
+    
+    /**
+     * The number of slots.
+     */
+    public int size() {
+        return indices.length;
+    }
+}
@@ -27,7 +27,6 @@ package net.datacrow.core.objects;
 
 import java.awt.Image;
 import java.io.File;
-import java.net.URL;
 
 import net.datacrow.core.DcConfig;
 import net.datacrow.core.modules.DcModules;
@@ -120,19 +119,13 @@ public class Picture extends DcObject {
             filename = new File(filename).exists() ? filename : DcConfig.getInstance().getImageDir() + filename;
 
             if (new File(filename).exists()) {
-                loaded = true;
-                image = new DcImageIcon(filename);
+                image = DcImageCache.getInstance().get(filename, DcImageCache._RESOLUTION_FULL);
+                loaded = image != null;
             }
         }
         
-        if (!loaded && !CoreUtilities.isEmpty(getUrl())) {
-            try {
-                URL url = new URL(getUrl());
-                image = new DcImageIcon(url);
-            } catch (Exception e) {
-                logger.error("Error while loading image from URL: " + getUrl(), e);
-            }
-        }
+        if (!loaded && !CoreUtilities.isEmpty(getUrl()))
+            image = DcImageCache.getInstance().get(getUrl(), DcImageCache._RESOLUTION_FULL);
         
         setValue(Picture._D_IMAGE, image);
         markAsUnchanged();
@@ -148,29 +141,35 @@ public class Picture extends DcObject {
         unload();
         deleted = false;
         edited = false;
+        setReleased();
     }
     
     public String getImageFilename() {
         return (String) getValue(Picture._C_FILENAME);
     }
     
+    /**
+     * Retrieves the thumbnail of this picture (see {@link DcImageCache}). In case the 
+     * thumbnail file does not exist, the thumbnail is created from the full image.
+     */
     public DcImageIcon getScaledPicture() {
         String filename = getScaledFilename();
-        DcImageIcon thumbnail = null;
+        String source = null;
         if (filename != null) {
             if (DcConfig.getInstance().getOperatingMode() == DcConfig._OPERATING_MODE_CLIENT) {
-                try {
-                    thumbnail = new DcImageIcon(new URL(thumbnailUrl));
-                } catch (Exception e) {
-                    logger.warn("Could not load picture from URL " + thumbnailUrl, e);
-                }
+                source = thumbnailUrl;
             } else {
-                thumbnail = new DcImageIcon(new File(DcConfig.getInstance().getImageDir(), filename));
+                File file = new File(DcConfig.getInstance().getImageDir(), filename);
+                if (!file.exists())
+                    file = new File(DcConfig.getInstance().getImageDir(), (String) getValue(_C_FILENAME));
+                
+                source = file.toString();
             }
         }
         
-        return thumbnail;
+        return source != null ? DcImageCache.getInstance().get(source, DcImageCache._RESOLUTION_THUMBNAIL) : null;
     }
+
     
     public String getScaledFilename() {
         return getScaledFilename((String) getValue(Picture._C_FILENAME));
@@ -191,7 +190,7 @@ public class Picture extends DcObject {
     }
     
     public void unload() {
-        if (getValues() != null && (!isNew() && !edited)) {
+        if (!isDestroyed() && (!isNew() && !edited)) {
 	    	DcImageIcon image = ((DcImageIcon) getValue(_D_IMAGE));
 
 	    	if (image != null) image.flush();
@@ -265,9 +264,4 @@ public class Picture extends DcObject {
         return equals;
    }
 
-	@Override
-	protected void finalize() throws Throwable {
-		unload();
-		super.finalize();
-	}    
-}
\ No newline at end of file
+}
\ No newline at end of file
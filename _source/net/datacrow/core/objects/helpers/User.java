@@ -91,6 +91,8 @@ public class User extends DcObject {
     
     @Override
     public void afterSave() {
+        super.afterSave();
+        
     	Connector connector = DcConfig.getInstance().getConnector();
     	if (isNew()) {
     		connector.createUser(this, "");
@@ -118,7 +120,7 @@ public class User extends DcObject {
     
     @Override
 	public void afterDelete() {
-
+        super.afterDelete();
 	}
 
 	@Override
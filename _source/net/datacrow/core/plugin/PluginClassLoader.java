@@ -25,32 +25,43 @@
 
 package net.datacrow.core.plugin;
 
-import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.IOException;
 import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Enumeration;
-import java.util.HashMap;
 import java.util.Map;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
+import java.util.concurrent.ConcurrentHashMap;
+
+import net.datacrow.core.utilities.JarIndex;
 
 import org.apache.log4j.Logger;
 
+/**
+ * Loads the plugin classes and resources from the plugins folder, its direct sub folders
+ * and the jar files found in these. The jar entries are indexed once (see {@link JarIndex}).
+ * Classes are loaded on demand; the class loader is parallel capable.
+ */
 public class PluginClassLoader extends ClassLoader {
 
     private static Logger logger = Logger.getLogger(PluginClassLoader.class.getName());
     
+    static {
+        registerAsParallelCapable();
+    }
+    
     protected String path;
     
-    protected final Map<String, Class<?>> cache = new HashMap<String, Class<?>>();
+    protected final Map<String, Class<?>> cache = new ConcurrentHashMap<String, Class<?>>();
     protected final Collection<File> jarFiles = new ArrayList<File>();
+    
+    // the first level sub directories of the plugins folder
+    private final Collection<File> directories = new ArrayList<File>();
+    
+    private JarIndex index = new JarIndex(new ArrayList<File>());
 
     /**
      * Creates a new PluginClassLoader that searches in the directory path
@@ -83,6 +94,7 @@ public class PluginClassLoader extends ClassLoader {
         for (int i = 0; i < list.length; i++) {
             f = new File(path, list[i]);
             if (f.isDirectory()) {
+                directories.add(f);
                 String[] innerlist = f.list();
                 if (innerlist == null)
                     continue;
@@ -94,6 +106,8 @@ public class PluginClassLoader extends ClassLoader {
             } else
                 addJAR(f);
         }
+        
+        index = new JarIndex(jarFiles);
     }
 
     private void addJAR(File f) {
@@ -119,35 +133,23 @@ public class PluginClassLoader extends ClassLoader {
         } catch (Exception e) {}
 
         //try subfolders
-        resFile = new File(path);
-        String[] list = resFile.list();
-        if (list != null) {
-            for (int i = 0; i < list.length; i++) {
-                resFile = new File(path, list[i]);
-                if (resFile.isDirectory()) {
-                    try {
-                        File f = new File(path + list[i], name);
-                        if (f.exists()) {
-                            res = makeURL(f);
-                            return res;
-                        }
-                    } catch (Exception e) {
-                    }
-
+        for (File dir : directories) {
+            try {
+                File f = new File(dir, name);
+                if (f.exists()) {
+                    res = makeURL(f);
+                    return res;
                 }
+            } catch (Exception e) {
             }
         }
 
         //otherwise look in JAR files
-        byte[] resourceBytes;
-        
-        for (File jf : jarFiles) {
+        File jf = index.getJar(name);
+        if (jf != null) {
             try {
-                resourceBytes = loadFromJar(jf.getPath(), name);
-                if (resourceBytes != null) {
-                    res = makeURL(name, jf);
-                    return res;
-                }
+                res = makeURL(name, jf);
+                return res;
             } catch (MalformedURLException e) {
                 logger.error(e, e);
             }
@@ -194,38 +196,20 @@ public class PluginClassLoader extends ClassLoader {
             return is;
 
         // try sub directories
-        resFile = new File(path);
-        String[] list = resFile.list();
-        if (list != null) {
-            for (int i = 0; i < list.length; i++) {
-                resFile = new File(path, list[i]);
-                if (resFile.isDirectory()) {
-                    try {
-                        File f = new File(path + list[i], name);
-                        is = new FileInputStream(f);
-                    } catch (Exception e) {
-                        logger.debug("Error while processing the plugin file", e);
-                    }
-                    
-                    if (is != null)
-                        return is;
+        for (File dir : directories) {
+            File f = new File(dir, name);
+            if (f.exists()) {
+                try {
+                    return new FileInputStream(f);
+                } catch (Exception e) {
+                    logger.debug("Error while processing the plugin file", e);
                 }
             }
         }
 
         //look in JAR files
-        for (File jf : jarFiles) {
-            try {
-            
-                byte[] resourceBytes = loadFromJar(jf.getPath(), name);
-                if (resourceBytes != null)
-                    return new ByteArrayInputStream(resourceBytes);
-
-            } catch (Exception e) {
-                logger.error(e, e);
-            }
-        }
-        return null;
+        byte[] resourceBytes = index.read(name);
+        return resourceBytes != null ? new ByteArrayInputStream(resourceBytes) : null;
     }
 
     /**
@@ -243,7 +227,7 @@ public class PluginClassLoader extends ClassLoader {
      *        resolveIt a boolean (should almost always be true)
      */
     @Override
-    public synchronized Class<?> loadClass(String className, boolean resolveIt)
+    public Class<?> loadClass(String className, boolean resolveIt)
             throws ClassNotFoundException {
 
         // try the local cache of classes
@@ -251,6 +235,15 @@ public class PluginClassLoader extends ClassLoader {
         if (result != null) {
             return result;
         }
+        
+        synchronized (getClassLoadingLock(className)) {
+            result = cache.get(className);
+            return result != null ? result : loadClassLocked(className, resolveIt);
+        }
+    }
+    
+    private Class<?> loadClassLocked(String className, boolean resolveIt) throws ClassNotFoundException {
+        Class<?> result;
 
         // try the system class loader
         try {
@@ -293,15 +286,10 @@ public class PluginClassLoader extends ClassLoader {
         byte[] classBytes = null;
         classBytes = loadIt(path, name);
         if (classBytes == null) {
-            classBytes = loadFromSubdirectory(path, name);
+            classBytes = loadFromSubdirectory(name);
             if (classBytes == null) {
                 // Attempt to get the class data from the JAR files.
-                for (File jf : jarFiles) {
-                    try {
-                        classBytes = loadClassFromJar(jf.getPath(), name);
-                        if (classBytes != null) return classBytes;
-                    } catch (Exception e) {}
-                }
+                classBytes = index.read(name.replace('.', '/') + ".class");
             }
         }
         return classBytes;
@@ -325,62 +313,11 @@ public class PluginClassLoader extends ClassLoader {
         }
     }
 
-    private byte[] loadFromSubdirectory(String path, String name) {
-        File f = new File(path);
-        String[] list = f.list();
-        if (list != null) {
-            for (int i = 0; i < list.length; i++) {
-                f = new File(path, list[i]);
-                if (f.isDirectory()) {
-                    byte[] buf = loadIt(path + list[i], name);
-                    if (buf != null)
-                        return buf;
-                }
-            }
-        }
-        return null;
-    }
-
-    private byte[] loadClassFromJar(String jar, String className) {
-        String name = className.replace('.', '/');
-        name += ".class";
-        return loadFromJar(jar, name);
-    }
-
-    // Load class or resource from a JAR file
-    private byte[] loadFromJar(String jar, String name) {
-        BufferedInputStream bis = null;
-        ZipFile zf = null;
-        try {
-            zf = new ZipFile(jar);
-            Enumeration<? extends ZipEntry> entries = zf.entries();
-            while (entries.hasMoreElements()) {
-                ZipEntry entry = entries.nextElement();
-                if (entry.getName().equals(name)) {
-                    bis = new BufferedInputStream(zf.getInputStream(entry));
-                    int size = (int) entry.getSize();
-                    byte[] data = new byte[size];
-                    int b = 0, eofFlag = 0;
-                    while ((size - b) > 0) {
-                        eofFlag = bis.read(data, b, size - b);
-                        if (eofFlag == -1)
-                            break;
-                        b += eofFlag;
-                    }
-                    return data;
-                }
-            }
-        } catch (Exception e) {
-            logger.debug(e, e);
-        } finally {
-            try {
-                if (zf != null)
-                    zf.close();
-                if (bis != null)
-                    bis.close();
-            } catch (IOException e) {
-                logger.error(e, e);
-            }
+    private byte[] loadFromSubdirectory(String name) {
+        for (File dir : directories) {
+            byte[] buf = loadIt(dir.getPath(), name);
+            if (buf != null)
+                return buf;
         }
         return null;
     }
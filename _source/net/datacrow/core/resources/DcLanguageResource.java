@@ -31,6 +31,7 @@ import java.io.FileOutputStream;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Scanner;
+import java.util.concurrent.ConcurrentHashMap;
 
 import net.datacrow.core.DcConfig;
 
@@ -46,6 +47,7 @@ public class DcLanguageResource {
     private static Logger logger = Logger.getLogger(DcLanguageResource.class.getName());
     public static String suffix = "resources.properties";
     private Map<String, String> resources = new HashMap<String, String>();
+    private Map<String, MessageTemplate> templates = new ConcurrentHashMap<String, MessageTemplate>();
     
     private File file;
     private String language;
@@ -65,6 +67,33 @@ public class DcLanguageResource {
         return value == null ? resources.get(key.toLowerCase()) : value;
     }
     
+    /**
+     * Retrieves the parsed message for the given key. Templates are created by {@link #compile()}
+     * or on first use and are recreated when the underlying text has been changed.
+     */
+    public MessageTemplate getTemplate(String key) {
+        String value = get(key);
+        if (value == null) return null;
+        
+        MessageTemplate template = templates.get(key);
+        if (template == null || !template.isCompiledFrom(value)) {
+            template = new MessageTemplate(value);
+            templates.put(key, template);
+        }
+        return template;
+    }
+    
+    /**
+     * Parses all messages containing parameters.
+     */
+    public void compile() {
+        templates.clear();
+        for (Map.Entry<String, String> entry : resources.entrySet()) {
+            if (entry.getValue() != null && entry.getValue().indexOf('%') > -1)
+                templates.put(entry.getKey(), new MessageTemplate(entry.getValue()));
+        }
+    }
+    
     /**
      * Updates or inserts the value for the given key. 
      * @param key
@@ -34,6 +34,8 @@ import java.util.Properties;
 
 import net.datacrow.core.DcConfig;
 import net.datacrow.core.DcRepository;
+import net.datacrow.core.settings.ISettingListener;
+import net.datacrow.core.settings.Setting;
 import net.datacrow.core.utilities.CoreUtilities;
 import net.datacrow.settings.DcSettings;
 
@@ -53,6 +55,18 @@ public class DcResources {
     
     private static boolean initialized = false;
     
+    // the current language resource; reset when the language or the resources change
+    private static volatile DcLanguageResource current;
+    
+    static {
+        DcSettings.addListener(DcRepository.Settings.stLanguage, new ISettingListener() {
+            @Override
+            public void settingChanged(Setting setting) {
+                current = null;
+            }
+        });
+    }
+    
     /**
      * Creates a new instance and loads all resources.
      */
@@ -69,6 +83,7 @@ public class DcResources {
      */
     public void initialize() {
         resources.clear();
+        current = null;
         
         String[] propertyFiles = {"DcLabels.properties", 
                                   "DcMessages.properties", 
@@ -95,6 +110,7 @@ public class DcResources {
             }
         }
         
+        english.compile();
         resources.put("English", english);
         
         for (String language : getLanguages()) {
@@ -107,7 +123,9 @@ public class DcResources {
     }
     
     public static void addLanguageResource(String language, DcLanguageResource lr) {
+        lr.compile();
         resources.put(language, lr);
+        current = null;
     }
     
     /**
@@ -145,6 +163,15 @@ public class DcResources {
      * The currently used language resource.
      */
     public static DcLanguageResource getCurrent() {
+        DcLanguageResource resource = current;
+        if (resource == null) {
+            resource = getResource();
+            current = resource;
+        }
+        return resource;
+    }
+    
+    private static DcLanguageResource getResource() {
         String language = "English";
 
         try {
@@ -174,43 +201,21 @@ public class DcResources {
     
     public static Collection<String> getTextAllLanguages(String id, String[] params) {
         Collection<String> result = new ArrayList<String>();
-        for (DcLanguageResource resource : resources.values()) {
-        	String value = resource.get(id);	
-        	if (params != null && value != null) 
-        		value = insertParams(value, params);
-        	
-        	result.add(value);
-        }
+        for (DcLanguageResource resource : resources.values())
+        	result.add(getText(resource, id, params));
         
         return result;
     }
     
     public static String getText(String id, String[] params) {
-        String value = getCurrent().get(id);
-        return params == null || value == null ? value : insertParams(value, params);
+        return getText(getCurrent(), id, params);
     }
-
-    private static String insertParams(String s, String[] params) {
-    	String result = s;
-    	for (int i = 1; i - 1 < params.length; i++) {
-    	    String searchPat = "%" + i;
-    	    int index = 0;
-    	    boolean escapedPatFound = false;
-    	    do {
-        		index = result.indexOf(searchPat, index);
-        		if (index < 0) 
-        		    logger.debug("Could not insert the parameter for label " + s);
-        		else
-        		    escapedPatFound = (index > 0 && result.charAt(index - 1) == '\\');
-    	    } while (escapedPatFound);
-
-            StringBuffer sb = new StringBuffer(result);
-            try {
-            	sb.replace(index, index+searchPat.length(), params[i -1]);
-            } catch (Exception e) {}
-            
-    	    result = sb.toString();
-    	}
-    	return result;
+    
+    private static String getText(DcLanguageResource resource, String id, String[] params) {
+        if (params == null) 
+            return resource.get(id);
+        
+        MessageTemplate template = resource.getTemplate(id);
+        return template == null ? null : template.format(params);
     }
 }
@@ -0,0 +1,135 @@
+/******************************************************************************
+ *                                     __                                     *
+ *                              <-----/@@\----->                              *
+ *                             <-< <  \\//  > >->                             *
+ *                               <-<-\ __ /->->                               *
+ *                               Data /  \ Crow                               *
+ *                                   ^    ^                                   *
+ *                              info@datacrow.net                             *
+ *                                                                            *
+ *                       This file is part of Data Crow.                      *
+ *       Data Crow is free software; you can redistribute it and/or           *
+ *        modify it under the terms of the GNU General Public                 *
+ *       License as published by the Free Software Foundation; either         *
+ *              version 3 of the License, or any later version.               *
+ *                                                                            *
+ *        Data Crow is distributed in the hope that it will be useful,        *
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *           MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.             *
+ *           See the GNU General Public License for more details.             *
+ *                                                                            *
+ *        You should have received a copy of the GNU General Public           *
+ *  License along with this program. If not, see http://www.gnu.org/licenses  *
+ *                                                                            *
+ ******************************************************************************/
+
+package net.datacrow.core.resources;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+
+/**
+ * A message with its parameter markers (%1, %2, ..) parsed in advance. Only the first 
+ * occurrence of each marker is replaced, escaped markers (\%1) are left untouched.
+ * 
+ * @author Robert Jan van der Waals
+ */
+public class MessageTemplate {
+
+    private static Logger logger = Logger.getLogger(MessageTemplate.class.getName());
+    
+    private final String source;
+    
+    // the literal text before each marker followed by the trailing text
+    private final String[] parts;
+    // the parameter number and the original text of each marker
+    private final int[] markers;
+    private final String[] markerText;
+    
+    /**
+     * Parses the message.
+     * @param source The message text.
+     */
+    public MessageTemplate(String source) {
+        this.source = source;
+        
+        List<String> p = new ArrayList<String>();
+        List<Integer> m = new ArrayList<Integer>();
+        List<String> mt = new ArrayList<String>();
+        Set<Integer> found = new HashSet<Integer>();
+        
+        int start = 0;
+        int index = source.indexOf('%');
+        int end;
+        int number;
+        while (index > -1) {
+            end = index + 1;
+            while (end < source.length() && Character.isDigit(source.charAt(end)))
+                end++;
+            
+            if (end > index + 1 && end - index < 10 && (index == 0 || source.charAt(index - 1) != '\\')) {
+                number = Integer.parseInt(source.substring(index + 1, end));
+                if (number > 0 && found.add(Integer.valueOf(number))) {
+                    p.add(source.substring(start, index));
+                    m.add(Integer.valueOf(number));
+                    mt.add(source.substring(index, end));
+                    start = end;
+                }
+            }
+            
+            index = source.indexOf('%', end);
+        }
+        
+        p.add(source.substring(start));
+        
+        parts = p.toArray(new String[p.size()]);
+        markerText = mt.toArray(new String[mt.size()]);
+        markers = new int[m.size()];
+        for (int i = 0; i < markers.length; i++)
+            markers[i] = m.get(i).intValue();
+    }
+    
+    /**
+     * Indicates if this template was created for the given text.
+     */
+    public boolean isCompiledFrom(String s) {
+        return source == s || source.equals(s);
+    }
+    
+    /**
+     * Creates the message. Markers for which no parameter has been 
+     * supplied are left as is.
+     * @param params The parameters; the first parameter replaces %1.
+     */
+    public String format(String[] params) {
+        if (params == null || markers.length == 0) {
+            if (params != null && params.length > 0)
+                logger.debug("Could not insert the parameter for label " + source);
+            
+            return source;
+        }
+        
+        if (params.length > markers.length)
+            logger.debug("Could not insert the parameter for label " + source);
+        
+        StringBuilder sb = new StringBuilder(source.length() + (16 * markers.length));
+        String param;
+        for (int i = 0; i < markers.length; i++) {
+            sb.append(parts[i]);
+            param = markers[i] <= params.length ? params[markers[i] - 1] : null;
+            sb.append(param != null ? param : markerText[i]);
+        }
+        
+        sb.append(parts[markers.length]);
+        return sb.toString();
+    }
+    
+    @Override
+    public String toString() {
+        return source;
+    }
+}
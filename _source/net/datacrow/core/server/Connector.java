@@ -25,12 +25,16 @@
 
 package net.datacrow.core.server;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
 import net.datacrow.core.console.IPollerTask;
 import net.datacrow.core.data.DataFilter;
+import net.datacrow.core.data.DcItemCache;
+import net.datacrow.core.data.DcItemCursor;
+import net.datacrow.core.data.DcReferenceResolver;
 import net.datacrow.core.data.DcResultSet;
 import net.datacrow.core.enhancers.IValueEnhancer;
 import net.datacrow.core.objects.DcField;
@@ -41,7 +45,10 @@ import net.datacrow.core.objects.Picture;
 import net.datacrow.core.objects.ValidationException;
 import net.datacrow.core.objects.helpers.User;
 import net.datacrow.core.security.SecuredUser;
+import net.datacrow.core.server.requests.ClientRequest;
+import net.datacrow.core.server.response.IServerResponse;
 import net.datacrow.core.server.response.ServerModulesRequestResponse;
+import net.datacrow.core.utilities.CompressedBlockOutputStream;
 import net.datacrow.core.wf.tasks.DcTask;
 
 public abstract class Connector {
@@ -52,6 +59,19 @@ public abstract class Connector {
     private String username;
     private String password;
     
+    // the maximum number of connections to the server and requests in progress per connection
+    public static final int _MAX_SERVER_CONNECTIONS = 4;
+    public static final int _MAX_PENDING_REQUESTS = 8;
+    // the number of seconds to wait for the response on a request
+    public static final int _DEFAULT_RESPONSE_TIMEOUT = 300;
+    
+    private DcServerConnectionPool connectionPool;
+    
+    private int compressionCodec = CompressedBlockOutputStream._CODEC_FAST;
+    private int itemCodec = DcItemCodec._CODEC_NONE;
+    private int compressionBlockSize = CompressedBlockOutputStream._DEFAULT_BLOCK_SIZE;
+    private int responseTimeout = _DEFAULT_RESPONSE_TIMEOUT;
+    
     public void setServerAddress(String serverAddress) {
         Connector.serverAddress = serverAddress;
 	}
@@ -59,6 +79,34 @@ public abstract class Connector {
     public DcServerConnection getServerConnection()  throws Exception {
         throw new Exception("Not available");
     }
+    
+    /**
+     * Sends the request to the server using the pooled, multiplexed connections.
+     * Requests from different threads are processed simultaneously; a slow request does
+     * not hold up the other requests.
+     * @param request The request.
+     * @return The response of the server.
+     */
+    public IServerResponse sendRequest(ClientRequest request) throws Exception {
+        return getConnectionPool().send(request);
+    }
+    
+    protected synchronized DcServerConnectionPool getConnectionPool() {
+        if (connectionPool == null)
+            connectionPool = new DcServerConnectionPool(this, _MAX_SERVER_CONNECTIONS, _MAX_PENDING_REQUESTS);
+        
+        return connectionPool;
+    }
+    
+    /**
+     * Closes the pooled server connections, if any.
+     */
+    protected synchronized void closeServerConnections() {
+        if (connectionPool != null) {
+            connectionPool.close();
+            connectionPool = null;
+        }
+    }
 
 	public void setApplicationServerPort(int applicationServerPort) {
 	    Connector.applicationServerPort = applicationServerPort;
@@ -88,6 +136,56 @@ public abstract class Connector {
 		return applicationServerPort;
 	}
 	
+	/**
+	 * The compression used for the data send to the server.
+	 * @see CompressedBlockOutputStream#_CODEC_NONE
+	 * @see CompressedBlockOutputStream#_CODEC_FAST
+	 * @see CompressedBlockOutputStream#_CODEC_DEFLATE
+	 * @see CompressedBlockOutputStream#_CODEC_DEFLATE_BEST
+	 */
+	public int getCompressionCodec() {
+	    return compressionCodec;
+	}
+	
+	public void setCompressionCodec(int compressionCodec) {
+	    this.compressionCodec = compressionCodec;
+	}
+	
+	/**
+	 * The item codec as agreed on with the server at login, used for the items send 
+	 * to the server.
+	 * @see DcItemCodec
+	 */
+	public int getItemCodec() {
+	    return itemCodec;
+	}
+	
+	public void setItemCodec(int itemCodec) {
+	    this.itemCodec = itemCodec;
+	}
+	
+	/**
+	 * The number of bytes collected before a block is compressed and send.
+	 */
+	public int getCompressionBlockSize() {
+	    return compressionBlockSize;
+	}
+	
+	public void setCompressionBlockSize(int compressionBlockSize) {
+	    this.compressionBlockSize = compressionBlockSize;
+	}
+	
+	/**
+	 * The number of seconds to wait for the response of the server on a request.
+	 */
+	public int getResponseTimeout() {
+	    return responseTimeout;
+	}
+	
+	public void setResponseTimeout(int responseTimeout) {
+	    this.responseTimeout = responseTimeout;
+	}
+	
 	public void notifyDatabaseFailure(String msg) {
 		displayError(msg);
 		System.exit(0);
@@ -153,6 +251,24 @@ public abstract class Connector {
 	public abstract boolean deleteItem(DcObject dco) throws ValidationException;
 	public abstract boolean saveItem(DcObject dco) throws ValidationException;
 	
+	/**
+	 * Saves a batch of items. Connectors can override this method to save the items
+	 * within a single transaction or with a single server request.
+	 * @param items The items to save.
+	 * @return The items which could not be saved due to validation errors.
+	 */
+	public Collection<DcObject> saveItems(Collection<DcObject> items) {
+	    Collection<DcObject> failed = new ArrayList<DcObject>();
+	    for (DcObject dco : items) {
+	        try {
+	            saveItem(dco);
+	        } catch (ValidationException ve) {
+	            failed.add(dco);
+	        }
+	    }
+	    return failed;
+	}
+	
 	public abstract Collection<Picture> getPictures(String parentID);
 
 	public abstract Collection<DcObject> getReferences(int mappingModuleIdx, String parentKey, boolean full);
@@ -183,5 +299,109 @@ public abstract class Connector {
 
 	public abstract List<DcObject> getItems(DataFilter df, int fields[]);
 	
+    /**
+     * Retrieves a single page of the items matching the filter, ordered on their ID.
+     * The order of the filter is not applied. The supplied filter is left untouched.
+     * @param df The filter.
+     * @param fields The fields to retrieve. Null for all fields.
+     * @param startAfter The ID of the last item of the previous page. An empty string for the first page.
+     * @param limit The maximum number of items to retrieve.
+     */
+    public List<DcObject> getItems(DataFilter df, int[] fields, String startAfter, int limit) {
+        DataFilter page = df.copy();
+        page.setResultStartAfter(startAfter);
+        page.setResultLimit(limit);
+        return getItems(page, fields);
+    }
+    
+    /**
+     * Retrieves a single page of the items matching the filter, in the order of the filter.
+     * Items inserted or deleted between two pages can cause items to be skipped or returned 
+     * twice. The supplied filter is left untouched.
+     * @param df The filter.
+     * @param fields The fields to retrieve. Null for all fields.
+     * @param offset The number of items to skip.
+     * @param limit The maximum number of items to retrieve.
+     */
+    public List<DcObject> getItems(DataFilter df, int[] fields, int offset, int limit) {
+        DataFilter page = df.copy();
+        page.setResultOffset(offset);
+        page.setResultLimit(limit);
+        return getItems(page, fields);
+    }
+    
+    /**
+     * Creates a cursor for retrieving the items matching the filter page by page.
+     * Use this instead of {@link #getItems(DataFilter, int[])} for potentially large results.
+     * @param df The filter.
+     * @param fields The fields to retrieve. Null for all fields.
+     * @param pageSize The maximum number of items per page.
+     */
+    public DcItemCursor getItemCursor(DataFilter df, int[] fields, int pageSize) {
+        return new DcItemCursor(this, df, fields, pageSize);
+    }
+    
+    /**
+     * Creates a cursor over the items with the specified IDs. The items are returned
+     * in the order of the supplied IDs.
+     * @param moduleIdx The module of the items.
+     * @param keys The item IDs.
+     * @param fields The fields to retrieve. Null for all fields.
+     * @param pageSize The maximum number of items per page.
+     */
+    public DcItemCursor getItemCursor(int moduleIdx, List<String> keys, int[] fields, int pageSize) {
+        return new DcItemCursor(this, moduleIdx, keys, fields, pageSize);
+    }
+    
+    /**
+     * Retrieves the item using the item cache. The item is only retrieved from the 
+     * database (or server) in case it is not cached with the requested fields.
+     * @see DcItemCache
+     * @param moduleIdx The module index.
+     * @param key The item ID.
+     * @param fields The fields to retrieve. Null for all fields.
+     * @return A copy of the (cached) item which can be freely altered, or null if not found.
+     */
+    public DcObject getCachedItem(int moduleIdx, String key, int[] fields) {
+        DcItemCache cache = DcItemCache.getInstance();
+        DcObject dco = cache.get(moduleIdx, key, fields);
+        
+        if (dco == null) {
+            dco = fields == null ? getItem(moduleIdx, key) : getItem(moduleIdx, key, fields);
+            
+            if (dco != null && cache.isEnabled())
+                cache.put(dco.clone(), fields);
+        }
+        
+        // the fields which were not requested are retrieved on first access
+        if (dco != null && fields != null)
+            dco.setLoadedFields(fields);
+        
+        return dco;
+    }
+    
+    /**
+     * Loads the references (reference fields and multi-references) for a batch of items.
+     * The mappings and referenced items are retrieved per module for the whole batch
+     * instead of per item and per field.
+     * @see DcReferenceResolver
+     * @param items The items to initialize.
+     * @param full Retrieve all fields of the referenced items (or only the minimal fields).
+     */
+    public void initializeReferences(Collection<DcObject> items, boolean full) {
+        initializeReferences(items, null, full);
+    }
+    
+    /**
+     * Loads the references for a batch of items, limited to the specified fields.
+     * @see #initializeReferences(Collection, boolean)
+     * @param items The items to initialize.
+     * @param fields The fields for which the references are loaded. Null for all fields.
+     * @param full Retrieve all fields of the referenced items (or only the minimal fields).
+     */
+    public void initializeReferences(Collection<DcObject> items, int[] fields, boolean full) {
+        new DcReferenceResolver(this, full).resolve(items, fields);
+    }
+	
 	public abstract Map<DcField, Collection<IValueEnhancer>> getValueEnhancers();
 }
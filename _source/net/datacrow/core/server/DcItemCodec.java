@@ -0,0 +1,414 @@
+/******************************************************************************
+ *                                     __                                     *
+ *                              <-----/@@\----->                              *
+ *                             <-< <  \\//  > >->                             *
+ *                               <-<-\ __ /->->                               *
+ *                               Data /  \ Crow                               *
+ *                                   ^    ^                                   *
+ *                              info@datacrow.net                             *
+ *                                                                            *
+ *                       This file is part of Data Crow.                      *
+ *       Data Crow is free software; you can redistribute it and/or           *
+ *        modify it under the terms of the GNU General Public                 *
+ *       License as published by the Free Software Foundation; either         *
+ *              version 3 of the License, or any later version.               *
+ *                                                                            *
+ *        Data Crow is distributed in the hope that it will be useful,        *
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *           MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.             *
+ *           See the GNU General Public License for more details.             *
+ *                                                                            *
+ *        You should have received a copy of the GNU General Public           *
+ *  License along with this program. If not, see http://www.gnu.org/licenses  *
+ *                                                                            *
+ ******************************************************************************/
+
+package net.datacrow.core.server;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+import net.datacrow.core.modules.DcModule;
+import net.datacrow.core.modules.DcModules;
+import net.datacrow.core.objects.DcImageIcon;
+import net.datacrow.core.objects.DcMapping;
+import net.datacrow.core.objects.DcObject;
+import net.datacrow.core.objects.DcSimpleValue;
+import net.datacrow.core.objects.DcValueLayout;
+import net.datacrow.core.objects.Picture;
+
+/**
+ * Compact binary encoding of items for the client / server communication.
+ * 
+ * Items are written as their module index followed by the values which are either filled
+ * or changed, each keyed on its field index, and the fields which have been loaded. Only 
+ * the values are written; the structure of the item is known to both ends through the 
+ * module definitions ({@link DcModule#getFieldIndices()}).
+ * No class information is written for the common value types (text, numbers, dates and 
+ * references). Values of other types (images for example) fall back on the standard Java 
+ * serialization.
+ * 
+ * The codec is negotiated at login (see 
+ * {@link net.datacrow.core.server.requests.ClientRequestLogin#setCodec(int)}) and used in 
+ * both directions; the client records the agreed codec on its connector (see 
+ * {@link Connector#getItemCodec()}) and applies it to the items it sends.
+ * 
+ * @author Robert Jan van der Waals
+ */
+public class DcItemCodec {
+    
+    /** No codec; items are sent using the standard Java serialization. */
+    public static final int _CODEC_NONE = 0;
+    /** The binary codec as implemented by this class. */
+    public static final int _CODEC_BINARY = 1;
+    
+    private static final Charset charset = Charset.forName("UTF-8");
+    
+    // item markers
+    private static final int _ITEM_NULL = 0;
+    private static final int _ITEM = 1;
+    private static final int _ITEM_MAPPING = 2;
+    private static final int _ITEM_SERIALIZED = 3;
+
+    // value tags
+    private static final int _NULL = 0;
+    private static final int _STRING = 1;
+    private static final int _LONG = 2;
+    private static final int _INTEGER = 3;
+    private static final int _DOUBLE = 4;
+    private static final int _TRUE = 5;
+    private static final int _FALSE = 6;
+    private static final int _DATE = 7;
+    private static final int _BYTES = 8;
+    private static final int _ITEM_VALUE = 9;
+    private static final int _ITEMS = 10;
+    private static final int _SERIALIZED = 11;
+    
+    private static final int _CHANGED = 0x80;
+    
+    // references beyond this depth are serialized as is (protects against reference cycles)
+    private static final int _MAX_DEPTH = 8;
+    
+    public static void writeItems(ObjectOutput out, Collection<? extends DcObject> items) throws IOException {
+        if (items == null) {
+            writeInt(out, -1);
+        } else {
+            writeInt(out, items.size());
+            for (DcObject dco : items)
+                writeItem(out, dco, 0);
+        }
+    }
+    
+    public static List<DcObject> readItems(ObjectInput in) throws IOException, ClassNotFoundException {
+        int size = readInt(in);
+        
+        if (size < 0) return null;
+        
+        List<DcObject> items = new ArrayList<DcObject>(size);
+        for (int i = 0; i < size; i++)
+            items.add(readItem(in));
+        
+        return items;
+    }
+    
+    public static void writeItem(ObjectOutput out, DcObject dco) throws IOException {
+        writeItem(out, dco, 0);
+    }
+    
+    public static DcObject readItem(ObjectInput in) throws IOException, ClassNotFoundException {
+        int type = in.readByte();
+        
+        if (type == _ITEM_NULL)
+            return null;
+        else if (type == _ITEM_SERIALIZED)
+            return (DcObject) in.readObject();
+        
+        int moduleIdx = readInt(in);
+        DcModule module = DcModules.get(moduleIdx);
+        
+        if (module == null)
+            throw new IOException("Module " + moduleIdx + " is unknown, cannot decode the item");
+        
+        DcObject dco = module.getItem();
+        dco.setNew(in.readBoolean());
+        
+        int count = readInt(in);
+        int field;
+        int tag;
+        Object value;
+        for (int i = 0; i < count; i++) {
+            field = readInt(in);
+            tag = in.readByte() & 0xFF;
+            value = readValue(in, tag & ~_CHANGED);
+            
+            // fields unknown to this side are skipped
+            if (dco.getField(field) != null) {
+                dco.setValueLowLevel(field, value);
+                dco.setChanged(field, (tag & _CHANGED) > 0);
+            }
+        }
+        
+        count = readInt(in);
+        if (count > -1) {
+            int[] fields = new int[count];
+            for (int i = 0; i < count; i++)
+                fields[i] = readInt(in);
+            
+            dco.setLoadedFields(fields);
+        }
+        
+        count = readInt(in);
+        if (count > 0) {
+            List<DcObject> children = new ArrayList<DcObject>(count);
+            for (int i = 0; i < count; i++)
+                children.add(readItem(in));
+            
+            // setting the children updates the parent reference; keep the original state
+            boolean[] changed = new boolean[count];
+            for (int i = 0; i < count; i++)
+                changed[i] = children.get(i).isChanged(children.get(i).getParentReferenceFieldIndex());
+            
+            dco.setChildren(children);
+            
+            for (int i = 0; i < count; i++)
+                children.get(i).setChanged(children.get(i).getParentReferenceFieldIndex(), changed[i]);
+        }
+        
+        if (type == _ITEM_MAPPING)
+            ((DcMapping) dco).setReference(readItem(in));
+        
+        return dco;
+    }
+    
+    public static void writeSimpleValues(ObjectOutput out, Collection<DcSimpleValue> values) throws IOException {
+        if (values == null) {
+            writeInt(out, -1);
+        } else {
+            writeInt(out, values.size());
+            for (DcSimpleValue sv : values) {
+                writeString(out, sv.getID());
+                writeString(out, sv.getName());
+                
+                byte[] bytes = sv.getIcon() != null ? sv.getIcon().getBytes() : null;
+                writeInt(out, bytes == null ? -1 : bytes.length);
+                if (bytes != null) out.write(bytes);
+            }
+        }
+    }
+    
+    public static List<DcSimpleValue> readSimpleValues(ObjectInput in) throws IOException {
+        int size = readInt(in);
+        
+        if (size < 0) return null;
+        
+        List<DcSimpleValue> values = new ArrayList<DcSimpleValue>(size);
+        String ID;
+        String name;
+        int length;
+        byte[] bytes;
+        for (int i = 0; i < size; i++) {
+            ID = readString(in);
+            name = readString(in);
+            
+            length = readInt(in);
+            bytes = null;
+            if (length >= 0) {
+                bytes = new byte[length];
+                in.readFully(bytes);
+            }
+            
+            values.add(new DcSimpleValue(ID, name, bytes != null ? new DcImageIcon(bytes) : null));
+        }
+        
+        return values;
+    }
+
+    private static void writeItem(ObjectOutput out, DcObject dco, int depth) throws IOException {
+        if (dco == null) {
+            out.writeByte(_ITEM_NULL);
+            return;
+        } 
+        
+        // pictures carry state beyond their values
+        if (dco instanceof Picture || depth > _MAX_DEPTH) {
+            out.writeByte(_ITEM_SERIALIZED);
+            out.writeObject(dco);
+            return;
+        }
+        
+        out.writeByte(dco instanceof DcMapping ? _ITEM_MAPPING : _ITEM);
+        writeInt(out, dco.getModuleIdx());
+        out.writeBoolean(dco.isNew());
+        
+        DcValueLayout layout = dco.getModule().getValueLayout();
+        
+        int count = 0;
+        int index;
+        for (int slot = 0; slot < layout.size(); slot++) {
+            index = layout.getIndex(slot);
+            if (dco.getValueLowLevel(index) != null || dco.isChanged(index))
+                count++;
+        }
+        
+        writeInt(out, count);
+        
+        for (int slot = 0; slot < layout.size(); slot++) {
+            index = layout.getIndex(slot);
+            if (dco.getValueLowLevel(index) != null || dco.isChanged(index)) {
+                writeInt(out, index);
+                writeValue(out, dco.getValueLowLevel(index), dco.isChanged(index), depth);
+            }
+        }
+        
+        // the loaded fields; -1 in case all fields are available
+        int[] fields = dco.getLoadedFields();
+        writeInt(out, fields == null ? -1 : fields.length);
+        for (int i = 0; fields != null && i < fields.length; i++)
+            writeInt(out, fields[i]);
+        
+        List<DcObject> children = dco.getCurrentChildren();
+        writeInt(out, children.size());
+        for (DcObject child : children)
+            writeItem(out, child, depth + 1);
+        
+        if (dco instanceof DcMapping)
+            writeItem(out, ((DcMapping) dco).getCurrentReference(), depth + 1);
+    }
+    
+    private static void writeValue(ObjectOutput out, Object o, boolean changed, int depth) throws IOException {
+        int flag = changed ? _CHANGED : 0;
+        
+        if (o == null) {
+            out.writeByte(_NULL | flag);
+        } else if (o instanceof String) {
+            out.writeByte(_STRING | flag);
+            writeString(out, (String) o);
+        } else if (o instanceof Long) {
+            out.writeByte(_LONG | flag);
+            out.writeLong(((Long) o).longValue());
+        } else if (o instanceof Integer) {
+            out.writeByte(_INTEGER | flag);
+            writeInt(out, ((Integer) o).intValue());
+        } else if (o instanceof Double) {
+            out.writeByte(_DOUBLE | flag);
+            out.writeDouble(((Double) o).doubleValue());
+        } else if (o instanceof Boolean) {
+            out.writeByte((((Boolean) o).booleanValue() ? _TRUE : _FALSE) | flag);
+        } else if (o.getClass() == Date.class) {
+            out.writeByte(_DATE | flag);
+            out.writeLong(((Date) o).getTime());
+        } else if (o instanceof byte[]) {
+            out.writeByte(_BYTES | flag);
+            writeInt(out, ((byte[]) o).length);
+            out.write((byte[]) o);
+        } else if (o instanceof DcObject) {
+            out.writeByte(_ITEM_VALUE | flag);
+            writeItem(out, (DcObject) o, depth + 1);
+        } else if (o instanceof Collection && isItemCollection((Collection<?>) o)) {
+            Collection<?> c = (Collection<?>) o;
+            out.writeByte(_ITEMS | flag);
+            writeInt(out, c.size());
+            for (Object item : c)
+                writeItem(out, (DcObject) item, depth + 1);
+        } else {
+            out.writeByte(_SERIALIZED | flag);
+            out.writeObject(o);
+        }
+    }
+    
+    private static Object readValue(ObjectInput in, int tag) throws IOException, ClassNotFoundException {
+        switch (tag) {
+        case _NULL:
+            return null;
+        case _STRING:
+            return readString(in);
+        case _LONG:
+            return Long.valueOf(in.readLong());
+        case _INTEGER:
+            return Integer.valueOf(readInt(in));
+        case _DOUBLE:
+            return Double.valueOf(in.readDouble());
+        case _TRUE:
+            return Boolean.TRUE;
+        case _FALSE:
+            return Boolean.FALSE;
+        case _DATE:
+            return new Date(in.readLong());
+        case _BYTES:
+            byte[] bytes = new byte[readInt(in)];
+            in.readFully(bytes);
+            return bytes;
+        case _ITEM_VALUE:
+            return readItem(in);
+        case _ITEMS:
+            int size = readInt(in);
+            List<DcObject> items = new ArrayList<DcObject>(size);
+            for (int i = 0; i < size; i++)
+                items.add(readItem(in));
+            return items;
+        case _SERIALIZED:
+            return in.readObject();
+        default:
+            throw new IOException("Unknown value tag " + tag);
+        }
+    }
+    
+    private static boolean isItemCollection(Collection<?> c) {
+        for (Object o : c) {
+            if (!(o instanceof DcObject))
+                return false;
+        }
+        return true;
+    }
+    
+    private static void writeString(ObjectOutput out, String s) throws IOException {
+        if (s == null) {
+            writeInt(out, -1);
+        } else {
+            byte[] bytes = s.getBytes(charset);
+            writeInt(out, bytes.length);
+            out.write(bytes);
+        }
+    }
+    
+    private static String readString(ObjectInput in) throws IOException {
+        int length = readInt(in);
+        
+        if (length < 0) return null;
+        
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, charset);
+    }
+    
+    /**
+     * Writes a variable length integer (zig-zag encoded); small values take a single byte.
+     */
+    private static void writeInt(ObjectOutput out, int value) throws IOException {
+        int v = (value << 1) ^ (value >> 31);
+        while ((v & ~0x7F) != 0) {
+            out.writeByte((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        out.writeByte(v);
+    }
+    
+    private static int readInt(ObjectInput in) throws IOException {
+        int v = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = in.readByte() & 0xFF;
+            v |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        
+        return (v >>> 1) ^ -(v & 1);
+    }
+}
@@ -1,7 +1,11 @@
 package net.datacrow.core.server;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.OutputStream;
 import java.net.Socket;
 import java.net.SocketException;
@@ -12,9 +16,21 @@ import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.NoSuchProviderException;
 import java.security.Security;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import javax.crypto.NoSuchPaddingException;
 
+import net.datacrow.core.data.DcItemCache;
+import net.datacrow.core.enhancers.SequenceAllocator;
+import net.datacrow.core.server.requests.ClientRequest;
+import net.datacrow.core.server.requests.ClientRequestItemAction;
+import net.datacrow.core.server.response.IServerResponse;
+import net.datacrow.core.server.response.ServerItemsInvalidatedResponse;
+import net.datacrow.core.server.response.ServerLoginResponse;
 import net.datacrow.core.utilities.CompressedBlockInputStream;
 import net.datacrow.core.utilities.CompressedBlockOutputStream;
 
@@ -28,18 +44,36 @@ public class DcServerConnection {
     private boolean isAvailable = true;
     
     private Socket socket;
+    private final Connector conn;
 
     private InputStream is;
     private OutputStream os;
     
+    // multiplexed mode; see send(ClientRequest) 
+    private ObjectOutputStream oos;
+    private ResponseReader reader;
+    private final Map<Long, PendingRequest> pending = new ConcurrentHashMap<Long, PendingRequest>();
+    private final int responseTimeout;
+    
     public DcServerConnection(Connector conn) throws IOException, SocketException, NoSuchAlgorithmException, NoSuchProviderException, NoSuchPaddingException, InvalidKeyException {
         socket = new Socket(conn.getServerAddress(), conn.getApplicationServerPort());
         socket.setKeepAlive(true);
         
+        this.conn = conn;
+        responseTimeout = conn.getResponseTimeout();
+        
         Security.addProvider(new BouncyCastleProvider()); 
-        MessageDigest hash = MessageDigest.getInstance("SHA1");
-        is = new CompressedBlockInputStream(new DigestInputStream(socket.getInputStream(), hash));
-        os = new CompressedBlockOutputStream(new DigestOutputStream(socket.getOutputStream(), hash), 1024);
+        
+        // the response reader and the sending threads run simultaneously; 
+        // a digest is not thread safe so each direction has its own
+        is = new CompressedBlockInputStream(new DigestInputStream(
+                new BufferedInputStream(socket.getInputStream()), MessageDigest.getInstance("SHA1")));
+        
+        // the blocks are self describing; the server reads whatever codec the client uses
+        int blockSize = conn.getCompressionBlockSize();
+        os = CompressedBlockOutputStream.create(new DigestOutputStream(
+                new BufferedOutputStream(socket.getOutputStream(), blockSize + 8), MessageDigest.getInstance("SHA1")), 
+                blockSize, conn.getCompressionCodec());
     }
     
     public InputStream getInputStream() {
@@ -50,10 +84,69 @@ public class DcServerConnection {
         return os;
     }
     
+    /**
+     * Sends the request and waits for its response. Multiple threads can send requests over
+     * the same connection simultaneously; the responses are matched to their requests on the 
+     * request ID, in whatever order the server returns them. 
+     * The server sends exactly one response per request; any further response with the same 
+     * request ID is discarded.
+     * Items are send using the item codec agreed on at login (see {@link Connector#getItemCodec()}).
+     * The streams of this connection should not be used directly when using this method. 
+     * @param request The request to send.
+     * @return The response of the server.
+     * @throws IOException When the connection failed or has been closed or when no response
+     * was received within the response timeout (see {@link Connector#getResponseTimeout()}).
+     */
+    public IServerResponse send(ClientRequest request) throws IOException {
+        PendingRequest pr = new PendingRequest();
+        pending.put(Long.valueOf(request.getRequestID()), pr);
+        
+        if (request instanceof ClientRequestItemAction)
+            ((ClientRequestItemAction) request).setCodec(conn.getItemCodec());
+        
+        try {
+            synchronized (this) {
+                if (oos == null) {
+                    oos = new ObjectOutputStream(os);
+                    reader = new ResponseReader();
+                    reader.start();
+                }
+                
+                oos.writeObject(request);
+                // do not keep references to the requests send
+                oos.reset();
+                oos.flush();
+            }
+        } catch (IOException e) {
+            pending.remove(Long.valueOf(request.getRequestID()));
+            disconnect();
+            throw e;
+        }
+        
+        try {
+            IServerResponse response = pr.getResponse(responseTimeout);
+            
+            if (response instanceof ServerLoginResponse)
+                conn.setItemCodec(((ServerLoginResponse) response).getCodec());
+            
+            return response;
+        } finally {
+            pending.remove(Long.valueOf(request.getRequestID()));
+        }
+    }
+    
+    /**
+     * The number of requests awaiting a response.
+     */
+    public int getPendingCount() {
+        return pending.size();
+    }
+    
     public void disconnect() {
         try {
             is.close();
             os.close();
+            socket.close();
         } catch (Exception e) {
             logger.error("Error while closing connections", e);
         }
@@ -70,4 +163,101 @@ public class DcServerConnection {
     public boolean isActive() {
         return !socket.isClosed();
     }
+    
+    private void fail(Exception e) {
+        for (Long requestID : new ArrayList<Long>(pending.keySet())) {
+            PendingRequest pr = pending.remove(requestID);
+            if (pr != null) pr.setError(e);
+        }
+    }
+    
+    private static class PendingRequest {
+        
+        private final CountDownLatch latch = new CountDownLatch(1);
+        
+        private IServerResponse response;
+        private Exception error;
+        
+        public void setResponse(IServerResponse response) {
+            this.response = response;
+            latch.countDown();
+        }
+
+        public void setError(Exception error) {
+            this.error = error;
+            latch.countDown();
+        }
+        
+        public IServerResponse getResponse(int timeout) throws IOException {
+            try {
+                if (!latch.await(timeout, TimeUnit.SECONDS))
+                    throw new IOException("No response received from the server within " + timeout + " seconds");
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for the server response");
+            }
+            
+            if (error != null)
+                throw new IOException("The connection to the server failed", error);
+            
+            return response;
+        }
+    }
+    
+    /**
+     * Removes the items altered by other clients from the item cache.
+     */
+    private void invalidate(ServerItemsInvalidatedResponse response) {
+        DcItemCache cache = DcItemCache.getInstance();
+        if (response.getIDs() == null) {
+            cache.invalidate(response.getModuleIdx(), null);
+        } else {
+            for (String ID : response.getIDs())
+                cache.invalidate(response.getModuleIdx(), ID);
+        }
+        
+        // numbers may have been handed out or released by the other client
+        SequenceAllocator.reset(response.getModuleIdx());
+    }
+    
+    /**
+     * Reads the responses and hands them to the waiting requests.
+     */
+    private class ResponseReader extends Thread {
+        
+        public ResponseReader() {
+            super("Server response reader");
+            setDaemon(true);
+        }
+        
+        @Override
+        public void run() {
+            try {
+                ObjectInputStream ois = new ObjectInputStream(is);
+                IServerResponse response;
+                PendingRequest pr;
+                while (isActive()) {
+                    response = (IServerResponse) ois.readObject();
+                    
+                    if (response instanceof ServerItemsInvalidatedResponse) {
+                        invalidate((ServerItemsInvalidatedResponse) response);
+                        continue;
+                    }
+                    
+                    pr = pending.remove(Long.valueOf(response.getRequestID()));
+                    
+                    if (pr != null)
+                        pr.setResponse(response);
+                    else 
+                        logger.warn("Received a response for an unknown request (" + response.getRequestID() + ")");
+                }
+            } catch (Exception e) {
+                if (isActive())
+                    logger.error("Error while reading from the server, the connection is closed", e);
+                
+                fail(e);
+                disconnect();
+            }
+        }
+    }
 }
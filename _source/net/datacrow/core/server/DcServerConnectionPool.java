@@ -0,0 +1,116 @@
+/******************************************************************************
+ *                                     __                                     *
+ *                              <-----/@@\----->                              *
+ *                             <-< <  \\//  > >->                             *
+ *                               <-<-\ __ /->->                               *
+ *                               Data /  \ Crow                               *
+ *                                   ^    ^                                   *
+ *                              info@datacrow.net                             *
+ *                                                                            *
+ *                       This file is part of Data Crow.                      *
+ *       Data Crow is free software; you can redistribute it and/or           *
+ *        modify it under the terms of the GNU General Public                 *
+ *       License as published by the Free Software Foundation; either         *
+ *              version 3 of the License, or any later version.               *
+ *                                                                            *
+ *        Data Crow is distributed in the hope that it will be useful,        *
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *           MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.             *
+ *           See the GNU General Public License for more details.             *
+ *                                                                            *
+ *        You should have received a copy of the GNU General Public           *
+ *  License along with this program. If not, see http://www.gnu.org/licenses  *
+ *                                                                            *
+ ******************************************************************************/
+
+package net.datacrow.core.server;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import net.datacrow.core.server.requests.ClientRequest;
+import net.datacrow.core.server.response.IServerResponse;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Pool of multiplexed server connections. Requests are send over the connection with the 
+ * fewest requests in progress. Additional connections are only opened when all connections
+ * are busy, up to the maximum number of connections.
+ * 
+ * @author Robert Jan van der Waals
+ */
+public class DcServerConnectionPool {
+    
+    private transient static Logger logger = Logger.getLogger(DcServerConnectionPool.class);
+
+    private final Connector connector;
+    private final int maxConnections;
+    private final int maxPending;
+    
+    private final List<DcServerConnection> connections = new ArrayList<DcServerConnection>();
+    
+    /**
+     * Creates a new pool.
+     * @param connector The connector holding the server address and port.
+     * @param maxConnections The maximum number of connections to open.
+     * @param maxPending The number of requests in progress on a connection before an 
+     * additional connection is opened.
+     */
+    public DcServerConnectionPool(Connector connector, int maxConnections, int maxPending) {
+        this.connector = connector;
+        this.maxConnections = Math.max(1, maxConnections);
+        this.maxPending = Math.max(1, maxPending);
+    }
+    
+    /**
+     * Sends the request and waits for the response.
+     * @see DcServerConnection#send(ClientRequest)
+     */
+    public IServerResponse send(ClientRequest request) throws Exception {
+        return getConnection().send(request);
+    }
+    
+    /**
+     * Retrieves the least busy connection.
+     */
+    public synchronized DcServerConnection getConnection() throws Exception {
+        DcServerConnection connection = null;
+        DcServerConnection current;
+        for (Iterator<DcServerConnection> iter = connections.iterator(); iter.hasNext(); ) {
+            current = iter.next();
+            
+            if (!current.isActive()) {
+                iter.remove();
+            } else if (connection == null || current.getPendingCount() < connection.getPendingCount()) {
+                connection = current;
+            }
+        }
+        
+        if (connection == null || 
+           (connection.getPendingCount() >= maxPending && connections.size() < maxConnections)) {
+            
+            logger.debug("Opening server connection " + (connections.size() + 1) + " of max " + maxConnections);
+            
+            connection = new DcServerConnection(connector);
+            connections.add(connection);
+        }
+        
+        return connection;
+    }
+    
+    public synchronized int getSize() {
+        return connections.size();
+    }
+    
+    /**
+     * Closes all connections. Requests in progress will fail.
+     */
+    public synchronized void close() {
+        for (DcServerConnection connection : connections)
+            connection.disconnect();
+        
+        connections.clear();
+    }
+}
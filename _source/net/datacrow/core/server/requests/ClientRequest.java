@@ -26,6 +26,7 @@
 package net.datacrow.core.server.requests;
 
 import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicLong;
 
 import net.datacrow.core.security.SecuredUser;
 
@@ -45,7 +46,11 @@ public abstract class ClientRequest implements Serializable {
 	public static final int _REQUEST_MODULES = 9;
 	public static final int _REQUEST_APPLICATION_SETTINGS = 10;
 	public static final int _REQUEST_VALUE_ENHANCERS_SETTINGS = 11;
+	
+	private static final AtomicLong counter = new AtomicLong();
 
+	private final long requestID = counter.incrementAndGet();
+	
 	private int type;
 	
 	private String clientKey;
@@ -78,5 +83,14 @@ public abstract class ClientRequest implements Serializable {
 		return type;
 	}
 	
+	/**
+	 * The unique ID of this request (unique within the client session). The server 
+	 * returns it as part of the response which allows multiple requests to be 
+	 * processed simultaneously on the same connection.
+	 */
+	public long getRequestID() {
+	    return requestID;
+	}
+	
 	public abstract void close();
 }
@@ -25,8 +25,13 @@
 
 package net.datacrow.core.server.requests;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
 import net.datacrow.core.objects.DcObject;
 import net.datacrow.core.security.SecuredUser;
+import net.datacrow.core.server.DcItemCodec;
 
 public class ClientRequestItemAction extends ClientRequest {
     
@@ -36,7 +41,9 @@ public class ClientRequestItemAction extends ClientRequest {
     public static final int _ACTION_DELETE = 1;
     
     private int action = _ACTION_SAVE;
-    private DcObject item;
+    private transient DcObject item;
+    
+    private int codec = DcItemCodec._CODEC_NONE;
     
     public ClientRequestItemAction(SecuredUser su, int action, DcObject item) {
         super(ClientRequest._REQUEST_ITEM_ACTION, su);
@@ -53,6 +60,31 @@ public class ClientRequestItemAction extends ClientRequest {
     	return item;
     }
     
+    /**
+     * Sets the codec used to send the item, as negotiated at login.
+     */
+    public void setCodec(int codec) {
+        this.codec = codec;
+    }
+    
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        
+        if (codec == DcItemCodec._CODEC_BINARY)
+            DcItemCodec.writeItem(out, item);
+        else 
+            out.writeObject(item);
+    }
+    
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        
+        if (codec == DcItemCodec._CODEC_BINARY)
+            item = DcItemCodec.readItem(in);
+        else
+            item = (DcObject) in.readObject();
+    }
+    
 	@Override
 	public void close() {
 		item = null;
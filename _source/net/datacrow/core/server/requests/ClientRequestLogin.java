@@ -25,6 +25,8 @@
 
 package net.datacrow.core.server.requests;
 
+import net.datacrow.core.server.DcItemCodec;
+
 public class ClientRequestLogin extends ClientRequest {
 
 	private static final long serialVersionUID = -3642120478572616447L;
@@ -32,6 +34,8 @@ public class ClientRequestLogin extends ClientRequest {
 	private final String username;
 	private final String password;
 	
+	private int codec = DcItemCodec._CODEC_BINARY;
+	
 	public ClientRequestLogin(String username, String password) {
 		super(ClientRequest._REQUEST_LOGIN, null);
 
@@ -49,6 +53,19 @@ public class ClientRequestLogin extends ClientRequest {
 		return password;
 	}
 
+	/**
+	 * The item codec supported by the client. The server confirms the codec to be used
+	 * in its login response.
+	 * @see DcItemCodec
+	 */
+	public void setCodec(int codec) {
+	    this.codec = codec;
+	}
+	
+	public int getCodec() {
+	    return codec;
+	}
+
 	@Override
 	public void close() {}
 }
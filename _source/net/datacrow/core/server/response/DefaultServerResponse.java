@@ -4,4 +4,15 @@ public class DefaultServerResponse implements IServerResponse {
 
     private static final long serialVersionUID = 1L;
 
+    private long requestID;
+    
+    @Override
+    public long getRequestID() {
+        return requestID;
+    }
+    
+    @Override
+    public void setRequestID(long requestID) {
+        this.requestID = requestID;
+    }
 }
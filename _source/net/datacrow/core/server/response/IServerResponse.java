@@ -29,4 +29,11 @@ import java.io.Serializable;
 
 public interface IServerResponse extends Serializable{
 
+    /**
+     * The ID of the request this is the response to.
+     * @see net.datacrow.core.server.requests.ClientRequest#getRequestID()
+     */
+    long getRequestID();
+    
+    void setRequestID(long requestID);
 }
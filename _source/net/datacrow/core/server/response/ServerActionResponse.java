@@ -25,7 +25,7 @@
 
 package net.datacrow.core.server.response;
 
-public class ServerActionResponse implements IServerResponse {
+public class ServerActionResponse extends DefaultServerResponse {
 
 	private static final long serialVersionUID = -6801244804443089531L;
 
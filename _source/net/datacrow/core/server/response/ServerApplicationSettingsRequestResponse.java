@@ -28,7 +28,7 @@ package net.datacrow.core.server.response;
 import net.datacrow.settings.DcSettings;
 import net.datacrow.settings.Settings;
 
-public class ServerApplicationSettingsRequestResponse implements IServerResponse {
+public class ServerApplicationSettingsRequestResponse extends DefaultServerResponse {
 
     private static final long serialVersionUID = -5876133656204207647L;
     
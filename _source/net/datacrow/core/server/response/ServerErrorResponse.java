@@ -25,7 +25,7 @@
 
 package net.datacrow.core.server.response;
 
-public class ServerErrorResponse implements IServerResponse {
+public class ServerErrorResponse extends DefaultServerResponse {
 
 	private static final long serialVersionUID = -2329836636255056199L;
 
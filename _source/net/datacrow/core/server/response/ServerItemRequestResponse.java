@@ -25,13 +25,20 @@
 
 package net.datacrow.core.server.response;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
 import net.datacrow.core.objects.DcObject;
+import net.datacrow.core.server.DcItemCodec;
 
-public class ServerItemRequestResponse implements IServerResponse {
+public class ServerItemRequestResponse extends DefaultServerResponse {
 
 	private static final long serialVersionUID = 2612470280934721802L;
 	
-	private DcObject dco;
+	private transient DcObject dco;
+	
+	private int codec = DcItemCodec._CODEC_NONE;
 	
 	public ServerItemRequestResponse(DcObject dco) {
 		this.dco = dco;
@@ -40,4 +47,29 @@ public class ServerItemRequestResponse implements IServerResponse {
 	public DcObject getItem() {
 		return dco;
 	}
+	
+	/**
+	 * Sets the codec used to send the item, as negotiated at login.
+	 */
+	public void setCodec(int codec) {
+	    this.codec = codec;
+	}
+	
+	private void writeObject(ObjectOutputStream out) throws IOException {
+	    out.defaultWriteObject();
+	    
+	    if (codec == DcItemCodec._CODEC_BINARY)
+	        DcItemCodec.writeItem(out, dco);
+	    else 
+	        out.writeObject(dco);
+	}
+	
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+	    in.defaultReadObject();
+	    
+	    if (codec == DcItemCodec._CODEC_BINARY)
+	        dco = DcItemCodec.readItem(in);
+	    else
+	        dco = (DcObject) in.readObject();
+	}
 }
@@ -0,0 +1,59 @@
+/******************************************************************************
+ *                                     __                                     *
+ *                              <-----/@@\----->                              *
+ *                             <-< <  \\//  > >->                             *
+ *                               <-<-\ __ /->->                               *
+ *                               Data /  \ Crow                               *
+ *                                   ^    ^                                   *
+ *                              info@datacrow.net                             *
+ *                                                                            *
+ *                       This file is part of Data Crow.                      *
+ *       Data Crow is free software; you can redistribute it and/or           *
+ *        modify it under the terms of the GNU General Public                 *
+ *       License as published by the Free Software Foundation; either         *
+ *              version 3 of the License, or any later version.               *
+ *                                                                            *
+ *        Data Crow is distributed in the hope that it will be useful,        *
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *           MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.             *
+ *           See the GNU General Public License for more details.             *
+ *                                                                            *
+ *        You should have received a copy of the GNU General Public           *
+ *  License along with this program. If not, see http://www.gnu.org/licenses  *
+ *                                                                            *
+ ******************************************************************************/
+
+package net.datacrow.core.server.response;
+
+import java.util.ArrayList;
+import java.util.Collection;
+
+/**
+ * Sent by the server, without a request, to inform the client that items have been
+ * altered or removed. The client removes these items from its item cache.
+ * Pushed messages do not have a request ID (0).
+ */
+public class ServerItemsInvalidatedResponse extends DefaultServerResponse {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int moduleIdx;
+    private final Collection<String> IDs;
+    
+    /**
+     * @param moduleIdx The module of the items.
+     * @param IDs The IDs of the altered items. Null in case all items of the module should be invalidated.
+     */
+    public ServerItemsInvalidatedResponse(int moduleIdx, Collection<String> IDs) {
+        this.moduleIdx = moduleIdx;
+        this.IDs = IDs != null ? new ArrayList<String>(IDs) : null;
+    }
+    
+    public int getModuleIdx() {
+        return moduleIdx;
+    }
+    
+    public Collection<String> getIDs() {
+        return IDs;
+    }
+}
@@ -25,15 +25,21 @@
 
 package net.datacrow.core.server.response;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.util.List;
 
 import net.datacrow.core.objects.DcObject;
+import net.datacrow.core.server.DcItemCodec;
 
-public class ServerItemsRequestResponse implements IServerResponse {
+public class ServerItemsRequestResponse extends DefaultServerResponse {
 
 	private static final long serialVersionUID = 1324718151380668953L;
 
-	private List<DcObject> items;
+	private transient List<DcObject> items;
+	
+	private int codec = DcItemCodec._CODEC_NONE;
 	
 	public ServerItemsRequestResponse(List<DcObject> items) {
 		this.items = items;
@@ -42,4 +48,30 @@ public class ServerItemsRequestResponse implements IServerResponse {
 	public List<DcObject> getItems() {
 		return items;
 	}
+	
+	/**
+	 * Sets the codec used to send the items, as negotiated at login.
+	 */
+	public void setCodec(int codec) {
+	    this.codec = codec;
+	}
+	
+	private void writeObject(ObjectOutputStream out) throws IOException {
+	    out.defaultWriteObject();
+	    
+	    if (codec == DcItemCodec._CODEC_BINARY)
+	        DcItemCodec.writeItems(out, items);
+	    else 
+	        out.writeObject(items);
+	}
+	
+	@SuppressWarnings("unchecked")
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+	    in.defaultReadObject();
+	    
+	    if (codec == DcItemCodec._CODEC_BINARY)
+	        items = DcItemCodec.readItems(in);
+	    else
+	        items = (List<DcObject>) in.readObject();
+	}
 }
@@ -26,13 +26,16 @@
 package net.datacrow.core.server.response;
 
 import net.datacrow.core.security.SecuredUser;
+import net.datacrow.core.server.DcItemCodec;
 
-public class ServerLoginResponse implements IServerResponse {
+public class ServerLoginResponse extends DefaultServerResponse {
 
 	private static final long serialVersionUID = 8442261502976241941L;
 
 	private SecuredUser su;
 	
+	private int codec = DcItemCodec._CODEC_NONE;
+	
 	public ServerLoginResponse(SecuredUser su) {
 		this.su = su;
 	}
@@ -40,4 +43,16 @@ public class ServerLoginResponse implements IServerResponse {
 	public SecuredUser getUser() {
 		return su;
 	}
+	
+	/**
+	 * The item codec to be used for this session as agreed on by the server.
+	 * @see DcItemCodec
+	 */
+	public void setCodec(int codec) {
+	    this.codec = codec;
+	}
+	
+	public int getCodec() {
+	    return codec;
+	}
 }
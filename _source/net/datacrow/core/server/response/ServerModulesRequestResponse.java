@@ -32,7 +32,7 @@ import net.datacrow.core.modules.DcModule;
 import net.datacrow.core.modules.DcModules;
 import net.datacrow.core.modules.DcPropertyModule;
 
-public class ServerModulesRequestResponse implements IServerResponse {
+public class ServerModulesRequestResponse extends DefaultServerResponse {
 
 	private static final long serialVersionUID = 8442261502976241941L;
 	
@@ -27,7 +27,7 @@ package net.datacrow.core.server.response;
 
 import net.datacrow.core.data.DcResultSet;
 
-public class ServerSQLResponse implements IServerResponse {
+public class ServerSQLResponse extends DefaultServerResponse {
 
 	private static final long serialVersionUID = -978735764038866148L;
 
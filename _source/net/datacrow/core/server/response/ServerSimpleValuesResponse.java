@@ -25,15 +25,21 @@
 
 package net.datacrow.core.server.response;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.util.List;
 
 import net.datacrow.core.objects.DcSimpleValue;
+import net.datacrow.core.server.DcItemCodec;
 
-public class ServerSimpleValuesResponse implements IServerResponse {
+public class ServerSimpleValuesResponse extends DefaultServerResponse {
 
     private static final long serialVersionUID = 5189812172288470911L;
 
-    private List<DcSimpleValue> values;
+    private transient List<DcSimpleValue> values;
+    
+    private int codec = DcItemCodec._CODEC_NONE;
 	
 	public ServerSimpleValuesResponse(List<DcSimpleValue> values) {
 		this.values = values;
@@ -42,4 +48,30 @@ public class ServerSimpleValuesResponse implements IServerResponse {
 	public List<DcSimpleValue> getValues() {
 		return values;
 	}
+	
+	/**
+	 * Sets the codec used to send the values, as negotiated at login.
+	 */
+	public void setCodec(int codec) {
+	    this.codec = codec;
+	}
+	
+	private void writeObject(ObjectOutputStream out) throws IOException {
+	    out.defaultWriteObject();
+	    
+	    if (codec == DcItemCodec._CODEC_BINARY)
+	        DcItemCodec.writeSimpleValues(out, values);
+	    else 
+	        out.writeObject(values);
+	}
+	
+	@SuppressWarnings("unchecked")
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+	    in.defaultReadObject();
+	    
+	    if (codec == DcItemCodec._CODEC_BINARY)
+	        values = DcItemCodec.readSimpleValues(in);
+	    else
+	        values = (List<DcSimpleValue>) in.readObject();
+	}
 }
@@ -33,7 +33,7 @@ import net.datacrow.core.enhancers.IValueEnhancer;
 import net.datacrow.core.enhancers.ValueEnhancers;
 import net.datacrow.core.objects.DcField;
 
-public class ServerValueEnhancersRequestResponse implements IServerResponse {
+public class ServerValueEnhancersRequestResponse extends DefaultServerResponse {
 
     private static final long serialVersionUID = -1446345813358197043L;
 
@@ -0,0 +1,135 @@
+/******************************************************************************
+ *                                     __                                     *
+ *                              <-----/@@\----->                              *
+ *                             <-< <  \\//  > >->                             *
+ *                               <-<-\ __ /->->                               *
+ *                               Data /  \ Crow                               *
+ *                                   ^    ^                                   *
+ *                              info@datacrow.net                             *
+ *                                                                            *
+ *                       This file is part of Data Crow.                      *
+ *       Data Crow is free software; you can redistribute it and/or           *
+ *        modify it under the terms of the GNU General Public                 *
+ *       License as published by the Free Software Foundation; either         *
+ *              version 3 of the License, or any later version.               *
+ *                                                                            *
+ *        Data Crow is distributed in the hope that it will be useful,        *
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *           MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.             *
+ *           See the GNU General Public License for more details.             *
+ *                                                                            *
+ *        You should have received a copy of the GNU General Public           *
+ *  License along with this program. If not, see http://www.gnu.org/licenses  *
+ *                                                                            *
+ ******************************************************************************/
+
+package net.datacrow.core.services;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+
+import net.datacrow.core.services.plugin.IRequestBudget;
+import net.datacrow.core.services.plugin.IServer;
+
+/**
+ * Limits the requests to a server, shared by all searches on that server. The rate is 
+ * limited using a token bucket, the concurrency using a semaphore. Every request should 
+ * be wrapped in {@link #acquire()} and {@link #release()}.
+ * 
+ * @see IRequestBudget
+ * @author Robert Jan van der Waals
+ */
+public class RequestLimiter {
+    
+    public static final double _DEFAULT_REQUESTS_PER_SECOND = 1;
+    public static final int _DEFAULT_MAX_CONCURRENT_REQUESTS = 2;
+    
+    private static final Map<String, RequestLimiter> limiters = new HashMap<String, RequestLimiter>();
+    
+    private final double rate;
+    private final double capacity;
+    private final int concurrency;
+    private final Semaphore permits;
+    
+    private double tokens;
+    private long lastRefill;
+    
+    /**
+     * Creates a new limiter.
+     * @param rate The maximum number of requests per second. Zero or less means unlimited.
+     * @param concurrency The maximum number of requests running at the same time.
+     */
+    public RequestLimiter(double rate, int concurrency) {
+        this.rate = rate;
+        this.capacity = Math.max(1, Math.ceil(rate));
+        this.concurrency = Math.max(1, concurrency);
+        this.permits = new Semaphore(this.concurrency, true);
+        this.tokens = capacity;
+        this.lastRefill = System.nanoTime();
+    }
+    
+    /**
+     * Retrieves the limiter of the specified server. The budget of the server is used
+     * in case it implements {@link IRequestBudget}.
+     */
+    public static RequestLimiter get(IServer server) {
+        synchronized (limiters) {
+            RequestLimiter limiter = limiters.get(server.getName());
+            if (limiter == null) {
+                limiter = server instanceof IRequestBudget ?
+                        new RequestLimiter(((IRequestBudget) server).getRequestsPerSecond(), 
+                                           ((IRequestBudget) server).getMaxConcurrentRequests()) :
+                        new RequestLimiter(_DEFAULT_REQUESTS_PER_SECOND, _DEFAULT_MAX_CONCURRENT_REQUESTS);
+                limiters.put(server.getName(), limiter);
+            }
+            return limiter;
+        }
+    }
+    
+    /**
+     * The maximum number of requests running at the same time.
+     */
+    public int getMaxConcurrentRequests() {
+        return concurrency;
+    }
+    
+    /**
+     * Waits for a request slot to become available. 
+     */
+    public void acquire() throws InterruptedException {
+        permits.acquire();
+        
+        try {
+            long wait = reserve();
+            if (wait > 0)
+                Thread.sleep(wait);
+        } catch (InterruptedException e) {
+            permits.release();
+            throw e;
+        }
+    }
+    
+    /**
+     * Releases the slot acquired with {@link #acquire()}.
+     */
+    public void release() {
+        permits.release();
+    }
+    
+    /**
+     * Takes a token. In case no token is available the token is reserved (the bucket 
+     * goes below zero) and the time to wait for it is returned.
+     * @return The time to wait in milliseconds.
+     */
+    private synchronized long reserve() {
+        if (rate <= 0) return 0;
+        
+        long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (((now - lastRefill) / 1000000000d) * rate));
+        lastRefill = now;
+        
+        tokens -= 1;
+        return tokens >= 0 ? 0 : (long) Math.ceil((-tokens * 1000) / rate);
+    }
+}
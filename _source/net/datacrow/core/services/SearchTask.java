@@ -28,6 +28,15 @@ package net.datacrow.core.services;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import net.datacrow.core.objects.DcObject;
 import net.datacrow.core.resources.DcResources;
@@ -248,7 +257,14 @@ public abstract class SearchTask extends Thread {
     public DcObject query(DcObject dco) throws Exception {
         String link = (String) dco.getValue(DcObject._SYS_SERVICEURL); 
         if (link != null && link.length() > 0) {
-            DcObject item = getItem(new URL(link));
+            DcObject item;
+            RequestLimiter limiter = RequestLimiter.get(getServer());
+            limiter.acquire();
+            try {
+                item = getItem(new URL(link));
+            } finally {
+                limiter.release();
+            }
             
             item = item == null ? dco : item;
             
@@ -297,6 +313,11 @@ public abstract class SearchTask extends Thread {
     /**
      * Here the actual search is performed. This is a standard implementation suited for
      * all online searches. 
+     * 
+     * The details of the found items are retrieved in parallel, limited by the request 
+     * budget of the server (see {@link RequestLimiter}). The items are passed to the 
+     * listener in the order returned by the server, each item as soon as it and the 
+     * items preceding it have been retrieved.
      */
     @Override
     public void run() {
@@ -307,8 +328,15 @@ public abstract class SearchTask extends Thread {
 
         listener.addMessage(DcResources.getText("msgConnectingToServer", getAddress()));
 
+        final RequestLimiter limiter = RequestLimiter.get(getServer());
+        
         try {
-            keys.addAll(getItemKeys());
+            limiter.acquire();
+            try {
+                keys.addAll(getItemKeys());
+            } finally {
+                limiter.release();
+            }
         } catch (Exception e) {
             listener.addError(DcResources.getText("msgCouldNotConnectTo", getServer().getName()));
             logger.error(e, e);
@@ -324,32 +352,89 @@ public abstract class SearchTask extends Thread {
 
         listener.addMessage(DcResources.getText("msgFoundXResults", String.valueOf(keys.size())));
         listener.addMessage(DcResources.getText("msgStartParsingXResults", String.valueOf(keys.size())));
-        int counter = 0;
         
-        for (Object key : keys) {
+        final AtomicInteger counter = new AtomicInteger();
+        final boolean full = getItemMode() == _ITEM_MODE_FULL;
+        
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, 
+                Math.min(limiter.getMaxConcurrentRequests(), Math.min(keys.size(), getMaximum()))));
+        
+        // the futures are kept in the order of the keys, which is the ranking of the server
+        List<Future<Collection<DcObject>>> results = new ArrayList<Future<Collection<DcObject>>>();
+        for (final Object key : keys) {
             
-            if (isCancelled() || counter == getMaximum()) break;
+            if (results.size() == getMaximum()) break;
             
-            try {
-                for (DcObject dco : getItems(key, getItemMode() == _ITEM_MODE_FULL)) {
-                    dco.setIDs();
-                    setServiceInfo(dco);
+            results.add(executor.submit(new Callable<Collection<DcObject>>() {
+                @Override
+                public Collection<DcObject> call() {
+                    Collection<DcObject> items = new ArrayList<DcObject>();
+                    if (isCancelled()) return items;
+                    
+                    try {
+                        limiter.acquire();
+                        try {
+                            if (isCancelled()) return items;
+                            items = getItems(key, full);
+                        } finally {
+                            limiter.release();
+                        }
+                        
+                        for (DcObject dco : items) {
+                            dco.setIDs();
+                            setServiceInfo(dco);
+                        }
+                    } catch (Exception exp) {
+                        listener.addMessage(DcResources.getText("msgParsingError", "" + exp));
+                        logger.error(DcResources.getText("msgParsingError", "" + exp), exp);
+                    }
                     
-                    listener.addMessage(DcResources.getText("msgParsingSuccessfull", dco.toString()));
-                    listener.addObject(dco);
-                    sleep(1000);
+                    synchronized (listener) {
+                        listener.processed(counter.incrementAndGet());
+                    }
+                    
+                    return items;
+                }
+            }));
+        }
+        
+        executor.shutdown();
+        
+        // items are passed on in the order of the keys, as soon as all the preceding items are available
+        try {
+            for (Future<Collection<DcObject>> result : results) {
+                Collection<DcObject> items = null;
+                while (items == null && !isCancelled()) {
+                    try {
+                        items = result.get(250, TimeUnit.MILLISECONDS);
+                    } catch (TimeoutException te) {
+                        // check for cancellation
+                    } catch (ExecutionException ee) {
+                        logger.error(ee, ee);
+                        break;
+                    }
+                }
+                
+                if (isCancelled()) {
+                    executor.shutdownNow();
+                    break;
+                }
+                
+                if (items == null) continue;
+                
+                for (DcObject dco : items) {
+                    synchronized (listener) {
+                        listener.addMessage(DcResources.getText("msgParsingSuccessfull", dco.toString()));
+                        listener.addObject(dco);
+                    }
                 }
-                listener.processed(counter);
-            } catch (Exception exp) {
-                listener.addMessage(DcResources.getText("msgParsingError", "" + exp));
-                logger.error(DcResources.getText("msgParsingError", "" + exp), exp);
-                listener.processed(counter);
             }
-            
-            counter++;
+        } catch (InterruptedException ie) {
+            executor.shutdownNow();
+            logger.debug(ie, ie);
         }
         
-        listener.processed(counter);
+        listener.processed(counter.get());
         listener.stopped();        
     }
 }
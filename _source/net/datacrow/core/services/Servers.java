@@ -77,7 +77,7 @@ public class Servers {
     
     /**
      * Starts the search for the servers using the {@link ServiceClassLoader}. 
-     * The services folder is scanned for both jar and class files. Any class implementing
+     * The services folder is scanned for jar files. Any class implementing
      * the {@link IServer} class is registered.
      */
     public synchronized void initialize() {
@@ -89,6 +89,9 @@ public class Servers {
         
         for (Class<?> clazz : scl.getClasses()) {
             
+            if (!IServer.class.isAssignableFrom(clazz))
+                continue;
+            
             IServer server = null;
             try {
                 server = (IServer) clazz.newInstance();
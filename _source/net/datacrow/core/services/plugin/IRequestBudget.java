@@ -0,0 +1,46 @@
+/******************************************************************************
+ *                                     __                                     *
+ *                              <-----/@@\----->                              *
+ *                             <-< <  \\//  > >->                             *
+ *                               <-<-\ __ /->->                               *
+ *                               Data /  \ Crow                               *
+ *                                   ^    ^                                   *
+ *                              info@datacrow.net                             *
+ *                                                                            *
+ *                       This file is part of Data Crow.                      *
+ *       Data Crow is free software; you can redistribute it and/or           *
+ *        modify it under the terms of the GNU General Public                 *
+ *       License as published by the Free Software Foundation; either         *
+ *              version 3 of the License, or any later version.               *
+ *                                                                            *
+ *        Data Crow is distributed in the hope that it will be useful,        *
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *           MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.             *
+ *           See the GNU General Public License for more details.             *
+ *                                                                            *
+ *        You should have received a copy of the GNU General Public           *
+ *  License along with this program. If not, see http://www.gnu.org/licenses  *
+ *                                                                            *
+ ******************************************************************************/
+
+package net.datacrow.core.services.plugin;
+
+/**
+ * Servers (see {@link IServer}) can implement this interface to declare how many requests 
+ * they allow. Servers which do not implement this interface get the default budget
+ * of the {@link net.datacrow.core.services.RequestLimiter}.
+ *  
+ * @author Robert Jan van der Waals
+ */
+public interface IRequestBudget {
+
+    /**
+     * The maximum number of requests per second. Zero or less means unlimited.
+     */
+    double getRequestsPerSecond();
+    
+    /**
+     * The maximum number of requests running at the same time.
+     */
+    int getMaxConcurrentRequests();
+}
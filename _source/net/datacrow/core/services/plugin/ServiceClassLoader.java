@@ -25,33 +25,55 @@
 
 package net.datacrow.core.services.plugin;
 
-import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.io.IOException;
+import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Enumeration;
-import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import net.datacrow.core.DcConfig;
 import net.datacrow.core.utilities.Directory;
+import net.datacrow.core.utilities.JarIndex;
 
 import org.apache.log4j.Logger;
 
 /**
  * The class loader used to find custom and standard online services.
+ * The entries of the service jars are indexed once (see {@link JarIndex}); classes are 
+ * loaded on demand and the class loader is parallel capable.
+ * <br>
+ * Services are discovered through the service index of the jar 
+ * (META-INF/services/net.datacrow.core.services.plugin.IServer), listing the 
+ * server classes one per line. For jars without a service index all classes are loaded.
+ * 
  * @author Robert Jan van der Waals
  */
 public class ServiceClassLoader extends ClassLoader {
 
     private static Logger logger = Logger.getLogger(ServiceClassLoader.class.getName());
     
+    public static final String _SERVICE_INDEX = "META-INF/services/" + IServer.class.getName();
+    
+    static {
+        registerAsParallelCapable();
+    }
+    
     protected final Collection<File> jarFiles = new ArrayList<File>();
-    protected final Map<String, Class<?>> cache = new HashMap<String, Class<?>>();
+    protected final Map<String, Class<?>> cache = new ConcurrentHashMap<String, Class<?>>();
 
+    private JarIndex index;
+    
     /**
      * Creates a new PluginClassLoader that searches in the directory path
      * passed as a parameter. The constructor automatically finds all JAR and ZIP
@@ -62,41 +84,18 @@ public class ServiceClassLoader extends ClassLoader {
      */
     public ServiceClassLoader(String path) {
         init(path);
-        
-        ZipFile zf = null;
-        Enumeration<? extends ZipEntry> entries;
-        ZipEntry entry;
-        String name;
-        for (File jf : jarFiles) {
-            try {
-                
-                zf = new ZipFile(jf);
-                entries = zf.entries();
-                
-                while (entries.hasMoreElements()) {
-                    entry = entries.nextElement();
-                    name = entry.getName();
-                    
-                    if (name.endsWith(".class")) {
-                        name = name.replaceAll("/", ".");
-                        name = name.substring(0, name.lastIndexOf("."));
-                        loadClass(name);
-                    }
-                }
-            } catch (Exception e) {
-                logger.error(e, e);
-            } finally {
-                try {
-                    if (zf != null) zf.close();
-                } catch (Exception e) {
-                    logger.debug("Could not close zip file", e);
-                }
-            }
-        }
     }
     
+    /**
+     * Retrieves the service classes of all jar files.
+     * @see #_SERVICE_INDEX
+     */
     public Collection<Class<?>> getClasses() {
-        return cache.values();
+        Collection<String> names = new LinkedHashSet<String>();
+        for (File jar : jarFiles)
+            names.addAll(getClassNames(jar));
+        
+        return loadClasses(names);
     }
 
     /** This version of the constructor is used when ImageJ is launched using Java WebStart. */
@@ -109,6 +108,92 @@ public class ServiceClassLoader extends ClassLoader {
         Directory dir = new Directory(DcConfig.getInstance().getServicesDir(), true, new String[] {"jar"});
         for (String filename :  dir.read())
             jarFiles.add(new File(filename));
+        
+        index = new JarIndex(jarFiles);
+    }
+    
+    /**
+     * The names of the service classes of the jar. These are read from the service index.
+     * In case the jar does not have a service index all its classes are returned, 
+     * except for anonymous classes.
+     */
+    private Collection<String> getClassNames(File jar) {
+        Collection<String> names = new ArrayList<String>();
+        
+        // every jar can hold its own service index; read it from the jar itself
+        byte[] serviceIndex = index.read(jar, _SERVICE_INDEX);
+        if (serviceIndex != null) {
+            try {
+                BufferedReader reader = new BufferedReader(new InputStreamReader(
+                        new ByteArrayInputStream(serviceIndex), "UTF-8"));
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.indexOf('#') > -1)
+                        line = line.substring(0, line.indexOf('#'));
+                    
+                    line = line.trim();
+                    if (line.length() > 0)
+                        names.add(line);
+                }
+                reader.close();
+                return names;
+            } catch (Exception e) {
+                logger.error("Could not read the service index of " + jar, e);
+            }
+        }
+        
+        String name;
+        for (String entry : index.getNames(jar)) {
+            if (entry.endsWith(".class") && !entry.matches(".*\\$[0-9]+.*")) {
+                name = entry.replace('/', '.');
+                names.add(name.substring(0, name.lastIndexOf(".")));
+            }
+        }
+        return names;
+    }
+    
+    /**
+     * Loads the classes, in parallel. Classes which cannot be loaded are skipped.
+     */
+    private Collection<Class<?>> loadClasses(Collection<String> names) {
+        Collection<Class<?>> classes = new ArrayList<Class<?>>();
+        if (names.isEmpty()) return classes;
+        
+        List<Callable<Class<?>>> tasks = new ArrayList<Callable<Class<?>>>();
+        for (final String name : names) {
+            tasks.add(new Callable<Class<?>>() {
+                @Override
+                public Class<?> call() throws Exception {
+                    return loadClass(name);
+                }
+            });
+        }
+        
+        int threads = Math.min(names.size(), Runtime.getRuntime().availableProcessors());
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "service-loader");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        
+        try {
+            for (Future<Class<?>> future : executor.invokeAll(tasks)) {
+                try {
+                    classes.add(future.get());
+                } catch (ExecutionException e) {
+                    logger.error(e.getCause(), e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            logger.error("Loading of the service classes was interrupted", e);
+        } finally {
+            executor.shutdown();
+        }
+        
+        return classes;
     }
 
     /**
@@ -126,12 +211,20 @@ public class ServiceClassLoader extends ClassLoader {
      *        resolveIt a boolean (should almost always be true)
      */
     @Override
-    public synchronized Class<?> loadClass(String className, boolean resolveIt) throws ClassNotFoundException {
+    public Class<?> loadClass(String className, boolean resolveIt) throws ClassNotFoundException {
 
         // try the local cache of classes
         Class<?> result = cache.get(className);
         if (result != null) return result;
 
+        synchronized (getClassLoadingLock(className)) {
+            result = cache.get(className);
+            return result != null ? result : loadClassLocked(className, resolveIt);
+        }
+    }
+    
+    private Class<?> loadClassLocked(String className, boolean resolveIt) throws ClassNotFoundException {
+        Class<?> result;
         
         // try the system class loader
         try {
@@ -164,56 +257,6 @@ public class ServiceClassLoader extends ClassLoader {
     }
 
     protected byte[] loadClassBytes(String name) {
-        for (File jf : jarFiles) {
-            try {
-                byte[] classBytes = loadClassFromJar(jf.getPath(), name);
-                if (classBytes != null) return classBytes;
-            } catch (Exception e) {}
-        }
-        return null;
-    }
-
-    private byte[] loadClassFromJar(String jar, String className) {
-        String name = className.replace('.', '/');
-        name += ".class";
-        return loadFromJar(jar, name);
-    }
-
-    // Load class or resource from a JAR file
-    private byte[] loadFromJar(String jar, String name) {
-        BufferedInputStream bis = null;
-        ZipFile zf = null;
-        try {
-            zf = new ZipFile(jar);
-            Enumeration<? extends ZipEntry> entries = zf.entries();
-            while (entries.hasMoreElements()) {
-                ZipEntry entry = entries.nextElement();
-                if (entry.getName().equals(name)) {
-                    bis = new BufferedInputStream(zf.getInputStream(entry));
-                    int size = (int) entry.getSize();
-                    byte[] data = new byte[size];
-                    int b = 0, eofFlag = 0;
-                    while ((size - b) > 0) {
-                        eofFlag = bis.read(data, b, size - b);
-                        if (eofFlag == -1)
-                            break;
-                        b += eofFlag;
-                    }
-                    return data;
-                }
-            }
-        } catch (Exception e) {
-            logger.debug(e, e);
-        } finally {
-            try {
-                if (zf != null)
-                    zf.close();
-                if (bis != null)
-                    bis.close();
-            } catch (IOException e) {
-                logger.error(e, e);
-            }
-        }
-        return null;
+        return index.read(name.replace('.', '/') + ".class");
     }
 }
@@ -23,15 +23,19 @@
  *                                                                            *
  ******************************************************************************/
 
-package net.datacrow.core.drivemanager;
+package net.datacrow.core.settings;
 
-import java.util.logging.Formatter;
-import java.util.logging.LogRecord;
+/**
+ * Listener for changes of setting values. Used to refresh state derived from settings.
+ * 
+ * @see Setting#addListener(ISettingListener)
+ * @author Robert Jan van der Waals
+ */
+public interface ISettingListener {
 
-public class DriveReportFormatter extends Formatter {
-    
-    @Override
-    public String format(LogRecord record) {
-        return new StringBuffer(formatMessage(record)).append("\r\n").toString();
-    }
+    /**
+     * Called after the value of the setting has been set.
+     * @param setting The setting.
+     */
+    void settingChanged(Setting setting);
 }
@@ -31,7 +31,9 @@ import java.awt.Font;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Vector;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import net.datacrow.core.DcRepository;
 import net.datacrow.core.console.UIComponents;
@@ -61,7 +63,7 @@ public class Setting implements Serializable {
 
     private int dataType;
     private String key;
-    private Object value;
+    private volatile Object value;
 
     private int settingsGroup = 0; 
     private int parentGroup = -1; // no parent as default    
@@ -77,6 +79,8 @@ public class Setting implements Serializable {
     
     private boolean readonly = false;
     
+    private transient List<ISettingListener> listeners;
+    
     /**
      * Creates a setting
      * 
@@ -228,6 +232,39 @@ public class Setting implements Serializable {
 
     public void setValue(Object o) {
         this.value = o;
+        fireChanged();
+    }
+    
+    /**
+     * Registers a listener which is notified whenever a value is set.
+     */
+    public synchronized void addListener(ISettingListener listener) {
+        if (listeners == null)
+            listeners = new CopyOnWriteArrayList<ISettingListener>();
+        
+        listeners.add(listener);
+    }
+    
+    public synchronized void removeListener(ISettingListener listener) {
+        if (listeners != null)
+            listeners.remove(listener);
+    }
+    
+    private void fireChanged() {
+        List<ISettingListener> l;
+        synchronized (this) {
+            l = listeners;
+        }
+        
+        if (l == null) return;
+        
+        for (ISettingListener listener : l) {
+            try {
+                listener.settingChanged(this);
+            } catch (Exception e) {
+                logger.error("Setting listener failed for " + key, e);
+            }
+        }
     }
 
     /**
@@ -347,5 +384,7 @@ public class Setting implements Serializable {
             logger.error("An error occurred while converting [" + s + "] to a valid " +
                          "settings value", e);
         }
+        
+        fireChanged();
     }
 }
@@ -32,7 +32,9 @@ import java.io.File;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.Map;
 
 import net.datacrow.core.objects.DcLookAndFeel;
 import net.datacrow.settings.definitions.IDefinitions;
@@ -51,6 +53,9 @@ public class Settings implements Serializable {
 	private File settingsFile = new File("unnamed.ini");
     private LinkedHashMap<String, SettingsGroup> groups = new LinkedHashMap<String, SettingsGroup>();
     
+    // flat lookup of all settings by key; rebuilt whenever groups or settings are added 
+    private transient volatile Map<String, Setting> lookup;
+    
     /**
      * Adds a group to the hashtable. A group may contain sub-groups.
      * Only the parent, to which a sub-group belongs, should be added.
@@ -60,6 +65,7 @@ public class Settings implements Serializable {
      */ 
     public void addGroup(String key, SettingsGroup group) {
         groups.put(key, group);
+        lookup = null;
     }
 
     /**
@@ -97,6 +103,7 @@ public class Settings implements Serializable {
     public void addSetting(String key, Setting setting) {
         SettingsGroup stGroup = getSettingGroup(key);
         stGroup.add(setting);
+        lookup = null;
     }
 
     public boolean isSettingKeyValid(String key) {
@@ -105,15 +112,52 @@ public class Settings implements Serializable {
     }
 
     /**
-     * Retrieves a setting
+     * Retrieves a setting. The setting is looked up in the flat index of all settings.
      */
     public Setting getSetting(String key) {
+        Map<String, Setting> map = lookup;
+        Setting setting = map != null ? map.get(key) : null;
+        
+        if (setting == null) {
+            // settings can be added to the groups directly
+            setting = findSetting(key);
+            if (setting != null || map == null)
+                lookup = createLookup();
+        }
+        
+        return setting;
+    }
+    
+    private Setting findSetting(String key) {
         for (SettingsGroup group : groups.values()) {
             Setting setting = group.getSetting(key);
             if (setting != null) return setting;
         }
         return null;
     }
+    
+    /**
+     * Creates the flat index. Settings appearing in multiple groups are resolved 
+     * in the same way as by the groups (first group first, children last).
+     */
+    private Map<String, Setting> createLookup() {
+        Map<String, Setting> map = new HashMap<String, Setting>();
+        for (SettingsGroup group : groups.values())
+            addToLookup(map, group);
+        
+        return map;
+    }
+    
+    private void addToLookup(Map<String, Setting> map, SettingsGroup group) {
+        for (Setting setting : group.getSettings().values()) {
+            if (!map.containsKey(setting.getKey()))
+                map.put(setting.getKey(), setting);
+        }
+        
+        for (SettingsGroup child : group.getChildren().values()) {
+            if (child != null) addToLookup(map, child);
+        }
+    }
 
     /**
      * Retrieves a value of a settings
@@ -26,6 +26,13 @@
 package net.datacrow.core.synchronizers;
 
 import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import net.datacrow.core.DcConfig;
 import net.datacrow.core.DcRepository;
@@ -36,6 +43,7 @@ import net.datacrow.core.objects.ValidationException;
 import net.datacrow.core.resources.DcResources;
 import net.datacrow.core.server.Connector;
 import net.datacrow.core.services.OnlineSearchHelper;
+import net.datacrow.core.services.RequestLimiter;
 import net.datacrow.core.services.SearchMode;
 import net.datacrow.core.services.SearchTask;
 import net.datacrow.core.services.Servers;
@@ -91,12 +99,7 @@ public abstract class DefaultSynchronizer extends Synchronizer {
     @Override
     public boolean onlineUpdate(ISynchronizerClient client, DcObject dco) {
         
-        try {
-            Thread.sleep(1000);
-        } catch (Exception e) {
-            logger.debug(e, e);
-        }
-        
+        // the requests are paced by the search task (see RequestLimiter)
         String item = dco.toString();
         this.client = client;
         this.dco = dco;
@@ -180,50 +183,200 @@ public abstract class DefaultSynchronizer extends Synchronizer {
         return new Task(client.getItemKeys());
     }    
     
+    /**
+     * Retrieves a synchronizer to be used by a single worker thread. Synchronizers hold
+     * state while updating an item; each worker uses its own instance.
+     */
+    private DefaultSynchronizer createWorkerInstance() {
+        DefaultSynchronizer synchronizer = (DefaultSynchronizer) getInstance();
+        synchronizer.client = client;
+        return synchronizer;
+    }
+    
+    /**
+     * The mass update is performed as a pipeline of stages: load, file parsing, online 
+     * lookup (including the merge) and save. Each stage has its own bounded pool of
+     * workers and a bounded queue. When the queue of a stage is full the previous stage 
+     * performs the work itself, which keeps the number of items in flight bounded.
+     */
     private class Task extends Thread {
         
+        private static final int _QUEUE_SIZE = 16;
+        
     	private Collection<String> keys;
     	
+    	private final ThreadLocal<DefaultSynchronizer> workers = new ThreadLocal<DefaultSynchronizer>() {
+    	    @Override
+    	    protected DefaultSynchronizer initialValue() {
+    	        return createWorkerInstance();
+    	    }
+    	};
+    	
+    	// the items updated by the file parsing stage
+    	private final Map<DcObject, Boolean> parsed = Collections.synchronizedMap(new IdentityHashMap<DcObject, Boolean>());
+    	
+    	private Stage<DcObject> save;
+    	private Stage<DcObject> online;
+    	private Stage<DcObject> parse;
+    	private Stage<String> load;
+    	
     	private Task(Collection<String> keys) {
     		this.keys = keys;
     	}
     	
+    	private void createStages() {
+    	    final Connector connector = DcConfig.getInstance().getConnector();
+    	    
+    	    int searchers = client.getServer() != null ? 
+    	            RequestLimiter.get(client.getServer()).getMaxConcurrentRequests() :
+    	            RequestLimiter._DEFAULT_MAX_CONCURRENT_REQUESTS;
+    	    
+    	    save = new Stage<DcObject>("save", 1, null) {
+    	        @Override
+    	        protected DcObject process(DcObject dco) {
+                    try {
+                        connector.saveItem(dco);
+                        client.notifyProcessed(dco);
+                    } catch (ValidationException ve) {
+                        client.notifyError(ve);
+                    }
+                    return null;
+    	        }
+    	    };
+    	    
+    	    online = new Stage<DcObject>("online", searchers, save) {
+    	        @Override
+    	        protected DcObject process(DcObject dco) {
+    	            boolean updated = parsed.remove(dco) != null;
+    	            updated |= workers.get().onlineUpdate(client, dco);
+    	            
+    	            client.notifyProcessed();
+    	            return updated ? dco : null;
+    	        }
+    	    };
+    	    
+    	    parse = new Stage<DcObject>("parse", 2, online) {
+    	        @Override
+    	        protected DcObject process(DcObject dco) {
+    	            if (workers.get().parseFiles(dco))
+    	                parsed.put(dco, Boolean.TRUE);
+    	            
+    	            return dco;
+    	        }
+    	    };
+    	    
+    	    load = new Stage<String>("load", 2, parse) {
+    	        @Override
+    	        protected DcObject process(String key) {
+    	            return connector.getItem(module, key, DcModules.get(module).getMinimalFields(null));
+    	        }
+    	    };
+    	}
+    	
+    	private void notifyThroughput(long start) {
+    	    long seconds = Math.max(1, (System.currentTimeMillis() - start) / 1000);
+    	    client.notify(DcResources.getText("msgSynchronizerThroughput", new String[] {
+    	            String.valueOf(load.getProcessed()), String.valueOf(parse.getProcessed()), 
+    	            String.valueOf(online.getProcessed()), String.valueOf(save.getProcessed()),
+    	            String.valueOf((online.getProcessed() * 60) / seconds)}));
+    	}
+    	
         @Override
         public void run() {
+            long start = System.currentTimeMillis();
+            
             try {
                 client.notifyTaskStarted(keys.size());
                 
-                Connector connector = DcConfig.getInstance().getConnector();
+                createStages();
                 
+                int counter = 0;
                 for (String key : keys) {
                     if (client.isCancelled()) break;
                     
-                    DcObject dco = DcConfig.getInstance().getConnector().getItem(module, key, DcModules.get(module).getMinimalFields(null));
-                    
-                    boolean updated = false;
-
-                    updated = parseFiles(dco);
-                    updated |= onlineUpdate(client, dco);
-                    
-                    client.notifyProcessed();
-                    
-                    try {
-                        if (updated) {
-                            connector.saveItem(dco);
-                            client.notifyProcessed(dco);
-                        }
-                    } catch (ValidationException ve) {
-                        client.notifyError(ve);
-                    }
+                    load.submit(key);
                     
-                    try {
-                        sleep(1000);
-                    } catch (Exception exp) {}
+                    if (++counter % 50 == 0)
+                        notifyThroughput(start);
                 }
+                
+                load.finish();
+                parse.finish();
+                online.finish();
+                save.finish();
+                
+                notifyThroughput(start);
             } finally {
                 client.notify(DcResources.getText("msgSynchronizerEnded"));
                 client.notifyTaskCompleted(true, null);
             }  
         }
+        
+        /**
+         * A single stage of the pipeline.
+         */
+        private abstract class Stage<T> {
+            
+            private final String name;
+            private final Stage<DcObject> next;
+            private final ThreadPoolExecutor executor;
+            private final AtomicLong processed = new AtomicLong();
+            
+            public Stage(String name, int workers, Stage<DcObject> next) {
+                this.name = name;
+                this.next = next;
+                this.executor = new ThreadPoolExecutor(
+                        workers, workers, 0L, TimeUnit.MILLISECONDS, 
+                        new ArrayBlockingQueue<Runnable>(_QUEUE_SIZE), 
+                        new ThreadPoolExecutor.CallerRunsPolicy());
+            }
+            
+            /**
+             * Processes the item. 
+             * @return The item to pass to the next stage or null to stop processing the item.
+             */
+            protected abstract DcObject process(T item);
+            
+            public long getProcessed() {
+                return processed.get();
+            }
+            
+            public void submit(final T item) {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (client.isCancelled()) return;
+                        
+                        DcObject result = null;
+                        try {
+                            result = process(item);
+                            processed.incrementAndGet();
+                        } catch (Exception e) {
+                            logger.error("Error in the " + name + " stage for " + item, e);
+                            client.notifyError(e);
+                        }
+                        
+                        if (result != null && next != null)
+                            next.submit(result);
+                    }
+                });
+            }
+            
+            /**
+             * Waits for all submitted items to be processed.
+             */
+            public void finish() {
+                executor.shutdown();
+                
+                try {
+                    while (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+                        if (client.isCancelled())
+                            executor.getQueue().clear();
+                    }
+                } catch (InterruptedException e) {
+                    logger.debug(e, e);
+                }
+            }
+        }
     }
 }
@@ -27,25 +27,45 @@ package net.datacrow.core.synchronizers;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import net.datacrow.core.DcConfig;
+import net.datacrow.core.DcRepository;
 import net.datacrow.core.data.DataFilter;
 import net.datacrow.core.data.DataFilterEntry;
+import net.datacrow.core.data.DcItemCursor;
 import net.datacrow.core.data.Operator;
 import net.datacrow.core.drivemanager.DriveManager;
 import net.datacrow.core.drivemanager.FileInfo;
 import net.datacrow.core.modules.DcModule;
 import net.datacrow.core.modules.DcModules;
 import net.datacrow.core.objects.DcObject;
-import net.datacrow.core.objects.ValidationException;
 import net.datacrow.core.resources.DcResources;
 import net.datacrow.core.server.Connector;
+import net.datacrow.settings.DcSettings;
 
 import org.apache.log4j.Logger;
 
+/**
+ * Updates the file information (location, size and hash) of the file backed items
+ * based on the drive scan results. 
+ * 
+ * The items are processed in batches: a batch is matched against the drive catalogs 
+ * in one pass after which the changed items are saved in one go. Saving a batch overlaps 
+ * with matching the next batch. The pace is controlled by the maximum number of items to 
+ * process per second (see {@link DcRepository.Settings#stFileSynchronizerItemsPerSecond}).
+ */
 public class FileSynchronizer {
 
     private transient static Logger logger = Logger.getLogger(FileSynchronizer.class.getName());
+    
+    public static final int _DEFAULT_BATCH_SIZE = 250;
+    
     private Task task;
     private Collection<DcModule> modules = new ArrayList<DcModule>();
     
@@ -79,10 +99,13 @@ public class FileSynchronizer {
     
     private static class Task extends Thread {
         
-        private boolean keepOnRunning = true;
+        private volatile boolean keepOnRunning = true;
         private FileSynchronizer fs;
         private int precision;
         
+        private final DriveManager dm = DriveManager.getInstance();
+        private final Connector connector = DcConfig.getInstance().getConnector();
+        
         public Task(FileSynchronizer fs, int precision) {
             this.fs = fs;
             this.precision = precision;
@@ -93,105 +116,201 @@ public class FileSynchronizer {
         public void cancel() {
             keepOnRunning = false;
         }
+        
+        private int getBatchSize() {
+            int size = DcSettings.getInt(DcRepository.Settings.stFileSynchronizerBatchSize);
+            return size > 0 ? size : _DEFAULT_BATCH_SIZE;
+        }
+        
+        private DataFilter getFilter(DcModule module) {
+            DataFilter df = new DataFilter(module.getIndex());
+            df.addEntry(new DataFilterEntry(DataFilterEntry._AND, 
+                                            module.getIndex(),
+                                            DcObject._SYS_FILENAME, 
+                                            Operator.IS_FILLED, 
+                                            null));
+            
+            if (precision >= DriveManager._PRECISION_MEDIUM)
+                df.addEntry(new DataFilterEntry(DataFilterEntry._AND, 
+                            module.getIndex(), 
+                            DcObject._SYS_FILESIZE, 
+                            Operator.IS_FILLED, null));
 
-        @Override
-        public void run() {
-            DriveManager dm = DriveManager.getInstance();
-
-            dm.notifyJobStarted(dm.getSynchronizerListeners());
+            if (precision == DriveManager._PRECISION_HIGHEST)
+                df.addEntry(new DataFilterEntry(DataFilterEntry._AND, 
+                            module.getIndex(), 
+                            DcObject._SYS_FILEHASH, 
+                            Operator.IS_FILLED, null));
+            
+            return df;
+        }
+        
+        /**
+         * Matches the items against the drive catalogs. 
+         * @return The items for which the file information has changed.
+         */
+        private List<DcObject> match(List<DcObject> items) {
+            Map<DcObject, FileInfo> current = new IdentityHashMap<DcObject, FileInfo>();
+            for (DcObject dco : items) {
+                current.put(dco, new FileInfo(
+                        (String) dco.getValue(DcObject._SYS_FILEHASH), 
+                        (String) dco.getValue(DcObject._SYS_FILENAME), 
+                        (Long) dco.getValue(DcObject._SYS_FILESIZE)));
+            }
             
-            int[] fields;
-            DataFilter df;
-            String filename;
-            String hash;
-            Long size;
-            String message;
+            Map<FileInfo, FileInfo> matches = dm.find(current.values(), precision);
             
+            List<DcObject> changed = new ArrayList<DcObject>();
             FileInfo currentFI;
             FileInfo fi;
+            for (DcObject dco : items) {
+                currentFI = current.get(dco);
+                fi = matches.get(currentFI);
+                
+                // A result means a match was found; only save the items for which
+                // the file information actually changed.
+                if (fi != null && !fi.equals(currentFI)) {
+                    dco.setValue(DcObject._SYS_FILENAME, fi.getFilename());
+                    dco.setValue(DcObject._SYS_FILESIZE, fi.getSize());
+                    dco.setValue(DcObject._SYS_FILEHASH, fi.getHash());
+                    dco.setUpdateGUI(false);
+                    changed.add(dco);
+                }
+            }
             
-            Connector connector = DcConfig.getInstance().getConnector();
+            return changed;
+        }
+        
+        /**
+         * Saves the batch of changed items.
+         */
+        private void save(List<DcObject> items) {
+            Collection<DcObject> failed = connector.saveItems(items);
             
-            while (keepOnRunning) {
-                
-                for (DcModule module : fs.getModules()) {
-                    
-                    Collection<Integer> c = new ArrayList<Integer>();
-                    c.add(Integer.valueOf(DcObject._SYS_FILEHASH));
-                    c.add(Integer.valueOf(DcObject._SYS_FILESIZE));
-                    c.add(Integer.valueOf(DcObject._SYS_FILENAME));
+            // only build the messages when someone is listening
+            if (dm.getSynchronizerListeners().isEmpty()) return;
+            
+            for (DcObject dco : items) {
+                if (failed.contains(dco)) {
+                    dm.sendMessage(dm.getSynchronizerListeners(),
+                            DcResources.getText("msgSynchronizerCouldNotSave", dco.toString()));
+                } else {
+                    dm.sendMessage(dm.getSynchronizerListeners(), 
+                            DcResources.getText("msgSynchronizedFile", 
+                                    new String[] {dco.toString(), (String) dco.getValue(DcObject._SYS_FILENAME)}));
+                }
+            }
+        }
+        
+        /**
+         * Waits for the previous batch to be saved.
+         */
+        private void waitFor(Future<?> future) {
+            if (future == null) return;
+            
+            try {
+                future.get();
+            } catch (Exception e) {
+                logger.error("Error while saving the synchronized items", e);
+            }
+        }
+        
+        /**
+         * Keeps the pace within the configured budget.
+         * @param processed The number of items processed so far in this pass.
+         * @param start The start time of the pass.
+         */
+        private void throttle(long processed, long start) {
+            long budget = DcSettings.getLong(DcRepository.Settings.stFileSynchronizerItemsPerSecond);
+            
+            if (budget <= 0) return;
+            
+            long wait = ((processed * 1000) / budget) - (System.currentTimeMillis() - start);
+            if (wait > 0) {
+                try {
+                    sleep(wait);
+                } catch (Exception e) {
+                    logger.error(e, e);
+                }
+            }
+        }
+        
+        private void synchronize(DcModule module, ExecutorService saver) {
+            Collection<Integer> c = new ArrayList<Integer>();
+            c.add(Integer.valueOf(DcObject._SYS_FILEHASH));
+            c.add(Integer.valueOf(DcObject._SYS_FILEHASHTYPE));
+            c.add(Integer.valueOf(DcObject._SYS_FILESIZE));
+            c.add(Integer.valueOf(DcObject._SYS_FILENAME));
 
-                    fields = module.getMinimalFields(c);
+            int[] fields = module.getMinimalFields(c);
+            
+            long start = System.currentTimeMillis();
+            long processed = 0;
+            long updated = 0;
+            
+            Future<?> saving = null;
+            DcItemCursor cursor = connector.getItemCursor(getFilter(module), fields, getBatchSize());
+            try {
+                List<DcObject> items;
+                while (keepOnRunning && cursor.hasNext()) {
+                    items = cursor.next();
                     
-                    if (!keepOnRunning) break;
+                    final List<DcObject> changed = match(items);
                     
-                    df = new DataFilter(module.getIndex());
-                    df.addEntry(new DataFilterEntry(DataFilterEntry._AND, 
-                                                    module.getIndex(),
-                                                    DcObject._SYS_FILENAME, 
-                                                    Operator.IS_FILLED, 
-                                                    null));
+                    waitFor(saving);
+                    saving = changed.isEmpty() ? null : saver.submit(new Runnable() {
+                        @Override
+                        public void run() {
+                            save(changed);
+                        }
+                    });
                     
-                    if (precision >= DriveManager._PRECISION_MEDIUM)
-                        df.addEntry(new DataFilterEntry(DataFilterEntry._AND, 
-                                    module.getIndex(), 
-                                    DcObject._SYS_FILESIZE, 
-                                    Operator.IS_FILLED, null));
+                    processed += items.size();
+                    updated += changed.size();
+                    
+                    if (!dm.getSynchronizerListeners().isEmpty()) {
+                        long seconds = Math.max(1, (System.currentTimeMillis() - start) / 1000);
+                        dm.sendMessage(dm.getSynchronizerListeners(), 
+                                DcResources.getText("msgFileSynchronizerProgress", 
+                                    new String[] {String.valueOf(processed), module.getObjectNamePlural(), 
+                                                  String.valueOf(updated), String.valueOf(processed / seconds)}));
+                    }
+                    
+                    throttle(processed, start);
+                }
+            } finally {
+                waitFor(saving);
+                cursor.close();
+            }
+        }
 
-                    if (precision == DriveManager._PRECISION_HIGHEST)
-                        df.addEntry(new DataFilterEntry(DataFilterEntry._AND, 
-                                    module.getIndex(), 
-                                    DcObject._SYS_FILEHASH, 
-                                    Operator.IS_FILLED, null));
+        @Override
+        public void run() {
+            dm.notifyJobStarted(dm.getSynchronizerListeners());
+            
+            ExecutorService saver = Executors.newSingleThreadExecutor();
+            
+            try {
+                while (keepOnRunning) {
                     
-                    for (DcObject dco : DcConfig.getInstance().getConnector().getItems(df, fields)) {
-                        
+                    for (DcModule module : fs.getModules()) {
                         if (!keepOnRunning) break;
                         
-                        filename = (String) dco.getValue(DcObject._SYS_FILENAME);
-                        hash = (String) dco.getValue(DcObject._SYS_FILEHASH);
-                        size = (Long) dco.getValue(DcObject._SYS_FILESIZE);
-                        
-                        currentFI = new FileInfo(hash, filename, size);
-                        fi = dm.find(currentFI, precision);
-                        
-                        // A result means a match was found.
-                        // No longer check whether the filename is different; found = found.
-                        if (fi != null) {
-                            
-                            dco.setValue(DcObject._SYS_FILENAME, fi.getFilename());
-                            dco.setValue(DcObject._SYS_FILESIZE, fi.getSize());
-                            dco.setValue(DcObject._SYS_FILEHASH, fi.getHash());
-                            
-                            try {
-                            	dco.setUpdateGUI(false);
-                            	connector.saveItem(dco);
-                                message = DcResources.getText("msgSynchronizedFile", 
-                                          new String[] {dco.toString(), fi.getFilename()}); 
-                                dm.sendMessage(dm.getSynchronizerListeners(), message);
-                            } catch (ValidationException ve) {
-                                dm.sendMessage(dm.getSynchronizerListeners(),
-                                        DcResources.getText("msgSynchronizerCouldNotSave", dco.toString()));
-                            }
-                        }
-                        
-                        currentFI.clear();
-                        if (fi != null)
-                            fi.clear();
-                        
                         try {
-                            sleep(2000);
+                            synchronize(module, saver);
                         } catch (Exception e) {
-                            logger.error(e, e);
+                            logger.error("Error while synchronizing the files of " + module, e);
                         }
                     }
+                    
+                    try {
+                        sleep(60000);
+                    } catch (Exception e) {
+                        logger.error(e, e);
+                    }
                 }
-                
-                try {
-                    sleep(60000);
-                } catch (Exception e) {
-                    logger.error(e, e);
-                }
+            } finally {
+                saver.shutdown();
             }
             
             fs = null;
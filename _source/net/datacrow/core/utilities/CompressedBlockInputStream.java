@@ -24,6 +24,9 @@ package net.datacrow.core.utilities;
 *  3. This notice may not be removed or altered from any source 
 *     distribution.
 *
+* Altered for Data Crow: support for stored (uncompressed) blocks and the 
+* block header is read in one go.
+*
 * $Id: CompressedBlockInputStream.java,v 1.1 2015/01/21 23:11:16 rwaals Exp $
 */
 import java.io.*;
@@ -40,6 +43,11 @@ public class CompressedBlockInputStream extends FilterInputStream {
     * Length of data in the input data
     */
    private int inLength = 0;
+   
+   /**
+    * Block header
+    */
+   private final byte[] header = new byte[8];
 
    /**
     * Buffer of uncompressed data
@@ -63,48 +71,52 @@ public class CompressedBlockInputStream extends FilterInputStream {
        inflater = new Inflater();
    }
 
+   private void readFully(byte[] b, int len) throws IOException {
+       // read(...) will not necessarily block until all 
+       // requested data has been read, so we loop until 
+       // we're done.
+       int offs = 0;
+       while (offs < len) {
+           int count = in.read(b, offs, len - offs);
+           if (count == -1) {
+               throw new EOFException();
+           }
+           offs += count;
+       }
+   }
+
    private void readAndDecompress() throws IOException {
-       // Read the length of the compressed block
-       int ch1 = in.read();
-       int ch2 = in.read();
-       int ch3 = in.read();
-       int ch4 = in.read();
-       if ((ch1 | ch2 | ch3 | ch4) < 0)
-           throw new EOFException();
-       inLength = ((ch1 << 24) + (ch2 << 16) + 
-           (ch3 << 8) + (ch4 << 0));
-
-       ch1 = in.read();
-       ch2 = in.read();
-       ch3 = in.read();
-       ch4 = in.read();
-       if ((ch1 | ch2 | ch3 | ch4) < 0)
-           throw new EOFException();
-       outLength = ((ch1 << 24) + (ch2 << 16) + 
-           (ch3 << 8) + (ch4 << 0));
+       // Read the length of the compressed block, followed by
+       // the length of the uncompressed block
+       readFully(header, header.length);
+       
+       inLength = ((header[0] & 0xFF) << 24) + ((header[1] & 0xFF) << 16) + 
+                  ((header[2] & 0xFF) << 8) + (header[3] & 0xFF);
+       outLength = ((header[4] & 0xFF) << 24) + ((header[5] & 0xFF) << 16) + 
+                   ((header[6] & 0xFF) << 8) + (header[7] & 0xFF);
+       
+       boolean stored = (inLength & CompressedBlockOutputStream._STORED) != 0;
+       inLength = inLength & ~CompressedBlockOutputStream._STORED;
+
+       if ((outBuf == null) || (outLength > outBuf.length)) {
+           outBuf = new byte[outLength];
+       }
+       
+       outOffs = 0;
+       
+       // Stored blocks are read as is
+       if (stored) {
+           readFully(outBuf, outLength);
+           return;
+       }
 
        // Make sure we've got enough space to read the block
        if ((inBuf == null) || (inLength > inBuf.length)) {
            inBuf = new byte[inLength];
        }
 
-       if ((outBuf == null) || (outLength > outBuf.length)) {
-           outBuf = new byte[outLength];
-       }
-
        // Read until we're got the entire compressed buffer. 
-       // read(...) will not necessarily block until all 
-       // requested data has been read, so we loop until 
-       // we're done.
-       int inOffs = 0;
-       while (inOffs < inLength) {
-           int inCount = 
-               in.read(inBuf, inOffs, inLength - inOffs);
-           if (inCount == -1) {
-               throw new EOFException();
-           }
-           inOffs += inCount;
-       }
+       readFully(inBuf, inLength);
 
        inflater.setInput(inBuf, 0, inLength);
        try {
@@ -119,8 +131,6 @@ public class CompressedBlockInputStream extends FilterInputStream {
        // Reset the inflator so we can re-use it for the 
        // next block
        inflater.reset();
-
-       outOffs = 0;
    }
 
    @Override
@@ -176,5 +186,11 @@ public class CompressedBlockInputStream extends FilterInputStream {
        // lower bound on the actual amount of available data
        return (outLength - outOffs) + in.available();
    }
+   
+   @Override
+   public void close() throws IOException {
+       super.close();
+       inflater.end();
+   }
 
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -26,12 +26,47 @@ package net.datacrow.core.utilities;
  *  3. This notice may not be removed or altered from any source 
  *     distribution.
  *
+ * Altered for Data Crow: selectable codec (including no compression), blocks
+ * which do not shrink are sent uncompressed and the block header is written 
+ * in one go. The underlying stream is only flushed on request.
+ *
  * $Id: CompressedBlockOutputStream.java,v 1.1 2015/01/21 23:11:16 rwaals Exp $
  */
 import java.io.*;
 import java.util.zip.Deflater;
 
 public class CompressedBlockOutputStream extends FilterOutputStream {
+    
+    /**
+     * No compression; all blocks are sent as is.
+     */
+    public static final int _CODEC_NONE = 0;
+    
+    /**
+     * Fast compression (deflate, best speed). 
+     */
+    public static final int _CODEC_FAST = 1;
+    
+    /**
+     * Default deflate compression.
+     */
+    public static final int _CODEC_DEFLATE = 2;
+    
+    /**
+     * Deflate compression, best compression.
+     */
+    public static final int _CODEC_DEFLATE_BEST = 3;
+    
+    /**
+     * Default block size.
+     */
+    public static final int _DEFAULT_BLOCK_SIZE = 16 * 1024;
+    
+    /**
+     * Marks a block as stored (uncompressed) in the compressed size header
+     */
+    static final int _STORED = 0x80000000;
+    
     /**
      * Buffer for input data
      */
@@ -48,9 +83,38 @@ public class CompressedBlockOutputStream extends FilterOutputStream {
     private int len = 0;
 
     /**
-     * Deflater for compressing data
+     * Block header
+     */
+    private final byte[] header = new byte[8];
+
+    /**
+     * Deflater for compressing data, null when no compression is applied
      */
     private Deflater deflater = null;
+    
+    /**
+     * Constructs a CompressedBlockOutputStream that writes to the 
+     * given underlying output stream 'os' and sends a block once
+     * 'size' byte have been written, compressed using the 
+     * specified codec (see the _CODEC constants).
+     */
+    public static CompressedBlockOutputStream create(OutputStream os, int size, int codec) 
+        throws IOException {
+        
+        int level = codec == _CODEC_FAST ? Deflater.BEST_SPEED : 
+                    codec == _CODEC_DEFLATE_BEST ? Deflater.BEST_COMPRESSION :
+                    Deflater.DEFAULT_COMPRESSION;
+        
+        CompressedBlockOutputStream cbos = 
+            new CompressedBlockOutputStream(os, size, level, Deflater.DEFAULT_STRATEGY);
+        
+        if (codec == _CODEC_NONE) {
+            cbos.deflater.end();
+            cbos.deflater = null;
+        }
+        
+        return cbos;
+    }
 
     /**
      * Constructs a CompressedBlockOutputStream that writes to 
@@ -75,34 +139,46 @@ public class CompressedBlockOutputStream extends FilterOutputStream {
         int level, int strategy) throws IOException {
         super(os);
         this.inBuf = new byte[size];
-        this.outBuf = new byte[size + 64];
+        this.outBuf = new byte[size];
         this.deflater = new Deflater(level);
         this.deflater.setStrategy(strategy);
     }
 
     protected void compressAndSend() throws IOException {
         if (len > 0) {
-            deflater.setInput(inBuf, 0, len);
-            deflater.finish();
-            int size = deflater.deflate(outBuf);
-
-            // Write the size of the compressed data, followed 
-            // by the size of the uncompressed data
-            out.write((size >> 24) & 0xFF);
-            out.write((size >> 16) & 0xFF);
-            out.write((size >>  8) & 0xFF);
-            out.write((size >>  0) & 0xFF);
-
-            out.write((len >> 24) & 0xFF);
-            out.write((len >> 16) & 0xFF);
-            out.write((len >>  8) & 0xFF);
-            out.write((len >>  0) & 0xFF);
-
-            out.write(outBuf, 0, size);
-            out.flush();
+            int size = 0;
+            boolean stored = true;
+            
+            if (deflater != null) {
+                deflater.setInput(inBuf, 0, len);
+                deflater.finish();
+                size = deflater.deflate(outBuf, 0, len);
+                
+                // only use the compressed block when it is actually smaller
+                stored = !deflater.finished() || size >= len;
+                deflater.reset();
+            }
+            
+            byte[] data = stored ? inBuf : outBuf;
+            size = stored ? len : size;
+
+            // Write the size of the compressed data (flagged when stored), 
+            // followed by the size of the uncompressed data
+            int sizeHeader = stored ? size | _STORED : size;
+            header[0] = (byte) ((sizeHeader >> 24) & 0xFF);
+            header[1] = (byte) ((sizeHeader >> 16) & 0xFF);
+            header[2] = (byte) ((sizeHeader >>  8) & 0xFF);
+            header[3] = (byte) ((sizeHeader >>  0) & 0xFF);
+
+            header[4] = (byte) ((len >> 24) & 0xFF);
+            header[5] = (byte) ((len >> 16) & 0xFF);
+            header[6] = (byte) ((len >>  8) & 0xFF);
+            header[7] = (byte) ((len >>  0) & 0xFF);
+
+            out.write(header, 0, header.length);
+            out.write(data, 0, size);
 
             len = 0;
-            deflater.reset();
         }
     }
 
@@ -117,7 +193,7 @@ public class CompressedBlockOutputStream extends FilterOutputStream {
     @Override
     public void write(byte[] b, int boff, int blen) 
         throws IOException {
-        while ((len + blen) > inBuf.length) {
+        while ((len + blen) >= inBuf.length) {
             int toCopy = inBuf.length - len;
             System.arraycopy(b, boff, inBuf, len, toCopy);
             len += toCopy;
@@ -139,5 +215,10 @@ public class CompressedBlockOutputStream extends FilterOutputStream {
     public void close() throws IOException {
         compressAndSend();
         out.close();
+        
+        if (deflater != null) {
+            deflater.end();
+            deflater = null;
+        }
     }
-}
\ No newline at end of file
+}
\ No newline at end of file
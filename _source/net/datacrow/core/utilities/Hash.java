@@ -32,6 +32,8 @@ import jonelo.jacksum.JacksumAPI;
 import jonelo.jacksum.algorithm.AbstractChecksum;
 import net.datacrow.core.DcRepository;
 import net.datacrow.core.objects.DcObject;
+import net.datacrow.core.settings.ISettingListener;
+import net.datacrow.core.settings.Setting;
 import net.datacrow.settings.DcSettings;
 
 import org.apache.log4j.Logger;
@@ -39,26 +41,35 @@ import org.apache.log4j.Logger;
 public class Hash {
     
     private static Logger logger = Logger.getLogger(Hash.class.getName());
-    private static Hash instance;
-    private AbstractChecksum checksum;
+    private static final Hash instance = new Hash();
     
-    private Hash() {}
+    // the hash type in use; refreshed when the setting changes 
+    private volatile String type;
+    
+    // checksums are stateful and are therefore kept per thread
+    private final ThreadLocal<AbstractChecksum> checksums = new ThreadLocal<AbstractChecksum>();
+    
+    private Hash() {
+        DcSettings.addListener(DcRepository.Settings.stHashType, new ISettingListener() {
+            @Override
+            public void settingChanged(Setting setting) {
+                type = null;
+            }
+        });
+    }
     
     public static Hash getInstance() {
-        instance = instance == null ? new Hash() : instance;
         return instance;
     }
     
     public void setHashType(String type) {
-        try {
-            checksum = JacksumAPI.getChecksumInstance(type);
-        } catch (Exception e) {
-            logger.error(type + " is not supported. Hash could not be calculated.");
-        }
+        this.type = type;
     }
     
     public String calculateHash(String filename) {
-        initChecksum();
+        AbstractChecksum checksum = getChecksum();
+        if (checksum == null) return null;
+        
         String hash = null;
         try {
             checksum.reset();
@@ -71,7 +82,8 @@ public class Hash {
     }
 
     public void calculateHash(DcObject dco) {
-        initChecksum();
+        AbstractChecksum checksum = getChecksum();
+        if (checksum == null) return;
         
         String filename = dco.getFilename();
 
@@ -122,8 +134,27 @@ public class Hash {
         }
     }
     
-    private void initChecksum() {
-        if (checksum == null || !checksum.getName().equals(DcSettings.getString(DcRepository.Settings.stHashType)))
-            setHashType(DcSettings.getString(DcRepository.Settings.stHashType));        
+    /**
+     * The checksum of the current thread for the hash type in use.
+     * @return The checksum or null if the hash type is not supported.
+     */
+    private AbstractChecksum getChecksum() {
+        String current = type;
+        if (current == null) {
+            current = DcSettings.getString(DcRepository.Settings.stHashType);
+            type = current;
+        }
+        
+        AbstractChecksum checksum = checksums.get();
+        if (checksum == null || !checksum.getName().equals(current)) {
+            try {
+                checksum = JacksumAPI.getChecksumInstance(current);
+                checksums.set(checksum);
+            } catch (Exception e) {
+                logger.error(current + " is not supported. Hash could not be calculated.");
+                checksum = null;
+            }
+        }
+        return checksum;
     }
 }
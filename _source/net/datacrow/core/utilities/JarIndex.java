@@ -0,0 +1,199 @@
+/******************************************************************************
+ *                                     __                                     *
+ *                              <-----/@@\----->                              *
+ *                             <-< <  \\//  > >->                             *
+ *                               <-<-\ __ /->->                               *
+ *                               Data /  \ Crow                               *
+ *                                   ^    ^                                   *
+ *                              info@datacrow.net                             *
+ *                                                                            *
+ *                       This file is part of Data Crow.                      *
+ *       Data Crow is free software; you can redistribute it and/or           *
+ *        modify it under the terms of the GNU General Public                 *
+ *       License as published by the Free Software Foundation; either         *
+ *              version 3 of the License, or any later version.               *
+ *                                                                            *
+ *        Data Crow is distributed in the hope that it will be useful,        *
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *           MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.             *
+ *           See the GNU General Public License for more details.             *
+ *                                                                            *
+ *        You should have received a copy of the GNU General Public           *
+ *  License along with this program. If not, see http://www.gnu.org/licenses  *
+ *                                                                            *
+ ******************************************************************************/
+
+package net.datacrow.core.utilities;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Index of the entries of a set of jar (or zip) files. The entries of each jar are 
+ * read once, the jar files are kept open for subsequent reads. In case multiple jars 
+ * contain the same entry the first jar wins; use {@link #read(File, String)} to read the 
+ * entry of a specific jar. Lookups are thread safe.
+ * 
+ * @author Robert Jan van der Waals
+ */
+public class JarIndex {
+
+    private transient static Logger logger = Logger.getLogger(JarIndex.class.getName());
+    
+    private final Map<File, ZipFile> jars = new LinkedHashMap<File, ZipFile>();
+    private final Map<String, Location> entries;
+    private final Map<File, List<String>> names = new LinkedHashMap<File, List<String>>();
+    
+    /**
+     * Creates the index. Jars which cannot be opened are skipped.
+     * @param files The jar files, in order of precedence.
+     */
+    public JarIndex(Collection<File> files) {
+        Map<String, Location> map = new HashMap<String, Location>();
+        
+        ZipFile zf;
+        ZipEntry entry;
+        List<String> jarNames;
+        for (File file : files) {
+            try {
+                zf = new ZipFile(file);
+                jars.put(file, zf);
+                
+                jarNames = new ArrayList<String>();
+                names.put(file, jarNames);
+                
+                Enumeration<? extends ZipEntry> list = zf.entries();
+                while (list.hasMoreElements()) {
+                    entry = list.nextElement();
+                    if (!entry.isDirectory() && !map.containsKey(entry.getName())) {
+                        map.put(entry.getName(), new Location(file, zf, entry));
+                        jarNames.add(entry.getName());
+                    }
+                }
+            } catch (IOException e) {
+                logger.error("Could not index jar file " + file, e);
+            }
+        }
+        
+        entries = Collections.unmodifiableMap(map);
+    }
+    
+    /**
+     * The names of all the entries.
+     */
+    public Collection<String> getNames() {
+        return entries.keySet();
+    }
+    
+    /**
+     * The names of the entries served from the specified jar file.
+     */
+    public Collection<String> getNames(File jar) {
+        List<String> list = names.get(jar);
+        return list != null ? Collections.unmodifiableList(list) : Collections.<String>emptyList();
+    }
+    
+    /**
+     * The indexed jar files.
+     */
+    public Collection<File> getJars() {
+        return Collections.unmodifiableSet(names.keySet());
+    }
+    
+    public boolean contains(String name) {
+        return entries.containsKey(name);
+    }
+    
+    /**
+     * The jar file containing the entry.
+     * @return The jar file or null if not found.
+     */
+    public File getJar(String name) {
+        Location location = entries.get(name);
+        return location != null ? location.file : null;
+    }
+    
+    /**
+     * Reads the content of the entry.
+     * @return The content or null if not found or not readable.
+     */
+    public byte[] read(String name) {
+        Location location = entries.get(name);
+        return location != null ? read(location.file, location.zf, location.entry) : null;
+    }
+    
+    /**
+     * Reads the content of the entry of the specified jar file, regardless of the 
+     * precedence of the jar files.
+     * @return The content or null if the jar does not contain the entry or if it is not readable.
+     */
+    public byte[] read(File jar, String name) {
+        ZipFile zf = jars.get(jar);
+        ZipEntry entry = zf != null ? zf.getEntry(name) : null;
+        return entry != null ? read(jar, zf, entry) : null;
+    }
+    
+    private byte[] read(File file, ZipFile zf, ZipEntry entry) {
+        InputStream is = null;
+        try {
+            is = zf.getInputStream(entry);
+            long size = entry.getSize();
+            ByteArrayOutputStream bos = new ByteArrayOutputStream(size > 0 ? (int) size : 8192);
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = is.read(buffer)) != -1)
+                bos.write(buffer, 0, read);
+            
+            return bos.toByteArray();
+        } catch (IOException e) {
+            logger.debug("Could not read " + entry.getName() + " from " + file, e);
+            return null;
+        } finally {
+            try {
+                if (is != null) is.close();
+            } catch (IOException e) {
+                logger.debug(e, e);
+            }
+        }
+    }
+    
+    /**
+     * Closes the jar files. The index cannot be used afterwards.
+     */
+    public void close() {
+        for (ZipFile zf : jars.values()) {
+            try {
+                zf.close();
+            } catch (IOException e) {
+                logger.debug("Could not close jar file " + zf.getName(), e);
+            }
+        }
+    }
+    
+    private static class Location {
+        
+        private final File file;
+        private final ZipFile zf;
+        private final ZipEntry entry;
+        
+        private Location(File file, ZipFile zf, ZipEntry entry) {
+            this.file = file;
+            this.zf = zf;
+            this.entry = entry;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+/******************************************************************************
+ *                                     __                                     *
+ *                              <-----/@@\----->                              *
+ *                             <-< <  \\//  > >->                             *
+ *                               <-<-\ __ /->->                               *
+ *                               Data /  \ Crow                               *
+ *                                   ^    ^                                   *
+ *                              info@datacrow.net                             *
+ *                                                                            *
+ *                       This file is part of Data Crow.                      *
+ *       Data Crow is free software; you can redistribute it and/or           *
+ *        modify it under the terms of the GNU General Public                 *
+ *       License as published by the Free Software Foundation; either         *
+ *              version 3 of the License, or any later version.               *
+ *                                                                            *
+ *        Data Crow is distributed in the hope that it will be useful,        *
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *           MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.             *
+ *           See the GNU General Public License for more details.             *
+ *                                                                            *
+ *        You should have received a copy of the GNU General Public           *
+ *  License along with this program. If not, see http://www.gnu.org/licenses  *
+ *                                                                            *
+ ******************************************************************************/
+
+package net.datacrow.core.utilities;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Detects objects which are garbage collected without having been released explicitly
+ * (see {@link net.datacrow.core.objects.DcObject#destroy()}). 
+ * <br>
+ * The detection is disabled by default and can be enabled by starting Data Crow with 
+ * -Ddatacrow.leakdetection=true. When disabled, tracking an object costs nothing. When 
+ * enabled every tracked object is registered with a phantom reference; the location 
+ * where unreleased objects were created is logged (on debug level).
+ * 
+ * @author Robert Jan van der Waals
+ */
+public class LeakDetector {
+    
+    private transient static Logger logger = Logger.getLogger(LeakDetector.class.getName());
+
+    private static final int _MAX_REPORTED = 25;
+    
+    private static volatile boolean enabled = Boolean.getBoolean("datacrow.leakdetection");
+    
+    private static final ReferenceQueue<Object> queue = new ReferenceQueue<Object>();
+    private static final Set<Token> tokens = Collections.newSetFromMap(new ConcurrentHashMap<Token, Boolean>());
+    
+    private static final AtomicLong tracked = new AtomicLong();
+    private static final AtomicLong released = new AtomicLong();
+    private static final AtomicLong leaked = new AtomicLong();
+    
+    private static Thread collector;
+    
+    private LeakDetector() {}
+    
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean b) {
+        enabled = b;
+    }
+    
+    /**
+     * Starts tracking the object.
+     * @param o The object to track.
+     * @return The token to release once the object has been cleaned up, or null when
+     * the leak detection is disabled.
+     */
+    public static Token track(Object o) {
+        if (!enabled) return null;
+        
+        startCollector();
+        
+        Token token = new Token(o);
+        tokens.add(token);
+        tracked.incrementAndGet();
+        return token;
+    }
+    
+    /**
+     * Marks the tracked object as released.
+     * @param token The token as returned by {@link #track(Object)}; can be null.
+     */
+    public static void release(Token token) {
+        if (token != null && !token.released) {
+            token.released = true;
+            released.incrementAndGet();
+        }
+    }
+    
+    public static long getTracked() {
+        return tracked.get();
+    }
+    
+    public static long getReleased() {
+        return released.get();
+    }
+    
+    /**
+     * The number of objects garbage collected without having been released.
+     */
+    public static long getLeaked() {
+        return leaked.get();
+    }
+    
+    public static void logStatistics() {
+        logger.info("Leak detection: " + tracked.get() + " tracked, " + released.get() + 
+                " released, " + leaked.get() + " collected without release");
+    }
+    
+    private static synchronized void startCollector() {
+        if (collector != null) return;
+        
+        collector = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (true) {
+                    try {
+                        collected((Token) queue.remove());
+                    } catch (InterruptedException ie) {
+                        return;
+                    } catch (Exception e) {
+                        logger.error(e, e);
+                    }
+                }
+            }
+        }, "Leak-Detector-Thread");
+        collector.setDaemon(true);
+        collector.start();
+    }
+    
+    private static void collected(Token token) {
+        tokens.remove(token);
+        
+        if (token.released) return;
+        
+        long count = leaked.incrementAndGet();
+        if (count <= _MAX_REPORTED)
+            logger.debug("Object of type " + token.type + " was collected without being released", token.origin);
+    }
+    
+    /**
+     * Keeps track of a single object.
+     */
+    public static class Token extends PhantomReference<Object> {
+        
+        private final String type;
+        private final Throwable origin;
+        private volatile boolean released = false;
+        
+        private Token(Object o) {
+            super(o, queue);
+            this.type = o.getClass().getName();
+            this.origin = logger.isDebugEnabled() ? new Throwable("Created at") : null;
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            return o == this;
+        }
+        
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(this);
+        }
+    }
+}
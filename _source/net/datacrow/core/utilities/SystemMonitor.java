@@ -26,6 +26,7 @@
 package net.datacrow.core.utilities;
 
 import net.datacrow.core.DcRepository;
+import net.datacrow.core.objects.DcImageCache;
 import net.datacrow.settings.DcSettings;
 
 import org.apache.log4j.Logger;
@@ -34,6 +35,9 @@ import org.apache.log4j.Logger;
  * The system monitor checks the available resources and logs information about the 
  * available memory. It is also capable to run a scheduled garbage collection task
  * based on the settings.
+ * <br>
+ * The memory usage is checked frequently; when the memory runs low the image cache 
+ * ({@link DcImageCache}) is trimmed. 
  * 
  * @author Robert Jan van der Waals 
  */
@@ -41,6 +45,13 @@ public class SystemMonitor extends Thread {
 
     private static Logger logger = Logger.getLogger(SystemMonitor.class.getName());
     
+    private static final long _MEMORY_CHECK_INTERVAL = 5000;
+    
+    // the fraction of the maximum memory in use from which the image cache is trimmed
+    private static final double _MEMORY_HIGH = 0.75;
+    // the fraction of the maximum memory in use from which the image cache is emptied
+    private static final double _MEMORY_CRITICAL = 0.9;
+    
     private Runtime runtime;
     
     public SystemMonitor() {
@@ -50,16 +61,22 @@ public class SystemMonitor extends Thread {
     
     @Override
     public void run() {
+        long last = System.currentTimeMillis();
         while (true) {
             try {
-            	
+                sleep(_MEMORY_CHECK_INTERVAL);
+                
             	long interval = DcSettings.getLong(DcRepository.Settings.stGarbageCollectionIntervalMs);
             	interval = interval > 0 ? interval : 480000;
             	
-                sleep(interval);
-
-                if (DcSettings.getLong(DcRepository.Settings.stGarbageCollectionIntervalMs) > 0)
-                	System.gc();
+            	if (System.currentTimeMillis() - last >= interval) {
+                    if (DcSettings.getLong(DcRepository.Settings.stGarbageCollectionIntervalMs) > 0)
+                    	System.gc();
+                    
+                    logMemory();
+                    DcImageCache.getInstance().logStatistics();
+                    last = System.currentTimeMillis();
+            	}
                 
                 checkMemory();
 
@@ -69,7 +86,22 @@ public class SystemMonitor extends Thread {
         }
     }
     
+    /**
+     * Trims the image cache when the memory in use exceeds the thresholds.
+     */
     private void checkMemory() {
+        double usage = (double) (runtime.totalMemory() - runtime.freeMemory()) / runtime.maxMemory();
+        
+        DcImageCache cache = DcImageCache.getInstance();
+        if (usage >= _MEMORY_CRITICAL) {
+            logger.info("Memory usage is critical (" + Math.round(usage * 100) + "%), clearing the image cache");
+            cache.clear();
+        } else if (usage >= _MEMORY_HIGH) {
+            cache.trim(cache.getWeight() / 2);
+        }
+    }
+    
+    private void logMemory() {
         long max = Math.round(Math.round(runtime.maxMemory() / 1024) / 1024) + 1;
         long used = Math.round(Math.round(runtime.totalMemory() / 1024) / 1024) + 1;
         
@@ -97,9 +97,7 @@ public class HtmlUtils {
     }    
     
     public static String getHtmlCleaned(URL url, String charset, int cleanupLevel) throws Exception { 
-        net.datacrow.core.http.HttpConnection connection = HttpConnectionUtil.getConnection(url);
-        String html = connection.getString(charset);
-        connection.close();        
+        String html = HttpConnectionUtil.retrievePage(url, charset);
         
         if (cleanupLevel >= 1) {
             if (html.contains("<html") || html.contains("<HTML")) {
@@ -212,4 +210,4 @@ public class HtmlUtils {
 
         return html;
     }    
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -125,21 +125,6 @@ public abstract class DcTask implements Runnable {
     	this.items.add(item);
     }
     
-    @Override
-    protected void finalize() throws Throwable {
-        if (items != null) {
-            items.clear();
-            items = null;
-        }
-        
-        if (clients != null) {
-            clients.clear();
-            clients = null;
-        }
-        
-        super.finalize();
-    }
-
 	public void startTask() {
         executing = true;
         canceled = false;
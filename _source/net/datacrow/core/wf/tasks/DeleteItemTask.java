@@ -27,6 +27,7 @@ package net.datacrow.core.wf.tasks;
 
 import net.datacrow.core.DcConfig;
 import net.datacrow.core.clients.IClient;
+import net.datacrow.core.data.DcItemCache;
 import net.datacrow.core.objects.DcObject;
 import net.datacrow.core.objects.ValidationException;
 import net.datacrow.core.server.Connector;
@@ -49,6 +50,7 @@ public class DeleteItemTask extends DcTask {
         	startTask();
             
         	Connector connector = DcConfig.getInstance().getConnector();
+        	DcItemCache cache = DcItemCache.getInstance();
         	
             for (DcObject dco : items) {
             	
@@ -56,6 +58,7 @@ public class DeleteItemTask extends DcTask {
             	
             	try {
             		connector.deleteItem(dco);
+            		cache.invalidate(dco);
             		success = true;
             	} catch (ValidationException ve) {
             		success = false;
@@ -27,6 +27,7 @@ package net.datacrow.core.wf.tasks;
 
 import net.datacrow.core.DcConfig;
 import net.datacrow.core.clients.IClient;
+import net.datacrow.core.data.DcItemCache;
 import net.datacrow.core.objects.DcObject;
 import net.datacrow.core.objects.ValidationException;
 import net.datacrow.core.server.Connector;
@@ -54,6 +55,7 @@ public class SaveItemTask extends DcTask {
             if (!isCanceled()) {
             	
             	Connector connector = DcConfig.getInstance().getConnector();
+            	DcItemCache cache = DcItemCache.getInstance();
             	
                 for (DcObject dco : items) {
                 	
@@ -61,6 +63,7 @@ public class SaveItemTask extends DcTask {
                 	
                 	try {
                 		connector.saveItem(dco);
+                		cache.invalidate(dco);
                 		success = true;
                 	} catch (ValidationException ve) {
                 		success = false;
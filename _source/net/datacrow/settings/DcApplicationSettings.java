@@ -1202,6 +1202,42 @@ public class DcApplicationSettings extends net.datacrow.settings.Settings {
                             "",
                             false,
                             false, -1));          
+        getSettings().addSetting(_General,
+                new Setting(DcRepository.ValueTypes._LONG,
+                            DcRepository.Settings.stFileSynchronizerBatchSize,
+                            Long.valueOf(250),
+                            -1,
+                            "",
+                            "",
+                            false,
+                            false, -1));
+        getSettings().addSetting(_General,
+                new Setting(DcRepository.ValueTypes._LONG,
+                            DcRepository.Settings.stFileSynchronizerItemsPerSecond,
+                            Long.valueOf(50),
+                            -1,
+                            "",
+                            "",
+                            false,
+                            false, -1));
+        getSettings().addSetting(_General,
+                new Setting(DcRepository.ValueTypes._LONG,
+                            DcRepository.Settings.stFileImporterThreads,
+                            Long.valueOf(0),
+                            -1,
+                            "",
+                            "",
+                            false,
+                            false, -1));
+        getSettings().addSetting(_General,
+                new Setting(DcRepository.ValueTypes._LONG,
+                            DcRepository.Settings.stFileImporterBatchSize,
+                            Long.valueOf(100),
+                            -1,
+                            "",
+                            "",
+                            false,
+                            false, -1));
     }
     
     private void createSystemSettings() {
@@ -28,10 +28,15 @@ package net.datacrow.settings;
 import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Font;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import net.datacrow.core.modules.DcModule;
 import net.datacrow.core.modules.DcModules;
 import net.datacrow.core.objects.DcLookAndFeel;
+import net.datacrow.core.settings.ISettingListener;
 import net.datacrow.core.settings.Setting;
 import net.datacrow.settings.definitions.IDefinitions;
 
@@ -42,12 +47,61 @@ import net.datacrow.settings.definitions.IDefinitions;
  */
 public class DcSettings {
 
-    private static DcApplicationSettings applicationSettings;
+    private static volatile DcApplicationSettings applicationSettings;
+    
+    private static final ConcurrentMap<String, Collection<ISettingListener>> listeners = 
+            new ConcurrentHashMap<String, Collection<ISettingListener>>();
+    
+    // forwards the changes of the application settings to the registered listeners
+    private static final ISettingListener dispatcher = new ISettingListener() {
+        @Override
+        public void settingChanged(Setting setting) {
+            fireChanged(setting.getKey(), setting);
+        }
+    };
 
     public DcSettings() {}
     
     public static void initialize() {
-        applicationSettings = new DcApplicationSettings();
+        DcApplicationSettings settings = new DcApplicationSettings();
+        for (Setting setting : settings.getSettings().getSettings())
+            setting.addListener(dispatcher);
+        
+        applicationSettings = settings;
+        
+        // all settings have been replaced
+        for (String key : listeners.keySet())
+            fireChanged(key, settings.getSetting(key));
+    }
+    
+    /**
+     * Registers a listener for changes of the application setting. The listener stays 
+     * registered when the settings are (re)initialized. Use this to refresh values derived 
+     * from settings instead of reading the setting on every use. On (re)initialization the
+     * listener is called for the new setting (null in case the setting does not exist).
+     * @param key The setting key.
+     * @param listener The listener.
+     */
+    public static void addListener(String key, ISettingListener listener) {
+        Collection<ISettingListener> c = listeners.get(key);
+        if (c == null) {
+            listeners.putIfAbsent(key, new CopyOnWriteArrayList<ISettingListener>());
+            c = listeners.get(key);
+        }
+        c.add(listener);
+    }
+    
+    public static void removeListener(String key, ISettingListener listener) {
+        Collection<ISettingListener> c = listeners.get(key);
+        if (c != null) c.remove(listener);
+    }
+    
+    private static void fireChanged(String key, Setting setting) {
+        Collection<ISettingListener> c = listeners.get(key);
+        if (c == null) return;
+        
+        for (ISettingListener listener : c)
+            listener.settingChanged(setting);
     }
     
     /**
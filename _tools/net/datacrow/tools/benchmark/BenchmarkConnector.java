@@ -0,0 +1,204 @@
+/******************************************************************************
+ *                                     __                                     *
+ *                              <-----/@@\----->                              *
+ *                             <-< <  \\//  > >->                             *
+ *                               <-<-\ __ /->->                               *
+ *                               Data /  \ Crow                               *
+ *                                   ^    ^                                   *
+ *                              info@datacrow.net                             *
+ *                                                                            *
+ *                       This file is part of Data Crow.                      *
+ *       Data Crow is free software; you can redistribute it and/or           *
+ *        modify it under the terms of the GNU General Public                 *
+ *       License as published by the Free Software Foundation; either         *
+ *              version 3 of the License, or any later version.               *
+ *                                                                            *
+ *        Data Crow is distributed in the hope that it will be useful,        *
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *           MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.             *
+ *           See the GNU General Public License for more details.             *
+ *                                                                            *
+ *        You should have received a copy of the GNU General Public           *
+ *  License along with this program. If not, see http://www.gnu.org/licenses  *
+ *                                                                            *
+ ******************************************************************************/
+
+package net.datacrow.tools.benchmark;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import net.datacrow.core.data.DataFilter;
+import net.datacrow.core.data.DcResultSet;
+import net.datacrow.core.enhancers.IValueEnhancer;
+import net.datacrow.core.objects.DcField;
+import net.datacrow.core.objects.DcObject;
+import net.datacrow.core.objects.DcSimpleValue;
+import net.datacrow.core.objects.Loan;
+import net.datacrow.core.objects.Picture;
+import net.datacrow.core.objects.ValidationException;
+import net.datacrow.core.objects.helpers.User;
+import net.datacrow.core.security.SecuredUser;
+import net.datacrow.core.server.Connector;
+import net.datacrow.core.server.response.ServerModulesRequestResponse;
+import net.datacrow.core.wf.tasks.DcTask;
+
+/**
+ * Connector without a database for the benchmarks. Every query returns the same result, 
+ * as set with {@link #setResult(List)}; all other calls do nothing.
+ * 
+ * @author Robert Jan van der Waals
+ */
+public class BenchmarkConnector extends Connector {
+
+    private DcResultSet resultSet = new DcResultSet();
+    
+    /**
+     * Sets the result returned for every query.
+     * @param rows The rows, each holding the column values.
+     */
+    public void setResult(final List<Object[]> rows) throws Exception {
+        final int columns = rows.isEmpty() ? 1 : rows.get(0).length;
+        
+        InvocationHandler handler = new InvocationHandler() {
+            private int row = -1;
+            
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                String name = method.getName();
+                if (name.equals("next"))
+                    return Boolean.valueOf(++row < rows.size());
+                else if (name.equals("getObject"))
+                    return rows.get(row)[((Integer) args[0]).intValue() - 1];
+                else if (name.equals("getMetaData"))
+                    return proxy;
+                else if (name.equals("getColumnCount"))
+                    return Integer.valueOf(columns);
+                else if (name.equals("getColumnName") || name.equals("getColumnTypeName"))
+                    return "COLUMN" + args[0];
+                return null;
+            }
+        };
+        
+        ResultSet rs = (ResultSet) Proxy.newProxyInstance(getClass().getClassLoader(), 
+                new Class<?>[] {ResultSet.class, ResultSetMetaData.class}, handler);
+        
+        DcResultSet result = new DcResultSet();
+        result.fill(rs);
+        resultSet = result;
+    }
+    
+    @Override
+    public void deleteModule(int moduleIdx) {}
+
+    @Override
+    public ServerModulesRequestResponse getModules() { return null; }
+
+    @Override
+    public void initialize() {}
+
+    @Override
+    public void shutdown(boolean saveChanges) {}
+
+    @Override
+    public void dropUser(User user) {}
+
+    @Override
+    public void close() {}
+
+    @Override
+    public void changePassword(User user, String password) {}
+
+    @Override
+    public DcResultSet executeSQL(String sql) { return resultSet; }
+
+    @Override
+    public SecuredUser getUser() { return null; }
+
+    @Override
+    public void createUser(User user, String password) {}
+
+    @Override
+    public void updateUser(User user) {}
+
+    @Override
+    public List<DcObject> getItems(int moduleIdx, int[] fields) { return null; }
+
+    @Override
+    public SecuredUser login(String username, String password) { return null; }
+
+    @Override
+    public List<DcSimpleValue> getSimpleValues(int module, boolean icons) { return null; }
+
+    @Override
+    public int getCount(int module, int field, Object value) { return 0; }
+
+    @Override
+    public List<DcObject> getReferencingItems(int moduleIdx, String ID) { return null; }
+
+    @Override
+    public boolean checkUniqueness(DcObject dco, boolean exitingItem) { return false; }
+
+    @Override
+    public void executeTask(DcTask task) {}
+
+    @Override
+    public boolean deleteItem(DcObject dco) throws ValidationException { return false; }
+
+    @Override
+    public boolean saveItem(DcObject dco) throws ValidationException { return false; }
+
+    @Override
+    public Collection<Picture> getPictures(String parentID) { return null; }
+
+    @Override
+    public Collection<DcObject> getReferences(int mappingModuleIdx, String parentKey, boolean full) { return null; }
+
+    @Override
+    public Map<String, Integer> getChildrenKeys(String parentKey, int childModuleIdx) { return null; }
+
+    @Override
+    public Collection<DcObject> getChildren(String parentKey, int childModuleIdx, int[] fields) { return null; }
+
+    @Override
+    public Loan getCurrentLoan(String parentKey) { return null; }
+
+    @Override
+    public List<DcObject> getLoans(String parentKey) { return null; }
+
+    @Override
+    public DcObject getItemByExternalID(int moduleIdx, String type, String externalID) { return null; }
+
+    @Override
+    public DcObject getItemByKeyword(int moduleIdx, String keyWord) { return null; }
+
+    @Override
+    public DcObject getItemByDisplayValue(int moduleIdx, String displayValue) { return null; }
+
+    @Override
+    public DcObject getItemByUniqueFields(DcObject dco) { return null; }
+
+    @Override
+    public DcObject getItem(int moduleIdx, String key) { return null; }
+
+    @Override
+    public DcObject getItem(int moduleIdx, String key, int[] fields) { return null; }
+
+    @Override
+    public Map<String, Integer> getKeys(DataFilter df) { return null; }
+
+    @Override
+    public List<DcObject> getItems(DataFilter df) { return null; }
+
+    @Override
+    public List<DcObject> getItems(DataFilter df, int[] fields) { return null; }
+
+    @Override
+    public Map<DcField, Collection<IValueEnhancer>> getValueEnhancers() { return null; }
+}
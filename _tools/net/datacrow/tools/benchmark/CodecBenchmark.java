@@ -0,0 +1,145 @@
+/******************************************************************************
+ *                                     __                                     *
+ *                              <-----/@@\----->                              *
+ *                             <-< <  \\//  > >->                             *
+ *                               <-<-\ __ /->->                               *
+ *                               Data /  \ Crow                               *
+ *                                   ^    ^                                   *
+ *                              info@datacrow.net                             *
+ *                                                                            *
+ *                       This file is part of Data Crow.                      *
+ *       Data Crow is free software; you can redistribute it and/or           *
+ *        modify it under the terms of the GNU General Public                 *
+ *       License as published by the Free Software Foundation; either         *
+ *              version 3 of the License, or any later version.               *
+ *                                                                            *
+ *        Data Crow is distributed in the hope that it will be useful,        *
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *           MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.             *
+ *           See the GNU General Public License for more details.             *
+ *                                                                            *
+ *        You should have received a copy of the GNU General Public           *
+ *  License along with this program. If not, see http://www.gnu.org/licenses  *
+ *                                                                            *
+ ******************************************************************************/
+
+package net.datacrow.tools.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.UUID;
+
+import net.datacrow.core.utilities.CompressedBlockInputStream;
+import net.datacrow.core.utilities.CompressedBlockOutputStream;
+
+/**
+ * Measures the compressed block streams for each codec and block size on an item like 
+ * payload (identifiers, titles, descriptions, numbers and dates). Reported are the 
+ * compression ratio and the write and read throughput.
+ * <br>
+ * Usage: CodecBenchmark [items] [iterations]
+ * 
+ * @author Robert Jan van der Waals
+ */
+public class CodecBenchmark {
+
+    private static final String[] codecs = {"none", "fast", "deflate", "best"};
+    private static final int[] blockSizes = {1024, 4 * 1024, 16 * 1024, 64 * 1024};
+    
+    private static final String[] words = {
+        "the", "of", "and", "movie", "book", "night", "return", "king", "city", "dark", 
+        "story", "life", "world", "edition", "special", "collection", "volume", "part", 
+        "director", "cut", "remastered", "music", "love", "war", "house", "last", "first"};
+    
+    public static void main(String[] args) throws Exception {
+        int items = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        
+        byte[] payload = createPayload(items);
+        System.out.println("Payload: " + items + " items, " + payload.length + " bytes");
+        System.out.println("codec     block    ratio   write MB/s   read MB/s");
+        
+        for (int codec = 0; codec < codecs.length; codec++) {
+            for (int i = 0; i < blockSizes.length; i++) {
+                int size = blockSizes[i];
+                
+                // warm up
+                byte[] compressed = null;
+                for (int j = 0; j < 3; j++)
+                    read(compressed = write(payload, size, codec));
+                
+                long start = System.nanoTime();
+                for (int j = 0; j < iterations; j++)
+                    compressed = write(payload, size, codec);
+                long writeTime = System.nanoTime() - start;
+                
+                start = System.nanoTime();
+                for (int j = 0; j < iterations; j++)
+                    read(compressed);
+                long readTime = System.nanoTime() - start;
+                
+                System.out.println(String.format("%-8s %6d   %5.2f   %10.1f  %10.1f", 
+                        codecs[codec], Integer.valueOf(size), 
+                        Double.valueOf((double) compressed.length / payload.length),
+                        Double.valueOf(getThroughput(payload.length, iterations, writeTime)),
+                        Double.valueOf(getThroughput(payload.length, iterations, readTime))));
+            }
+        }
+    }
+    
+    private static double getThroughput(long bytes, int iterations, long nanos) {
+        return (bytes * (double) iterations / (1024 * 1024)) / (nanos / 1000000000d);
+    }
+    
+    private static byte[] write(byte[] payload, int size, int codec) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(payload.length);
+        OutputStream os = CompressedBlockOutputStream.create(bos, size, codec);
+        
+        // written in chunks, as the item codec does
+        for (int offset = 0; offset < payload.length; offset += 512)
+            os.write(payload, offset, Math.min(512, payload.length - offset));
+        
+        os.close();
+        return bos.toByteArray();
+    }
+    
+    private static void read(byte[] compressed) throws IOException {
+        InputStream is = new CompressedBlockInputStream(new ByteArrayInputStream(compressed));
+        byte[] buffer = new byte[8192];
+        while (is.read(buffer, 0, buffer.length) != -1) {}
+        is.close();
+    }
+    
+    private static byte[] createPayload(int items) throws IOException {
+        Random random = new Random(42);
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(bos);
+        
+        for (int i = 0; i < items; i++) {
+            dos.writeUTF(new UUID(random.nextLong(), random.nextLong()).toString());
+            dos.writeUTF(getText(random, 2 + random.nextInt(4)));
+            dos.writeUTF(getText(random, 20 + random.nextInt(60)));
+            dos.writeInt(1900 + random.nextInt(120));
+            dos.writeLong(1000000000000L + random.nextInt(Integer.MAX_VALUE));
+            dos.writeDouble(random.nextInt(100) / 10d);
+            dos.writeBoolean(random.nextBoolean());
+        }
+        
+        dos.close();
+        return bos.toByteArray();
+    }
+    
+    private static String getText(Random random, int count) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) sb.append(' ');
+            sb.append(words[random.nextInt(words.length)]);
+        }
+        return sb.toString();
+    }
+}
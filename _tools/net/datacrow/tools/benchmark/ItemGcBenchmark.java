@@ -0,0 +1,140 @@
+/******************************************************************************
+ *                                     __                                     *
+ *                              <-----/@@\----->                              *
+ *                             <-< <  \\//  > >->                             *
+ *                               <-<-\ __ /->->                               *
+ *                               Data /  \ Crow                               *
+ *                                   ^    ^                                   *
+ *                              info@datacrow.net                             *
+ *                                                                            *
+ *                       This file is part of Data Crow.                      *
+ *       Data Crow is free software; you can redistribute it and/or           *
+ *        modify it under the terms of the GNU General Public                 *
+ *       License as published by the Free Software Foundation; either         *
+ *              version 3 of the License, or any later version.               *
+ *                                                                            *
+ *        Data Crow is distributed in the hope that it will be useful,        *
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *           MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.             *
+ *           See the GNU General Public License for more details.             *
+ *                                                                            *
+ *        You should have received a copy of the GNU General Public           *
+ *  License along with this program. If not, see http://www.gnu.org/licenses  *
+ *                                                                            *
+ ******************************************************************************/
+
+package net.datacrow.tools.benchmark;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Date;
+
+import net.datacrow.core.modules.DcModule;
+import net.datacrow.core.modules.DcModules;
+import net.datacrow.core.objects.DcObject;
+
+/**
+ * Measures the garbage collection cost of short lived items, with and without a finalizer.
+ * The finalized variant reproduces the finalizer items used to have (calling destroy).
+ * Reported are the elapsed time and the number and duration of the collections.
+ * <br>
+ * Usage: ItemGcBenchmark [items] [rounds]
+ * 
+ * @author Robert Jan van der Waals
+ */
+public class ItemGcBenchmark {
+
+    private static final int _MODULE = 9000;
+    private static final int _MODULE_FINALIZED = 9001;
+    
+    public static void main(String[] args) throws Exception {
+        int items = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        
+        DcModule module = new BenchmarkModule(_MODULE);
+        DcModule finalized = new BenchmarkModule(_MODULE_FINALIZED);
+        DcModules.register(module);
+        DcModules.register(finalized);
+        
+        // warm up
+        run(module, items / 10);
+        run(finalized, items / 10);
+        
+        System.out.println("Items per round: " + items);
+        System.out.println("variant       time ms   collections   gc ms");
+        for (int i = 0; i < rounds; i++) {
+            measure("plain", module, items);
+            measure("finalizer", finalized, items);
+        }
+    }
+    
+    private static void measure(String name, DcModule module, int items) {
+        System.gc();
+        
+        long collections = getCollectionCount();
+        long gcTime = getCollectionTime();
+        long start = System.nanoTime();
+        
+        run(module, items);
+        
+        long time = (System.nanoTime() - start) / 1000000;
+        System.out.println(String.format("%-10s %10d %13d %7d", name, Long.valueOf(time), 
+                Long.valueOf(getCollectionCount() - collections), 
+                Long.valueOf(getCollectionTime() - gcTime)));
+    }
+    
+    /**
+     * Creates the items, keeping a small window of them alive as a list view would.
+     */
+    private static void run(DcModule module, int items) {
+        DcObject[] window = new DcObject[1000];
+        DcObject dco;
+        for (int i = 0; i < items; i++) {
+            dco = module.getItem();
+            dco.setValue(DcObject._ID, String.valueOf(i));
+            dco.setValue(DcObject._SYS_CREATED, new Date());
+            window[i % window.length] = dco;
+        }
+    }
+    
+    private static long getCollectionCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+            count += Math.max(0, gc.getCollectionCount());
+        return count;
+    }
+    
+    private static long getCollectionTime() {
+        long time = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+            time += Math.max(0, gc.getCollectionTime());
+        return time;
+    }
+    
+    private static class BenchmarkModule extends DcModule {
+        
+        private static final long serialVersionUID = 1L;
+
+        private BenchmarkModule(int index) {
+            super(index, false, "Benchmark" + index, "", "Benchmark", "Benchmarks", "benchmark" + index, "bm" + index);
+        }
+        
+        @Override
+        public void initializeSettings() {}
+        
+        @Override
+        protected DcObject createItem() {
+            if (getIndex() == _MODULE_FINALIZED) {
+                return new DcObject(getIndex()) {
+                    @Override
+                    protected void finalize() throws Throwable {
+                        destroy();
+                        super.finalize();
+                    }
+                };
+            }
+            
+            return new DcObject(getIndex());
+        }
+    }
+}
@@ -0,0 +1,137 @@
+/******************************************************************************
+ *                                     __                                     *
+ *                              <-----/@@\----->                              *
+ *                             <-< <  \\//  > >->                             *
+ *                               <-<-\ __ /->->                               *
+ *                               Data /  \ Crow                               *
+ *                                   ^    ^                                   *
+ *                              info@datacrow.net                             *
+ *                                                                            *
+ *                       This file is part of Data Crow.                      *
+ *       Data Crow is free software; you can redistribute it and/or           *
+ *        modify it under the terms of the GNU General Public                 *
+ *       License as published by the Free Software Foundation; either         *
+ *              version 3 of the License, or any later version.               *
+ *                                                                            *
+ *        Data Crow is distributed in the hope that it will be useful,        *
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *           MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.             *
+ *           See the GNU General Public License for more details.             *
+ *                                                                            *
+ *        You should have received a copy of the GNU General Public           *
+ *  License along with this program. If not, see http://www.gnu.org/licenses  *
+ *                                                                            *
+ ******************************************************************************/
+
+package net.datacrow.tools.benchmark;
+
+import java.lang.management.ManagementFactory;
+
+import net.datacrow.core.DcRepository;
+import net.datacrow.core.console.UIComponents;
+import net.datacrow.core.modules.DcModule;
+import net.datacrow.core.modules.DcModules;
+import net.datacrow.core.objects.DcField;
+import net.datacrow.core.objects.DcObject;
+
+/**
+ * Measures the memory used by items of a module with 40 text fields: the bytes allocated 
+ * to create an item and set 10 of its values, the bytes retained per item and the bytes 
+ * allocated per value set on an existing item.
+ * <br>
+ * The allocated bytes are only available on JVMs providing com.sun.management.ThreadMXBean.
+ * <br>
+ * Usage: ItemMemoryBenchmark [items]
+ * 
+ * @author Robert Jan van der Waals
+ */
+public class ItemMemoryBenchmark {
+
+    private static final int _MODULE = 9000;
+    private static final int _FIELDS = 40;
+    private static final int _VALUES = 10;
+    
+    public static void main(String[] args) throws Exception {
+        int items = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        
+        DcModule module = new DcModule(_MODULE, false, "Benchmark", "", "Benchmark", "Benchmarks", "benchmark", "bm") {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public void initializeSettings() {}
+            
+            @Override
+            protected void initializeFields() {
+                super.initializeFields();
+                
+                for (int i = 1; i <= _FIELDS; i++) {
+                    addField(new DcField(i, getIndex(), "Field" + i, 
+                            false, true, false, true, 
+                            255, UIComponents._SHORTTEXTFIELD, getIndex(), DcRepository.ValueTypes._STRING,
+                            "Field" + i));
+                }
+            }
+            
+            @Override
+            protected DcObject createItem() {
+                return new DcObject(_MODULE);
+            }
+        };
+        DcModules.register(module);
+        
+        System.out.println("Items: " + items + ", fields per item: " + module.getFieldIndices().length);
+        
+        // warm up
+        createItems(module, items);
+        
+        long allocated = getAllocatedBytes();
+        long used = getUsedMemory();
+        DcObject[] dcos = createItems(module, items);
+        allocated = getAllocatedBytes() - allocated;
+        used = getUsedMemory() - used;
+        
+        System.out.println("allocated per item: " + (allocated < 0 ? "n/a" : String.valueOf(allocated / items)));
+        System.out.println("retained per item: " + (used / items));
+        
+        allocated = getAllocatedBytes();
+        for (int i = 0; i < dcos.length; i++) {
+            for (int field = 1; field <= _VALUES; field++)
+                dcos[i].setValue(field, "changed");
+        }
+        allocated = getAllocatedBytes() - allocated;
+        
+        System.out.println("allocated per value set on existing items: " + 
+                (allocated < 0 ? "n/a" : String.valueOf(allocated / (dcos.length * _VALUES))));
+    }
+    
+    private static DcObject[] createItems(DcModule module, int items) {
+        DcObject[] result = new DcObject[items];
+        DcObject dco;
+        for (int i = 0; i < items; i++) {
+            dco = module.getItem();
+            dco.setValue(DcObject._ID, String.valueOf(i));
+            for (int field = 1; field <= _VALUES; field++)
+                dco.setValue(field, "value");
+            
+            result[i] = dco;
+        }
+        return result;
+    }
+    
+    @SuppressWarnings("deprecation")
+    private static long getUsedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            System.runFinalization();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+    
+    private static long getAllocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean)
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        return -1;
+    }
+}
@@ -0,0 +1,118 @@
+/******************************************************************************
+ *                                     __                                     *
+ *                              <-----/@@\----->                              *
+ *                             <-< <  \\//  > >->                             *
+ *                               <-<-\ __ /->->                               *
+ *                               Data /  \ Crow                               *
+ *                                   ^    ^                                   *
+ *                              info@datacrow.net                             *
+ *                                                                            *
+ *                       This file is part of Data Crow.                      *
+ *       Data Crow is free software; you can redistribute it and/or           *
+ *        modify it under the terms of the GNU General Public                 *
+ *       License as published by the Free Software Foundation; either         *
+ *              version 3 of the License, or any later version.               *
+ *                                                                            *
+ *        Data Crow is distributed in the hope that it will be useful,        *
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *           MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.             *
+ *           See the GNU General Public License for more details.             *
+ *                                                                            *
+ *        You should have received a copy of the GNU General Public           *
+ *  License along with this program. If not, see http://www.gnu.org/licenses  *
+ *                                                                            *
+ ******************************************************************************/
+
+package net.datacrow.tools.benchmark;
+
+import net.datacrow.core.resources.MessageTemplate;
+
+/**
+ * Measures the formatting of messages with parameters. The insert variant repeats the 
+ * previous implementation, which scanned the text and copied it for every parameter.
+ * <br>
+ * Usage: MessageTemplateBenchmark [formats per round] [rounds]
+ * 
+ * @author Robert Jan van der Waals
+ */
+public class MessageTemplateBenchmark {
+
+    private static final String[] messages = {
+        "Processing %1",
+        "The item %1 could not be saved: %2",
+        "Processed %1 of %2 items (%3 failed)",
+        "Searching %1 for \"%2\" in region %3 using search mode %4; %5 results found so far"};
+    
+    private static final String[][] params = {
+        {"C:/movies/The Night Of The Return.avi"},
+        {"The Dark King", "the title is mandatory"},
+        {"125", "1000", "3"},
+        {"Amazon", "return of the king", "en", "title search", "12"}};
+    
+    // keeps the results from being optimized away
+    private static volatile int sink;
+    
+    public static void main(String[] args) {
+        int formats = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        
+        MessageTemplate[] templates = new MessageTemplate[messages.length];
+        for (int i = 0; i < messages.length; i++) {
+            templates[i] = new MessageTemplate(messages[i]);
+            
+            if (!templates[i].format(params[i]).equals(insertParams(messages[i], params[i])))
+                throw new IllegalStateException("Different result for " + messages[i]);
+        }
+        
+        // warm up
+        sink += format(templates, formats / 10);
+        sink += insert(formats / 10);
+        
+        System.out.println("Formats per round: " + formats);
+        for (int i = 0; i < rounds; i++) {
+            long start = System.nanoTime();
+            sink += insert(formats);
+            long insertTime = System.nanoTime() - start;
+            
+            start = System.nanoTime();
+            sink += format(templates, formats);
+            long formatTime = System.nanoTime() - start;
+            
+            System.out.println(String.format("insert %6d ms   template %6d ms", 
+                    Long.valueOf(insertTime / 1000000), Long.valueOf(formatTime / 1000000)));
+        }
+    }
+    
+    private static int format(MessageTemplate[] templates, int formats) {
+        int length = 0;
+        for (int i = 0; i < formats; i++)
+            length += templates[i % templates.length].format(params[i % templates.length]).length();
+        return length;
+    }
+    
+    private static int insert(int formats) {
+        int length = 0;
+        for (int i = 0; i < formats; i++)
+            length += insertParams(messages[i % messages.length], params[i % messages.length]).length();
+        return length;
+    }
+    
+    /**
+     * The previous implementation (escaped markers left out, these caused it to loop).
+     */
+    private static String insertParams(String s, String[] params) {
+        String result = s;
+        for (int i = 1; i - 1 < params.length; i++) {
+            String searchPat = "%" + i;
+            int index = result.indexOf(searchPat, 0);
+
+            StringBuffer sb = new StringBuffer(result);
+            try {
+                sb.replace(index, index + searchPat.length(), params[i - 1]);
+            } catch (Exception e) {}
+            
+            result = sb.toString();
+        }
+        return result;
+    }
+}
@@ -0,0 +1,160 @@
+/******************************************************************************
+ *                                     __                                     *
+ *                              <-----/@@\----->                              *
+ *                             <-< <  \\//  > >->                             *
+ *                               <-<-\ __ /->->                               *
+ *                               Data /  \ Crow                               *
+ *                                   ^    ^                                   *
+ *                              info@datacrow.net                             *
+ *                                                                            *
+ *                       This file is part of Data Crow.                      *
+ *       Data Crow is free software; you can redistribute it and/or           *
+ *        modify it under the terms of the GNU General Public                 *
+ *       License as published by the Free Software Foundation; either         *
+ *              version 3 of the License, or any later version.               *
+ *                                                                            *
+ *        Data Crow is distributed in the hope that it will be useful,        *
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *           MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.             *
+ *           See the GNU General Public License for more details.             *
+ *                                                                            *
+ *        You should have received a copy of the GNU General Public           *
+ *  License along with this program. If not, see http://www.gnu.org/licenses  *
+ *                                                                            *
+ ******************************************************************************/
+
+package net.datacrow.tools.benchmark;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import net.datacrow.core.DcConfig;
+import net.datacrow.core.modules.ModuleJar;
+import net.datacrow.core.modules.ModuleSnapshot;
+import net.datacrow.core.modules.xml.XmlModule;
+
+/**
+ * Measures the loading of the module jars of a module directory: reading and parsing the 
+ * jars one by one, in parallel (as done at startup) and taking the modules from the 
+ * module snapshot (as done on a warm start).
+ * <br>
+ * Usage: ModuleLoadBenchmark &lt;module directory&gt; [rounds]
+ * 
+ * @author Robert Jan van der Waals
+ */
+public class ModuleLoadBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            System.out.println("Usage: ModuleLoadBenchmark <module directory> [rounds]");
+            return;
+        }
+        
+        File dir = new File(args[0]);
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        
+        DcConfig.getInstance().setModuleDir(dir.getAbsolutePath() + File.separator);
+        
+        List<String> filenames = new ArrayList<String>();
+        String[] names = dir.list();
+        for (int i = 0; names != null && i < names.length; i++) {
+            if (names[i].toLowerCase().endsWith(".jar"))
+                filenames.add(names[i]);
+        }
+        
+        System.out.println("Module jars: " + filenames.size() + ", rounds: " + rounds);
+        
+        // warm up
+        for (int i = 0; i < 5; i++) {
+            loadSequential(filenames);
+            loadParallel(filenames);
+        }
+        
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++)
+            loadSequential(filenames);
+        print("sequential", start, rounds);
+        
+        start = System.nanoTime();
+        for (int i = 0; i < rounds; i++)
+            loadParallel(filenames);
+        print("parallel", start, rounds);
+        
+        File file = File.createTempFile("modules", ".snapshot");
+        file.deleteOnExit();
+        
+        ModuleSnapshot snapshot = new ModuleSnapshot(file);
+        List<XmlModule> modules = loadSequential(filenames);
+        for (int i = 0; i < filenames.size(); i++)
+            snapshot.put(new File(dir, filenames.get(i)), modules.get(i));
+        snapshot.save();
+        
+        loadSnapshot(file, dir, filenames);
+        
+        start = System.nanoTime();
+        for (int i = 0; i < rounds; i++)
+            loadSnapshot(file, dir, filenames);
+        print("snapshot", start, rounds);
+    }
+    
+    private static void print(String name, long start, int rounds) {
+        System.out.println(String.format("%-12s %8.1f ms", name, 
+                Double.valueOf((System.nanoTime() - start) / 1000000d / rounds)));
+    }
+    
+    private static List<XmlModule> loadSequential(List<String> filenames) throws Exception {
+        List<XmlModule> modules = new ArrayList<XmlModule>();
+        for (String filename : filenames)
+            modules.add(load(filename));
+        return modules;
+    }
+    
+    private static List<XmlModule> loadParallel(List<String> filenames) throws Exception {
+        List<Future<XmlModule>> futures = new ArrayList<Future<XmlModule>>();
+        ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        try {
+            for (final String filename : filenames) {
+                futures.add(executor.submit(new Callable<XmlModule>() {
+                    @Override
+                    public XmlModule call() throws Exception {
+                        return load(filename);
+                    }
+                }));
+            }
+            
+            List<XmlModule> modules = new ArrayList<XmlModule>();
+            for (Future<XmlModule> future : futures)
+                modules.add(future.get());
+            return modules;
+        } finally {
+            executor.shutdown();
+        }
+    }
+    
+    private static List<XmlModule> loadSnapshot(File file, File dir, List<String> filenames) {
+        ModuleSnapshot snapshot = new ModuleSnapshot(file);
+        snapshot.load();
+        
+        List<XmlModule> modules = new ArrayList<XmlModule>();
+        XmlModule module;
+        for (String filename : filenames) {
+            module = snapshot.get(new File(dir, filename));
+            if (module == null)
+                throw new IllegalStateException("The module snapshot is missing " + filename);
+            
+            modules.add(module);
+        }
+        return modules;
+    }
+    
+    private static XmlModule load(String filename) throws Exception {
+        ModuleJar mj = new ModuleJar(filename);
+        mj.load();
+        return mj.getModule();
+    }
+}
@@ -0,0 +1,154 @@
+/******************************************************************************
+ *                                     __                                     *
+ *                              <-----/@@\----->                              *
+ *                             <-< <  \\//  > >->                             *
+ *                               <-<-\ __ /->->                               *
+ *                               Data /  \ Crow                               *
+ *                                   ^    ^                                   *
+ *                              info@datacrow.net                             *
+ *                                                                            *
+ *                       This file is part of Data Crow.                      *
+ *       Data Crow is free software; you can redistribute it and/or           *
+ *        modify it under the terms of the GNU General Public                 *
+ *       License as published by the Free Software Foundation; either         *
+ *              version 3 of the License, or any later version.               *
+ *                                                                            *
+ *        Data Crow is distributed in the hope that it will be useful,        *
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *           MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.             *
+ *           See the GNU General Public License for more details.             *
+ *                                                                            *
+ *        You should have received a copy of the GNU General Public           *
+ *  License along with this program. If not, see http://www.gnu.org/licenses  *
+ *                                                                            *
+ ******************************************************************************/
+
+package net.datacrow.tools.benchmark;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import net.datacrow.core.DcConfig;
+import net.datacrow.core.enhancers.SequenceAllocator;
+import net.datacrow.core.modules.DcModule;
+import net.datacrow.core.modules.DcModules;
+import net.datacrow.core.objects.DcField;
+import net.datacrow.core.objects.DcObject;
+
+/**
+ * Measures handing out auto increment numbers for new items, with and without filling 
+ * gaps. The table holds the specified number of values, with every tenth number missing.
+ * <br>
+ * The probe variant repeats the previous implementation, which queried the column for 
+ * every number and probed the resulting list. The list is built in memory here; the 
+ * query itself, which came on top of this, is not part of the measurement. The allocator 
+ * is seeded once per run, which is part of the measurement.
+ * <br>
+ * Usage: SequenceBenchmark [existing values] [new items]
+ * 
+ * @author Robert Jan van der Waals
+ */
+public class SequenceBenchmark {
+
+    private static final int _MODULE = 9000;
+    private static final int _STEP = 1;
+    
+    public static void main(String[] args) throws Exception {
+        int existing = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        int items = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        
+        DcModule module = new DcModule(_MODULE, false, "Benchmark", "", "Benchmark", "Benchmarks", "benchmark", "bm") {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public void initializeSettings() {}
+            
+            @Override
+            protected DcObject createItem() {
+                return new DcObject(_MODULE);
+            }
+        };
+        DcModules.register(module);
+        DcField field = module.getField(DcObject._SYS_CREATED);
+        
+        List<Integer> table = new ArrayList<Integer>();
+        List<Object[]> rows = new ArrayList<Object[]>();
+        for (int i = 1; table.size() < existing; i++) {
+            if (i % 10 != 0) {
+                table.add(Integer.valueOf(i));
+                rows.add(new Object[] {Long.valueOf(i)});
+            }
+        }
+        
+        BenchmarkConnector connector = new BenchmarkConnector();
+        connector.setResult(rows);
+        DcConfig.getInstance().setConnector(connector);
+        
+        System.out.println("Existing values: " + existing + ", new items: " + items);
+        
+        // warm up
+        for (int i = 0; i < 3; i++) {
+            probe(new ArrayList<Integer>(table), items, true);
+            probe(new ArrayList<Integer>(table), items, false);
+            allocate(field, items, true);
+            allocate(field, items, false);
+        }
+        
+        for (int i = 0; i < 10; i++) {
+            boolean fillGaps = i % 2 == 0;
+            
+            long start = System.nanoTime();
+            probe(new ArrayList<Integer>(table), items, fillGaps);
+            long probeTime = System.nanoTime() - start;
+            
+            start = System.nanoTime();
+            allocate(field, items, fillGaps);
+            long allocateTime = System.nanoTime() - start;
+            
+            System.out.println(String.format("%-10s probe %8.2f ms   allocator %8.2f ms", 
+                    fillGaps ? "fill gaps" : "maximum", 
+                    Double.valueOf(probeTime / 1000000d), Double.valueOf(allocateTime / 1000000d)));
+        }
+    }
+    
+    private static void allocate(DcField field, int items, boolean fillGaps) throws Exception {
+        SequenceAllocator.reset(_MODULE);
+        SequenceAllocator sequence = SequenceAllocator.getInstance(field);
+        for (int i = 0; i < items; i++)
+            sequence.register(Long.valueOf(sequence.next(_STEP, fillGaps)));
+    }
+    
+    /**
+     * The previous implementation; the table is read for every number.
+     */
+    private static void probe(List<Integer> table, int items, boolean fillGaps) {
+        for (int i = 0; i < items; i++) {
+            long value;
+            if (!fillGaps) {
+                int maximum = 0;
+                for (Integer v : table)
+                    maximum = Math.max(maximum, v.intValue());
+                
+                value = maximum + _STEP;
+            } else {
+                int counter = _STEP;
+                
+                Collection<Integer> currentValues = new ArrayList<Integer>(table);
+                if (currentValues.contains(Integer.valueOf(counter))) {
+                    boolean currentfound = false;
+                    for (int x : currentValues) {
+                        while (!currentfound && x == counter)
+                            counter += _STEP;
+                    }
+                }            
+                value = counter;
+            }
+            
+            // the saved item; the table is kept in order as the query did
+            int idx = Collections.binarySearch(table, Integer.valueOf((int) value));
+            table.add(idx < 0 ? -idx - 1 : idx, Integer.valueOf((int) value));
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/******************************************************************************
+ *                                     __                                     *
+ *                              <-----/@@\----->                              *
+ *                             <-< <  \\//  > >->                             *
+ *                               <-<-\ __ /->->                               *
+ *                               Data /  \ Crow                               *
+ *                                   ^    ^                                   *
+ *                              info@datacrow.net                             *
+ *                                                                            *
+ *                       This file is part of Data Crow.                      *
+ *       Data Crow is free software; you can redistribute it and/or           *
+ *        modify it under the terms of the GNU General Public                 *
+ *       License as published by the Free Software Foundation; either         *
+ *              version 3 of the License, or any later version.               *
+ *                                                                            *
+ *        Data Crow is distributed in the hope that it will be useful,        *
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *           MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.             *
+ *           See the GNU General Public License for more details.             *
+ *                                                                            *
+ *        You should have received a copy of the GNU General Public           *
+ *  License along with this program. If not, see http://www.gnu.org/licenses  *
+ *                                                                            *
+ ******************************************************************************/
+
+package net.datacrow.tools.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.datacrow.core.DcRepository;
+import net.datacrow.core.console.UIComponents;
+import net.datacrow.core.settings.Setting;
+import net.datacrow.core.settings.Settings;
+import net.datacrow.core.settings.SettingsGroup;
+
+/**
+ * Measures the lookup of settings. The settings are organized like the application 
+ * settings: top level groups with child groups, each holding a number of settings.
+ * The keys are read round robin, by the specified number of threads.
+ * <br>
+ * Usage: SettingsBenchmark [reads per thread] [threads]
+ * 
+ * @author Robert Jan van der Waals
+ */
+public class SettingsBenchmark {
+
+    private static final int _GROUPS = 10;
+    private static final int _CHILDREN = 2;
+    private static final int _SETTINGS = 8;
+    
+    // keeps the reads from being optimized away
+    private static volatile int sink;
+    
+    public static void main(String[] args) throws Exception {
+        final int reads = args.length > 0 ? Integer.parseInt(args[0]) : 10000000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+        
+        final Settings settings = new Settings();
+        final List<String> keys = new ArrayList<String>();
+        
+        SettingsGroup group;
+        SettingsGroup child;
+        for (int i = 0; i < _GROUPS; i++) {
+            group = new SettingsGroup("group" + i, "");
+            settings.addGroup(group.getKey(), group);
+            addSettings(settings, group, keys);
+            
+            for (int j = 0; j < _CHILDREN; j++) {
+                child = new SettingsGroup("group" + i + "_" + j, "");
+                group.addChild(child);
+                addSettings(settings, child, keys);
+            }
+        }
+        
+        System.out.println("Settings: " + keys.size() + ", reads per thread: " + reads + ", threads: " + threads);
+        
+        // warm up
+        sink += read(settings, keys, reads / 10);
+        
+        List<Thread> workers = new ArrayList<Thread>();
+        for (int i = 0; i < threads; i++) {
+            workers.add(new Thread() {
+                @Override
+                public void run() {
+                    sink += read(settings, keys, reads);
+                }
+            });
+        }
+        
+        long start = System.nanoTime();
+        for (Thread worker : workers)
+            worker.start();
+        for (Thread worker : workers)
+            worker.join();
+        long time = System.nanoTime() - start;
+        
+        System.out.println(String.format("%d ms, %.1f M reads/s", Long.valueOf(time / 1000000), 
+                Double.valueOf((double) reads * threads / (time / 1000d))));
+    }
+    
+    private static void addSettings(Settings settings, SettingsGroup group, List<String> keys) {
+        String key;
+        for (int i = 0; i < _SETTINGS; i++) {
+            key = "st" + group.getKey() + "_" + i;
+            group.add(new Setting(DcRepository.ValueTypes._STRING, key, "value" + i, 
+                    UIComponents._SHORTTEXTFIELD, "", key, true, true, -1));
+            keys.add(key);
+        }
+    }
+    
+    private static int read(Settings settings, List<String> keys, int reads) {
+        String[] array = keys.toArray(new String[keys.size()]);
+        int length = 0;
+        for (int i = 0; i < reads; i++)
+            length += settings.getString(array[i % array.length]).length();
+        return length;
+    }
+}